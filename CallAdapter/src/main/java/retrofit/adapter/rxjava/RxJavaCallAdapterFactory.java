@@ -8,6 +8,8 @@ import retrofit.HttpResponse;
 import rx.*;
 import rx.exceptions.Exceptions;
 import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import retrofit.util.VirtualThreads;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.ParameterizedType;
@@ -29,6 +31,15 @@ public final class RxJavaCallAdapterFactory extends HttpCallAdapter.Factory {
         }
     }
 
+    /**
+     * 在虚拟线程上订阅，RequestArbiter中阻塞的HttpCall.execute()不再占用平台线程；
+     * 需要JDK 21+，否则抛出IllegalStateException
+     */
+    public static RxJavaCallAdapterFactory createWithVirtualThreads() {
+        VirtualThreads.checkAvailable();
+        return new RxJavaCallAdapterFactory(Schedulers.from(VirtualThreads.shared()));
+    }
+
     private RxJavaCallAdapterFactory(Scheduler scheduler) {
         this.scheduler = scheduler;
     }
@@ -0,0 +1,259 @@
+package retrofit.compiler;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.*;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 把服务接口每个方法的HTTP方法、相对URL、路径参数名、静态请求头和编码方式写成紧凑的二进制索引，
+ * 格式与运行时的{@code retrofit.core.ServiceIndex}一致。
+ * 方法上没有其它注解、参数都是单个@Path/@Query/@Header/@Field且类型为基本类型、包装类型或String时，
+ * 还写入每个参数的注解和类型，运行时不再反射读取。
+ * 注解有误的方法不写入索引，留给运行时的反射解析报告错误
+ */
+final class IndexWriter {
+    static final String RESOURCE_PREFIX = "META-INF/retrofit/";
+    static final String RESOURCE_SUFFIX = ".index";
+    static final int VERSION = 2;
+
+    // 与ServiceIndex.PARAM_*一致
+    private static final int PARAM_PATH = 0;
+    private static final int PARAM_QUERY = 1;
+    private static final int PARAM_HEADER = 2;
+    private static final int PARAM_FIELD = 3;
+    private static final Map<String, Integer> PARAM_KINDS = new HashMap<>();
+    private static final Set<String> SIMPLE_TYPES = new HashSet<>(Arrays.asList(
+            "boolean", "byte", "char", "double", "float", "int", "long", "short",
+            "java.lang.Boolean", "java.lang.Byte", "java.lang.Character", "java.lang.Double",
+            "java.lang.Float", "java.lang.Integer", "java.lang.Long", "java.lang.Short", "java.lang.String"));
+
+    static {
+        PARAM_KINDS.put("retrofit.http.Path", PARAM_PATH);
+        PARAM_KINDS.put("retrofit.http.Query", PARAM_QUERY);
+        PARAM_KINDS.put("retrofit.http.Header", PARAM_HEADER);
+        PARAM_KINDS.put("retrofit.http.Field", PARAM_FIELD);
+    }
+
+    private static final String HTTP_METHOD = "retrofit.http.HttpMethod.";
+    private static final String HEADERS = "retrofit.http.Headers";
+    private static final String MULTIPART = "retrofit.http.Multipart";
+    private static final String FORM_URL_ENCODED = "retrofit.http.FormUrlEncoded";
+
+    // 与HttpMethodAnnotationHandler.PARAM_URL_REGEX一致
+    private static final Pattern PARAM_URL_REGEX = Pattern.compile("\\{([a-zA-Z][a-zA-Z0-9_-]*)\\}");
+
+    private final ProcessingEnvironment processingEnv;
+    private final TypeElement service;
+
+    IndexWriter(ProcessingEnvironment processingEnv, TypeElement service) {
+        this.processingEnv = processingEnv;
+        this.service = service;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(service.getEnclosedElements())) {
+            Entry entry = parse(method);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(VERSION);
+        data.writeInt(entries.size());
+        for (Entry entry : entries) {
+            data.writeUTF(entry.key);
+            data.writeUTF(entry.httpMethod);
+            data.writeBoolean(entry.hasBody);
+            data.writeBoolean(entry.isFormEncoded);
+            data.writeBoolean(entry.isMultipart);
+            writeNullable(data, entry.relativeUrl);
+            data.writeInt(entry.pathParams.size());
+            for (String pathParam : entry.pathParams) {
+                data.writeUTF(pathParam);
+            }
+            data.writeInt(entry.headers.size() / 2);
+            for (String nameOrValue : entry.headers) {
+                data.writeUTF(nameOrValue);
+            }
+            writeNullable(data, entry.contentType);
+            data.writeBoolean(entry.parameters != null);
+            if (entry.parameters != null) {
+                data.writeInt(entry.parameters.size());
+                for (Parameter parameter : entry.parameters) {
+                    data.writeByte(parameter.kind);
+                    data.writeUTF(parameter.name);
+                    data.writeBoolean(parameter.encoded);
+                    data.writeUTF(parameter.type);
+                }
+            }
+        }
+        data.flush();
+    }
+
+    private static void writeNullable(DataOutputStream data, String value) throws IOException {
+        data.writeBoolean(value != null);
+        if (value != null) {
+            data.writeUTF(value);
+        }
+    }
+
+    private Entry parse(ExecutableElement method) {
+        Entry entry = new Entry();
+        boolean otherAnnotations = false;
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            String type = ((TypeElement) mirror.getAnnotationType().asElement())
+                    .getQualifiedName().toString();
+            if (type.startsWith(HTTP_METHOD)) {
+                if (entry.httpMethod != null) return null;
+                String simpleName = type.substring(HTTP_METHOD.length());
+                if ("HTTP".equals(simpleName)) {
+                    entry.httpMethod = (String) value(mirror, "method");
+                    entry.hasBody = (Boolean) value(mirror, "hasBody");
+                    entry.relativeUrl = (String) value(mirror, "path");
+                } else {
+                    entry.httpMethod = simpleName;
+                    entry.hasBody = "PATCH".equals(simpleName)
+                            || "POST".equals(simpleName) || "PUT".equals(simpleName);
+                    entry.relativeUrl = (String) value(mirror, "value");
+                }
+            } else if (HEADERS.equals(type)) {
+                List<?> headers = (List<?>) value(mirror, "value");
+                if (headers.isEmpty()) return null;
+                for (Object header : headers) {
+                    if (!parseHeader(entry, (String) ((AnnotationValue) header).getValue())) return null;
+                }
+            } else if (MULTIPART.equals(type)) {
+                if (entry.isFormEncoded) return null;
+                entry.isMultipart = true;
+            } else if (FORM_URL_ENCODED.equals(type)) {
+                if (entry.isMultipart) return null;
+                entry.isFormEncoded = true;
+            } else {
+                otherAnnotations = true;
+            }
+        }
+        if (entry.httpMethod == null) return null;
+
+        if (entry.relativeUrl.isEmpty()) {
+            entry.relativeUrl = null;
+        } else {
+            int question = entry.relativeUrl.indexOf('?');
+            if (question != -1 && question < entry.relativeUrl.length() - 1
+                    && PARAM_URL_REGEX.matcher(entry.relativeUrl.substring(question + 1)).find()) {
+                return null;
+            }
+            Matcher m = PARAM_URL_REGEX.matcher(entry.relativeUrl);
+            while (m.find()) {
+                entry.pathParams.add(m.group(1));
+            }
+        }
+        entry.key = methodKey(method);
+        if (!otherAnnotations) {
+            entry.parameters = parseParameters(method);
+        }
+        return entry;
+    }
+
+    /**
+     * 有任何一个参数不能由索引表达时返回null
+     */
+    private List<Parameter> parseParameters(ExecutableElement method) {
+        Types types = processingEnv.getTypeUtils();
+        List<Parameter> parameters = new ArrayList<>();
+        for (VariableElement element : method.getParameters()) {
+            List<? extends AnnotationMirror> mirrors = element.getAnnotationMirrors();
+            if (mirrors.size() != 1) return null;
+            AnnotationMirror mirror = mirrors.get(0);
+            Integer kind = PARAM_KINDS.get(((TypeElement) mirror.getAnnotationType().asElement())
+                    .getQualifiedName().toString());
+            String type = types.erasure(element.asType()).toString();
+            if (kind == null || !SIMPLE_TYPES.contains(type)) return null;
+
+            Parameter parameter = new Parameter();
+            parameter.kind = kind;
+            parameter.name = (String) value(mirror, "value");
+            parameter.encoded = kind != PARAM_HEADER && (Boolean) value(mirror, "encoded");
+            parameter.type = type;
+            parameters.add(parameter);
+        }
+        return parameters;
+    }
+
+    private static boolean parseHeader(Entry entry, String header) {
+        int colon = header.indexOf(':');
+        if (colon == -1 || colon == 0 || colon == header.length() - 1) {
+            return false;
+        }
+        String headerName = header.substring(0, colon);
+        String headerValue = header.substring(colon + 1).trim();
+        if ("Content-Type".equalsIgnoreCase(headerName)) {
+            entry.contentType = headerValue;
+        } else {
+            entry.headers.add(headerName);
+            entry.headers.add(headerValue);
+        }
+        return true;
+    }
+
+    private Object value(AnnotationMirror mirror, String name) {
+        Elements elements = processingEnv.getElementUtils();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value
+                : elements.getElementValuesWithDefaults(mirror).entrySet()) {
+            if (value.getKey().getSimpleName().contentEquals(name)) {
+                return value.getValue().getValue();
+            }
+        }
+        throw new IllegalArgumentException(mirror + " has no member " + name);
+    }
+
+    /**
+     * 与{@code ServiceIndex.methodKey(Method)}一致：方法名加擦除后的参数类型
+     */
+    private String methodKey(ExecutableElement method) {
+        Types types = processingEnv.getTypeUtils();
+        StringBuilder key = new StringBuilder(method.getSimpleName()).append('(');
+        List<? extends VariableElement> parameters = method.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) key.append(',');
+            key.append(types.erasure(parameters.get(i).asType()));
+        }
+        return key.append(')').toString();
+    }
+
+    private static final class Entry {
+        String key;
+        String httpMethod;
+        boolean hasBody;
+        boolean isFormEncoded;
+        boolean isMultipart;
+        String relativeUrl;
+        final Set<String> pathParams = new LinkedHashSet<>();
+        final List<String> headers = new ArrayList<>();
+        String contentType;
+        List<Parameter> parameters;
+    }
+
+    private static final class Parameter {
+        int kind;
+        String name;
+        boolean encoded;
+        String type;
+    }
+}
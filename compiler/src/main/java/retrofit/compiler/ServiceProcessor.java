@@ -0,0 +1,133 @@
+package retrofit.compiler;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 在编译期为声明了{@code retrofit.http.HttpMethod}注解的接口生成实现类{@code Service$$Retrofit}，
+ * {@code Retrofit.create()}发现该类时直接实例化，不再经过动态代理；
+ * 同时写出方法元数据索引（见{@link IndexWriter}），运行时据此跳过注解解析
+ */
+public class ServiceProcessor extends AbstractProcessor {
+    static final String GENERATED_SUFFIX = "$$Retrofit";
+
+    private static final String HTTP_METHOD = "retrofit.http.HttpMethod";
+    private static final String[] HTTP_METHOD_ANNOTATIONS = {
+            HTTP_METHOD + ".GET", HTTP_METHOD + ".POST", HTTP_METHOD + ".PUT",
+            HTTP_METHOD + ".PATCH", HTTP_METHOD + ".DELETE", HTTP_METHOD + ".HEAD",
+            HTTP_METHOD + ".OPTIONS", HTTP_METHOD + ".HTTP"
+    };
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> types = new LinkedHashSet<>();
+        for (String annotation : HTTP_METHOD_ANNOTATIONS) {
+            types.add(annotation);
+        }
+        return types;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> services = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                Element enclosing = element.getEnclosingElement();
+                if (element.getKind() == ElementKind.METHOD
+                        && enclosing.getKind() == ElementKind.INTERFACE) {
+                    services.add((TypeElement) enclosing);
+                }
+            }
+        }
+        for (TypeElement service : services) {
+            try {
+                writeIndex(service);
+                if (isSupported(service)) {
+                    writeService(service);
+                }
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Unable to generate implementation for " + service + ": " + e.getMessage(),
+                        service);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 泛型接口、继承了其他接口或不可见的接口交给运行时的动态代理处理（并由其报告错误）
+     */
+    private boolean isSupported(TypeElement service) {
+        if (!service.getTypeParameters().isEmpty()
+                || !service.getInterfaces().isEmpty()
+                || service.getModifiers().contains(Modifier.PRIVATE)) {
+            note(service, "falls back to java.lang.reflect.Proxy");
+            return false;
+        }
+        for (ExecutableElement method : ElementFilter.methodsIn(service.getEnclosedElements())) {
+            if (!method.getTypeParameters().isEmpty()) {
+                note(service, "has a generic method and falls back to java.lang.reflect.Proxy");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void note(TypeElement service, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                service.getQualifiedName() + " " + message, service);
+    }
+
+    private void writeService(TypeElement service) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(service)
+                .getQualifiedName().toString();
+        String className = binarySimpleName(service, packageName) + GENERATED_SUFFIX;
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+
+        ServiceWriter serviceWriter = new ServiceWriter(processingEnv, service, packageName, className);
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, service);
+        Writer writer = file.openWriter();
+        try {
+            writer.write(serviceWriter.brewJava());
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void writeIndex(TypeElement service) throws IOException {
+        String binaryName = processingEnv.getElementUtils().getBinaryName(service).toString();
+        FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                IndexWriter.RESOURCE_PREFIX + binaryName + IndexWriter.RESOURCE_SUFFIX, service);
+        OutputStream out = file.openOutputStream();
+        try {
+            new IndexWriter(processingEnv, service).writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 与{@code Class.getName()}保持一致，嵌套接口使用'$'连接，例如{@code Outer$Api}
+     */
+    private String binarySimpleName(TypeElement service, String packageName) {
+        String name = processingEnv.getElementUtils().getBinaryName(service).toString();
+        return packageName.isEmpty() ? name : name.substring(packageName.length() + 1);
+    }
+}
@@ -0,0 +1,353 @@
+package retrofit.compiler;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 生成单个服务接口的实现类源码。每个方法持有自己的ServiceMethod字段，首次调用时解析，
+ * 之后直接进入{@code ServiceMethod.invoke()}。
+ * 参数都是单个@Path/@Query/@Header/@Field且类型为基本类型、包装类型或String的方法，另外生成一个
+ * {@code CallArguments}子类，按声明类型把参数写入RequestBuilder；运行时ServiceMethod.typedArguments为false
+ * （例如注册了自定义的stringConverter）时仍以Object[]调用
+ */
+final class ServiceWriter {
+    private static final Set<String> BOXED_TYPES = new HashSet<>(Arrays.asList(
+            "java.lang.Boolean", "java.lang.Byte", "java.lang.Character", "java.lang.Double",
+            "java.lang.Float", "java.lang.Integer", "java.lang.Long", "java.lang.Short", "java.lang.String"));
+    // 由BuiltInParameterHandlers.PrimitivePath/PrimitiveQuery处理的类型
+    private static final Set<String> LONG_TYPES = new HashSet<>(Arrays.asList(
+            "byte", "short", "int", "long",
+            "java.lang.Byte", "java.lang.Short", "java.lang.Integer", "java.lang.Long"));
+
+    private final ProcessingEnvironment processingEnv;
+    private final TypeElement service;
+    private final String packageName;
+    private final String className;
+
+    ServiceWriter(ProcessingEnvironment processingEnv, TypeElement service,
+                  String packageName, String className) {
+        this.processingEnv = processingEnv;
+        this.service = service;
+        this.packageName = packageName;
+        this.className = className;
+    }
+
+    String brewJava() {
+        String serviceName = service.getQualifiedName().toString();
+        List<ExecutableElement> methods = ElementFilter.methodsIn(service.getEnclosedElements());
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("// Generated code from retrofit-compiler. Do not modify!\n");
+        if (!packageName.isEmpty()) {
+            builder.append("package ").append(packageName).append(";\n\n");
+        }
+        builder.append("public final class ").append(className)
+                .append(" implements ").append(serviceName).append(" {\n");
+        builder.append("    private final retrofit.Retrofit retrofit;\n");
+        for (int i = 0; i < methods.size(); i++) {
+            if (isServiceMethod(methods.get(i))) {
+                builder.append("    private volatile retrofit.ServiceMethod<?, ?> ")
+                        .append(fieldName(methods.get(i), i)).append(";\n");
+            }
+        }
+        builder.append('\n');
+        builder.append("    public ").append(className).append("(retrofit.Retrofit retrofit) {\n");
+        builder.append("        this.retrofit = retrofit;\n");
+        builder.append("    }\n");
+
+        for (int i = 0; i < methods.size(); i++) {
+            ExecutableElement method = methods.get(i);
+            if (isServiceMethod(method)) {
+                brewMethod(builder, method, fieldName(method, i));
+            }
+        }
+
+        builder.append('\n');
+        builder.append("    private retrofit.ServiceMethod<?, ?> load(String name, Class<?>... parameterTypes) {\n");
+        builder.append("        try {\n");
+        builder.append("            return retrofit.loadServiceMethod(\n");
+        builder.append("                    ").append(serviceName)
+                .append(".class.getDeclaredMethod(name, parameterTypes));\n");
+        builder.append("        } catch (NoSuchMethodException e) {\n");
+        builder.append("            throw new AssertionError(e);\n");
+        builder.append("        }\n");
+        builder.append("    }\n");
+        builder.append("}\n");
+        return builder.toString();
+    }
+
+    private static boolean isServiceMethod(ExecutableElement method) {
+        return !method.getModifiers().contains(Modifier.STATIC);
+    }
+
+    private void brewMethod(StringBuilder builder, ExecutableElement method, String field) {
+        Types types = processingEnv.getTypeUtils();
+        TypeMirror returnType = method.getReturnType();
+        List<? extends VariableElement> parameters = method.getParameters();
+
+        builder.append('\n');
+        builder.append("    @Override\n");
+        builder.append("    @SuppressWarnings(\"unchecked\")\n");
+        builder.append("    public ").append(returnType).append(' ')
+                .append(method.getSimpleName()).append('(');
+        for (int p = 0; p < parameters.size(); p++) {
+            if (p > 0) builder.append(", ");
+            builder.append(parameters.get(p).asType()).append(" p").append(p);
+        }
+        builder.append(')');
+        List<? extends TypeMirror> thrownTypes = method.getThrownTypes();
+        for (int t = 0; t < thrownTypes.size(); t++) {
+            builder.append(t == 0 ? " throws " : ", ").append(thrownTypes.get(t));
+        }
+        builder.append(" {\n");
+
+        builder.append("        retrofit.ServiceMethod<?, ?> serviceMethod = ").append(field).append(";\n");
+        builder.append("        if (serviceMethod == null) {\n");
+        builder.append("            ").append(field).append(" = serviceMethod = load(\"")
+                .append(method.getSimpleName()).append('"');
+        for (VariableElement parameter : parameters) {
+            builder.append(", ").append(types.erasure(parameter.asType())).append(".class");
+        }
+        builder.append(");\n");
+        builder.append("        }\n");
+
+        List<TypedParameter> typedParameters = typedParameters(parameters);
+        String argumentsClass = "Arguments$" + field;
+        if (typedParameters != null) {
+            builder.append("        if (serviceMethod.typedArguments) {\n");
+            StringBuilder arguments = new StringBuilder("new ").append(argumentsClass).append('(');
+            for (int p = 0; p < parameters.size(); p++) {
+                if (p > 0) arguments.append(", ");
+                arguments.append('p').append(p);
+            }
+            brewInvoke(builder, "            ", returnType, arguments.append(')').toString());
+            builder.append("        }\n");
+        }
+        StringBuilder args = new StringBuilder();
+        if (parameters.isEmpty()) {
+            // 与动态代理保持一致，无参方法传入null
+            args.append("(Object[]) null");
+        } else {
+            args.append("new Object[]{");
+            for (int p = 0; p < parameters.size(); p++) {
+                if (p > 0) args.append(", ");
+                args.append('p').append(p);
+            }
+            args.append('}');
+        }
+        brewInvoke(builder, "        ", returnType, args.toString());
+        builder.append("    }\n");
+        if (typedParameters != null) {
+            brewArguments(builder, argumentsClass, typedParameters);
+        }
+    }
+
+    private void brewInvoke(StringBuilder builder, String indent, TypeMirror returnType, String arguments) {
+        builder.append(indent);
+        if (returnType.getKind() != TypeKind.VOID) {
+            builder.append("return (").append(castType(returnType)).append(") ");
+        }
+        builder.append("serviceMethod.invoke(").append(arguments).append(");\n");
+        if (returnType.getKind() == TypeKind.VOID) {
+            builder.append(indent).append("return;\n");
+        }
+    }
+    /**
+     * 生成方法的CallArguments子类，每个参数的写法与BuiltInParameterHandlers中使用默认toString转换的handler一致
+     */
+    private static void brewArguments(StringBuilder builder, String argumentsClass,
+                                      List<TypedParameter> parameters) {
+        builder.append('\n');
+        builder.append("    private static final class ").append(argumentsClass)
+                .append(" extends retrofit.core.CallArguments {\n");
+        for (int p = 0; p < parameters.size(); p++) {
+            builder.append("        private final ").append(parameters.get(p).type).append(" p").append(p).append(";\n");
+        }
+        builder.append('\n');
+        builder.append("        ").append(argumentsClass).append('(');
+        for (int p = 0; p < parameters.size(); p++) {
+            if (p > 0) builder.append(", ");
+            builder.append(parameters.get(p).type).append(" p").append(p);
+        }
+        builder.append(") {\n");
+        for (int p = 0; p < parameters.size(); p++) {
+            builder.append("            this.p").append(p).append(" = p").append(p).append(";\n");
+        }
+        builder.append("        }\n");
+
+        builder.append('\n');
+        builder.append("        @Override\n");
+        builder.append("        public void write(retrofit.RequestBuilder builder) {\n");
+        for (int p = 0; p < parameters.size(); p++) {
+            brewWrite(builder, parameters.get(p), "p" + p);
+        }
+        builder.append("        }\n");
+
+        builder.append('\n');
+        builder.append("        @Override\n");
+        builder.append("        protected Object[] toArray() {\n");
+        builder.append("            return new Object[]{");
+        for (int p = 0; p < parameters.size(); p++) {
+            if (p > 0) builder.append(", ");
+            builder.append('p').append(p);
+        }
+        builder.append("};\n");
+        builder.append("        }\n");
+
+        builder.append('\n');
+        builder.append("        @Override\n");
+        builder.append("        public Object get(int index) {\n");
+        builder.append("            switch (index) {\n");
+        for (int p = 0; p < parameters.size(); p++) {
+            builder.append("                case ").append(p).append(": return p").append(p).append(";\n");
+        }
+        builder.append("                default: throw new IndexOutOfBoundsException(String.valueOf(index));\n");
+        builder.append("            }\n");
+        builder.append("        }\n");
+        builder.append("    }\n");
+    }
+
+    private static void brewWrite(StringBuilder builder, TypedParameter parameter, String value) {
+        String name = stringLiteral(parameter.name);
+        boolean primitive = !parameter.type.contains(".");
+        String indent = "            ";
+        if (!primitive) {
+            if (parameter.annotation.equals("Path")) {
+                builder.append(indent).append("if (").append(value).append(" == null) {\n");
+                builder.append(indent).append("    throw new IllegalArgumentException(")
+                        .append(stringLiteral("Path parameter \"" + parameter.name + "\" value must not be null."))
+                        .append(");\n");
+                builder.append(indent).append("}\n");
+            } else {
+                // Skip null values.
+                builder.append(indent).append("if (").append(value).append(" != null) {\n");
+                indent += "    ";
+            }
+        }
+
+        String longValue = null;
+        String booleanValue = null;
+        if (LONG_TYPES.contains(parameter.type)) {
+            longValue = primitive ? value : value + ".longValue()";
+        } else if (parameter.type.equals("boolean") || parameter.type.equals("java.lang.Boolean")) {
+            booleanValue = "(" + value + (primitive ? "" : ".booleanValue()") + " ? \"true\" : \"false\")";
+        }
+        String stringValue = primitive ? "String.valueOf(" + value + ")"
+                : parameter.type.equals("java.lang.String") ? value : value + ".toString()";
+        String encoded = String.valueOf(parameter.encoded);
+
+        builder.append(indent).append("builder.");
+        switch (parameter.annotation) {
+            case "Path":
+            case "Query":
+                String add = parameter.annotation.equals("Path") ? "addPathParam(" : "addQueryParam(";
+                if (longValue != null) {
+                    builder.append(add).append(name).append(", ").append(longValue).append(')');
+                } else if (booleanValue != null) {
+                    builder.append(add).append(name).append(", ").append(booleanValue).append(", true)");
+                } else {
+                    builder.append(add).append(name).append(", ").append(stringValue)
+                            .append(", ").append(encoded).append(')');
+                }
+                break;
+            case "Header":
+                builder.append("addHeader(").append(name).append(", ").append(stringValue).append(')');
+                break;
+            default:
+                builder.append("addFormField(").append(name).append(", ").append(stringValue)
+                        .append(", ").append(encoded).append(')');
+                break;
+        }
+        builder.append(";\n");
+        if (!primitive && !parameter.annotation.equals("Path")) {
+            builder.append("            }\n");
+        }
+    }
+
+    /**
+     * 每个参数都只有一个@Path/@Query/@Header/@Field且类型为基本类型、包装类型或String时返回参数描述，否则返回null
+     */
+    private List<TypedParameter> typedParameters(List<? extends VariableElement> parameters) {
+        if (parameters.isEmpty()) return null;
+        List<TypedParameter> result = new ArrayList<>();
+        for (VariableElement parameter : parameters) {
+            List<? extends AnnotationMirror> mirrors = parameter.getAnnotationMirrors();
+            if (mirrors.size() != 1) return null;
+            AnnotationMirror mirror = mirrors.get(0);
+            String annotation = ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+            if (!annotation.startsWith("retrofit.http.")) return null;
+            annotation = annotation.substring("retrofit.http.".length());
+            if (!annotation.equals("Path") && !annotation.equals("Query")
+                    && !annotation.equals("Header") && !annotation.equals("Field")) {
+                return null;
+            }
+            TypeMirror type = parameter.asType();
+            String typeName = type.toString();
+            if (!type.getKind().isPrimitive() && !BOXED_TYPES.contains(typeName)) return null;
+
+            TypedParameter typed = new TypedParameter();
+            typed.annotation = annotation;
+            typed.type = typeName;
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value
+                    : processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet()) {
+                String member = value.getKey().getSimpleName().toString();
+                if (member.equals("value")) {
+                    typed.name = (String) value.getValue().getValue();
+                } else if (member.equals("encoded")) {
+                    typed.encoded = (Boolean) value.getValue().getValue();
+                }
+            }
+            result.add(typed);
+        }
+        return result;
+    }
+
+    private static String stringLiteral(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                literal.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                literal.append(String.format("\\u%04x", (int) c));
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    private TypeMirror castType(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).asType();
+        }
+        return type;
+    }
+
+    private static String fieldName(ExecutableElement method, int index) {
+        return method.getSimpleName() + "$" + index;
+    }
+
+    private static final class TypedParameter {
+        String annotation;
+        String type;
+        String name;
+        boolean encoded;
+    }
+}
@@ -0,0 +1,149 @@
+package demo;
+
+import retrofit.RequestBuilder;
+import retrofit.Retrofit;
+import retrofit.ServiceMethod;
+import retrofit.SpunService;
+import retrofit.conveter.gson.GsonConverterFactory;
+import retrofit.core.HttpCall;
+import retrofit.engine.okhttp.OkHttpEngine;
+import retrofit.engine.okhttp.OkHttpRequestBuilder;
+import retrofit.http.Headers;
+import retrofit.http.HttpMethod;
+import retrofit.http.Path;
+import retrofit.http.Query;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * 比较服务接口三种实现的调用开销：编译期生成的实现类、运行时生成的{@link SpunService}子类和动态代理。
+ * 只创建HttpCall而不执行，测量的是从接口方法到ServiceMethod.invoke()再到引擎创建调用的耗时。
+ * 之后比较OkHttpEngine构建一个okhttp3.Request时，复用ServiceMethod上预先转换的base URL、请求头和Content-Type
+ * （engineAttachment）与每次重新解析（旧的OkHttpRequestBuilder构造方法）的耗时。
+ * 每项同时给出当前线程每次调用分配的字节数，需要HotSpot的com.sun.management.ThreadMXBean，不支持时显示n/a
+ * <p>
+ * 运行：{@code java demo.DispatchBenchmark [每轮调用次数]}
+ */
+public class DispatchBenchmark {
+    private static final int ROUNDS = 5;
+
+    public interface Service {
+        @Headers({"Accept: application/json", "X-Client: demo"})
+        @HttpMethod.GET("/users/{user}")
+        HttpCall<User> getUser(@Path("user") String user, @Query("page") int page);
+    }
+
+    // Private, so neither retrofit-compiler nor SpunService handles it and create() returns a proxy.
+    private interface ProxiedService {
+        @Headers({"Accept: application/json", "X-Client: demo"})
+        @HttpMethod.GET("/users/{user}")
+        HttpCall<User> getUser(@Path("user") String user, @Query("page") int page);
+    }
+
+    private abstract static class Target {
+        final String name;
+
+        Target(String name) {
+            this.name = name;
+        }
+
+        abstract Object call(int i) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl("http://localhost/")
+                .engine(new OkHttpEngine())
+                .addConverterFactory(GsonConverterFactory.create())
+                .build();
+        final Service generated = retrofit.create(Service.class);
+        final Service spun = SpunService.newInstance(retrofit, Service.class);
+        final ProxiedService proxied = retrofit.create(ProxiedService.class);
+        System.out.println("generated: " + generated.getClass().getName());
+        System.out.println("spun:      " + spun.getClass().getName());
+        System.out.println("proxy:     " + proxied.getClass().getName());
+
+        Target[] targets = {
+                new Target("generated") {
+                    @Override
+                    Object call(int i) {
+                        return generated.getUser("bob", i);
+                    }
+                },
+                new Target("spun") {
+                    @Override
+                    Object call(int i) {
+                        return spun.getUser("bob", i);
+                    }
+                },
+                new Target("proxy") {
+                    @Override
+                    Object call(int i) {
+                        return proxied.getUser("bob", i);
+                    }
+                }
+        };
+        final ServiceMethod<?, ?> serviceMethod =
+                retrofit.loadServiceMethod(Service.class.getMethod("getUser", String.class, int.class));
+        Target[] requests = {
+                new Target("cached natives") {
+                    @Override
+                    Object call(int i) throws IOException {
+                        return serviceMethod.httpEngine.toRequest(serviceMethod, new Object[]{"bob", i});
+                    }
+                },
+                new Target("parse per call") {
+                    @Override
+                    Object call(int i) throws IOException {
+                        // The constructor used before the engine attachment existed.
+                        RequestBuilder builder = new OkHttpRequestBuilder(serviceMethod.httpMethod,
+                                serviceMethod.baseUrl, serviceMethod.pathTemplate, serviceMethod.headers,
+                                serviceMethod.contentType, serviceMethod.hasBody, serviceMethod.isFormEncoded,
+                                serviceMethod.isMultipart);
+                        serviceMethod.requestWriter.write(builder, new Object[]{"bob", i});
+                        return builder.build();
+                    }
+                }
+        };
+        for (int round = 0; round < ROUNDS; round++) {
+            String prefix = round == 0 ? "warmup " : "round " + round + "  ";
+            System.out.println(prefix + "dispatch" + measureAll(targets, iterations));
+            System.out.println(prefix + "request " + measureAll(requests, iterations / 4));
+        }
+    }
+
+    private static String measureAll(Target[] targets, int iterations) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (Target target : targets) {
+            long allocatedBefore = allocatedBytes();
+            double nanos = measure(target, iterations);
+            long allocatedAfter = allocatedBytes();
+            line.append(String.format("  %s %.1f ns/op", target.name, nanos));
+            line.append(allocatedBefore < 0 ? " n/a B/op"
+                    : String.format(" %d B/op", (allocatedAfter - allocatedBefore) / iterations));
+        }
+        return line.toString();
+    }
+
+    private static double measure(Target target, int iterations) throws IOException {
+        int nulls = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            if (target.call(i) == null) nulls++;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (nulls != 0) throw new AssertionError();
+        return (double) elapsed / iterations;
+    }
+
+    /**
+     * 当前线程累计分配的字节数，不支持时返回-1
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,210 @@
+package demo;
+
+import retrofit.HttpHeaders;
+import retrofit.RequestBody;
+import retrofit.RequestBuilder;
+import retrofit.Retrofit;
+import retrofit.ServiceMethod;
+import retrofit.conveter.gson.GsonConverterFactory;
+import retrofit.core.BuiltInParameterHandlers;
+import retrofit.core.HttpCall;
+import retrofit.core.ParameterHandler;
+import retrofit.engine.okhttp.OkHttpEngine;
+import retrofit.http.HttpMethod;
+import retrofit.http.Query;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+/**
+ * 比较把参数写入RequestBuilder的两种方式在1、5、15个参数的方法上的耗时：ServiceMethod合并生成的
+ * {@link retrofit.core.RequestWriter}，和逐个调用ParameterHandler的循环（合并之前的做法）。
+ * 另外比较int[]查询参数逐个装箱后交给handler和按基本类型直接写入的耗时。
+ * 写入的是只计数的RequestBuilder，测量的只是参数分派和转换本身
+ * <p>
+ * 运行：{@code java demo.RequestWriterBenchmark [每轮调用次数]}
+ */
+public class RequestWriterBenchmark {
+    private static final int ROUNDS = 5;
+
+    // Private, so retrofit-compiler skips it.
+    private interface Service {
+        @HttpMethod.GET("/q")
+        HttpCall<User> one(@Query("a") String a);
+
+        @HttpMethod.GET("/q")
+        HttpCall<User> five(@Query("a") String a, @Query("b") int b, @Query("c") String c, @Query("d") int d,
+                            @Query("e") String e);
+
+        @HttpMethod.GET("/q")
+        HttpCall<User> fifteen(@Query("a") String a, @Query("b") int b, @Query("c") String c, @Query("d") int d,
+                               @Query("e") String e, @Query("f") int f, @Query("g") String g, @Query("h") int h,
+                               @Query("i") String i, @Query("j") int j, @Query("k") String k, @Query("l") int l,
+                               @Query("m") String m, @Query("n") int n, @Query("o") String o);
+    }
+
+    private abstract static class Target {
+        final String name;
+
+        Target(String name) {
+            this.name = name;
+        }
+
+        abstract void write(RequestBuilder builder) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl("http://localhost/")
+                .engine(new OkHttpEngine())
+                .addConverterFactory(GsonConverterFactory.create())
+                .build();
+        Object[] fifteen = new Object[15];
+        for (int p = 0; p < fifteen.length; p++) {
+            fifteen[p] = p % 2 == 0 ? "v" + p : (Object) p;
+        }
+        final int[] ids = new int[16];
+        for (int p = 0; p < ids.length; p++) {
+            ids[p] = 1000 + p;
+        }
+        final ParameterHandler<Object> boxedIds = new BuiltInParameterHandlers.PrimitiveQuery("id").array(int.class);
+        final ParameterHandler<Object> primitiveIds =
+                new BuiltInParameterHandlers.PrimitiveQuery("id").primitiveArray(int.class);
+
+        Target[][] groups = {
+                pair(retrofit, "one", new Object[]{"v0"}),
+                pair(retrofit, "five", new Object[]{"v0", 1, "v2", 3, "v4"}),
+                pair(retrofit, "fifteen", fifteen),
+                {
+                        new Target("int[16] boxed") {
+                            @Override
+                            void write(RequestBuilder builder) throws IOException {
+                                boxedIds.apply(builder, ids);
+                            }
+                        },
+                        new Target("int[16] primitive") {
+                            @Override
+                            void write(RequestBuilder builder) throws IOException {
+                                primitiveIds.apply(builder, ids);
+                            }
+                        }
+                }
+        };
+        for (int round = 0; round < ROUNDS; round++) {
+            System.out.println(round == 0 ? "warmup" : "round " + round);
+            for (Target[] group : groups) {
+                StringBuilder line = new StringBuilder();
+                for (Target target : group) {
+                    line.append(String.format("  %-18s %6.1f ns/op", target.name, measure(target, iterations)));
+                }
+                System.out.println(line);
+            }
+        }
+    }
+
+    private static Target[] pair(Retrofit retrofit, String methodName, final Object[] args) {
+        Method method = null;
+        for (Method candidate : Service.class.getDeclaredMethods()) {
+            if (candidate.getName().equals(methodName)) method = candidate;
+        }
+        final ServiceMethod<?, ?> serviceMethod = retrofit.loadServiceMethod(method);
+        String name = args.length + (args.length == 1 ? " param" : " params");
+        return new Target[]{
+                new Target(name + " fused") {
+                    @Override
+                    void write(RequestBuilder builder) throws IOException {
+                        serviceMethod.requestWriter.write(builder, args);
+                    }
+                },
+                new Target(name + " loop") {
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    void write(RequestBuilder builder) throws IOException {
+                        ParameterHandler<Object>[] handlers = (ParameterHandler<Object>[]) serviceMethod.parameterHandlers;
+                        if (args.length != handlers.length) throw new IllegalArgumentException();
+                        for (int p = 0; p < args.length; p++) {
+                            handlers[p].apply(builder, args[p]);
+                        }
+                    }
+                }
+        };
+    }
+
+    private static double measure(Target target, int iterations) throws IOException {
+        CountingRequestBuilder builder = new CountingRequestBuilder();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            target.write(builder);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (builder.count == 0) throw new AssertionError();
+        return (double) elapsed / iterations;
+    }
+
+    /**
+     * 只记录写入次数和长度，不构建请求
+     */
+    private static final class CountingRequestBuilder extends RequestBuilder {
+        long count;
+
+        CountingRequestBuilder() {
+            super("GET", null, "/q", null, null, false, false, false);
+        }
+
+        @Override
+        public void setRelativeUrl(Object relativeUrl) {
+            count++;
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            count++;
+        }
+
+        @Override
+        public void addPathParam(String name, String value, boolean encoded) {
+            count += value.length();
+        }
+
+        @Override
+        public void addPathParam(String name, long value) {
+            count += value;
+        }
+
+        @Override
+        public void addQueryParam(String name, String value, boolean encoded) {
+            count += value.length();
+        }
+
+        @Override
+        public void addQueryParam(String name, long value) {
+            count += value;
+        }
+
+        @Override
+        public void addFormField(String name, String value, boolean encoded) {
+            count++;
+        }
+
+        @Override
+        public void addPart(HttpHeaders headers, RequestBody body) {
+            count++;
+        }
+
+        @Override
+        public void addPart(RequestBody part) {
+            count++;
+        }
+
+        @Override
+        public void setBody(RequestBody body) {
+            count++;
+        }
+
+        @Override
+        public <T> T build() {
+            return null;
+        }
+    }
+}
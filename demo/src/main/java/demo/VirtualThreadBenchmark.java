@@ -0,0 +1,125 @@
+package demo;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import retrofit.Retrofit;
+import retrofit.conveter.gson.GsonConverterFactory;
+import retrofit.core.HttpCall;
+import retrofit.engine.okhttp.OkHttpEngine;
+import retrofit.http.HttpMethod;
+import retrofit.http.Path;
+import retrofit.util.VirtualThreads;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 比较大量并发的阻塞调用分别运行在平台线程和虚拟线程上的耗时和线程数。
+ * 每个调用是一次经OkHttpEngine发出的同步请求，本地服务端等待{@link #LATENCY_MILLIS}毫秒后响应；
+ * 平台线程模式每个调用占用一个平台线程，虚拟线程模式每个调用一个虚拟线程。
+ * 需要JDK 21+，更低版本的JDK上直接退出；客户端和服务端每个并发调用各占一个socket，需要足够的文件描述符
+ * <p>
+ * 运行：{@code java demo.VirtualThreadBenchmark [并发数，默认10000]}
+ */
+public class VirtualThreadBenchmark {
+    private static final int LATENCY_MILLIS = 100;
+    private static final int ROUNDS = 3;
+
+    public interface Service {
+        @HttpMethod.GET("/users/{user}")
+        HttpCall<User> getUser(@Path("user") String user);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (!VirtualThreads.isAvailable()) {
+            System.out.println("Skipped: virtual threads require JDK 21+, running on "
+                    + System.getProperty("java.version"));
+            return;
+        }
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), calls);
+        server.setExecutor(VirtualThreads.newVirtualThreadExecutor());
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(LATENCY_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] body = "{\"login\":\"bob\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.start();
+
+        try {
+            OkHttpClient client = new OkHttpClient.Builder()
+                    // Keep the connections of one round for the next.
+                    .connectionPool(new ConnectionPool(calls, 1, TimeUnit.MINUTES))
+                    .build();
+            Service service = new Retrofit.Builder()
+                    .baseUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/")
+                    .engine(new OkHttpEngine(client))
+                    .addConverterFactory(GsonConverterFactory.create())
+                    .build()
+                    .create(Service.class);
+
+            for (int round = 0; round < ROUNDS; round++) {
+                System.out.println(round == 0 ? "warmup" : "round " + round);
+                measure("platform", Executors.newCachedThreadPool(), service, calls);
+                measure("virtual", VirtualThreads.newVirtualThreadExecutor(), service, calls);
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void measure(String name, ExecutorService executor, final Service service, int calls)
+            throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        final CountDownLatch done = new CountDownLatch(calls);
+        final AtomicInteger failures = new AtomicInteger();
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            final String user = "u" + i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        service.getUser(user).execute();
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        executor.shutdown();
+        // ThreadMXBean only counts platform threads, carriers included.
+        System.out.println(String.format("  %-8s %d calls  %5d ms  %7.0f calls/s  peak platform threads %5d  failures %d",
+                name, calls, elapsedMillis, calls * 1000.0 / Math.max(1, elapsedMillis),
+                threads.getPeakThreadCount(), failures.get()));
+    }
+}
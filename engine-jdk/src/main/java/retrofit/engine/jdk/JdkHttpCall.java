@@ -0,0 +1,23 @@
+package retrofit.engine.jdk;
+
+import retrofit.ServiceMethod;
+import retrofit.core.HttpCall;
+
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+
+public class JdkHttpCall<T> extends HttpCall<T> {
+    // 发出请求后才会赋值，取消时据此中断交换和正在读取的响应体
+    volatile CompletableFuture<HttpResponse<InputStream>> future;
+    volatile InputStream responseStream;
+
+    public JdkHttpCall(ServiceMethod<T, Object> serviceMethod, Object[] args) {
+        super(serviceMethod, args);
+    }
+
+    @Override
+    public HttpCall<T> clone() {
+        return withArgumentsOf(new JdkHttpCall<T>((ServiceMethod<T, Object>) serviceMethod, args));
+    }
+}
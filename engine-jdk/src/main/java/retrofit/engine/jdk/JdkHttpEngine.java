@@ -0,0 +1,298 @@
+package retrofit.engine.jdk;
+
+import retrofit.HttpHeaders;
+import retrofit.HttpUrl;
+import retrofit.RequestBuilder;
+import retrofit.ServiceMethod;
+import retrofit.core.BuiltInParameterHandlers;
+import retrofit.core.HttpCall;
+import retrofit.core.HttpCallback;
+import retrofit.core.HttpEngine;
+import retrofit.core.ParameterHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * 基于{@link HttpClient}的引擎。请求全部通过{@code sendAsync}发出，同一主机的请求在HTTP/2下
+ * 复用一条连接；响应体以{@link HttpResponse.BodyHandlers#ofInputStream()}的形式直接交给转换器，
+ * 不在内存中缓冲
+ */
+public class JdkHttpEngine extends HttpEngine {
+    private final HttpClient httpClient;
+
+    public JdkHttpEngine() {
+        this(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build());
+    }
+
+    public JdkHttpEngine(HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    public HttpClient httpClient() {
+        return httpClient;
+    }
+
+    @Override
+    public HttpCall newHttpCall(ServiceMethod serviceMethod, Object[] args) {
+        HttpCall call = new JdkHttpCall<>(serviceMethod, args);
+        call.setHttpEngine(this);
+        return call;
+    }
+
+    @Override
+    public <T> void cancel(HttpCall httpCall) {
+        if (!(httpCall instanceof JdkHttpCall)) return;
+        JdkHttpCall<?> call = (JdkHttpCall<?>) httpCall;
+        CompletableFuture<?> future = call.future;
+        if (future != null) {
+            future.cancel(true);
+        }
+        InputStream responseStream = call.responseStream;
+        if (responseStream != null) {
+            // Closing the stream cancels the subscription of a body that is still being read.
+            try {
+                responseStream.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public <T> retrofit.HttpResponse execute(HttpCall<T> httpCall) throws IOException {
+        JdkHttpCall<T> call = (JdkHttpCall<T>) httpCall;
+        call.check();
+        if (call.isCanceled()) {
+            throw new IOException("Canceled");
+        }
+
+        CompletableFuture<HttpResponse<InputStream>> future = send(call);
+        HttpResponse<InputStream> rawResponse;
+        try {
+            rawResponse = future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + call.serviceMethod.httpMethod);
+        } catch (CancellationException e) {
+            throw new IOException("Canceled");
+        } catch (ExecutionException e) {
+            throw asIOException(e.getCause());
+        }
+        return parseResponse(call, rawResponse);
+    }
+
+    @Override
+    public <T> void execute(HttpCall<T> httpCall, final HttpCallback<T> callback) {
+        if (callback == null) throw new NullPointerException("callback == null");
+
+        final JdkHttpCall<T> call = (JdkHttpCall<T>) httpCall;
+        call.markExecuted();
+
+        Throwable failure = call.creationFailure;
+        if (failure == null && call.isCanceled()) {
+            failure = new IOException("Canceled");
+        }
+        CompletableFuture<HttpResponse<InputStream>> future = null;
+        if (failure == null) {
+            try {
+                future = send(call);
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+        if (failure != null) {
+            callFailure(call, callback, failure);
+            return;
+        }
+
+        future.whenComplete((rawResponse, t) -> {
+            if (t != null) {
+                callFailure(call, callback, t instanceof CompletionException ? t.getCause() : t);
+                return;
+            }
+            retrofit.HttpResponse<T, ?, ?> response;
+            try {
+                response = parseResponse(call, rawResponse);
+            } catch (Throwable e) {
+                callFailure(call, callback, e);
+                return;
+            }
+            callSuccess(call, callback, response);
+        });
+    }
+
+    private CompletableFuture<HttpResponse<InputStream>> send(JdkHttpCall<?> call) throws IOException {
+        HttpRequest request;
+        try {
+            request = (HttpRequest) toRequest(call);
+        } catch (IOException | RuntimeException | Error e) {
+            call.creationFailure = e;
+            throw e;
+        }
+        CompletableFuture<HttpResponse<InputStream>> future =
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+        call.future = future;
+        // cancel() may have run before the future was published.
+        if (call.isCanceled()) {
+            future.cancel(true);
+        }
+        return future;
+    }
+
+    private <T> retrofit.HttpResponse<T, HttpResponse<InputStream>, byte[]> parseResponse(
+            JdkHttpCall<T> call, HttpResponse<InputStream> rawResponse) throws IOException {
+        InputStream body = rawResponse.body();
+        call.responseStream = body;
+        HttpHeaders headers = toHttpHeaders(rawResponse.headers());
+        int code = rawResponse.statusCode();
+
+        boolean converted = false;
+        try {
+            if (call.isCanceled()) {
+                throw new IOException("Canceled");
+            }
+            if (code < 200 || code >= 300) {
+                // Buffer the entire body to avoid future I/O.
+                byte[] errorBody = body.readAllBytes();
+                return new retrofit.HttpResponse<>(rawResponse, errorBody, code, headers, null, null);
+            }
+            if (code == 204 || code == 205) {
+                return new retrofit.HttpResponse<>(rawResponse, null, code, headers, null, null);
+            }
+
+            T result = call.toResponseBody(body, code, headers);
+            if (call.isCanceled()) {
+                // Canceled while converting, drop the result.
+                throw new IOException("Canceled");
+            }
+            converted = true;
+            return new retrofit.HttpResponse<>(rawResponse, null, code, headers, result, null);
+        } finally {
+            // A converted body may be a @Streaming InputStream that the caller still reads.
+            if (!converted) {
+                body.close();
+            }
+        }
+    }
+
+    private static HttpHeaders toHttpHeaders(java.net.http.HttpHeaders headers) {
+        HttpHeaders.Builder builder = new HttpHeaders.Builder();
+        for (Map.Entry<String, List<String>> entry : headers.map().entrySet()) {
+            for (String value : entry.getValue()) {
+                builder.add(entry.getKey(), value);
+            }
+        }
+        return builder.build();
+    }
+
+    private static IOException asIOException(Throwable t) {
+        if (t instanceof IOException) return (IOException) t;
+        if (t instanceof CancellationException) return new IOException("Canceled");
+        if (t instanceof RuntimeException) throw (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        return new IOException(t);
+    }
+
+    private static <T> void callFailure(final HttpCall<T> call, final HttpCallback<T> callback,
+                                        Throwable failure) {
+        final Throwable t = failure instanceof CancellationException
+                ? new IOException("Canceled") : failure;
+        deliver(call, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callback.onFailure(call, t);
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    private static <T> void callSuccess(final HttpCall<T> call, final HttpCallback<T> callback,
+                                        final retrofit.HttpResponse<T, ?, ?> response) {
+        deliver(call, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callback.onResponse(call, response);
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * 配置了Retrofit.callbackExecutor时在其上回调，否则直接在HttpClient的线程上回调
+     */
+    private static void deliver(HttpCall<?> call, Runnable runnable) {
+        Executor callbackExecutor = call.serviceMethod.callbackExecutor;
+        if (callbackExecutor != null) {
+            callbackExecutor.execute(runnable);
+        } else {
+            runnable.run();
+        }
+    }
+
+    /**
+     * 在创建ServiceMethod时拒绝HttpClient不允许设置的静态请求头和@Header参数，
+     * 而不是等到每次请求时才由HttpClient抛出异常；@HeaderMap中的这些头在构建请求时被忽略
+     */
+    @Override
+    public Object createAttachment(ServiceMethod serviceMethod) {
+        HttpHeaders headers = serviceMethod.headers;
+        if (headers != null) {
+            for (int i = 0, size = headers.size(); i < size; i++) {
+                checkHeader(serviceMethod, headers.name(i));
+            }
+        }
+        for (ParameterHandler<?> handler : serviceMethod.parameterHandlers) {
+            if (handler instanceof BuiltInParameterHandlers.Header) {
+                checkHeader(serviceMethod, ((BuiltInParameterHandlers.Header<?>) handler).name());
+            }
+        }
+        return null;
+    }
+
+    private static void checkHeader(ServiceMethod serviceMethod, String name) {
+        if (JdkRequestBuilder.isRestrictedHeader(name)) {
+            throw new IllegalArgumentException("Header \"" + name + "\" is set by the JDK HttpClient and can't be sent"
+                    + "\n    for method "
+                    + serviceMethod.method.getDeclaringClass().getSimpleName()
+                    + "."
+                    + serviceMethod.method.getName());
+        }
+    }
+
+    @Override
+    protected RequestBuilder newRequestBuilder(ServiceMethod serviceMethod) {
+        return new JdkRequestBuilder(serviceMethod.httpMethod,
+                serviceMethod.baseUrl, serviceMethod.pathTemplate, serviceMethod.headers,
+                serviceMethod.contentType, serviceMethod.hasBody, serviceMethod.isFormEncoded,
+                serviceMethod.isMultipart);
+    }
+
+    @Override
+    protected RequestBuilder newRequestBuilder(ServiceMethod serviceMethod, HttpUrl baseUrl) {
+        return new JdkRequestBuilder(serviceMethod.httpMethod,
+                baseUrl, serviceMethod.pathTemplate, serviceMethod.headers,
+                serviceMethod.contentType, serviceMethod.hasBody, serviceMethod.isFormEncoded,
+                serviceMethod.isMultipart);
+    }
+}
@@ -0,0 +1,71 @@
+package retrofit.engine.jdk;
+
+import retrofit.HttpHeaders;
+import retrofit.HttpUrl;
+import retrofit.MediaType;
+import retrofit.core.PathTemplate;
+import retrofit.core.StandardRequestBuilder;
+
+import java.net.http.HttpRequest;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 把ParameterHandler写入的参数组装成{@link HttpRequest}。
+ * HttpClient自己管理的请求头（见{@link #isRestrictedHeader}）不会写入请求，否则HttpClient会抛出IllegalArgumentException
+ */
+public class JdkRequestBuilder extends StandardRequestBuilder {
+    private static final Set<String> RESTRICTED_HEADERS =
+            Set.of("connection", "content-length", "expect", "host", "upgrade");
+    // 与HttpClient相同，可以用这个系统属性放开部分受限的请求头
+    private static final Set<String> ALLOWED_RESTRICTED_HEADERS = allowedRestrictedHeaders();
+
+    public JdkRequestBuilder(String httpMethod, HttpUrl baseUrl, PathTemplate relativeUrl,
+                             HttpHeaders headers, MediaType contentType,
+                             boolean hasBody, boolean isFormEncoded, boolean isMultipart) {
+        super(httpMethod, baseUrl, relativeUrl, headers, contentType, hasBody, isFormEncoded, isMultipart);
+    }
+
+    @Override
+    public HttpRequest build() {
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(url().uri());
+        HttpHeaders headers = headers();
+        for (int i = 0, size = headers.size(); i < size; i++) {
+            String name = headers.name(i);
+            if (!isRestrictedHeader(name)) {
+                requestBuilder.header(name, headers.value(i));
+            }
+        }
+        MediaType contentType = contentType();
+        if (contentType != null) {
+            requestBuilder.header("Content-Type", contentType.toString());
+        }
+        byte[] content = content();
+        HttpRequest.BodyPublisher publisher = content != null
+                ? HttpRequest.BodyPublishers.ofByteArray(content)
+                : HttpRequest.BodyPublishers.noBody();
+        return requestBuilder
+                .method(method(), publisher)
+                .build();
+    }
+
+    /**
+     * HttpClient根据连接和请求体自己设置的请求头，不允许调用方设置
+     */
+    public static boolean isRestrictedHeader(String name) {
+        String lowerCase = name.toLowerCase(Locale.US);
+        return RESTRICTED_HEADERS.contains(lowerCase) && !ALLOWED_RESTRICTED_HEADERS.contains(lowerCase);
+    }
+
+    private static Set<String> allowedRestrictedHeaders() {
+        String value = System.getProperty("jdk.httpclient.allowRestrictedHeaders");
+        if (value == null || value.isBlank()) {
+            return Set.of();
+        }
+        String[] names = value.toLowerCase(Locale.US).split(",");
+        for (int i = 0; i < names.length; i++) {
+            names[i] = names[i].trim();
+        }
+        return Set.of(names);
+    }
+}
@@ -0,0 +1,198 @@
+package retrofit.engine.jdk;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.HttpMessage;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.util.AsciiString;
+import io.netty.util.ReferenceCountUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 进程内的h2c服务端：接受HTTP/1.1升级（HttpClient对http地址的做法）和直接以HTTP/2开始的连接。
+ * 每个请求记录到{@link #takeRequest()}，响应是{"method":..,"path":..,"stream":..}
+ */
+final class Http2TestServer implements Closeable {
+    private final EventLoopGroup group = new NioEventLoopGroup(1);
+    private final Channel serverChannel;
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final BlockingQueue<RecordedRequest> requests = new LinkedBlockingQueue<>();
+
+    Http2TestServer() throws InterruptedException {
+        serverChannel = new ServerBootstrap()
+                .group(group)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        connectionCount.incrementAndGet();
+                        HttpServerCodec sourceCodec = new HttpServerCodec();
+                        HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(sourceCodec,
+                                protocol -> AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)
+                                        ? new Http2ServerUpgradeCodec(Http2FrameCodecBuilder.forServer().build(), newMultiplexHandler())
+                                        : null,
+                                1 << 20);
+                        ch.pipeline().addLast(new CleartextHttp2ServerUpgradeHandler(sourceCodec, upgradeHandler,
+                                new ChannelInitializer<Channel>() {
+                                    @Override
+                                    protected void initChannel(Channel ch) {
+                                        ch.pipeline().addLast(Http2FrameCodecBuilder.forServer().build(), newMultiplexHandler());
+                                    }
+                                }));
+                        ch.pipeline().addLast(new Http1Rejecter());
+                    }
+                })
+                .bind("127.0.0.1", 0)
+                .sync()
+                .channel();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + ((InetSocketAddress) serverChannel.localAddress()).getPort() + "/";
+    }
+
+    /**
+     * 接受过的TCP连接数，HTTP/2下并发的请求应当复用同一条连接
+     */
+    int connectionCount() {
+        return connectionCount.get();
+    }
+
+    RecordedRequest takeRequest() throws InterruptedException {
+        return requests.take();
+    }
+
+    @Override
+    public void close() {
+        serverChannel.close().syncUninterruptibly();
+        group.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    private Http2MultiplexHandler newMultiplexHandler() {
+        return new Http2MultiplexHandler(new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) {
+                ch.pipeline().addLast(new StreamHandler());
+            }
+        });
+    }
+
+    static final class RecordedRequest {
+        final String method;
+        final String path;
+        // 名称为小写
+        final Map<String, String> headers;
+        final byte[] body;
+
+        RecordedRequest(String method, String path, Map<String, String> headers, byte[] body) {
+            this.method = method;
+            this.path = path;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    /**
+     * 一个HTTP/2流，收齐请求后回复
+     */
+    private final class StreamHandler extends ChannelInboundHandlerAdapter {
+        private Http2Headers requestHeaders;
+        private final ByteArrayOutputStream requestBody = new ByteArrayOutputStream();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            try {
+                boolean endStream;
+                if (msg instanceof Http2HeadersFrame) {
+                    Http2HeadersFrame frame = (Http2HeadersFrame) msg;
+                    requestHeaders = frame.headers();
+                    endStream = frame.isEndStream();
+                } else if (msg instanceof Http2DataFrame) {
+                    Http2DataFrame frame = (Http2DataFrame) msg;
+                    ByteBuf content = frame.content();
+                    byte[] bytes = new byte[content.readableBytes()];
+                    content.readBytes(bytes);
+                    requestBody.write(bytes, 0, bytes.length);
+                    endStream = frame.isEndStream();
+                } else {
+                    return;
+                }
+                if (endStream) {
+                    respond(ctx);
+                }
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+
+        private void respond(ChannelHandlerContext ctx) {
+            Map<String, String> headers = new TreeMap<>();
+            for (Map.Entry<CharSequence, CharSequence> entry : requestHeaders) {
+                headers.put(entry.getKey().toString().toLowerCase(), entry.getValue().toString());
+            }
+            String method = requestHeaders.method().toString();
+            String path = requestHeaders.path().toString();
+            requests.add(new RecordedRequest(method, path, headers, requestBody.toByteArray()));
+
+            byte[] content = ("{\"method\":\"" + method + "\",\"path\":\"" + path
+                    + "\",\"stream\":" + ((Http2StreamChannel) ctx.channel()).stream().id() + "}")
+                    .getBytes(StandardCharsets.UTF_8);
+            Http2Headers responseHeaders = new DefaultHttp2Headers()
+                    .status("200")
+                    .set("content-type", "application/json")
+                    .setInt("content-length", content.length);
+            ctx.write(new DefaultHttp2HeadersFrame(responseHeaders));
+            ctx.writeAndFlush(new DefaultHttp2DataFrame(Unpooled.wrappedBuffer(content), true));
+        }
+    }
+
+    /**
+     * 没有请求升级的HTTP/1.1请求，这里只测试HTTP/2
+     */
+    private static final class Http1Rejecter extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            boolean isRequest = msg instanceof HttpMessage;
+            ReferenceCountUtil.release(msg);
+            if (isRequest) {
+                ctx.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                        HttpResponseStatus.HTTP_VERSION_NOT_SUPPORTED));
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package retrofit.engine.jdk;
+
+import okio.ByteString;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit.MediaType;
+import retrofit.RequestBody;
+import retrofit.Retrofit;
+import retrofit.conveter.gson.GsonConverterFactory;
+import retrofit.core.HttpCall;
+import retrofit.core.HttpCallback;
+import retrofit.http.Body;
+import retrofit.http.Header;
+import retrofit.http.HeaderMap;
+import retrofit.http.Headers;
+import retrofit.http.HttpMethod;
+import retrofit.http.Path;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JdkHttpEngineHttp2Test {
+    private Http2TestServer server;
+    private Retrofit retrofit;
+
+    public static class Echo {
+        String method;
+        String path;
+        int stream;
+    }
+
+    public interface Service {
+        @HttpMethod.GET("echo/{name}")
+        HttpCall<Echo> get(@Path("name") String name);
+
+        @HttpMethod.POST("echo")
+        HttpCall<Echo> post(@Body RequestBody body);
+
+        @HttpMethod.GET("echo")
+        HttpCall<Echo> headers(@HeaderMap Map<String, String> headers);
+    }
+
+    public interface StaticRestrictedHeader {
+        @HttpMethod.GET("echo")
+        @Headers("Connection: close")
+        HttpCall<Echo> get();
+    }
+
+    public interface RestrictedHeaderParameter {
+        @HttpMethod.GET("echo")
+        HttpCall<Echo> get(@Header("Host") String host);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new Http2TestServer();
+        retrofit = new Retrofit.Builder()
+                .baseUrl(server.url())
+                .engine(new JdkHttpEngine())
+                .addConverterFactory(GsonConverterFactory.create())
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void getOverHttp2() throws Exception {
+        retrofit.HttpResponse<Echo, ?, ?> response = retrofit.create(Service.class).get("bob").execute();
+
+        assertEquals(200, response.code());
+        // Only HTTP/2 exchanges have a stream id, the server rejects HTTP/1.1 requests.
+        assertTrue(response.body().stream > 0);
+        assertEquals("GET", response.body().method);
+        assertEquals("/echo/bob", response.body().path);
+    }
+
+    @Test
+    public void postBodyOverHttp2() throws Exception {
+        RequestBody body = RequestBody.create(MediaType.parse("text/plain"), ByteString.encodeUtf8("hello"));
+        retrofit.HttpResponse<Echo, ?, ?> response = retrofit.create(Service.class).post(body).execute();
+
+        assertTrue(response.body().stream > 0);
+        assertEquals("POST", response.body().method);
+        Http2TestServer.RecordedRequest request = server.takeRequest();
+        assertEquals("hello", new String(request.body, StandardCharsets.UTF_8));
+        assertTrue(request.headers.get("content-type").startsWith("text/plain"));
+    }
+
+    @Test
+    public void concurrentCallsShareOneConnection() throws Exception {
+        Service service = retrofit.create(Service.class);
+        // The first request upgrades the connection, the rest are multiplexed on it.
+        service.get("first").execute();
+
+        int calls = 20;
+        final CountDownLatch latch = new CountDownLatch(calls);
+        final List<Object> results = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < calls; i++) {
+            service.get("n" + i).enqueue(new HttpCallback<Echo>() {
+                @Override
+                public void onResponse(HttpCall<Echo> call, retrofit.HttpResponse<Echo, ?, ?> response) {
+                    results.add(response.body().stream);
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailure(HttpCall<Echo> call, Throwable t) {
+                    results.add(t);
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        for (Object result : results) {
+            assertTrue(String.valueOf(result), result instanceof Integer);
+        }
+        assertEquals(1, server.connectionCount());
+    }
+
+    @Test
+    public void restrictedHeaderMapEntriesAreDropped() throws Exception {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Host", "example.com");
+        headers.put("Expect", "100-continue");
+        headers.put("X-Trace", "abc");
+        retrofit.HttpResponse<Echo, ?, ?> response = retrofit.create(Service.class).headers(headers).execute();
+
+        assertEquals(200, response.code());
+        Http2TestServer.RecordedRequest request = server.takeRequest();
+        assertEquals("abc", request.headers.get("x-trace"));
+        assertFalse(request.headers.containsKey("expect"));
+        assertTrue(request.headers.get(":authority").startsWith("127.0.0.1:"));
+    }
+
+    @Test
+    public void restrictedStaticHeaderFailsAtMethodCreation() throws Exception {
+        try {
+            retrofit.create(StaticRestrictedHeader.class).get();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Header \"Connection\" is set by the JDK HttpClient"));
+            assertTrue(e.getMessage(), e.getMessage().endsWith("for method StaticRestrictedHeader.get"));
+        }
+    }
+
+    @Test
+    public void restrictedHeaderParameterFailsAtMethodCreation() throws Exception {
+        try {
+            retrofit.create(RestrictedHeaderParameter.class).get("example.com");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Header \"Host\" is set by the JDK HttpClient"));
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package retrofit.engine.loopback;
+
+import java.io.IOException;
+
+/**
+ * 进程内的服务端处理器，注册到{@link LoopbackHttpEngine}后按HTTP方法和路径分发
+ */
+public interface LoopbackHandler {
+    LoopbackResponse handle(LoopbackRequest request) throws IOException;
+}
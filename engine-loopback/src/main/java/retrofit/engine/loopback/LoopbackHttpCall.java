@@ -0,0 +1,16 @@
+package retrofit.engine.loopback;
+
+import retrofit.ServiceMethod;
+import retrofit.core.HttpCall;
+
+public class LoopbackHttpCall<T> extends HttpCall<T> {
+
+    public LoopbackHttpCall(ServiceMethod<T, Object> serviceMethod, Object[] args) {
+        super(serviceMethod, args);
+    }
+
+    @Override
+    public HttpCall<T> clone() {
+        return withArgumentsOf(new LoopbackHttpCall<T>((ServiceMethod<T, Object>) serviceMethod, args));
+    }
+}
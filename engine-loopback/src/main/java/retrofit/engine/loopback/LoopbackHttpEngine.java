@@ -0,0 +1,256 @@
+package retrofit.engine.loopback;
+
+import retrofit.HttpResponse;
+import retrofit.HttpUrl;
+import retrofit.RequestBuilder;
+import retrofit.ServiceMethod;
+import retrofit.core.HttpCall;
+import retrofit.core.HttpCallback;
+import retrofit.core.HttpEngine;
+import retrofit.util.VirtualThreads;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * 进程内的引擎：请求仍然经过ServiceMethod、ParameterHandler和转换器的完整流程，
+ * 但不经过socket、TLS和HTTP编解码，直接按HTTP方法和路径分发给注册的{@link LoopbackHandler}。
+ * 没有匹配的处理器时返回404
+ */
+public class LoopbackHttpEngine extends HttpEngine {
+    // 不含占位符的路径，键为"METHOD encodedPath"
+    private final ConcurrentMap<String, LoopbackHandler> literalRoutes = new ConcurrentHashMap<>();
+    private final List<Route> templateRoutes = new CopyOnWriteArrayList<>();
+    private final Executor executor;
+
+    public LoopbackHttpEngine() {
+        this(VirtualThreads.shared());
+    }
+
+    /**
+     * @param executor enqueue时执行处理器的线程
+     */
+    public LoopbackHttpEngine(Executor executor) {
+        if (executor == null) throw new NullPointerException("executor == null");
+        this.executor = executor;
+    }
+
+    /**
+     * 注册处理器。路径以/开头，可以包含形如{name}的整段占位符，匹配到的值通过
+     * {@link LoopbackRequest#pathParam(String)}获取；不含占位符的路径按编码后的形式精确匹配
+     */
+    public LoopbackHttpEngine register(String method, String path, LoopbackHandler handler) {
+        if (method == null) throw new NullPointerException("method == null");
+        if (path == null) throw new NullPointerException("path == null");
+        if (handler == null) throw new NullPointerException("handler == null");
+        if (!path.startsWith("/")) {
+            throw new IllegalArgumentException("path must start with /: " + path);
+        }
+        if (path.indexOf('{') == -1) {
+            literalRoutes.put(method + ' ' + path, handler);
+        } else {
+            templateRoutes.add(new Route(method, path, handler));
+        }
+        return this;
+    }
+
+    @Override
+    public HttpCall newHttpCall(ServiceMethod serviceMethod, Object[] args) {
+        HttpCall call = new LoopbackHttpCall<>(serviceMethod, args);
+        call.setHttpEngine(this);
+        return call;
+    }
+
+    /**
+     * 处理器运行期间无法中断，取消在处理器返回后生效
+     */
+    @Override
+    public <T> void cancel(HttpCall httpCall) {
+    }
+
+    @Override
+    public <T> HttpResponse execute(HttpCall<T> httpCall) throws IOException {
+        httpCall.check();
+        return dispatch(httpCall);
+    }
+
+    @Override
+    public <T> void execute(final HttpCall<T> httpCall, final HttpCallback<T> callback) {
+        if (callback == null) throw new NullPointerException("callback == null");
+        httpCall.markExecuted();
+
+        Throwable failure = httpCall.creationFailure;
+        if (failure != null) {
+            callFailure(httpCall, callback, failure);
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                HttpResponse<T, ?, ?> response;
+                try {
+                    response = dispatch(httpCall);
+                } catch (Throwable e) {
+                    callFailure(httpCall, callback, e);
+                    return;
+                }
+                callSuccess(httpCall, callback, response);
+            }
+        });
+    }
+
+    private <T> HttpResponse<T, LoopbackResponse, byte[]> dispatch(HttpCall<T> call) throws IOException {
+        if (call.isCanceled()) {
+            throw new IOException("Canceled");
+        }
+        LoopbackRequest request;
+        try {
+            request = (LoopbackRequest) toRequest(call);
+        } catch (IOException | RuntimeException | Error e) {
+            call.creationFailure = e;
+            throw e;
+        }
+
+        LoopbackHandler handler = route(request);
+        LoopbackResponse rawResponse = handler != null
+                ? handler.handle(request)
+                : LoopbackResponse.status(404, "Not Found");
+        if (rawResponse == null) {
+            throw new IllegalStateException("Handler for " + request.method() + " "
+                    + request.url().encodedPath() + " returned null");
+        }
+        return parseResponse(call, rawResponse);
+    }
+
+    private LoopbackHandler route(LoopbackRequest request) {
+        LoopbackHandler handler = literalRoutes.get(request.method() + ' ' + request.url().encodedPath());
+        if (handler != null) return handler;
+        for (Route route : templateRoutes) {
+            Map<String, String> pathParams = route.match(request.method(), request.url().pathSegments());
+            if (pathParams != null) {
+                request.pathParams(pathParams);
+                return route.handler;
+            }
+        }
+        return null;
+    }
+
+    private <T> HttpResponse<T, LoopbackResponse, byte[]> parseResponse(
+            HttpCall<T> call, LoopbackResponse rawResponse) throws IOException {
+        int code = rawResponse.code();
+        if (code < 200 || code >= 300) {
+            return new HttpResponse<>(rawResponse, rawResponse.body(), code, rawResponse.headers(),
+                    null, rawResponse.message());
+        }
+        if (code == 204 || code == 205) {
+            return new HttpResponse<>(rawResponse, null, code, rawResponse.headers(),
+                    null, rawResponse.message());
+        }
+
+        T body = call.toResponseBody(new ByteArrayInputStream(rawResponse.body()), code, rawResponse.headers());
+        if (call.isCanceled()) {
+            // Canceled while handling or converting, drop the result.
+            throw new IOException("Canceled");
+        }
+        return new HttpResponse<>(rawResponse, null, code, rawResponse.headers(),
+                body, rawResponse.message());
+    }
+
+    private static <T> void callFailure(final HttpCall<T> call, final HttpCallback<T> callback,
+                                        final Throwable t) {
+        deliver(call, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callback.onFailure(call, t);
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    private static <T> void callSuccess(final HttpCall<T> call, final HttpCallback<T> callback,
+                                        final HttpResponse<T, ?, ?> response) {
+        deliver(call, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callback.onResponse(call, response);
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * 配置了Retrofit.callbackExecutor时在其上回调，否则直接在执行处理器的线程上回调
+     */
+    private static void deliver(HttpCall<?> call, Runnable runnable) {
+        Executor callbackExecutor = call.serviceMethod.callbackExecutor;
+        if (callbackExecutor != null) {
+            callbackExecutor.execute(runnable);
+        } else {
+            runnable.run();
+        }
+    }
+
+    @Override
+    protected RequestBuilder newRequestBuilder(ServiceMethod serviceMethod) {
+        return new LoopbackRequestBuilder(serviceMethod.httpMethod,
+                serviceMethod.baseUrl, serviceMethod.pathTemplate, serviceMethod.headers,
+                serviceMethod.contentType, serviceMethod.hasBody, serviceMethod.isFormEncoded,
+                serviceMethod.isMultipart);
+    }
+
+    @Override
+    protected RequestBuilder newRequestBuilder(ServiceMethod serviceMethod, HttpUrl baseUrl) {
+        return new LoopbackRequestBuilder(serviceMethod.httpMethod,
+                baseUrl, serviceMethod.pathTemplate, serviceMethod.headers,
+                serviceMethod.contentType, serviceMethod.hasBody, serviceMethod.isFormEncoded,
+                serviceMethod.isMultipart);
+    }
+
+    /**
+     * 含有{name}占位符的路径，按解码后的路径段逐段匹配
+     */
+    static final class Route {
+        final String method;
+        final String[] segments;
+        final LoopbackHandler handler;
+
+        Route(String method, String path, LoopbackHandler handler) {
+            this.method = method;
+            this.segments = path.substring(1).split("/", -1);
+            this.handler = handler;
+        }
+
+        Map<String, String> match(String method, List<String> pathSegments) {
+            if (!this.method.equals(method) || pathSegments.size() != segments.length) {
+                return null;
+            }
+            Map<String, String> pathParams = null;
+            for (int i = 0; i < segments.length; i++) {
+                String segment = segments[i];
+                String value = pathSegments.get(i);
+                if (segment.length() > 2 && segment.charAt(0) == '{'
+                        && segment.charAt(segment.length() - 1) == '}') {
+                    if (pathParams == null) pathParams = new LinkedHashMap<>();
+                    pathParams.put(segment.substring(1, segment.length() - 1), value);
+                } else if (!segment.equals(value)) {
+                    return null;
+                }
+            }
+            return pathParams != null ? pathParams : Collections.<String, String>emptyMap();
+        }
+    }
+}
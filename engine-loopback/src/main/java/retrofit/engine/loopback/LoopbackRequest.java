@@ -0,0 +1,63 @@
+package retrofit.engine.loopback;
+
+import retrofit.HttpHeaders;
+import retrofit.HttpUrl;
+import retrofit.MediaType;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 由{@link LoopbackRequestBuilder}组装的请求，请求体是编码后的字节，与发送到网络上的内容一致
+ */
+public final class LoopbackRequest {
+    private final String method;
+    private final HttpUrl url;
+    private final HttpHeaders headers;
+    private final MediaType contentType;
+    private final byte[] body;
+    private Map<String, String> pathParams = Collections.emptyMap();
+
+    public LoopbackRequest(String method, HttpUrl url, HttpHeaders headers, MediaType contentType,
+                           byte[] body) {
+        this.method = method;
+        this.url = url;
+        this.headers = headers;
+        this.contentType = contentType;
+        this.body = body;
+    }
+
+    public String method() {
+        return method;
+    }
+
+    public HttpUrl url() {
+        return url;
+    }
+
+    public HttpHeaders headers() {
+        return headers;
+    }
+
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    /**
+     * 没有请求体时返回null
+     */
+    public byte[] body() {
+        return body;
+    }
+
+    /**
+     * 注册路径中{name}占位符匹配到的值（已解码）
+     */
+    public String pathParam(String name) {
+        return pathParams.get(name);
+    }
+
+    void pathParams(Map<String, String> pathParams) {
+        this.pathParams = pathParams;
+    }
+}
@@ -0,0 +1,24 @@
+package retrofit.engine.loopback;
+
+import retrofit.HttpHeaders;
+import retrofit.HttpUrl;
+import retrofit.MediaType;
+import retrofit.core.PathTemplate;
+import retrofit.core.StandardRequestBuilder;
+
+/**
+ * 把ParameterHandler写入的参数组装成{@link LoopbackRequest}
+ */
+public class LoopbackRequestBuilder extends StandardRequestBuilder {
+
+    public LoopbackRequestBuilder(String httpMethod, HttpUrl baseUrl, PathTemplate relativeUrl,
+                                  HttpHeaders headers, MediaType contentType,
+                                  boolean hasBody, boolean isFormEncoded, boolean isMultipart) {
+        super(httpMethod, baseUrl, relativeUrl, headers, contentType, hasBody, isFormEncoded, isMultipart);
+    }
+
+    @Override
+    public LoopbackRequest build() {
+        return new LoopbackRequest(method(), url(), headers(), contentType(), content());
+    }
+}
@@ -0,0 +1,55 @@
+package retrofit.engine.loopback;
+
+import retrofit.HttpHeaders;
+import retrofit.MediaType;
+
+import java.nio.charset.Charset;
+
+/**
+ * {@link LoopbackHandler}返回的响应，body交给Retrofit配置的转换器处理
+ */
+public final class LoopbackResponse {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int code;
+    private final String message;
+    private final HttpHeaders headers;
+    private final byte[] body;
+
+    public LoopbackResponse(int code, String message, HttpHeaders headers, byte[] body) {
+        this.code = code;
+        this.message = message;
+        this.headers = headers != null ? headers : HttpHeaders.of();
+        this.body = body != null ? body : EMPTY;
+    }
+
+    public static LoopbackResponse ok(MediaType contentType, byte[] body) {
+        return new LoopbackResponse(200, "OK",
+                HttpHeaders.of("Content-Type", contentType.toString()), body);
+    }
+
+    public static LoopbackResponse ok(MediaType contentType, String body) {
+        return ok(contentType, body.getBytes(UTF_8));
+    }
+
+    public static LoopbackResponse status(int code, String message) {
+        return new LoopbackResponse(code, message, null, null);
+    }
+
+    public int code() {
+        return code;
+    }
+
+    public String message() {
+        return message;
+    }
+
+    public HttpHeaders headers() {
+        return headers;
+    }
+
+    public byte[] body() {
+        return body;
+    }
+}
@@ -0,0 +1,18 @@
+package retrofit.engine.netty;
+
+import retrofit.ServiceMethod;
+import retrofit.core.HttpCall;
+
+public class NettyHttpCall<T> extends HttpCall<T> {
+    // 发出请求后才会赋值，取消时据此结束promise并关闭正在使用的连接
+    volatile NettyHttpEngine.Exchange exchange;
+
+    public NettyHttpCall(ServiceMethod<T, Object> serviceMethod, Object[] args) {
+        super(serviceMethod, args);
+    }
+
+    @Override
+    public HttpCall<T> clone() {
+        return withArgumentsOf(new NettyHttpCall<T>((ServiceMethod<T, Object>) serviceMethod, args));
+    }
+}
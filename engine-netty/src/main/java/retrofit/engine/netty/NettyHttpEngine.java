@@ -0,0 +1,590 @@
+package retrofit.engine.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.channel.pool.AbstractChannelPoolMap;
+import io.netty.channel.pool.ChannelHealthChecker;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.channel.pool.FixedChannelPool;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.timeout.ReadTimeoutException;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.Promise;
+import retrofit.HttpHeaders;
+import retrofit.HttpResponse;
+import retrofit.HttpUrl;
+import retrofit.RequestBuilder;
+import retrofit.ServiceMethod;
+import retrofit.core.HttpCall;
+import retrofit.core.HttpCallback;
+import retrofit.core.HttpEngine;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于Netty的非阻塞引擎：每个CPU核心一个事件循环，每个主机一个{@link FixedChannelPool}，
+ * 收发都使用池化的直接缓冲区。响应体聚合后以{@link ByteBufInputStream}的形式直接交给转换器，
+ * 不再复制成byte[]。
+ * 建立连接、从连接池取得连接和等待响应数据都有超时，后端没有响应时调用会失败而不是一直挂起。
+ * 异步调用的响应转换和回调不在事件循环上执行，而是交给Retrofit.callbackExecutor，
+ * 没有配置时交给引擎自己的线程池，避免一次转换拖慢同一事件循环上的其它连接
+ */
+public class NettyHttpEngine extends HttpEngine {
+    static final AttributeKey<Exchange> EXCHANGE = AttributeKey.valueOf("retrofit.exchange");
+
+    private static final String READ_TIMEOUT_HANDLER = "retrofit.readTimeout";
+
+    private final EventLoopGroup group;
+    private final PooledByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+    private final AbstractChannelPoolMap<Route, FixedChannelPool> pools;
+    private final ResponseHandler responseHandler = new ResponseHandler();
+    private final SslContext sslContext;
+    private final int maxContentLength;
+    private final long readTimeoutMillis;
+    // 没有callbackExecutor时转换响应和回调的线程池
+    private final ExecutorService executor;
+
+    public NettyHttpEngine() {
+        this(new Builder());
+    }
+
+    public NettyHttpEngine(int eventLoops, int maxConnectionsPerHost, int maxContentLength) {
+        this(new Builder()
+                .eventLoops(eventLoops)
+                .maxConnectionsPerHost(maxConnectionsPerHost)
+                .maxContentLength(maxContentLength));
+    }
+
+    private NettyHttpEngine(final Builder builder) {
+        this.group = new NioEventLoopGroup(builder.eventLoops);
+        this.maxContentLength = builder.maxContentLength;
+        this.readTimeoutMillis = builder.readTimeoutMillis;
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Retrofit-Netty-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            this.sslContext = SslContextBuilder.forClient().build();
+        } catch (SSLException e) {
+            throw new IllegalStateException("Unable to create SslContext", e);
+        }
+        final Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.ALLOCATOR, alloc)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, builder.connectTimeoutMillis);
+        this.pools = new AbstractChannelPoolMap<Route, FixedChannelPool>() {
+            @Override
+            protected FixedChannelPool newPool(final Route route) {
+                return new FixedChannelPool(bootstrap.clone().remoteAddress(route.host, route.port),
+                        new AbstractChannelPoolHandler() {
+                            @Override
+                            public void channelCreated(Channel ch) {
+                                initChannel(ch, route);
+                            }
+                        }, ChannelHealthChecker.ACTIVE,
+                        // FixedChannelPool spells "no timeout" as a null action and -1.
+                        builder.acquireTimeoutMillis > 0 ? FixedChannelPool.AcquireTimeoutAction.FAIL : null,
+                        builder.acquireTimeoutMillis > 0 ? builder.acquireTimeoutMillis : -1,
+                        builder.maxConnectionsPerHost, Integer.MAX_VALUE);
+            }
+        };
+    }
+
+    private void initChannel(Channel ch, Route route) {
+        ChannelPipeline pipeline = ch.pipeline();
+        if (route.https) {
+            pipeline.addLast(sslContext.newHandler(ch.alloc(), route.host, route.port));
+        }
+        pipeline.addLast(new HttpClientCodec());
+        pipeline.addLast(new HttpObjectAggregator(maxContentLength));
+        pipeline.addLast(responseHandler);
+    }
+
+    public EventLoopGroup eventLoopGroup() {
+        return group;
+    }
+
+    /**
+     * 关闭所有连接池并停止事件循环
+     */
+    public void shutdown() {
+        pools.close();
+        group.shutdownGracefully();
+        executor.shutdown();
+    }
+
+    @Override
+    public HttpCall newHttpCall(ServiceMethod serviceMethod, Object[] args) {
+        HttpCall call = new NettyHttpCall<>(serviceMethod, args);
+        call.setHttpEngine(this);
+        return call;
+    }
+
+    @Override
+    public <T> void cancel(HttpCall httpCall) {
+        if (!(httpCall instanceof NettyHttpCall)) return;
+        Exchange exchange = ((NettyHttpCall<?>) httpCall).exchange;
+        if (exchange == null) return;
+        exchange.promise.cancel(false);
+        Channel channel = exchange.channel;
+        // 只有仍在等待这次交换的连接才需要关闭，响应已经到达时连接已归还给连接池
+        if (channel != null && channel.attr(EXCHANGE).compareAndSet(exchange, null)) {
+            exchange.release(channel, true);
+        }
+    }
+
+    @Override
+    public <T> HttpResponse execute(HttpCall<T> httpCall) throws IOException {
+        NettyHttpCall<T> call = (NettyHttpCall<T>) httpCall;
+        call.check();
+        if (call.isCanceled()) {
+            throw new IOException("Canceled");
+        }
+
+        Promise<FullHttpResponse> promise = send(call);
+        try {
+            // Acquiring, connecting and every wait for response data time out, so the promise completes.
+            promise.await();
+        } catch (InterruptedException e) {
+            cancel(call);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + call.serviceMethod.httpMethod);
+        }
+        if (promise.isCancelled()) {
+            throw new IOException("Canceled");
+        }
+        if (!promise.isSuccess()) {
+            throw asIOException(promise.cause());
+        }
+        return parseResponse(call, promise.getNow());
+    }
+
+    @Override
+    public <T> void execute(HttpCall<T> httpCall, final HttpCallback<T> callback) {
+        if (callback == null) throw new NullPointerException("callback == null");
+
+        final NettyHttpCall<T> call = (NettyHttpCall<T>) httpCall;
+        call.markExecuted();
+
+        Throwable failure = call.creationFailure;
+        if (failure == null && call.isCanceled()) {
+            failure = new IOException("Canceled");
+        }
+        Promise<FullHttpResponse> promise = null;
+        if (failure == null) {
+            try {
+                promise = send(call);
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+        if (failure != null) {
+            callFailure(call, callback, failure);
+            return;
+        }
+
+        promise.addListener(new FutureListener<FullHttpResponse>() {
+            @Override
+            public void operationComplete(final Future<FullHttpResponse> future) {
+                if (future.isCancelled()) {
+                    callFailure(call, callback, new IOException("Canceled"));
+                    return;
+                }
+                if (!future.isSuccess()) {
+                    callFailure(call, callback, future.cause());
+                    return;
+                }
+                // Conversion can be slow, keep it off the event loop.
+                execute(call, new Runnable() {
+                    @Override
+                    public void run() {
+                        HttpResponse<T, ?, ?> response;
+                        try {
+                            response = parseResponse(call, future.getNow());
+                        } catch (Throwable e) {
+                            notifyFailure(call, callback, e);
+                            return;
+                        }
+                        notifyResponse(call, callback, response);
+                    }
+                });
+            }
+        });
+    }
+
+    private Promise<FullHttpResponse> send(NettyHttpCall<?> call) throws IOException {
+        final NettyRequest nettyRequest;
+        try {
+            nettyRequest = (NettyRequest) toRequest(call);
+        } catch (IOException | RuntimeException | Error e) {
+            call.creationFailure = e;
+            throw e;
+        }
+        final FullHttpRequest request = nettyRequest.request;
+        final Promise<FullHttpResponse> promise = group.next().newPromise();
+        final ChannelPool pool = pools.get(Route.of(nettyRequest.url));
+        final Exchange exchange = new Exchange(promise, pool);
+        call.exchange = exchange;
+        // cancel() may have run before the exchange was published.
+        if (call.isCanceled()) {
+            promise.cancel(false);
+            request.release();
+            return promise;
+        }
+
+        pool.acquire().addListener(new FutureListener<Channel>() {
+            @Override
+            public void operationComplete(Future<Channel> future) {
+                if (!future.isSuccess()) {
+                    request.release();
+                    Throwable cause = future.cause();
+                    if (cause instanceof TimeoutException) {
+                        cause = new InterruptedIOException("Timed out waiting for a connection to "
+                                + nettyRequest.url.host());
+                    }
+                    promise.tryFailure(cause);
+                    return;
+                }
+                final Channel channel = future.getNow();
+                channel.attr(EXCHANGE).set(exchange);
+                exchange.channel = channel;
+                if (promise.isDone()) {
+                    // Canceled while acquiring, hand the untouched connection back.
+                    if (channel.attr(EXCHANGE).compareAndSet(exchange, null)) {
+                        exchange.release(channel, false);
+                    }
+                    request.release();
+                    return;
+                }
+                // Fails the exchange when the response doesn't arrive in time, see ResponseHandler.
+                channel.pipeline().addFirst(READ_TIMEOUT_HANDLER,
+                        new ReadTimeoutHandler(readTimeoutMillis, TimeUnit.MILLISECONDS));
+                channel.writeAndFlush(request).addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) {
+                        if (!future.isSuccess()
+                                && channel.attr(EXCHANGE).compareAndSet(exchange, null)) {
+                            exchange.release(channel, true);
+                            promise.tryFailure(future.cause());
+                        }
+                    }
+                });
+            }
+        });
+        return promise;
+    }
+
+    private <T> HttpResponse<T, FullHttpResponse, byte[]> parseResponse(
+            NettyHttpCall<T> call, FullHttpResponse rawResponse) throws IOException {
+        try {
+            if (call.isCanceled()) {
+                throw new IOException("Canceled");
+            }
+            HttpHeaders headers = toHttpHeaders(rawResponse.headers());
+            int code = rawResponse.status().code();
+            if (code < 200 || code >= 300) {
+                byte[] errorBody = ByteBufUtil.getBytes(rawResponse.content());
+                return new HttpResponse<>(rawResponse, errorBody, code, headers, null, null);
+            }
+            if (code == 204 || code == 205) {
+                return new HttpResponse<>(rawResponse, null, code, headers, null, null);
+            }
+
+            // The stream holds its own reference, so a @Streaming body outlives rawResponse.
+            InputStream body = new ByteBufInputStream(rawResponse.content().retain(), true);
+            boolean streaming = false;
+            try {
+                T result = call.toResponseBody(body, code, headers);
+                if (call.isCanceled()) {
+                    // Canceled while converting, drop the result.
+                    throw new IOException("Canceled");
+                }
+                streaming = result == body;
+                return new HttpResponse<>(rawResponse, null, code, headers, result, null);
+            } finally {
+                if (!streaming) {
+                    body.close();
+                }
+            }
+        } finally {
+            rawResponse.release();
+        }
+    }
+
+    private static HttpHeaders toHttpHeaders(io.netty.handler.codec.http.HttpHeaders headers) {
+        HttpHeaders.Builder builder = new HttpHeaders.Builder();
+        for (Map.Entry<String, String> entry : headers) {
+            builder.add(entry.getKey(), entry.getValue());
+        }
+        return builder.build();
+    }
+
+    private static IOException asIOException(Throwable t) {
+        if (t instanceof IOException) return (IOException) t;
+        if (t instanceof ReadTimeoutException) return new SocketTimeoutException("Read timed out");
+        if (t instanceof CancellationException) return new IOException("Canceled");
+        if (t instanceof RuntimeException) throw (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        return new IOException(t);
+    }
+
+    private <T> void callFailure(final HttpCall<T> call, final HttpCallback<T> callback,
+                                 final Throwable t) {
+        execute(call, new Runnable() {
+            @Override
+            public void run() {
+                notifyFailure(call, callback, t);
+            }
+        });
+    }
+
+    private static <T> void notifyFailure(HttpCall<T> call, HttpCallback<T> callback, Throwable t) {
+        try {
+            callback.onFailure(call, t);
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static <T> void notifyResponse(HttpCall<T> call, HttpCallback<T> callback,
+                                           HttpResponse<T, ?, ?> response) {
+        try {
+            callback.onResponse(call, response);
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 在Retrofit.callbackExecutor上执行，没有配置时使用引擎自己的线程池，不占用事件循环
+     */
+    private void execute(HttpCall<?> call, Runnable runnable) {
+        Executor callbackExecutor = call.serviceMethod.callbackExecutor;
+        (callbackExecutor != null ? callbackExecutor : executor).execute(runnable);
+    }
+
+    @Override
+    protected RequestBuilder newRequestBuilder(ServiceMethod serviceMethod) {
+        return new NettyRequestBuilder(alloc, serviceMethod.httpMethod,
+                serviceMethod.baseUrl, serviceMethod.pathTemplate, serviceMethod.headers,
+                serviceMethod.contentType, serviceMethod.hasBody, serviceMethod.isFormEncoded,
+                serviceMethod.isMultipart);
+    }
+
+    @Override
+    protected RequestBuilder newRequestBuilder(ServiceMethod serviceMethod, HttpUrl baseUrl) {
+        return new NettyRequestBuilder(alloc, serviceMethod.httpMethod,
+                baseUrl, serviceMethod.pathTemplate, serviceMethod.headers,
+                serviceMethod.contentType, serviceMethod.hasBody, serviceMethod.isFormEncoded,
+                serviceMethod.isMultipart);
+    }
+
+    public static final class Builder {
+        private int eventLoops = Runtime.getRuntime().availableProcessors();
+        private int maxConnectionsPerHost = 64;
+        private int maxContentLength = 16 * 1024 * 1024;
+        private int connectTimeoutMillis = 10000;
+        private long readTimeoutMillis = 10000;
+        private long acquireTimeoutMillis = 10000;
+
+        public Builder eventLoops(int eventLoops) {
+            if (eventLoops <= 0) throw new IllegalArgumentException("eventLoops <= 0");
+            this.eventLoops = eventLoops;
+            return this;
+        }
+
+        public Builder maxConnectionsPerHost(int maxConnectionsPerHost) {
+            if (maxConnectionsPerHost <= 0) throw new IllegalArgumentException("maxConnectionsPerHost <= 0");
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+            return this;
+        }
+
+        public Builder maxContentLength(int maxContentLength) {
+            if (maxContentLength <= 0) throw new IllegalArgumentException("maxContentLength <= 0");
+            this.maxContentLength = maxContentLength;
+            return this;
+        }
+
+        /**
+         * 建立TCP连接的超时，为0时不限制
+         */
+        public Builder connectTimeoutMillis(int connectTimeoutMillis) {
+            if (connectTimeoutMillis < 0) throw new IllegalArgumentException("connectTimeoutMillis < 0");
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * 发出请求后等待响应数据的超时，每次收到数据时重新计时；为0时不限制
+         */
+        public Builder readTimeoutMillis(long readTimeoutMillis) {
+            if (readTimeoutMillis < 0) throw new IllegalArgumentException("readTimeoutMillis < 0");
+            this.readTimeoutMillis = readTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * 主机的连接都在使用时等待空闲连接的超时，为0时不限制
+         */
+        public Builder acquireTimeoutMillis(long acquireTimeoutMillis) {
+            if (acquireTimeoutMillis < 0) throw new IllegalArgumentException("acquireTimeoutMillis < 0");
+            this.acquireTimeoutMillis = acquireTimeoutMillis;
+            return this;
+        }
+
+        public NettyHttpEngine build() {
+            return new NettyHttpEngine(this);
+        }
+    }
+
+    /**
+     * 一次请求/响应交换，同一时刻最多绑定在一个连接上；连接的EXCHANGE属性被谁清空，谁就负责归还连接
+     */
+    static final class Exchange {
+        final Promise<FullHttpResponse> promise;
+        final ChannelPool pool;
+        volatile Channel channel;
+
+        Exchange(Promise<FullHttpResponse> promise, ChannelPool pool) {
+            this.promise = promise;
+            this.pool = pool;
+        }
+
+        void release(Channel channel, boolean close) {
+            if (close) {
+                channel.close();
+            }
+            pool.release(channel);
+        }
+    }
+
+    @ChannelHandler.Sharable
+    static final class ResponseHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (!(msg instanceof FullHttpResponse)) {
+                ctx.fireChannelRead(msg);
+                return;
+            }
+            FullHttpResponse response = (FullHttpResponse) msg;
+            removeReadTimeout(ctx);
+            Exchange exchange = ctx.channel().attr(EXCHANGE).getAndSet(null);
+            if (exchange == null) {
+                // Nobody is waiting, e.g. the call was canceled.
+                response.release();
+                return;
+            }
+            exchange.release(ctx.channel(), !HttpUtil.isKeepAlive(response));
+            if (!exchange.promise.trySuccess(response)) {
+                response.release();
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            Exchange exchange = ctx.channel().attr(EXCHANGE).getAndSet(null);
+            if (exchange != null) {
+                exchange.release(ctx.channel(), true);
+                exchange.promise.tryFailure(cause instanceof ReadTimeoutException
+                        ? new SocketTimeoutException("Read timed out") : cause);
+            } else {
+                ctx.close();
+            }
+        }
+
+        private static void removeReadTimeout(ChannelHandlerContext ctx) {
+            ChannelPipeline pipeline = ctx.pipeline();
+            if (pipeline.get(READ_TIMEOUT_HANDLER) != null) {
+                pipeline.remove(READ_TIMEOUT_HANDLER);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            Exchange exchange = ctx.channel().attr(EXCHANGE).getAndSet(null);
+            if (exchange != null) {
+                exchange.release(ctx.channel(), false);
+                exchange.promise.tryFailure(new IOException("Connection closed before response"));
+            }
+            super.channelInactive(ctx);
+        }
+    }
+
+    /**
+     * 连接池的键：协议、主机和端口
+     */
+    static final class Route {
+        final boolean https;
+        final String host;
+        final int port;
+
+        private Route(boolean https, String host, int port) {
+            this.https = https;
+            this.host = host;
+            this.port = port;
+        }
+
+        static Route of(HttpUrl url) {
+            return new Route(url.isHttps(), url.host(), url.port());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Route)) return false;
+            Route other = (Route) o;
+            return https == other.https && port == other.port && host.equals(other.host);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = host.hashCode();
+            result = 31 * result + port;
+            return 31 * result + (https ? 1 : 0);
+        }
+    }
+}
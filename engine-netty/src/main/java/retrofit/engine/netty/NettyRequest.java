@@ -0,0 +1,17 @@
+package retrofit.engine.netty;
+
+import io.netty.handler.codec.http.FullHttpRequest;
+import retrofit.HttpUrl;
+
+/**
+ * {@link NettyRequestBuilder}的产物：请求本身和用于选择连接池的完整URL
+ */
+public final class NettyRequest {
+    public final HttpUrl url;
+    public final FullHttpRequest request;
+
+    public NettyRequest(HttpUrl url, FullHttpRequest request) {
+        this.url = url;
+        this.request = request;
+    }
+}
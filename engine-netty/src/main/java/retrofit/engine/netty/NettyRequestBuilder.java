@@ -0,0 +1,91 @@
+package retrofit.engine.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import retrofit.HttpHeaders;
+import retrofit.HttpUrl;
+import retrofit.MediaType;
+import retrofit.RequestBody;
+import retrofit.core.PathTemplate;
+import retrofit.core.StandardRequestBuilder;
+
+import java.io.IOException;
+
+/**
+ * 把ParameterHandler写入的参数组装成{@link NettyRequest}。@Body的字节直接包装成ByteBuf，
+ * 表单和multipart请求体直接编码进分配器提供的（池化直接）缓冲区，都不经过中间的byte[]
+ */
+public class NettyRequestBuilder extends StandardRequestBuilder {
+    private final ByteBufAllocator alloc;
+
+    public NettyRequestBuilder(ByteBufAllocator alloc, String httpMethod, HttpUrl baseUrl,
+                               PathTemplate relativeUrl, HttpHeaders headers, MediaType contentType,
+                               boolean hasBody, boolean isFormEncoded, boolean isMultipart) {
+        super(httpMethod, baseUrl, relativeUrl, headers, contentType, hasBody, isFormEncoded, isMultipart);
+        this.alloc = alloc;
+    }
+
+    @Override
+    public NettyRequest build() {
+        HttpUrl url = url();
+        String uri = url.encodedPath();
+        String query = url.encodedQuery();
+        if (query != null) {
+            uri = uri + '?' + query;
+        }
+
+        ByteBuf content = newContent();
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+                HttpMethod.valueOf(method()), uri, content != null ? content : Unpooled.EMPTY_BUFFER);
+
+        io.netty.handler.codec.http.HttpHeaders nettyHeaders = request.headers();
+        HttpHeaders headers = headers();
+        for (int i = 0, size = headers.size(); i < size; i++) {
+            nettyHeaders.add(headers.name(i), headers.value(i));
+        }
+        if (!nettyHeaders.contains(HttpHeaderNames.HOST)) {
+            nettyHeaders.set(HttpHeaderNames.HOST, hostHeader(url));
+        }
+        MediaType contentType = contentType();
+        if (contentType != null) {
+            nettyHeaders.set(HttpHeaderNames.CONTENT_TYPE, contentType.toString());
+        }
+        if (content != null) {
+            nettyHeaders.set(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
+        }
+        return new NettyRequest(url, request);
+    }
+
+    private ByteBuf newContent() {
+        RequestBody body = body();
+        if (body != null) {
+            return Unpooled.wrappedBuffer(body.getByteString().asByteBuffer());
+        }
+        ByteBuf buffer = alloc.buffer();
+        boolean success = false;
+        try {
+            if (!writeContent(new ByteBufOutputStream(buffer))) {
+                return null;
+            }
+            success = true;
+            return buffer;
+        } catch (IOException e) {
+            throw new AssertionError(e); // Writing to a ByteBuf doesn't throw.
+        } finally {
+            if (!success) {
+                buffer.release();
+            }
+        }
+    }
+
+    private static String hostHeader(HttpUrl url) {
+        String host = url.host().indexOf(':') != -1 ? "[" + url.host() + "]" : url.host();
+        return url.port() != HttpUrl.defaultPort(url.scheme()) ? host + ":" + url.port() : host;
+    }
+}
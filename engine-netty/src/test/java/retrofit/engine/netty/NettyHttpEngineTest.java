@@ -0,0 +1,265 @@
+package retrofit.engine.netty;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit.Retrofit;
+import retrofit.conveter.gson.GsonConverterFactory;
+import retrofit.core.HttpCall;
+import retrofit.core.HttpCallback;
+import retrofit.http.Body;
+import retrofit.http.Field;
+import retrofit.http.FormUrlEncoded;
+import retrofit.http.HttpMethod;
+import retrofit.http.Path;
+import retrofit.http.Query;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NettyHttpEngineTest {
+    private HttpServer server;
+    private NettyHttpEngine engine;
+    private Service service;
+
+    public static class Echo {
+        String method;
+        String uri;
+        String body;
+    }
+
+    public interface Service {
+        @HttpMethod.GET("echo/{name}")
+        HttpCall<Echo> get(@Path("name") String name, @Query("q") Integer q);
+
+        @HttpMethod.POST("echo")
+        HttpCall<Echo> post(@Body Echo echo);
+
+        @FormUrlEncoded
+        @HttpMethod.POST("echo")
+        HttpCall<Echo> form(@Field("a") String a, @Field(value = "b", encoded = true) String b);
+
+        @HttpMethod.GET("slow")
+        HttpCall<Echo> slow();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (exchange.getRequestURI().getPath().equals("/slow")) {
+                    try {
+                        Thread.sleep(2000);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                String body = readFully(exchange.getRequestBody()).replace("\"", "'");
+                byte[] content = ("{\"method\":\"" + exchange.getRequestMethod()
+                        + "\",\"uri\":\"" + exchange.getRequestURI()
+                        + "\",\"body\":\"" + body + "\"}").getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, content.length);
+                exchange.getResponseBody().write(content);
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        engine = new NettyHttpEngine(2, 8, 1 << 20);
+        service = create(engine);
+    }
+
+    private Service create(NettyHttpEngine engine) {
+        return new Retrofit.Builder()
+                .baseUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/")
+                .engine(engine)
+                .addConverterFactory(GsonConverterFactory.create())
+                .build()
+                .create(Service.class);
+    }
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void execute() throws IOException {
+        Echo echo = service.get("bob x", 7).execute().body();
+
+        assertEquals("GET", echo.method);
+        assertEquals("/echo/bob%20x?q=7", echo.uri);
+    }
+
+    @Test
+    public void postBody() throws IOException {
+        Echo sent = new Echo();
+        sent.method = "m";
+        Echo echo = service.post(sent).execute().body();
+
+        assertEquals("POST", echo.method);
+        assertEquals("{'method':'m'}", echo.body);
+    }
+
+    @Test
+    public void formBody() throws IOException {
+        Echo echo = service.form("x y", "%C3%A9").execute().body();
+
+        assertEquals("a=x+y&b=%C3%A9", echo.body);
+    }
+
+    @Test
+    public void enqueueConvertsOffTheEventLoop() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Object> result = new AtomicReference<>();
+        service.get("n", 1).enqueue(new HttpCallback<Echo>() {
+            @Override
+            public void onResponse(HttpCall<Echo> call, retrofit.HttpResponse<Echo, ?, ?> response) {
+                boolean onEventLoop = false;
+                for (io.netty.util.concurrent.EventExecutor loop : engine.eventLoopGroup()) {
+                    onEventLoop |= loop.inEventLoop();
+                }
+                result.set(onEventLoop);
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(HttpCall<Echo> call, Throwable t) {
+                result.set(t);
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(Boolean.FALSE, result.get());
+    }
+
+    @Test
+    public void readTimeout() throws IOException {
+        NettyHttpEngine engine = new NettyHttpEngine.Builder().readTimeoutMillis(300).build();
+        try {
+            long start = System.nanoTime();
+            try {
+                create(engine).slow().execute();
+                fail();
+            } catch (SocketTimeoutException expected) {
+            }
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1500);
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void acquireTimeout() throws IOException {
+        NettyHttpEngine engine = new NettyHttpEngine.Builder()
+                .maxConnectionsPerHost(1)
+                .acquireTimeoutMillis(300)
+                .build();
+        try {
+            Service service = create(engine);
+            HttpCall<Echo> slow = service.slow();
+            slow.enqueue(new HttpCallback<Echo>() {
+                @Override
+                public void onResponse(HttpCall<Echo> call, retrofit.HttpResponse<Echo, ?, ?> response) {
+                }
+
+                @Override
+                public void onFailure(HttpCall<Echo> call, Throwable t) {
+                }
+            });
+            try {
+                service.get("waiting", null).execute();
+                fail();
+            } catch (InterruptedIOException expected) {
+                assertFalse(expected instanceof SocketTimeoutException);
+            }
+            slow.cancel();
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void enqueueConcurrently() throws InterruptedException {
+        int calls = 32;
+        final CountDownLatch latch = new CountDownLatch(calls);
+        final List<Object> results = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < calls; i++) {
+            service.get("n", i).enqueue(new HttpCallback<Echo>() {
+                @Override
+                public void onResponse(HttpCall<Echo> call, retrofit.HttpResponse<Echo, ?, ?> response) {
+                    results.add(response.body().uri);
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailure(HttpCall<Echo> call, Throwable t) {
+                    results.add(t);
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(calls, results.size());
+        for (Object result : results) {
+            assertTrue(String.valueOf(result), result instanceof String);
+        }
+    }
+
+    @Test
+    public void cancelInFlight() throws IOException {
+        final HttpCall<Echo> call = service.slow();
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ignored) {
+                }
+                call.cancel();
+            }
+        }.start();
+        long start = System.nanoTime();
+        try {
+            call.execute();
+            fail();
+        } catch (IOException e) {
+            assertEquals("Canceled", e.getMessage());
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1500);
+        // The pool must still hand out working connections.
+        assertEquals("GET", service.get("after", null).execute().body().method);
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int n; (n = in.read(buffer)) != -1; ) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
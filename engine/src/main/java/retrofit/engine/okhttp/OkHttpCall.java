@@ -4,20 +4,54 @@ import okhttp3.Call;
 import retrofit.ServiceMethod;
 import retrofit.core.HttpCall;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * @author Mr.Yuan
  * @since 2016/12/18.
  */
 public class OkHttpCall<T> extends HttpCall<T> {
-    public Call rawCall;
+    static final int NEW = 0;
+    static final int CREATING = 1;
+    static final int CREATED = 2;
+    static final int FAILED = 3;
+
+    // rawCall的创建状态，只有把状态从NEW切换到CREATING的线程负责创建
+    private final AtomicInteger state = new AtomicInteger(NEW);
+    public volatile Call rawCall;
+    // 调用得到结果或被取消时置位，先到者生效，保证取消最多被统计一次
+    private final AtomicBoolean finished = new AtomicBoolean();
 
     public OkHttpCall(ServiceMethod<T, Object> serviceMethod, Object[] args) {
         super(serviceMethod, args);
     }
 
+    int state() {
+        return state.get();
+    }
+
+    boolean beginCreate() {
+        return state.compareAndSet(NEW, CREATING);
+    }
+
+    void created(Call call) {
+        rawCall = call;
+        state.set(CREATED);
+    }
+
+    void failed(Throwable failure) {
+        creationFailure = failure;
+        state.set(FAILED);
+    }
+
+    boolean finish() {
+        return finished.compareAndSet(false, true);
+    }
+
     @Override
     public HttpCall<T> clone() {
-        return new OkHttpCall<T>((ServiceMethod<T, Object>) serviceMethod, args);
+        return withArgumentsOf(new OkHttpCall<T>((ServiceMethod<T, Object>) serviceMethod, args));
     }
 
 }
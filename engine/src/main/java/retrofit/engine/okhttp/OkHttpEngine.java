@@ -8,18 +8,14 @@ import okio.BufferedSource;
 import okio.ForwardingSource;
 import okio.Okio;
 import retrofit.*;
-import retrofit.RequestBody;
 import retrofit.core.*;
-import retrofit.http.*;
-import retrofit.util.Utils;
+import retrofit.util.VirtualThreads;
 
 import java.io.IOException;
-import java.lang.annotation.Annotation;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
-import java.util.Map;
-
-import static retrofit.ServiceMethod.boxIfPrimitive;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Mr.Yuan
@@ -27,6 +23,9 @@ import static retrofit.ServiceMethod.boxIfPrimitive;
  */
 public class OkHttpEngine extends HttpEngine {
     OkHttpClient okHttpClient;
+    private final AtomicLong honoredCancellations = new AtomicLong();
+    // 负载均衡选定的base URL转换成的OkHttp对象，端点数量有限，过多时整体清空
+    private final ConcurrentMap<retrofit.HttpUrl, okhttp3.HttpUrl> baseUrls = new ConcurrentHashMap<>();
 
     public OkHttpEngine() {
         this(new OkHttpClient.Builder()
@@ -37,6 +36,27 @@ public class OkHttpEngine extends HttpEngine {
         this.okHttpClient = okHttpClient;
     }
 
+    /**
+     * enqueue的请求在虚拟线程上执行，每个主机的并发数与OkHttp的默认值相同，见{@link #virtualThreads(int)}
+     */
+    public static OkHttpEngine virtualThreads() {
+        return virtualThreads(new Dispatcher().getMaxRequestsPerHost());
+    }
+
+    /**
+     * enqueue的请求在虚拟线程上执行，需要JDK 21+，否则抛出IllegalStateException。
+     * 线程不再是瓶颈，Dispatcher不限制总并发数，但仍按主机限制：ConnectionPool只限制空闲连接，
+     * 同时打开的连接数等于同一主机上正在执行的请求数
+     */
+    public static OkHttpEngine virtualThreads(int maxRequestsPerHost) {
+        Dispatcher dispatcher = new Dispatcher(VirtualThreads.newVirtualThreadExecutor());
+        dispatcher.setMaxRequests(Integer.MAX_VALUE);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        return new OkHttpEngine(new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .build());
+    }
+
     @Override
     public HttpCall newHttpCall(ServiceMethod serviceMethod, Object[] args) {
         HttpCall okHttpCall = new OkHttpCall<>(serviceMethod, args);
@@ -44,46 +64,114 @@ public class OkHttpEngine extends HttpEngine {
         return okHttpCall;
     }
 
+    /**
+     * 取消可以发生在任意阶段：rawCall尚未创建时由创建方在创建后立即取消；
+     * 连接或读取响应体时由OkHttp中断；转换完成后由parseResponse检查并抛出异常
+     */
     @Override
     public <T> void cancel(HttpCall httpCall) {
+        if (!(httpCall instanceof OkHttpCall)) return;
+        OkHttpCall<?> okHttpCall = (OkHttpCall<?>) httpCall;
+        Call call = okHttpCall.rawCall;
+        if (call != null) {
+            call.cancel();
+        }
+        if (okHttpCall.finish()) {
+            honoredCancellations.incrementAndGet();
+        }
+    }
 
+    /**
+     * 在调用结束之前生效的取消次数
+     */
+    public long honoredCancellations() {
+        return honoredCancellations.get();
     }
 
     @Override
     public <T> HttpResponse execute(HttpCall<T> httpCall) throws IOException {
-        okhttp3.Call call;
-        synchronized (this) {
-            OkHttpCall<T> okHttpCall = (OkHttpCall<T>) httpCall;
-            httpCall.check();
+        OkHttpCall<T> okHttpCall = (OkHttpCall<T>) httpCall;
+        // A reused call must not finish the execution that owns it.
+        okHttpCall.markExecuted();
 
-            call = okHttpCall.rawCall;
-            if (call == null) {
-                try {
-                    call = okHttpCall.rawCall = createRawCall(okHttpCall);
-                } catch (IOException | RuntimeException e) {
-                    httpCall.creationFailure = e;
-                    throw e;
-                }
+        try {
+            Throwable creationFailure = okHttpCall.creationFailure;
+            if (creationFailure instanceof IOException) {
+                throw (IOException) creationFailure;
+            } else if (creationFailure != null) {
+                throw (RuntimeException) creationFailure;
             }
+            if (okHttpCall.isCanceled()) {
+                throw new IOException("Canceled");
+            }
+            okhttp3.Call call = rawCall(okHttpCall);
+            return parseResponse(httpCall, call.execute());
+        } finally {
+            okHttpCall.finish();
         }
-
-        if (httpCall.isCanceled()) {
-            call.cancel();
-        }
-
-        return parseResponse(httpCall, call.execute());
     }
 
     @Override
     protected RequestBuilder newRequestBuilder(ServiceMethod serviceMethod) {
+        Object attachment = serviceMethod.engineAttachment;
+        OkHttpMethodAttachment natives = attachment instanceof OkHttpMethodAttachment
+                ? (OkHttpMethodAttachment) attachment : OkHttpMethodAttachment.of(serviceMethod);
+        return new OkHttpRequestBuilder(serviceMethod.httpMethod,
+                natives.baseUrl, serviceMethod.pathTemplate, natives.headers,
+                natives.contentType, serviceMethod.hasBody, serviceMethod.isFormEncoded,
+                serviceMethod.isMultipart);
+    }
+
+    @Override
+    protected RequestBuilder newRequestBuilder(ServiceMethod serviceMethod, retrofit.HttpUrl baseUrl) {
+        Object attachment = serviceMethod.engineAttachment;
+        OkHttpMethodAttachment natives = attachment instanceof OkHttpMethodAttachment
+                ? (OkHttpMethodAttachment) attachment : OkHttpMethodAttachment.of(serviceMethod);
+        okhttp3.HttpUrl okBaseUrl = baseUrls.get(baseUrl);
+        if (okBaseUrl == null) {
+            if (baseUrls.size() >= 256) {
+                baseUrls.clear();
+            }
+            okBaseUrl = okhttp3.HttpUrl.parse(baseUrl.toString());
+            baseUrls.put(baseUrl, okBaseUrl);
+        }
         return new OkHttpRequestBuilder(serviceMethod.httpMethod,
-                serviceMethod.baseUrl, serviceMethod.relativeUrl, serviceMethod.headers,
-                serviceMethod.contentType, serviceMethod.hasBody, serviceMethod.isFormEncoded,
+                okBaseUrl, serviceMethod.pathTemplate, natives.headers,
+                natives.contentType, serviceMethod.hasBody, serviceMethod.isFormEncoded,
                 serviceMethod.isMultipart);
     }
 
+    @Override
+    public Object createAttachment(ServiceMethod serviceMethod) {
+        return OkHttpMethodAttachment.of(serviceMethod);
+    }
+
+    /**
+     * 在调用方线程上创建rawCall，请求构建（包括@Body的转换）不持有任何共享锁
+     */
+    private Call rawCall(OkHttpCall<?> okHttpCall) throws IOException {
+        Call call = okHttpCall.rawCall;
+        if (call != null) return call;
+        if (!okHttpCall.beginCreate()) {
+            // markExecuted() admits a single thread, another creator means the call was reused.
+            throw new IllegalStateException("Already executed.");
+        }
+        try {
+            call = createRawCall(okHttpCall);
+        } catch (IOException | RuntimeException | Error e) {
+            okHttpCall.failed(e);
+            throw e;
+        }
+        okHttpCall.created(call);
+        // cancel() may have run before rawCall was published.
+        if (okHttpCall.isCanceled()) {
+            call.cancel();
+        }
+        return call;
+    }
+
     private Call createRawCall(OkHttpCall okHttpCall) throws IOException {
-        okhttp3.Request request = (Request) toRequest(okHttpCall.serviceMethod, okHttpCall.args);
+        okhttp3.Request request = (Request) toRequest(okHttpCall);
         okhttp3.Call call = okHttpClient.newCall(request);
         return call;
     }
@@ -110,14 +198,19 @@ public class OkHttpEngine extends HttpEngine {
             }
         }
 
+        HttpHeaders httpHeaders = OkHttpUtils.toHttpHeaders(rawResponse.headers());
         if (code == 204 || code == 205) {
-            return success(null, rawResponse);
+            return success(null, rawResponse, httpHeaders);
         }
 
         ExceptionCatchingRequestBody catchingBody = new ExceptionCatchingRequestBody(rawBody);
         try {
-            T body = httpCall.toResponseBody(catchingBody.byteStream());// httpCall.serviceMethod.toResponse(catchingBody);
-            return success(body, rawResponse);
+            T body = httpCall.toResponseBody(catchingBody.byteStream(), code, httpHeaders);// httpCall.serviceMethod.toResponse(catchingBody);
+            if (httpCall.isCanceled()) {
+                // Canceled while converting, drop the result.
+                throw new IOException("Canceled");
+            }
+            return success(body, rawResponse, httpHeaders);
         } catch (RuntimeException e) {
             // If the underlying source threw an exception, propagate that rather than indicating it was
             // a runtime exception.
@@ -126,8 +219,7 @@ public class OkHttpEngine extends HttpEngine {
         }
     }
 
-    private <T> HttpResponse<T, Response, ResponseBody> success(T t, Response rawResponse) {
-        HttpHeaders httpHeaders = OkHttpUtils.toHttpHeaders(rawResponse.headers());
+    private <T> HttpResponse<T, Response, ResponseBody> success(T t, Response rawResponse, HttpHeaders httpHeaders) {
         HttpResponse<T, Response, ResponseBody> httpResponse = new HttpResponse<>(
                 rawResponse, null, rawResponse.code(), httpHeaders, t, rawResponse.message());
         return httpResponse;
@@ -150,34 +242,28 @@ public class OkHttpEngine extends HttpEngine {
     public <T> void execute(HttpCall<T> c, final HttpCallback<T> callback) {
         if (callback == null) throw new NullPointerException("callback == null");
 
-        Call call;
         final OkHttpCall<T> okHttpCall = (OkHttpCall) c;
-        Throwable failure;
+        okHttpCall.markExecuted();
 
-        synchronized (this) {
-            if (okHttpCall.executed) throw new IllegalStateException("Already executed.");
-            okHttpCall.executed = true;
-
-            call = okHttpCall.rawCall;
-            failure = okHttpCall.creationFailure;
-            if (call == null && failure == null) {
-                try {
-                    call = okHttpCall.rawCall = createRawCall(okHttpCall);
-                } catch (Throwable t) {
-                    failure = okHttpCall.creationFailure = t;
-                }
+        Call call = null;
+        Throwable failure = okHttpCall.creationFailure;
+        if (failure == null && okHttpCall.isCanceled()) {
+            failure = new IOException("Canceled");
+        }
+        if (failure == null) {
+            try {
+                call = rawCall(okHttpCall);
+            } catch (Throwable t) {
+                failure = t;
             }
         }
 
         if (failure != null) {
-            callback.onFailure(okHttpCall, failure);
+            okHttpCall.finish();
+            callFailure(okHttpCall, callback, failure);
             return;
         }
 
-        if (okHttpCall.isCanceled()) {
-            call.cancel();
-        }
-
         call.enqueue(new okhttp3.Callback() {
             @Override
             public void onResponse(okhttp3.Call call, okhttp3.Response rawResponse)
@@ -186,301 +272,70 @@ public class OkHttpEngine extends HttpEngine {
                 try {
                     response = parseResponse(okHttpCall, rawResponse);
                 } catch (Throwable e) {
-                    callFailure(e);
+                    okHttpCall.finish();
+                    callFailure(okHttpCall, callback, e);
                     return;
                 }
-                callSuccess(response);
+                okHttpCall.finish();
+                callSuccess(okHttpCall, callback, response);
             }
 
             @Override
             public void onFailure(okhttp3.Call call, IOException e) {
-                try {
-                    callback.onFailure(okHttpCall, e);
-                } catch (Throwable t) {
-                    t.printStackTrace();
-                }
+                okHttpCall.finish();
+                callFailure(okHttpCall, callback, e);
             }
+        });
+    }
 
-            private void callFailure(Throwable e) {
+    private static <T> void callFailure(final HttpCall<T> call, final HttpCallback<T> callback,
+                                        final Throwable t) {
+        deliver(call, new Runnable() {
+            @Override
+            public void run() {
                 try {
-                    callback.onFailure(okHttpCall, e);
-                } catch (Throwable t) {
-                    t.printStackTrace();
+                    callback.onFailure(call, t);
+                } catch (Throwable e) {
+                    e.printStackTrace();
                 }
             }
+        });
+    }
 
-            private void callSuccess(HttpResponse<T, ?, ?> response) {
+    private static <T> void callSuccess(final HttpCall<T> call, final HttpCallback<T> callback,
+                                        final HttpResponse<T, ?, ?> response) {
+        deliver(call, new Runnable() {
+            @Override
+            public void run() {
                 try {
-                    callback.onResponse(okHttpCall, response);
-                } catch (Throwable t) {
-                    t.printStackTrace();
+                    callback.onResponse(call, response);
+                } catch (Throwable e) {
+                    e.printStackTrace();
                 }
             }
         });
     }
 
-    @Override
-    public ParameterHandler<?> getParameterHandler(Retrofit retrofit, Type type, Annotation[] annotations,
-                                                   Annotation annotation) {
-        if (annotation instanceof Url) {
-            return new OKHttpParameterHandler.RelativeUrl();
-        } else if (annotation instanceof Path) {
-            Path path = (Path) annotation;
-            return new OKHttpParameterHandler.Path<>(path.value(), retrofit.stringConverter(type, annotations), path.encoded());
-        } else if (annotation instanceof Query) {
-
-            Query query = (Query) annotation;
-            String name = query.value();
-            boolean encoded = query.encoded();
-
-            Class<?> rawParameterType = Utils.getRawType(type);
-            if (Iterable.class.isAssignableFrom(rawParameterType)) {
-                ParameterizedType parameterizedType = (ParameterizedType) type;
-                Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
-                HttpConverter<?, String> converter =
-                        retrofit.stringConverter(iterableType, annotations);
-                return new OKHttpParameterHandler.Query<>(name, converter, encoded).iterable();
-            } else if (rawParameterType.isArray()) {
-                Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
-                HttpConverter<?, String> converter =
-                        retrofit.stringConverter(arrayComponentType, annotations);
-                return new OKHttpParameterHandler.Query<>(name, converter, encoded).array();
-            } else {
-                HttpConverter<?, String> converter =
-                        retrofit.stringConverter(type, annotations);
-                return new OKHttpParameterHandler.Query<>(name, converter, encoded);
-            }
-        } else if (annotation instanceof QueryMap) {
-            Class<?> rawParameterType = Utils.getRawType(type);
-            Type mapType = Utils.getSupertype(type, rawParameterType, Map.class);
-            ParameterizedType parameterizedType = (ParameterizedType) mapType;
-            Type valueType = Utils.getParameterUpperBound(1, parameterizedType);
-            HttpConverter<?, String> valueConverter =
-                    retrofit.stringConverter(valueType, annotations);
-            return new OKHttpParameterHandler.QueryMap<>(valueConverter, ((QueryMap) annotation).encoded());
-        } else if (annotation instanceof Header) {
-            Header header = (Header) annotation;
-            String name = header.value();
-
-            Class<?> rawParameterType = Utils.getRawType(type);
-            if (Iterable.class.isAssignableFrom(rawParameterType)) {
-
-                ParameterizedType parameterizedType = (ParameterizedType) type;
-                Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
-                HttpConverter<?, String> converter =
-                        retrofit.stringConverter(iterableType, annotations);
-                return new OKHttpParameterHandler.Header<>(name, converter).iterable();
-            } else if (rawParameterType.isArray()) {
-                Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
-                HttpConverter<?, String> converter =
-                        retrofit.stringConverter(arrayComponentType, annotations);
-                return new OKHttpParameterHandler.Header<>(name, converter).array();
-            } else {
-                HttpConverter<?, String> converter =
-                        retrofit.stringConverter(type, annotations);
-                return new OKHttpParameterHandler.Header<>(name, converter);
-            }
-
-        } else if (annotation instanceof HeaderMap) {
-            Class<?> rawParameterType = Utils.getRawType(type);
-            Type mapType = Utils.getSupertype(type, rawParameterType, Map.class);
-            ParameterizedType parameterizedType = (ParameterizedType) mapType;
-            Type valueType = Utils.getParameterUpperBound(1, parameterizedType);
-            HttpConverter<?, String> valueConverter =
-                    retrofit.stringConverter(valueType, annotations);
-            return new OKHttpParameterHandler.HeaderMap<>(valueConverter);
-
-        } else if (annotation instanceof Field) {
-//            if (!isFormEncoded) {
-//                throw parameterError(p, "@Field parameters can only be used with form encoding.");
-//            }
-            Field field = (Field) annotation;
-            String name = field.value();
-            boolean encoded = field.encoded();
-
-//            gotField = true;
-
-            Class<?> rawParameterType = Utils.getRawType(type);
-            if (Iterable.class.isAssignableFrom(rawParameterType)) {
-//                if (!(type instanceof ParameterizedType)) {
-//                    throw parameterError(p, rawParameterType.getSimpleName()
-//                            + " must include generic type (e.g., "
-//                            + rawParameterType.getSimpleName()
-//                            + "<String>)");
-//                }
-                ParameterizedType parameterizedType = (ParameterizedType) type;
-                Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
-                HttpConverter<?, String> converter =
-                        retrofit.stringConverter(iterableType, annotations);
-                return new OKHttpParameterHandler.Field<>(name, converter, encoded).iterable();
-            } else if (rawParameterType.isArray()) {
-                Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
-                HttpConverter<?, String> converter =
-                        retrofit.stringConverter(arrayComponentType, annotations);
-                return new OKHttpParameterHandler.Field<>(name, converter, encoded).array();
-            } else {
-                HttpConverter<?, String> converter =
-                        retrofit.stringConverter(type, annotations);
-                return new OKHttpParameterHandler.Field<>(name, converter, encoded);
-            }
-
-        } else if (annotation instanceof FieldMap) {
-//            if (!isFormEncoded) {
-//                throw parameterError(p, "@FieldMap parameters can only be used with form encoding.");
-//            }
-            Class<?> rawParameterType = Utils.getRawType(type);
-            Type mapType = Utils.getSupertype(type, rawParameterType, Map.class);
-//            if (!(mapType instanceof ParameterizedType)) {
-//                throw parameterError(p,
-//                        "Map must include generic types (e.g., Map<String, String>)");
-//            }
-            ParameterizedType parameterizedType = (ParameterizedType) mapType;
-//            Type keyType = Utils.getParameterUpperBound(0, parameterizedType);
-//            if (String.class != keyType) {
-//                throw parameterError(p, "@FieldMap keys must be of type String: " + keyType);
-//            }
-            Type valueType = Utils.getParameterUpperBound(1, parameterizedType);
-            HttpConverter<?, String> valueConverter =
-                    retrofit.stringConverter(valueType, annotations);
-
-//            gotField = true;
-            return new OKHttpParameterHandler.FieldMap<>(valueConverter, ((FieldMap) annotation).encoded());
-
+    /**
+     * 配置了Retrofit.callbackExecutor时在其上回调，否则直接在Dispatcher的线程上回调
+     */
+    private static void deliver(HttpCall<?> call, Runnable runnable) {
+        Executor callbackExecutor = call.serviceMethod.callbackExecutor;
+        if (callbackExecutor != null) {
+            callbackExecutor.execute(runnable);
+        } else {
+            runnable.run();
         }
-
-        return null;
     }
 
     @Override
-    public ParameterHandler<?> getParameterHandler(Retrofit retrofit, Type type, Annotation[] annotations, Annotation[] methodAnnotations, Annotation annotation) {
-        if (annotation instanceof Part) {
-//            if (!isMultipart) {
-//                throw parameterError(p, "@Part parameters can only be used with multipart encoding.");
-//            }
-            Part part = (Part) annotation;
-//            gotPart = true;
-
-            String partName = part.value();
-            Class<?> rawParameterType = Utils.getRawType(type);
-            if (partName.isEmpty()) {
-                if (Iterable.class.isAssignableFrom(rawParameterType)) {
-                    if (!(type instanceof ParameterizedType)) {
-                        throw new IllegalArgumentException(rawParameterType.getSimpleName()
-                                + " must include generic type (e.g., "
-                                + rawParameterType.getSimpleName()
-                                + "<String>)");
-                    }
-                    ParameterizedType parameterizedType = (ParameterizedType) type;
-                    Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
-                    if (!MultipartBody.Part.class.isAssignableFrom(Utils.getRawType(iterableType))) {
-                        throw new IllegalArgumentException(
-                                "@Part annotation must supply a name or use MultipartBody.Part parameter type.");
-                    }
-                    return OKHttpParameterHandler.RawPart.INSTANCE.iterable();
-                } else if (rawParameterType.isArray()) {
-                    Class<?> arrayComponentType = rawParameterType.getComponentType();
-                    if (!MultipartBody.Part.class.isAssignableFrom(arrayComponentType)) {
-                        throw new IllegalArgumentException(
-                                "@Part annotation must supply a name or use MultipartBody.Part parameter type.");
-                    }
-                    return OKHttpParameterHandler.RawPart.INSTANCE.array();
-                } else if (MultipartBody.Part.class.isAssignableFrom(rawParameterType)) {
-                    return OKHttpParameterHandler.RawPart.INSTANCE;
-                } else {
-                    throw new IllegalArgumentException(
-                            "@Part annotation must supply a name or use MultipartBody.Part parameter type.");
-                }
-            } else {
-                HttpHeaders headers =
-                        HttpHeaders.of("Content-Disposition", "form-data; name=\"" + partName + "\"",
-                                "Content-Transfer-Encoding", part.encoding());
-
-                if (Iterable.class.isAssignableFrom(rawParameterType)) {
-                    if (!(type instanceof ParameterizedType)) {
-                        throw new IllegalArgumentException(rawParameterType.getSimpleName()
-                                + " must include generic type (e.g., "
-                                + rawParameterType.getSimpleName()
-                                + "<String>)");
-                    }
-                    ParameterizedType parameterizedType = (ParameterizedType) type;
-                    Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
-                    if (MultipartBody.Part.class.isAssignableFrom(Utils.getRawType(iterableType))) {
-                        throw new IllegalArgumentException("@Part parameters using the MultipartBody.Part must not "
-                                + "include a part name in the annotation.");
-                    }
-                    HttpConverter<?, RequestBody> converter =
-                            retrofit.requestBodyConverter(iterableType, annotations, methodAnnotations);
-                    return new OKHttpParameterHandler.Part<>(headers, converter).iterable();
-                } else if (rawParameterType.isArray()) {
-                    Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
-                    if (MultipartBody.Part.class.isAssignableFrom(arrayComponentType)) {
-                        throw new IllegalArgumentException("@Part parameters using the MultipartBody.Part must not "
-                                + "include a part name in the annotation.");
-                    }
-                    HttpConverter<?, RequestBody> converter =
-                            retrofit.requestBodyConverter(arrayComponentType, annotations, methodAnnotations);
-                    return new OKHttpParameterHandler.Part<>(headers, converter).array();
-                } else if (MultipartBody.Part.class.isAssignableFrom(rawParameterType)) {
-                    throw new IllegalArgumentException("@Part parameters using the MultipartBody.Part must not "
-                            + "include a part name in the annotation.");
-                } else {
-                    HttpConverter<?, RequestBody> converter =
-                            retrofit.requestBodyConverter(type, annotations, methodAnnotations);
-                    return new OKHttpParameterHandler.Part<>(headers, converter);
-                }
-            }
-        } else if (annotation instanceof PartMap) {
-//            if (!isMultipart) {
-//                throw parameterError(p, "@PartMap parameters can only be used with multipart encoding.");
-//            }
-//            gotPart = true;
-            Class<?> rawParameterType = Utils.getRawType(type);
-            if (!Map.class.isAssignableFrom(rawParameterType)) {
-                throw new IllegalArgumentException("@PartMap parameter type must be Map.");
-            }
-            Type mapType = Utils.getSupertype(type, rawParameterType, Map.class);
-            if (!(mapType instanceof ParameterizedType)) {
-                throw new IllegalArgumentException("Map must include generic types (e.g., Map<String, String>)");
-            }
-            ParameterizedType parameterizedType = (ParameterizedType) mapType;
-
-            Type keyType = Utils.getParameterUpperBound(0, parameterizedType);
-            if (String.class != keyType) {
-                throw new IllegalArgumentException("@PartMap keys must be of type String: " + keyType);
-            }
-
-            Type valueType = Utils.getParameterUpperBound(1, parameterizedType);
-            if (MultipartBody.Part.class.isAssignableFrom(Utils.getRawType(valueType))) {
-                throw new IllegalArgumentException("@PartMap values cannot be MultipartBody.Part. "
-                        + "Use @Part List<Part> or a different value type instead.");
-            }
-
-            HttpConverter<?, RequestBody> valueConverter =
-                    retrofit.requestBodyConverter(valueType, annotations, methodAnnotations);
-
-            PartMap partMap = (PartMap) annotation;
-            return new OKHttpParameterHandler.PartMap<>(valueConverter, partMap.encoding());
-
-        } else if (annotation instanceof Body) {
-//            if (isFormEncoded || isMultipart) {
-//                throw parameterError(p,
-//                        "@Body parameters cannot be used with form or multi-part encoding.");
-//            }
-//            if (gotBody) {
-//                throw parameterError(p, "Multiple @Body method annotations found.");
-//            }
+    protected Class<?> rawPartType() {
+        return MultipartBody.Part.class;
+    }
 
-            HttpConverter<?, RequestBody> converter;
-            try {
-                converter = retrofit.requestBodyConverter(type, annotations, methodAnnotations);
-            } catch (RuntimeException e) {
-                // Wide exception range because factories are user code.
-                throw new IllegalStateException(Utils.format("Unable to create @Body converter for %s", type));
-            }
-//            gotBody = true;
-            return new OKHttpParameterHandler.Body<>(converter);
-        }
-        return null;
+    @Override
+    protected ParameterHandler<?> rawPartHandler() {
+        return OKHttpParameterHandler.RawPart.INSTANCE;
     }
 
     static final class NoContentResponseBody extends ResponseBody {
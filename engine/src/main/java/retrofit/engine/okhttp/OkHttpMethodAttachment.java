@@ -0,0 +1,31 @@
+package retrofit.engine.okhttp;
+
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import retrofit.ServiceMethod;
+
+/**
+ * ServiceMethod上不随请求变化的部分预先转换成的OkHttp对象，由{@link OkHttpEngine#createAttachment}创建一次，
+ * 之后每次构造请求直接复用
+ */
+final class OkHttpMethodAttachment {
+    final HttpUrl baseUrl;
+    final Headers headers;
+    final MediaType contentType;
+
+    private OkHttpMethodAttachment(HttpUrl baseUrl, Headers headers, MediaType contentType) {
+        this.baseUrl = baseUrl;
+        this.headers = headers;
+        this.contentType = contentType;
+    }
+
+    static OkHttpMethodAttachment of(ServiceMethod serviceMethod) {
+        HttpUrl baseUrl = HttpUrl.parse(serviceMethod.baseUrl.toString());
+        Headers headers = serviceMethod.headers != null
+                ? OkHttpUtils.toHeaders(serviceMethod.headers) : null;
+        MediaType contentType = serviceMethod.contentType != null
+                ? OkHttpUtils.toContentType(serviceMethod.contentType) : null;
+        return new OkHttpMethodAttachment(baseUrl, headers, contentType);
+    }
+}
@@ -1,8 +1,8 @@
 package retrofit.engine.okhttp;
 
 import okhttp3.*;
-import okio.Buffer;
 import okio.BufferedSink;
+import retrofit.core.PathTemplate;
 
 import java.io.IOException;
 
@@ -11,14 +11,12 @@ import java.io.IOException;
  * @since 2016/12/18.
  */
 public class OkHttpRequestBuilder extends retrofit.RequestBuilder {
-    private static final char[] HEX_DIGITS =
-            {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
-    private static final String PATH_SEGMENT_ALWAYS_ENCODE_SET = " \"<>^`{}|\\?#";
-
     private final String method;
 
     private final HttpUrl baseUrl;
     private String relativeUrl;
+    // 尚未展开的路径模板，首次需要完整URL时展开为relativeUrl
+    private PathTemplate.Expansion pathParams;
     private HttpUrl.Builder urlBuilder;
 
     private final Request.Builder requestBuilder;
@@ -30,21 +28,40 @@ public class OkHttpRequestBuilder extends retrofit.RequestBuilder {
     private RequestBody body;
 
 
-    public OkHttpRequestBuilder(String httpMethod, retrofit.HttpUrl baseUrl, String relativeUrl,
+    public OkHttpRequestBuilder(String httpMethod, retrofit.HttpUrl baseUrl, PathTemplate relativeUrl,
                                 retrofit.HttpHeaders headers,
                                 retrofit.MediaType contentType, boolean hasBody, boolean isFormEncoded,
                                 boolean isMultipart) {
-        super(httpMethod, baseUrl, relativeUrl, headers, contentType, hasBody, isFormEncoded, isMultipart);
+        this(httpMethod, HttpUrl.parse(baseUrl.toString()), relativeUrl,
+                headers != null ? OkHttpUtils.toHeaders(headers) : null,
+                contentType != null ? OkHttpUtils.toContentType(contentType) : null,
+                hasBody, isFormEncoded, isMultipart);
+    }
+
+    /**
+     * 直接使用已转换好的OkHttp对象，避免每次请求重复解析base URL、请求头和Content-Type
+     */
+    public OkHttpRequestBuilder(String httpMethod, HttpUrl baseUrl, PathTemplate relativeUrl,
+                                Headers headers, MediaType contentType,
+                                boolean hasBody, boolean isFormEncoded, boolean isMultipart) {
+        super(httpMethod, null, relativeUrl != null ? relativeUrl.template() : null,
+                null, null, hasBody, isFormEncoded, isMultipart);
 
         this.method = httpMethod;
-        this.baseUrl = HttpUrl.parse(baseUrl.toString());
-        this.relativeUrl = relativeUrl;
+        this.baseUrl = baseUrl;
+        if (relativeUrl != null) {
+            if (relativeUrl.hasParams()) {
+                this.pathParams = relativeUrl.newExpansion();
+            } else {
+                this.relativeUrl = relativeUrl.template();
+            }
+        }
         this.requestBuilder = new Request.Builder();
-        this.contentType = contentType != null ? MediaType.parse(contentType.type()) : null;
+        this.contentType = contentType;
         this.hasBody = hasBody;
 
         if (headers != null) {
-            requestBuilder.headers(OkHttpUtils.toHeaders(headers));
+            requestBuilder.headers(headers);
         }
 
         if (isFormEncoded) {
@@ -61,6 +78,7 @@ public class OkHttpRequestBuilder extends retrofit.RequestBuilder {
     public void setRelativeUrl(Object relativeUrl) {
         if (relativeUrl == null) throw new NullPointerException("@Url parameter is null.");
         this.relativeUrl = relativeUrl.toString();
+        this.pathParams = null;
     }
 
     public void addHeader(String name, String value) {
@@ -76,63 +94,36 @@ public class OkHttpRequestBuilder extends retrofit.RequestBuilder {
     }
 
     public void addPathParam(String name, String value, boolean encoded) {
-        if (relativeUrl == null) {
-            // The relative URL is cleared when the first query parameter is set.
-            throw new AssertionError();
+        if (pathParams == null) {
+            if (relativeUrl == null) {
+                // The relative URL is cleared when the first query parameter is set.
+                throw new AssertionError();
+            }
+            // The template has no replace blocks left.
+            return;
         }
-        relativeUrl = relativeUrl.replace("{" + name + "}", canonicalizeForPath(value, encoded));
+        pathParams.set(name, canonicalizeForPath(value, encoded));
     }
 
-    private static String canonicalizeForPath(String input, boolean alreadyEncoded) {
-        int codePoint;
-        for (int i = 0, limit = input.length(); i < limit; i += Character.charCount(codePoint)) {
-            codePoint = input.codePointAt(i);
-            if (codePoint < 0x20 || codePoint >= 0x7f
-                    || PATH_SEGMENT_ALWAYS_ENCODE_SET.indexOf(codePoint) != -1
-                    || (!alreadyEncoded && (codePoint == '/' || codePoint == '%'))) {
-                // Slow path: the character at i requires encoding!
-                Buffer out = new Buffer();
-                out.writeUtf8(input, 0, i);
-                canonicalizeForPath(out, input, i, limit, alreadyEncoded);
-                return out.readUtf8();
-            }
+    @Override
+    public void addPathParam(String name, long value) {
+        if (pathParams == null) {
+            addPathParam(name, Long.toString(value), true);
+            return;
         }
-
-        // Fast path: no characters required encoding.
-        return input;
+        pathParams.set(name, value);
     }
 
-    private static void canonicalizeForPath(Buffer out, String input, int pos, int limit,
-                                            boolean alreadyEncoded) {
-        Buffer utf8Buffer = null; // Lazily allocated.
-        int codePoint;
-        for (int i = pos; i < limit; i += Character.charCount(codePoint)) {
-            codePoint = input.codePointAt(i);
-            if (alreadyEncoded
-                    && (codePoint == '\t' || codePoint == '\n' || codePoint == '\f' || codePoint == '\r')) {
-                // Skip this character.
-            } else if (codePoint < 0x20 || codePoint >= 0x7f
-                    || PATH_SEGMENT_ALWAYS_ENCODE_SET.indexOf(codePoint) != -1
-                    || (!alreadyEncoded && (codePoint == '/' || codePoint == '%'))) {
-                // Percent encode this character.
-                if (utf8Buffer == null) {
-                    utf8Buffer = new Buffer();
-                }
-                utf8Buffer.writeUtf8CodePoint(codePoint);
-                while (!utf8Buffer.exhausted()) {
-                    int b = utf8Buffer.readByte() & 0xff;
-                    out.writeByte('%');
-                    out.writeByte(HEX_DIGITS[(b >> 4) & 0xf]);
-                    out.writeByte(HEX_DIGITS[b & 0xf]);
-                }
-            } else {
-                // This character doesn't need encoding. Just copy it over.
-                out.writeUtf8CodePoint(codePoint);
-            }
+    private String relativeUrl() {
+        if (pathParams != null) {
+            relativeUrl = pathParams.expand();
+            pathParams = null;
         }
+        return relativeUrl;
     }
 
     public void addQueryParam(String name, String value, boolean encoded) {
+        String relativeUrl = relativeUrl();
         if (relativeUrl != null) {
             // Do a one-time combination of the built relative URL and the base URL.
             urlBuilder = baseUrl.newBuilder(relativeUrl);
@@ -140,7 +131,7 @@ public class OkHttpRequestBuilder extends retrofit.RequestBuilder {
                 throw new IllegalArgumentException(
                         "Malformed URL. Base: " + baseUrl + ", Relative: " + relativeUrl);
             }
-            relativeUrl = null;
+            this.relativeUrl = null;
         }
 
         if (encoded) {
@@ -182,6 +173,7 @@ public class OkHttpRequestBuilder extends retrofit.RequestBuilder {
             url = urlBuilder.build();
         } else {
             // No query parameters triggered builder creation, just combine the relative URL and base URL.
+            String relativeUrl = relativeUrl();
             url = baseUrl.resolve(relativeUrl);
             if (url == null) {
                 throw new IllegalArgumentException(
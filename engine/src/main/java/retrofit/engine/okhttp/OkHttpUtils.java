@@ -15,8 +15,8 @@ import java.io.IOException;
 public class OkHttpUtils {
     public static Headers toHeaders(HttpHeaders headers) {
         Headers.Builder headerBuilder = new Headers.Builder();
-        for (String name : headers.names()) {
-            headerBuilder.add(name, headers.get(name));
+        for (int i = 0, size = headers.size(); i < size; i++) {
+            headerBuilder.add(headers.name(i), headers.value(i));
         }
         return headerBuilder.build();
     }
@@ -30,7 +30,7 @@ public class OkHttpUtils {
     }
 
     public static okhttp3.MediaType toContentType(retrofit.MediaType mediaType) {
-        return okhttp3.MediaType.parse(mediaType.type());
+        return okhttp3.MediaType.parse(mediaType.toString());
     }
 
     public static okhttp3.RequestBody toOkHttpRequestBody(final retrofit.RequestBody body) {
@@ -38,6 +38,18 @@ public class HttpResponse<T, P1, P2> {
         return this.code;
     }
 
+    public HttpHeaders headers() {
+        return headers;
+    }
+
+    public P1 raw() {
+        return rawResponse;
+    }
+
+    public P2 errorBody() {
+        return errorBody;
+    }
+
     public String message() {
         return message;
     }
@@ -1,10 +1,15 @@
 package retrofit;
 
+import okio.Buffer;
+
 /**
  * @author Mr.Yuan
  * @since 2016/12/18.
  */
 public abstract class RequestBuilder {
+    private static final char[] HEX_DIGITS =
+            {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+    private static final String PATH_SEGMENT_ALWAYS_ENCODE_SET = " \"<>^`{}|\\?#";
 
     public RequestBuilder(String httpMethod, HttpUrl baseUrl, String relativeUrl,
                           HttpHeaders headers, MediaType contentType,
@@ -18,8 +23,20 @@ public abstract class RequestBuilder {
 
     public abstract void addPathParam(String name, String value, boolean encoded);
 
+    /**
+     * 整数路径参数，引擎可直接把数字写入URL而不经过中间String
+     */
+    public void addPathParam(String name, long value) {
+        // Digits and '-' never need encoding.
+        addPathParam(name, Long.toString(value), true);
+    }
+
     public abstract void addQueryParam(String name, String value, boolean encoded);
 
+    public void addQueryParam(String name, long value) {
+        addQueryParam(name, Long.toString(value), true);
+    }
+
     public abstract void addFormField(String name, String value, boolean encoded);
 
     public abstract void addPart(HttpHeaders headers, RequestBody body);
@@ -29,4 +46,56 @@ public abstract class RequestBuilder {
     public abstract void setBody(RequestBody body);
 
     public abstract <T> T build();
+
+    /**
+     * 按路径段的规则编码参数值，未声明encoded时'/'和'%'也会被编码
+     */
+    protected static String canonicalizeForPath(String input, boolean alreadyEncoded) {
+        int codePoint;
+        for (int i = 0, limit = input.length(); i < limit; i += Character.charCount(codePoint)) {
+            codePoint = input.codePointAt(i);
+            if (codePoint < 0x20 || codePoint >= 0x7f
+                    || PATH_SEGMENT_ALWAYS_ENCODE_SET.indexOf(codePoint) != -1
+                    || (!alreadyEncoded && (codePoint == '/' || codePoint == '%'))) {
+                // Slow path: the character at i requires encoding!
+                Buffer out = new Buffer();
+                out.writeUtf8(input, 0, i);
+                canonicalizeForPath(out, input, i, limit, alreadyEncoded);
+                return out.readUtf8();
+            }
+        }
+
+        // Fast path: no characters required encoding.
+        return input;
+    }
+
+    private static void canonicalizeForPath(Buffer out, String input, int pos, int limit,
+                                            boolean alreadyEncoded) {
+        Buffer utf8Buffer = null; // Lazily allocated.
+        int codePoint;
+        for (int i = pos; i < limit; i += Character.charCount(codePoint)) {
+            codePoint = input.codePointAt(i);
+            if (alreadyEncoded
+                    && (codePoint == '\t' || codePoint == '\n' || codePoint == '\f' || codePoint == '\r')) {
+                // Skip this character.
+            } else if (codePoint < 0x20 || codePoint >= 0x7f
+                    || PATH_SEGMENT_ALWAYS_ENCODE_SET.indexOf(codePoint) != -1
+                    || (!alreadyEncoded && (codePoint == '/' || codePoint == '%'))) {
+                // Percent encode this character.
+                if (utf8Buffer == null) {
+                    utf8Buffer = new Buffer();
+                }
+                utf8Buffer.writeUtf8CodePoint(codePoint);
+                while (!utf8Buffer.exhausted()) {
+                    int b = utf8Buffer.readByte() & 0xff;
+                    out.writeByte('%');
+                    out.writeByte(HEX_DIGITS[(b >> 4) & 0xf]);
+                    out.writeByte(HEX_DIGITS[b & 0xf]);
+                }
+            } else {
+                // This character doesn't need encoding. Just copy it over.
+                out.writeUtf8CodePoint(codePoint);
+            }
+        }
+    }
 }
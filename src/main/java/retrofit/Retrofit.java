@@ -1,25 +1,42 @@
 package retrofit;
 
+import retrofit.cache.CacheableAnnotationHandler;
+import retrofit.cache.HttpCache;
 import retrofit.core.*;
 import retrofit.core.HttpEngine;
+import retrofit.http.Cacheable;
+import retrofit.http.Coalesce;
 import retrofit.http.FormUrlEncoded;
 import retrofit.http.Headers;
+import retrofit.http.Hedge;
 import retrofit.http.HttpMethod;
 import retrofit.http.Multipart;
+import retrofit.http.RateLimit;
+import retrofit.http.Retry;
 import retrofit.util.Utils;
+import retrofit.util.VirtualThreads;
 
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import static retrofit.util.Utils.checkNotNull;
 
@@ -28,7 +45,17 @@ import static retrofit.util.Utils.checkNotNull;
  * @since 2016/11/28.
  */
 public class Retrofit {
+    static final String GENERATED_SUFFIX = "$$Retrofit";
+
     private final Map<Method, ServiceMethod<?,?>> serviceMethodCache = new ConcurrentHashMap<>();
+    // 每个方法只构建一次，不同方法之间互不阻塞
+    private final ConcurrentMap<Method, FutureTask<ServiceMethod<?, ?>>> serviceMethodTasks =
+            new ConcurrentHashMap<>();
+    private final Map<Class<?>, ServiceIndex> serviceIndexCache = new ConcurrentHashMap<>();
+    // 查找失败的结果不缓存，每次都重新抛出异常
+    private final ConcurrentMap<ConverterKey, HttpConverter<?, ?>> converterCache = new ConcurrentHashMap<>();
+    // 运行时生成的实现类绑定了本Retrofit的ServiceMethod，不能在Retrofit之间共用
+    final ConcurrentMap<Class<?>, SpunService.SpunClass> spunClasses = new ConcurrentHashMap<>();
 
     final HttpUrl baseUrl;
     final List<HttpConverter.Factory> converterFactories;
@@ -36,66 +63,303 @@ public class Retrofit {
     final Map<Class, MethodAnnotationHandler> annotationHandlerMap;
     final Executor callbackExecutor;
     final boolean validateEagerly;
+    final boolean spinServices;
+    final Executor validationExecutor;
     final HttpEngine httpEngine;
+    final HttpCache cache;
+    final CircuitBreakerRegistry circuitBreakers;
+    final ConcurrencyLimiterRegistry concurrencyLimiters;
+    final EndpointGroup endpointGroup;
+    // ServiceMethod实际使用的引擎：httpEngine依次包上并发限制、熔断、负载均衡和缓存，缓存命中时不受它们影响
+    final HttpEngine callEngine;
+    final RetryPolicy retryPolicy;
+    final RetryBudget retryBudget;
+    // 没有任何ConverterFactory覆写stringConverter时，所有类型都直接使用ToStringConverter
+    private final boolean hasStringConverterFactory;
 
 
     Retrofit(HttpUrl baseUrl, List<HttpConverter.Factory> converterFactories,
              List<HttpCallAdapter.Factory> adapterFactories, Executor callbackExecutor, boolean validateEagerly,
-             HttpEngine httpEngine, Map<Class, MethodAnnotationHandler> annotationHandlerMap) {
+             boolean spinServices, Executor validationExecutor, HttpEngine httpEngine, HttpCache cache,
+             CircuitBreakerRegistry circuitBreakers, ConcurrencyLimiterRegistry concurrencyLimiters, EndpointGroup endpointGroup, RetryPolicy retryPolicy, RetryBudget retryBudget, Map<Class, MethodAnnotationHandler> annotationHandlerMap) {
         this.annotationHandlerMap = annotationHandlerMap;
         this.baseUrl = baseUrl;
         this.converterFactories = converterFactories;
         this.adapterFactories = adapterFactories;
         this.callbackExecutor = callbackExecutor;
         this.validateEagerly = validateEagerly;
+        this.spinServices = spinServices;
+        this.validationExecutor = validationExecutor;
         this.httpEngine = httpEngine;
+        this.cache = cache;
+        this.circuitBreakers = circuitBreakers;
+        this.concurrencyLimiters = concurrencyLimiters;
+        this.endpointGroup = endpointGroup;
+        HttpEngine callEngine = concurrencyLimiters != null ? concurrencyLimiters.newEngine(httpEngine) : httpEngine;
+        callEngine = circuitBreakers != null ? circuitBreakers.newEngine(callEngine) : callEngine;
+        callEngine = endpointGroup != null ? new LoadBalancingHttpEngine(callEngine, endpointGroup) : callEngine;
+        this.callEngine = cache != null ? cache.newEngine(callEngine) : callEngine;
+        this.retryPolicy = retryPolicy;
+        this.retryBudget = retryBudget;
+        boolean hasStringConverterFactory = false;
+        for (HttpConverter.Factory factory : converterFactories) {
+            hasStringConverterFactory |= overridesStringConverter(factory);
+        }
+        this.hasStringConverterFactory = hasStringConverterFactory;
+    }
+
+    private static boolean overridesStringConverter(HttpConverter.Factory factory) {
+        try {
+            return factory.getClass()
+                    .getMethod("stringConverter", Type.class, Annotation[].class, Retrofit.class)
+                    .getDeclaringClass() != HttpConverter.Factory.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
     }
 
     public <T> T create(final Class<T> service) {
         Utils.validateServiceInterface(service);
+        serviceIndex(service);
         if (validateEagerly) {
             eagerlyValidateMethods(service);
         }
+        T generated = createGenerated(service);
+        if (generated != null) {
+            return generated;
+        }
+        if (spinServices) {
+            T spun = SpunService.newInstance(this, service);
+            if (spun != null) {
+                return spun;
+            }
+        }
         return (T) Proxy.newProxyInstance(service.getClassLoader(), new Class<?>[]{service},
-                new InvocationHandler() {
+                new ServiceInvocationHandler());
+    }
+
+    /**
+     * 查找由retrofit-compiler在编译期生成的实现类（{@code Service$$Retrofit}），
+     * 找不到时返回null，由动态代理兜底
+     */
+    private <T> T createGenerated(Class<T> service) {
+        Class<?> generatedClass;
+        try {
+            generatedClass = Class.forName(service.getName() + GENERATED_SUFFIX, true,
+                    service.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        try {
+            Constructor<?> constructor = generatedClass.getConstructor(Retrofit.class);
+            return service.cast(constructor.newInstance(this));
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Unable to create " + generatedClass.getName(), cause);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create " + generatedClass.getName(), e);
+        }
+    }
+
+    /**
+     * 编译期生成的实现类和{@link SpunService}都不可用时的动态代理。
+     * 方法首次调用时绑定对应的调用器并缓存在本代理内：业务方法直接绑定ServiceMethod，
+     * Object的方法绑定反射调用，之后的调用只剩一次查表和一次虚调用
+     */
+    private final class ServiceInvocationHandler implements InvocationHandler {
+        private final Map<Method, MethodInvoker> invokers = new ConcurrentHashMap<>();
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object... args) throws Throwable {
+            MethodInvoker invoker = invokers.get(method);
+            if (invoker == null) {
+                invoker = bind(method);
+                invokers.put(method, invoker);
+            }
+            return invoker.invoke(args);
+        }
 
+        private MethodInvoker bind(final Method method) {
+            // If the method is a method from Object then defer to normal invocation.
+            if (method.getDeclaringClass() == Object.class) {
+                return new MethodInvoker() {
                     @Override
-                    public Object invoke(Object proxy, Method method, Object... args)
-                            throws Throwable {
-                        // If the method is a method from Object then defer to normal invocation.
-                        if (method.getDeclaringClass() == Object.class) {
-                            return method.invoke(this, args);
-                        }
-                        //加载ServiceMethod
-                        ServiceMethod<Object,Object> serviceMethod =
-                                (ServiceMethod<Object, Object>) loadServiceMethod(method);
-                        // 生成HttpCall对象
-                        HttpCall<Object> call = serviceMethod.httpEngine.newHttpCall(serviceMethod, args);
-                        return serviceMethod.callAdapter.adapt(call);
+                    public Object invoke(Object[] args) throws Throwable {
+                        return method.invoke(ServiceInvocationHandler.this, args);
                     }
-                });
+                };
+            }
+            return loadServiceMethod(method);
+        }
     }
 
-    private void eagerlyValidateMethods(Class<?> service) {
-        for (Method method : service.getDeclaredMethods()) {
-            loadServiceMethod(method);
+    interface MethodInvoker {
+        Object invoke(Object[] args) throws Throwable;
+    }
+
+    /**
+     * 构建并校验若干服务接口的全部方法。配置了{@link Builder#validationExecutor(Executor)}时
+     * 各方法在该Executor上并行构建，否则在当前线程依次构建。抛出遇到的第一个错误
+     */
+    public void eagerlyValidateMethods(Class<?>... services) {
+        List<FutureTask<ServiceMethod<?, ?>>> tasks = new ArrayList<>();
+        for (Class<?> service : services) {
+            for (Method method : service.getDeclaredMethods()) {
+                if (!serviceMethodCache.containsKey(method)) {
+                    tasks.add(startServiceMethod(method, validationExecutor));
+                }
+            }
+        }
+        RuntimeException failure = null;
+        for (FutureTask<ServiceMethod<?, ?>> task : tasks) {
+            try {
+                awaitServiceMethod(task);
+            } catch (RuntimeException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
         }
     }
 
-    ServiceMethod<?, ?> loadServiceMethod(Method method) {
+    public ServiceMethod<?, ?> loadServiceMethod(Method method) {
         ServiceMethod<?, ?> result = serviceMethodCache.get(method);
         if (result != null) return result;
 
-        synchronized (serviceMethodCache) {
-            result = serviceMethodCache.get(method);
-            if (result == null) {
-                result = new ServiceMethod.Builder<>(this, method).build();
-                serviceMethodCache.put(method, result);
+        return awaitServiceMethod(startServiceMethod(method, null));
+    }
+
+    /**
+     * 返回构建该方法的任务，若尚无任务则登记一个并在executor（为null时为当前线程）上执行。
+     * 成功的任务一直保留，失败的任务会被移除，以便下次调用重新构建并再次报告错误
+     */
+    private FutureTask<ServiceMethod<?, ?>> startServiceMethod(final Method method, Executor executor) {
+        FutureTask<ServiceMethod<?, ?>> task = serviceMethodTasks.get(method);
+        if (task != null) return task;
+
+        final FutureTask<ServiceMethod<?, ?>> newTask = new FutureTask<ServiceMethod<?, ?>>(
+                new Callable<ServiceMethod<?, ?>>() {
+                    @Override
+                    public ServiceMethod<?, ?> call() {
+                        ServiceMethod<?, ?> result = new ServiceMethod.Builder<>(Retrofit.this, method).build();
+                        serviceMethodCache.put(method, result);
+                        return result;
+                    }
+                }) {
+            @Override
+            protected void setException(Throwable t) {
+                serviceMethodTasks.remove(method, this);
+                super.setException(t);
+            }
+        };
+        task = serviceMethodTasks.putIfAbsent(method, newTask);
+        if (task != null) return task;
+
+        if (executor == null) {
+            newTask.run();
+        } else {
+            try {
+                executor.execute(newTask);
+            } catch (RejectedExecutionException e) {
+                newTask.run();
+            }
+        }
+        return newTask;
+    }
+
+    private static ServiceMethod<?, ?> awaitServiceMethod(FutureTask<ServiceMethod<?, ?>> task) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                    if (cause instanceof Error) throw (Error) cause;
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    /**
+     * 编译期生成的方法元数据索引，首次访问时从classpath加载
+     */
+    public ServiceIndex serviceIndex(Class<?> service) {
+        ServiceIndex index = serviceIndexCache.get(service);
+        if (index == null) {
+            index = ServiceIndex.load(service);
+            serviceIndexCache.put(service, index);
+        }
+        return index;
+    }
+
+    /**
+     * 索引仅在HTTP方法注解仍由内置的HttpMethodAnnotationHandler处理时生效
+     */
+    public HttpMethodAnnotationHandler indexAnnotationHandler() {
+        MethodAnnotationHandler handler = annotationHandlerMap.get(HttpMethod.GET.class);
+        if (handler == null || handler.getClass() != HttpMethodAnnotationHandler.class) {
+            return null;
+        }
+        for (Class<?> annotationClass : HttpMethodAnnotationHandler.INDEXED_ANNOTATIONS) {
+            if (annotationHandlerMap.get(annotationClass) != handler) {
+                return null;
             }
         }
-        return result;
+        return (HttpMethodAnnotationHandler) handler;
+    }
+
+    /**
+     * 未配置缓存时为null
+     */
+    public HttpCache cache() {
+        return cache;
+    }
+
+    /**
+     * 未配置熔断时为null
+     */
+    public CircuitBreakerRegistry circuitBreakers() {
+        return circuitBreakers;
+    }
+
+    /**
+     * 未配置并发限制时为null
+     */
+    public ConcurrencyLimiterRegistry concurrencyLimiters() {
+        return concurrencyLimiters;
+    }
+
+    /**
+     * 未配置负载均衡时为null
+     */
+    public EndpointGroup endpointGroup() {
+        return endpointGroup;
+    }
+
+    /**
+     * 所有方法默认的重试策略，未设置时为null
+     */
+    public RetryPolicy retryPolicy() {
+        return retryPolicy;
     }
 
+    public RetryBudget retryBudget() {
+        return retryBudget;
+    }
 
     public HttpUrl baseUrl() {
         return baseUrl;
@@ -156,12 +420,21 @@ public class Retrofit {
         checkNotNull(parameterAnnotations, "parameterAnnotations == null");
         checkNotNull(methodAnnotations, "methodAnnotations == null");
 
+        ConverterKey key = new ConverterKey(ConverterKey.REQUEST_BODY, skipPast, type,
+                parameterAnnotations, methodAnnotations);
+        HttpConverter<?, ?> cached = converterCache.get(key);
+        if (cached != null) {
+            //noinspection unchecked
+            return (HttpConverter<T, RequestBody>) cached;
+        }
+
         int start = converterFactories.indexOf(skipPast) + 1;
         for (int i = start, count = converterFactories.size(); i < count; i++) {
             HttpConverter.Factory factory = converterFactories.get(i);
             HttpConverter<?, RequestBody> converter =
                     factory.requestBodyConverter(type, parameterAnnotations, methodAnnotations, this);
             if (converter != null) {
+                converterCache.putIfAbsent(key, converter);
                 //noinspection unchecked
                 return (HttpConverter<T, RequestBody>) converter;
             }
@@ -193,11 +466,19 @@ public class Retrofit {
         checkNotNull(type, "type == null");
         checkNotNull(annotations, "annotations == null");
 
+        ConverterKey key = new ConverterKey(ConverterKey.RESPONSE_BODY, skipPast, type, annotations, null);
+        HttpConverter<?, ?> cached = converterCache.get(key);
+        if (cached != null) {
+            //noinspection unchecked
+            return (HttpConverter<InputStream, T>) cached;
+        }
+
         int start = converterFactories.indexOf(skipPast) + 1;
         for (int i = start, count = converterFactories.size(); i < count; i++) {
             HttpConverter<InputStream, ?> converter =
                     converterFactories.get(i).responseBodyConverter(type, annotations, this);
             if (converter != null) {
+                converterCache.putIfAbsent(key, converter);
                 //noinspection unchecked
                 return (HttpConverter<InputStream, T>) converter;
             }
@@ -224,16 +505,30 @@ public class Retrofit {
         checkNotNull(type, "type == null");
         checkNotNull(annotations, "annotations == null");
 
+        if (!hasStringConverterFactory) {
+            // No factory can claim the type, skip the key and the scan.
+            return (HttpConverter<T, String>) BuiltInConverters.ToStringConverter.INSTANCE;
+        }
+
+        ConverterKey key = new ConverterKey(ConverterKey.STRING, null, type, annotations, null);
+        HttpConverter<?, ?> cached = converterCache.get(key);
+        if (cached != null) {
+            //noinspection unchecked
+            return (HttpConverter<T, String>) cached;
+        }
+
+        HttpConverter<?, String> converter = BuiltInConverters.ToStringConverter.INSTANCE;
         for (int i = 0, count = converterFactories.size(); i < count; i++) {
-            HttpConverter<?, String> converter =
+            HttpConverter<?, String> candidate =
                     converterFactories.get(i).stringConverter(type, annotations, this);
-            if (converter != null) {
-                //noinspection unchecked
-                return (HttpConverter<T, String>) converter;
+            if (candidate != null) {
+                converter = candidate;
+                break;
             }
         }
-
-        return (HttpConverter<T, String>) BuiltInConverters.ToStringConverter.INSTANCE;
+        converterCache.putIfAbsent(key, converter);
+        //noinspection unchecked
+        return (HttpConverter<T, String>) converter;
     }
 
     public Executor callbackExecutor() {
@@ -248,13 +543,70 @@ public class Retrofit {
         return annotationHandlerMap.get(annotation.annotationType());
     }
 
+    /**
+     * 转换器缓存的键：查找的种类、跳过的Factory、类型与注解
+     */
+    private static final class ConverterKey {
+        static final int REQUEST_BODY = 0;
+        static final int RESPONSE_BODY = 1;
+        static final int STRING = 2;
+
+        private final int kind;
+        private final HttpConverter.Factory skipPast;
+        private final Type type;
+        private final Annotation[] annotations;
+        private final Annotation[] methodAnnotations;
+        private final int hashCode;
+
+        ConverterKey(int kind, HttpConverter.Factory skipPast, Type type,
+                     Annotation[] annotations, Annotation[] methodAnnotations) {
+            this.kind = kind;
+            this.skipPast = skipPast;
+            this.type = type;
+            this.annotations = annotations;
+            this.methodAnnotations = methodAnnotations;
+            int result = kind;
+            result = 31 * result + System.identityHashCode(skipPast);
+            result = 31 * result + type.hashCode();
+            result = 31 * result + Arrays.hashCode(annotations);
+            result = 31 * result + Arrays.hashCode(methodAnnotations);
+            this.hashCode = result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ConverterKey)) return false;
+            ConverterKey other = (ConverterKey) o;
+            return kind == other.kind
+                    && skipPast == other.skipPast
+                    && hashCode == other.hashCode
+                    && type.equals(other.type)
+                    && Arrays.equals(annotations, other.annotations)
+                    && Arrays.equals(methodAnnotations, other.methodAnnotations);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
     public static final class Builder {
         private HttpUrl baseUrl;
         private final List<HttpConverter.Factory> converterFactories = new ArrayList<>();
         private final List<HttpCallAdapter.Factory> adapterFactories = new ArrayList<>();
         private Executor callbackExecutor;
         private boolean validateEagerly;
+        private boolean spinServices;
+        private Executor validationExecutor;
         private HttpEngine httpEngine;
+        private HttpCache cache;
+        private CircuitBreakerRegistry circuitBreakers;
+        private ConcurrencyLimiterRegistry concurrencyLimiters;
+        private EndpointGroup endpointGroup;
+        private RetryPolicy retryPolicy;
+        private RetryBudget retryBudget;
         private Map<Class, MethodAnnotationHandler> annotationHandlerMap;
 
         public Builder() {
@@ -276,6 +628,11 @@ public class Retrofit {
             addMethodAnnotationHandler(Headers.class,handler);
             addMethodAnnotationHandler(Multipart.class,handler);
             addMethodAnnotationHandler(FormUrlEncoded.class,handler);
+            addMethodAnnotationHandler(Coalesce.class, new CoalesceAnnotationHandler());
+            addMethodAnnotationHandler(Cacheable.class, new CacheableAnnotationHandler());
+            addMethodAnnotationHandler(Hedge.class, new HedgeAnnotationHandler());
+            addMethodAnnotationHandler(Retry.class, new RetryAnnotationHandler());
+            addMethodAnnotationHandler(RateLimit.class, new RateLimitAnnotationHandler());
         }
 
         public Builder(Retrofit retrofit) {
@@ -287,7 +644,15 @@ public class Retrofit {
             adapterFactories.remove(adapterFactories.size() - 1);
             callbackExecutor = retrofit.callbackExecutor;
             validateEagerly = retrofit.validateEagerly;
+            spinServices = retrofit.spinServices;
+            validationExecutor = retrofit.validationExecutor;
             httpEngine = retrofit.httpEngine;
+            cache = retrofit.cache;
+            circuitBreakers = retrofit.circuitBreakers;
+            concurrencyLimiters = retrofit.concurrencyLimiters;
+            endpointGroup = retrofit.endpointGroup;
+            retryPolicy = retrofit.retryPolicy;
+            retryBudget = retrofit.retryBudget;
         }
 
         public Builder engine(HttpEngine engine) {
@@ -296,6 +661,54 @@ public class Retrofit {
             return this;
         }
 
+        /**
+         * 在引擎外包一层HTTP缓存，对所有ServiceMethod生效
+         */
+        public Builder cache(HttpCache cache) {
+            this.cache = checkNotNull(cache, "cache == null");
+            return this;
+        }
+
+        /**
+         * 在引擎外包一层熔断，按方法或主机统计，对所有ServiceMethod生效
+         */
+        public Builder circuitBreakers(CircuitBreakerRegistry circuitBreakers) {
+            this.circuitBreakers = checkNotNull(circuitBreakers, "circuitBreakers == null");
+            return this;
+        }
+
+        /**
+         * 按主机自适应地限制并发，排队和拒绝都发生在占用连接之前，对所有ServiceMethod生效
+         */
+        public Builder concurrencyLimiters(ConcurrencyLimiterRegistry concurrencyLimiters) {
+            this.concurrencyLimiters = checkNotNull(concurrencyLimiters, "concurrencyLimiters == null");
+            return this;
+        }
+
+        /**
+         * 每次调用从分组中选择一个base URL，分组可以在运行时更新；未设置baseUrl时以分组的第一个端点作为baseUrl
+         */
+        public Builder endpointGroup(EndpointGroup endpointGroup) {
+            this.endpointGroup = checkNotNull(endpointGroup, "endpointGroup == null");
+            return this;
+        }
+
+        /**
+         * 所有幂等方法默认的重试策略，单个方法可以用@Retry覆盖
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = checkNotNull(retryPolicy, "retryPolicy == null");
+            return this;
+        }
+
+        /**
+         * 所有方法共用的重试预算，默认为new RetryBudget(0.1, 10)
+         */
+        public Builder retryBudget(RetryBudget retryBudget) {
+            this.retryBudget = checkNotNull(retryBudget, "retryBudget == null");
+            return this;
+        }
+
         public Builder addMethodAnnotationHandler(Class annotationClass, MethodAnnotationHandler methodAnnotationHandler) {
             if (!annotationClass.isAnnotation()) {
                 throw new IllegalArgumentException(Utils.format("%s isn't an annotation", annotationClass));
@@ -339,12 +752,42 @@ public class Retrofit {
             return this;
         }
 
+        /**
+         * 在虚拟线程上回调HttpCallback，需要JDK 21+，否则抛出IllegalStateException
+         */
+        public Builder virtualThreadCallbacks() {
+            VirtualThreads.checkAvailable();
+            this.callbackExecutor = VirtualThreads.shared();
+            return this;
+        }
+
         public Builder validateEagerly(boolean validateEagerly) {
             this.validateEagerly = validateEagerly;
             return this;
         }
 
+        /**
+         * 没有编译期生成的实现类时，在运行时为接口生成实现类代替动态代理，见{@link SpunService}。
+         * create()会构建接口的全部方法，默认关闭
+         */
+        public Builder spinServices(boolean spinServices) {
+            this.spinServices = spinServices;
+            return this;
+        }
+
+        /**
+         * 用于并行构建ServiceMethod的Executor，作用于validateEagerly及{@link #eagerlyValidateMethods}
+         */
+        public Builder validationExecutor(Executor executor) {
+            this.validationExecutor = checkNotNull(executor, "executor == null");
+            return this;
+        }
+
         public Retrofit build() {
+            HttpUrl baseUrl = this.baseUrl;
+            if (baseUrl == null && endpointGroup != null && !endpointGroup.isEmpty()) {
+                baseUrl = endpointGroup.endpoints().get(0).url();
+            }
             if (baseUrl == null) {
                 throw new IllegalStateException("Base URL required.");
             }
@@ -357,11 +800,18 @@ public class Retrofit {
             //remove it
             adapterFactories.add(DefaultCallAdapterFactory.getInstance());
 
-            // Make a defensive copy of the converters.
-            List<HttpConverter.Factory> converterFactories = new ArrayList<>(this.converterFactories);
+            // Make a defensive copy of the converters. Lookups are cached, so the list must not change.
+            List<HttpConverter.Factory> converterFactories =
+                    Collections.unmodifiableList(new ArrayList<>(this.converterFactories));
+
+            RetryBudget retryBudget = this.retryBudget;
+            if (retryBudget == null) {
+                retryBudget = new RetryBudget(0.1, 10);
+            }
 
-            return new Retrofit(baseUrl, converterFactories, adapterFactories,
-                    callbackExecutor, validateEagerly, httpEngine, annotationHandlerMap);
+            return new Retrofit(baseUrl, converterFactories, adapterFactories, callbackExecutor, validateEagerly,
+                    spinServices, validationExecutor, httpEngine, cache, circuitBreakers, concurrencyLimiters, endpointGroup, retryPolicy, retryBudget,
+                    annotationHandlerMap);
         }
     }
 }
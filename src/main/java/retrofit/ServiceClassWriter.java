@@ -0,0 +1,498 @@
+package retrofit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 生成{@link SpunService}子类及其参数类的class文件（Java 7格式）。
+ * 每个ServiceMethod的引擎、CallAdapter和ParameterHandler都保存在static final字段中，
+ * 由类的静态初始化从{@link SpunService#constants()}取得。接口方法编译为：
+ * <pre>
+ * return (R) adapter$i.adapt(engine$i.newHttpCall(serviceMethod$i, new Arguments$i(p0, p1, ...)));
+ * </pre>
+ * 没有参数的方法传入null。参数类继承CallArguments，write()依次调用各参数的handler，只在写入请求时装箱。
+ * 生成的方法中都没有分支，不需要StackMapTable
+ */
+final class ServiceClassWriter {
+    private static final int CLASS_VERSION = 51;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_PROTECTED = 0x0004;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    private static final int ACONST_NULL = 0x01;
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int ILOAD = 0x15;
+    private static final int LLOAD = 0x16;
+    private static final int FLOAD = 0x17;
+    private static final int DLOAD = 0x18;
+    private static final int ALOAD = 0x19;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ASTORE_0 = 0x4b;
+    private static final int AALOAD = 0x32;
+    private static final int AASTORE = 0x53;
+    private static final int DUP = 0x59;
+    private static final int ARETURN = 0xb0;
+    private static final int RETURN = 0xb1;
+    private static final int GETSTATIC = 0xb2;
+    private static final int PUTSTATIC = 0xb3;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int NEW = 0xbb;
+    private static final int ANEWARRAY = 0xbd;
+    private static final int CHECKCAST = 0xc0;
+    private static final int WIDE = 0xc4;
+
+    private static final String SPUN_SERVICE = "retrofit/SpunService";
+    private static final String SERVICE_METHOD = "retrofit/ServiceMethod";
+    private static final String HTTP_ENGINE = "retrofit/core/HttpEngine";
+    private static final String CALL_ADAPTER = "retrofit/core/HttpCallAdapter";
+    private static final String HTTP_CALL = "retrofit/core/HttpCall";
+    private static final String CALL_ARGUMENTS = "retrofit/core/CallArguments";
+    private static final String PARAMETER_HANDLER = "retrofit/core/ParameterHandler";
+    private static final String REQUEST_BUILDER = "retrofit/RequestBuilder";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String CONSTANTS_DESCRIPTOR = "()[Ljava/lang/Object;";
+
+    // 服务类每个方法在常量数组中占的位置：ServiceMethod、引擎、CallAdapter
+    static final int CONSTANTS_PER_METHOD = 3;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndexes = new HashMap<>();
+    private int poolCount = 1;
+
+    private ServiceClassWriter() {
+    }
+
+    /**
+     * 服务类，argumentsClassNames[i]为第i个方法的参数类，没有参数的方法为null
+     */
+    static byte[] writeService(String className, Class<?> service, Method[] methods,
+                               String[] argumentsClassNames) {
+        try {
+            return new ServiceClassWriter().writeServiceClass(internalName(className), service, methods,
+                    argumentsClassNames);
+        } catch (IOException e) {
+            throw new AssertionError(e); // In-memory streams don't throw.
+        }
+    }
+
+    /**
+     * 一个方法的参数类，常量数组依次为各参数的ParameterHandler
+     */
+    static byte[] writeArguments(String className, Class<?>[] parameterTypes) {
+        try {
+            return new ServiceClassWriter().writeArgumentsClass(internalName(className), parameterTypes);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private byte[] writeServiceClass(String className, Class<?> service, Method[] methods,
+                                     String[] argumentsClassNames) throws IOException {
+        if (methods.length > Short.MAX_VALUE / CONSTANTS_PER_METHOD) {
+            throw new IllegalArgumentException("Too many methods in " + service.getName());
+        }
+        ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream();
+        DataOutputStream fields = new DataOutputStream(fieldBytes);
+        for (int i = 0; i < methods.length; i++) {
+            writeField(fields, ACC_PRIVATE | ACC_STATIC | ACC_FINAL, "serviceMethod$" + i, "L" + SERVICE_METHOD + ";");
+            writeField(fields, ACC_PRIVATE | ACC_STATIC | ACC_FINAL, "engine$" + i, "L" + HTTP_ENGINE + ";");
+            writeField(fields, ACC_PRIVATE | ACC_STATIC | ACC_FINAL, "adapter$" + i, "L" + CALL_ADAPTER + ";");
+        }
+
+        ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(methodBytes);
+        String[] constantTypes = new String[methods.length * CONSTANTS_PER_METHOD];
+        String[] constantNames = new String[constantTypes.length];
+        for (int i = 0; i < methods.length; i++) {
+            constantNames[i * CONSTANTS_PER_METHOD] = "serviceMethod$" + i;
+            constantTypes[i * CONSTANTS_PER_METHOD] = SERVICE_METHOD;
+            constantNames[i * CONSTANTS_PER_METHOD + 1] = "engine$" + i;
+            constantTypes[i * CONSTANTS_PER_METHOD + 1] = HTTP_ENGINE;
+            constantNames[i * CONSTANTS_PER_METHOD + 2] = "adapter$" + i;
+            constantTypes[i * CONSTANTS_PER_METHOD + 2] = CALL_ADAPTER;
+        }
+        writeStaticInitializer(out, className, constantNames, constantTypes);
+        writeConstructor(out, SPUN_SERVICE, new Class<?>[0], className);
+        for (int i = 0; i < methods.length; i++) {
+            String argumentsClass = argumentsClassNames[i] != null ? internalName(argumentsClassNames[i]) : null;
+            writeServiceMethod(out, className, methods[i], i, argumentsClass);
+        }
+        return writeClass(className, SPUN_SERVICE, internalName(service.getName()),
+                methods.length * CONSTANTS_PER_METHOD, fieldBytes, methods.length + 2, methodBytes);
+    }
+
+    private byte[] writeArgumentsClass(String className, Class<?>[] parameterTypes) throws IOException {
+        if (parameterTypes.length > Short.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("Too many parameters in " + className);
+        }
+        ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream();
+        DataOutputStream fields = new DataOutputStream(fieldBytes);
+        String[] constantNames = new String[parameterTypes.length];
+        String[] constantTypes = new String[parameterTypes.length];
+        for (int p = 0; p < parameterTypes.length; p++) {
+            constantNames[p] = "handler$" + p;
+            constantTypes[p] = PARAMETER_HANDLER;
+            writeField(fields, ACC_PRIVATE | ACC_STATIC | ACC_FINAL, constantNames[p], "L" + PARAMETER_HANDLER + ";");
+            writeField(fields, ACC_PRIVATE | ACC_FINAL, "p" + p, descriptor(parameterTypes[p]));
+        }
+
+        ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(methodBytes);
+        writeStaticInitializer(out, className, constantNames, constantTypes);
+        writeConstructor(out, CALL_ARGUMENTS, parameterTypes, className);
+        writeArgumentsWrite(out, className, parameterTypes);
+        writeArgumentsToArray(out, className, parameterTypes);
+        return writeClass(className, CALL_ARGUMENTS, null, parameterTypes.length * 2, fieldBytes, 4, methodBytes);
+    }
+
+    private byte[] writeClass(String className, String superClassName, String interfaceName, int fieldCount,
+                              ByteArrayOutputStream fieldBytes, int methodCount,
+                              ByteArrayOutputStream methodBytes) throws IOException {
+        int thisClass = classRef(className);
+        int superClass = classRef(superClassName);
+        int serviceInterface = interfaceName != null ? classRef(interfaceName) : 0;
+
+        ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+        DataOutputStream classFile = new DataOutputStream(classBytes);
+        classFile.writeInt(0xCAFEBABE);
+        classFile.writeShort(0);
+        classFile.writeShort(CLASS_VERSION);
+        classFile.writeShort(poolCount);
+        poolBytes.writeTo(classFile);
+        classFile.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC);
+        classFile.writeShort(thisClass);
+        classFile.writeShort(superClass);
+        if (interfaceName != null) {
+            classFile.writeShort(1);
+            classFile.writeShort(serviceInterface);
+        } else {
+            classFile.writeShort(0);
+        }
+        classFile.writeShort(fieldCount);
+        fieldBytes.writeTo(classFile);
+        classFile.writeShort(methodCount);
+        methodBytes.writeTo(classFile);
+        classFile.writeShort(0); // attributes
+        return classBytes.toByteArray();
+    }
+
+    /**
+     * static {Object[] c = SpunService.constants(); name0 = (Type0) c[0]; ...}
+     */
+    private void writeStaticInitializer(DataOutputStream out, String className, String[] names,
+                                        String[] types) throws IOException {
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        DataOutputStream c = new DataOutputStream(code);
+        c.writeByte(INVOKESTATIC);
+        c.writeShort(methodRef(SPUN_SERVICE, "constants", CONSTANTS_DESCRIPTOR));
+        c.writeByte(ASTORE_0);
+        for (int k = 0; k < names.length; k++) {
+            c.writeByte(ALOAD_0);
+            pushInt(c, k);
+            c.writeByte(AALOAD);
+            c.writeByte(CHECKCAST);
+            c.writeShort(classRef(types[k]));
+            c.writeByte(PUTSTATIC);
+            c.writeShort(fieldRef(className, names[k], "L" + types[k] + ";"));
+        }
+        c.writeByte(RETURN);
+        writeMethodInfo(out, ACC_STATIC, "<clinit>", "()V", 2, 1, code.toByteArray());
+    }
+
+    /**
+     * 调用父类的无参构造方法，再把参数依次存入字段p0、p1...
+     */
+    private void writeConstructor(DataOutputStream out, String superClassName, Class<?>[] parameterTypes,
+                                  String className) throws IOException {
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        DataOutputStream c = new DataOutputStream(code);
+        c.writeByte(ALOAD_0);
+        c.writeByte(INVOKESPECIAL);
+        c.writeShort(methodRef(superClassName, "<init>", "()V"));
+        int slot = 1;
+        for (int p = 0; p < parameterTypes.length; p++) {
+            Class<?> type = parameterTypes[p];
+            c.writeByte(ALOAD_0);
+            load(c, type, slot);
+            c.writeByte(PUTFIELD);
+            c.writeShort(fieldRef(className, "p" + p, descriptor(type)));
+            slot += size(type);
+        }
+        c.writeByte(RETURN);
+        writeMethodInfo(out, ACC_PUBLIC, "<init>", methodDescriptor(parameterTypes, void.class), 3, slot,
+                code.toByteArray());
+    }
+
+    private void writeServiceMethod(DataOutputStream out, String className, Method method, int index,
+                                    String argumentsClass) throws IOException {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        DataOutputStream c = new DataOutputStream(code);
+        c.writeByte(GETSTATIC);
+        c.writeShort(fieldRef(className, "adapter$" + index, "L" + CALL_ADAPTER + ";"));
+        c.writeByte(GETSTATIC);
+        c.writeShort(fieldRef(className, "engine$" + index, "L" + HTTP_ENGINE + ";"));
+        c.writeByte(GETSTATIC);
+        c.writeShort(fieldRef(className, "serviceMethod$" + index, "L" + SERVICE_METHOD + ";"));
+        int slot = 1;
+        if (argumentsClass == null) {
+            // Same as the proxy, methods without parameters pass null.
+            c.writeByte(ACONST_NULL);
+            c.writeByte(INVOKEVIRTUAL);
+            c.writeShort(methodRef(HTTP_ENGINE, "newHttpCall",
+                    "(L" + SERVICE_METHOD + ";[Ljava/lang/Object;)L" + HTTP_CALL + ";"));
+        } else {
+            c.writeByte(NEW);
+            c.writeShort(classRef(argumentsClass));
+            c.writeByte(DUP);
+            for (Class<?> type : parameterTypes) {
+                load(c, type, slot);
+                slot += size(type);
+            }
+            c.writeByte(INVOKESPECIAL);
+            c.writeShort(methodRef(argumentsClass, "<init>", methodDescriptor(parameterTypes, void.class)));
+            c.writeByte(INVOKEVIRTUAL);
+            c.writeShort(methodRef(HTTP_ENGINE, "newHttpCall",
+                    "(L" + SERVICE_METHOD + ";L" + CALL_ARGUMENTS + ";)L" + HTTP_CALL + ";"));
+        }
+        c.writeByte(INVOKEINTERFACE);
+        c.writeShort(interfaceMethodRef(CALL_ADAPTER, "adapt", "(L" + HTTP_CALL + ";)Ljava/lang/Object;"));
+        c.writeByte(2);
+        c.writeByte(0);
+        c.writeByte(CHECKCAST);
+        c.writeShort(classRef(classRefName(method.getReturnType())));
+        c.writeByte(ARETURN);
+        // The adapter, the engine, the ServiceMethod, two references to the arguments and the parameters.
+        writeMethodInfo(out, ACC_PUBLIC, method.getName(),
+                methodDescriptor(parameterTypes, method.getReturnType()), 5 + slot - 1, slot, code.toByteArray());
+    }
+
+    /**
+     * write(RequestBuilder builder) {handler$0.apply(builder, p0); ...}，基本类型在这里装箱
+     */
+    private void writeArgumentsWrite(DataOutputStream out, String className, Class<?>[] parameterTypes)
+            throws IOException {
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        DataOutputStream c = new DataOutputStream(code);
+        for (int p = 0; p < parameterTypes.length; p++) {
+            c.writeByte(GETSTATIC);
+            c.writeShort(fieldRef(className, "handler$" + p, "L" + PARAMETER_HANDLER + ";"));
+            c.writeByte(ALOAD_1);
+            loadField(c, className, p, parameterTypes[p]);
+            c.writeByte(INVOKEVIRTUAL);
+            c.writeShort(methodRef(PARAMETER_HANDLER, "apply",
+                    "(L" + REQUEST_BUILDER + ";Ljava/lang/Object;)V"));
+        }
+        c.writeByte(RETURN);
+        // The handler, the builder and a long or double value.
+        writeMethodInfo(out, ACC_PUBLIC, "write", "(L" + REQUEST_BUILDER + ";)V", 4, 2, code.toByteArray());
+    }
+
+    /**
+     * toArray() {return new Object[]{p0, p1, ...};}
+     */
+    private void writeArgumentsToArray(DataOutputStream out, String className, Class<?>[] parameterTypes)
+            throws IOException {
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        DataOutputStream c = new DataOutputStream(code);
+        pushInt(c, parameterTypes.length);
+        c.writeByte(ANEWARRAY);
+        c.writeShort(classRef(OBJECT));
+        for (int p = 0; p < parameterTypes.length; p++) {
+            c.writeByte(DUP);
+            pushInt(c, p);
+            loadField(c, className, p, parameterTypes[p]);
+            c.writeByte(AASTORE);
+        }
+        c.writeByte(ARETURN);
+        // The array, its copy, an index and a long or double value.
+        writeMethodInfo(out, ACC_PROTECTED, "toArray", "()[Ljava/lang/Object;", 5, 1, code.toByteArray());
+    }
+
+    /**
+     * 读取字段p，基本类型装箱
+     */
+    private void loadField(DataOutputStream c, String className, int p, Class<?> type) throws IOException {
+        c.writeByte(ALOAD_0);
+        c.writeByte(GETFIELD);
+        c.writeShort(fieldRef(className, "p" + p, descriptor(type)));
+        if (type.isPrimitive()) {
+            Class<?> boxed = ServiceMethod.boxIfPrimitive(type);
+            c.writeByte(INVOKESTATIC);
+            c.writeShort(methodRef(internalName(boxed.getName()), "valueOf",
+                    "(" + descriptor(type) + ")" + descriptor(boxed)));
+        }
+    }
+
+    private void writeField(DataOutputStream out, int access, String name, String descriptor) throws IOException {
+        out.writeShort(access);
+        out.writeShort(utf8(name));
+        out.writeShort(utf8(descriptor));
+        out.writeShort(0); // attributes
+    }
+
+    private void writeMethodInfo(DataOutputStream out, int access, String name, String descriptor, int maxStack,
+                                 int maxLocals, byte[] code) throws IOException {
+        out.writeShort(access);
+        out.writeShort(utf8(name));
+        out.writeShort(utf8(descriptor));
+        out.writeShort(1);
+        out.writeShort(utf8("Code"));
+        out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+
+    private static void pushInt(DataOutputStream c, int value) throws IOException {
+        if (value <= 5) {
+            c.writeByte(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            c.writeByte(BIPUSH);
+            c.writeByte(value);
+        } else {
+            c.writeByte(SIPUSH);
+            c.writeShort(value);
+        }
+    }
+
+    private static void load(DataOutputStream c, Class<?> type, int slot) throws IOException {
+        int opcode;
+        if (type == long.class) {
+            opcode = LLOAD;
+        } else if (type == float.class) {
+            opcode = FLOAD;
+        } else if (type == double.class) {
+            opcode = DLOAD;
+        } else if (type.isPrimitive()) {
+            opcode = ILOAD;
+        } else {
+            opcode = ALOAD;
+        }
+        if (slot <= 0xff) {
+            c.writeByte(opcode);
+            c.writeByte(slot);
+        } else {
+            c.writeByte(WIDE);
+            c.writeByte(opcode);
+            c.writeShort(slot);
+        }
+    }
+
+    private static int size(Class<?> type) {
+        return type == long.class || type == double.class ? 2 : 1;
+    }
+
+    private int utf8(String value) throws IOException {
+        Integer index = poolIndexes.get("U" + value);
+        if (index != null) return index;
+        pool.writeByte(1);
+        pool.writeUTF(value);
+        return register("U" + value);
+    }
+
+    private int classRef(String internalName) throws IOException {
+        Integer index = poolIndexes.get("C" + internalName);
+        if (index != null) return index;
+        int name = utf8(internalName);
+        pool.writeByte(7);
+        pool.writeShort(name);
+        return register("C" + internalName);
+    }
+
+    private int fieldRef(String owner, String name, String descriptor) throws IOException {
+        return memberRef(9, "F", owner, name, descriptor);
+    }
+
+    private int methodRef(String owner, String name, String descriptor) throws IOException {
+        return memberRef(10, "M", owner, name, descriptor);
+    }
+
+    private int interfaceMethodRef(String owner, String name, String descriptor) throws IOException {
+        return memberRef(11, "I", owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String kind, String owner, String name, String descriptor) throws IOException {
+        String key = kind + owner + '.' + name + descriptor;
+        Integer index = poolIndexes.get(key);
+        if (index != null) return index;
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        pool.writeByte(tag);
+        pool.writeShort(ownerIndex);
+        pool.writeShort(nameAndType);
+        return register(key);
+    }
+
+    private int nameAndType(String name, String descriptor) throws IOException {
+        String key = "N" + name + descriptor;
+        Integer index = poolIndexes.get(key);
+        if (index != null) return index;
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        pool.writeByte(12);
+        pool.writeShort(nameIndex);
+        pool.writeShort(descriptorIndex);
+        return register(key);
+    }
+
+    private int register(String key) {
+        int index = poolCount++;
+        poolIndexes.put(key, index);
+        return index;
+    }
+
+    private static String internalName(String className) {
+        return className.replace('.', '/');
+    }
+
+    /**
+     * CONSTANT_Class中的名称：数组使用描述符，其它类型使用内部名
+     */
+    private static String classRefName(Class<?> type) {
+        return type.isArray() ? descriptor(type) : internalName(type.getName());
+    }
+
+    private static String methodDescriptor(Class<?>[] parameterTypes, Class<?> returnType) {
+        StringBuilder descriptor = new StringBuilder("(");
+        for (Class<?> parameterType : parameterTypes) {
+            descriptor.append(descriptor(parameterType));
+        }
+        return descriptor.append(')').append(descriptor(returnType)).toString();
+    }
+
+    private static String descriptor(Class<?> type) {
+        if (type.isArray()) return internalName(type.getName());
+        if (type == void.class) return "V";
+        if (type == boolean.class) return "Z";
+        if (type == byte.class) return "B";
+        if (type == char.class) return "C";
+        if (type == short.class) return "S";
+        if (type == int.class) return "I";
+        if (type == long.class) return "J";
+        if (type == float.class) return "F";
+        if (type == double.class) return "D";
+        return "L" + internalName(type.getName()) + ";";
+    }
+}
@@ -1,9 +1,18 @@
 package retrofit;
 
+import retrofit.core.BuiltInParameterHandlers;
+import retrofit.core.CallArguments;
+import retrofit.core.HttpCall;
 import retrofit.core.HttpCallAdapter;
 import retrofit.core.HttpConverter;
 import retrofit.core.MethodAnnotationHandler;
+import retrofit.core.HttpMethodAnnotationHandler;
 import retrofit.core.ParameterHandler;
+import retrofit.core.PathTemplate;
+import retrofit.core.RequestWriter;
+import retrofit.core.RetryPolicy;
+import retrofit.core.RetryingHttpEngine;
+import retrofit.core.ServiceIndex;
 import retrofit.core.HttpEngine;
 import retrofit.http.*;
 import retrofit.util.Utils;
@@ -16,45 +25,87 @@ import java.lang.reflect.Type;
 import java.net.URI;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 
 /**
  * @author Mr.Yuan
  * @since 2016/11/28.
  */
-public class ServiceMethod<T,R> {
+public class ServiceMethod<T,R> implements Retrofit.MethodInvoker {
     // Upper and lower characters, digits, underscores, and hyphens, starting with a character.
     static final String PARAM = "[a-zA-Z][a-zA-Z0-9_-]*";
     static final Pattern PARAM_URL_REGEX = Pattern.compile("\\{(" + PARAM + ")\\}");
     static final Pattern PARAM_NAME_REGEX = Pattern.compile(PARAM);
 
     final HttpCallAdapter<T,R> callAdapter;
+    public final Method method;
 
     public final HttpUrl baseUrl;
     public final HttpConverter<InputStream, T> responseConverter;
     public final String httpMethod;
     public final String relativeUrl;
+    public final PathTemplate pathTemplate;
     public final HttpHeaders headers;
     public final MediaType contentType;
     public final boolean hasBody;
     public final boolean isFormEncoded;
     public final boolean isMultipart;
     public final ParameterHandler<?>[] parameterHandlers;
+    public final RequestWriter requestWriter;
     public final HttpEngine httpEngine;
+    // 为null时回调在引擎自己的线程上执行
+    public final Executor callbackExecutor;
+    public final Object engineAttachment;
+    // 每个参数都由内置handler以默认的toString转换处理，编译期生成的实现类可以使用invoke(CallArguments)
+    public final boolean typedArguments;
 
     ServiceMethod(Builder<T,R> builder) {
         this.callAdapter = builder.callAdapter;
+        this.method = builder.method;
         this.baseUrl = builder.retrofit.baseUrl();
         this.responseConverter = builder.responseConverter;
         this.httpMethod = builder.httpMethod;
         this.relativeUrl = builder.relativeUrl;
+        this.pathTemplate = builder.pathTemplate;
         this.headers = builder.headers;
         this.contentType = builder.contentType;
         this.hasBody = builder.hasBody;
         this.isFormEncoded = builder.isFormEncoded;
         this.isMultipart = builder.isMultipart;
         this.parameterHandlers = builder.parameterHandlers;
-        this.httpEngine = builder.retrofit.httpEngine;
+        this.requestWriter = RequestWriter.of(builder.parameterHandlers);
+        this.typedArguments = isTypedArguments(builder.parameterHandlers);
+        this.httpEngine = builder.httpEngine;
+        this.callbackExecutor = builder.retrofit.callbackExecutor();
+        // 必须放在最后，引擎会读取上面已赋值的字段
+        this.engineAttachment = httpEngine.createAttachment(this);
+    }
+
+    /**
+     * 创建HttpCall并交给CallAdapter适配，动态代理与编译期生成的实现类共用此入口
+     */
+    @Override
+    public Object invoke(Object[] args) {
+        HttpCall call = httpEngine.newHttpCall(this, args);
+        return callAdapter.adapt(call);
+    }
+
+    /**
+     * 编译期生成的实现类在{@link #typedArguments}为true时使用的入口，参数不装箱
+     */
+    public Object invoke(CallArguments arguments) {
+        HttpCall call = httpEngine.newHttpCall(this, arguments);
+        return callAdapter.adapt(call);
+    }
+
+    private static boolean isTypedArguments(ParameterHandler<?>[] handlers) {
+        for (ParameterHandler<?> handler : handlers) {
+            if (!BuiltInParameterHandlers.isDefaultConversion(handler)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public static final class Builder<T,R> {
@@ -63,6 +114,9 @@ public class ServiceMethod<T,R> {
         final Annotation[] methodAnnotations;
         final Annotation[][] parameterAnnotationsArray;
         final Type[] parameterTypes;
+        // 索引覆盖了方法的全部注解和参数时，上面三项来自索引，不再反射读取
+        final ServiceIndex.Entry indexEntry;
+        final HttpMethodAnnotationHandler indexHandler;
         public Type responseType;
         public boolean gotField;
         public boolean gotPart;
@@ -75,29 +129,53 @@ public class ServiceMethod<T,R> {
         public boolean isFormEncoded;
         public boolean isMultipart;
         public String relativeUrl;
+        public PathTemplate pathTemplate;
         public HttpHeaders headers;
         public MediaType contentType;
         public Set<String> relativeUrlParamNames;
         public ParameterHandler<?>[] parameterHandlers;
         public HttpConverter<InputStream, T> responseConverter;
         public HttpCallAdapter<T,R> callAdapter;
+        // 方法注解可以用ForwardingHttpEngine装饰该方法使用的引擎
+        public HttpEngine httpEngine;
+        // 默认来自Retrofit.Builder.retryPolicy，可以被@Retry替换；为null时不重试
+        public RetryPolicy retryPolicy;
 
 
         Builder(Retrofit retrofit, Method method) {
             this.retrofit = retrofit;
             this.method = method;
+            // Converter and call adapter factories always see the method annotations; the loop in
+            // build() skips the ones the index already covers.
             this.methodAnnotations = method.getAnnotations();
-            this.parameterTypes = method.getGenericParameterTypes();
-            this.parameterAnnotationsArray = method.getParameterAnnotations();
+            ServiceIndex.Entry entry = retrofit.serviceIndex(method.getDeclaringClass()).get(method);
+            this.indexHandler = entry != null ? retrofit.indexAnnotationHandler() : null;
+            this.indexEntry = indexHandler != null ? entry : null;
+            if (indexEntry != null && indexEntry.parameterTypes != null) {
+                this.parameterTypes = indexEntry.parameterTypes;
+                this.parameterAnnotationsArray = indexEntry.parameterAnnotations;
+            } else {
+                this.parameterTypes = method.getGenericParameterTypes();
+                this.parameterAnnotationsArray = method.getParameterAnnotations();
+            }
+            this.httpEngine = retrofit.callEngine;
+            this.retryPolicy = retrofit.retryPolicy();
         }
 
         public ServiceMethod<T,R> build() {
             callAdapter = createCallAdapter();
             responseType = callAdapter.responseType();
             responseConverter = createResponseConverter();
-            //处理methodAnnotations
+            //处理methodAnnotations，编译期索引已覆盖的注解不再解析
+            if (indexEntry != null) {
+                indexHandler.applyIndex(indexEntry, this);
+            }
             for (Annotation annotation : methodAnnotations) {
                 MethodAnnotationHandler methodAnnotationHandler = retrofit.getMethodAnnotationHandler(annotation);
+                if (indexHandler != null && methodAnnotationHandler == indexHandler
+                        && HttpMethodAnnotationHandler.isIndexed(annotation)) {
+                    continue;
+                }
                 if (methodAnnotationHandler == null) {
                     System.err.println("missing annotation handler for annotation " + annotation);
                     continue;
@@ -123,9 +201,11 @@ public class ServiceMethod<T,R> {
             //针对parameter Annotations进行校验
             int parameterCount = parameterAnnotationsArray.length;
             parameterHandlers = new ParameterHandler<?>[parameterCount];
+            boolean indexedParameters = indexEntry != null && indexEntry.parameterTypes != null;
             for (int p = 0; p < parameterCount; p++) {
                 Type parameterType = parameterTypes[p];
-                if (Utils.hasUnresolvableType(parameterType)) {
+                // Indexed parameter types are plain classes.
+                if (!indexedParameters && Utils.hasUnresolvableType(parameterType)) {
                     throw parameterError(p, "Parameter type must not include a type variable or wildcard: %s",
                             parameterType);
                 }
@@ -150,6 +230,10 @@ public class ServiceMethod<T,R> {
             if (isMultipart && !gotPart) {
                 throw methodError("Multipart method must contain at least one @Part.");
             }
+            if (retryPolicy != null && retryPolicy.maxAttempts() > 1) {
+                // Outermost, so that every attempt goes through the other decorators again.
+                httpEngine = new RetryingHttpEngine(httpEngine, retryPolicy, retrofit.retryBudget());
+            }
             return new ServiceMethod<>(this);
         }
 
@@ -511,9 +595,8 @@ public class ServiceMethod<T,R> {
         }
 
         private HttpConverter<InputStream, T> createResponseConverter() {
-            Annotation[] annotations = method.getAnnotations();
             try {
-                return retrofit.responseBodyConverter(responseType, annotations);
+                return retrofit.responseBodyConverter(responseType, methodAnnotations);
             } catch (RuntimeException e) { // Wide exception range because factories are user code.
                 throw methodError(e, "Unable to create converter for %s", responseType);
             }
@@ -528,10 +611,9 @@ public class ServiceMethod<T,R> {
             if (returnType == void.class) {
                 throw methodError("Service methods cannot return void.");
             }
-            Annotation[] annotations = method.getAnnotations();
             try {
                 //noinspection unchecked
-                return (HttpCallAdapter<T,R>) retrofit.callAdapter(returnType, annotations);
+                return (HttpCallAdapter<T,R>) retrofit.callAdapter(returnType, methodAnnotations);
             } catch (RuntimeException e) { // Wide exception range because factories are user code.
                 throw methodError(e, "Unable to create call adapter for %s", returnType);
             }
@@ -0,0 +1,167 @@
+package retrofit;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 运行时生成的服务接口实现类的父类，用于无法在编译期处理的接口（例如第三方jar中的接口），
+ * 需要用{@link Retrofit.Builder#spinServices(boolean)}开启。
+ * 每个Retrofit为每个接口生成一个子类：创建时构建接口的全部ServiceMethod（方法有错误时在create()中抛出），
+ * 再把各方法的ServiceMethod、引擎、CallAdapter和ParameterHandler作为static final常量写入生成的类。
+ * 调用时不经过InvocationHandler、不查表，参数存入生成的CallArguments子类而不是Object[]。
+ * 字节码由{@link ServiceClassWriter}生成，定义在以接口的ClassLoader为父的ClassLoader中；
+ * 非public的接口、返回基本类型或包含default方法的接口，以及不能定义类的运行环境，仍使用动态代理
+ */
+public abstract class SpunService {
+    static final String SPUN_SUFFIX = "$$RetrofitSpun";
+
+    // 生成的类在静态初始化时取走的常量，只在当前线程初始化该类期间有值
+    private static final ThreadLocal<Object[]> PENDING_CONSTANTS = new ThreadLocal<>();
+
+    private static final SpunClass UNSUPPORTED = new SpunClass(null);
+
+    protected SpunService() {
+    }
+
+    /**
+     * 供生成的类在静态初始化中读取自己的常量，其它时候返回null
+     */
+    public static Object[] constants() {
+        return PENDING_CONSTANTS.get();
+    }
+
+    /**
+     * 用运行时生成的实现类创建服务，不论是否开启了spinServices；接口或运行环境不支持时返回null。
+     * 生成的类按Retrofit缓存
+     */
+    public static <T> T newInstance(Retrofit retrofit, Class<T> service) {
+        ConcurrentMap<Class<?>, SpunClass> spunClasses = retrofit.spunClasses;
+        SpunClass spunClass = spunClasses.get(service);
+        if (spunClass == null) {
+            spunClass = spin(retrofit, service);
+            SpunClass existing = spunClasses.putIfAbsent(service, spunClass);
+            if (existing != null) {
+                spunClass = existing;
+            }
+        }
+        if (spunClass == UNSUPPORTED) {
+            return null;
+        }
+        try {
+            return service.cast(spunClass.constructor.newInstance());
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Unable to create " + spunClass.constructor.getName(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create " + spunClass.constructor.getName(), e);
+        }
+    }
+
+    private static SpunClass spin(Retrofit retrofit, Class<?> service) {
+        ClassLoader parent = service.getClassLoader();
+        if (parent == null || !isPublic(service) || service.getTypeParameters().length > 0) {
+            return UNSUPPORTED;
+        }
+        try {
+            if (Class.forName(SpunService.class.getName(), false, parent) != SpunService.class) {
+                return UNSUPPORTED;
+            }
+        } catch (ClassNotFoundException e) {
+            return UNSUPPORTED;
+        }
+
+        Method[] methods = service.getDeclaredMethods();
+        int count = 0;
+        for (Method method : methods) {
+            if (Modifier.isStatic(method.getModifiers())) continue;
+            Class<?> returnType = method.getReturnType();
+            if (!Modifier.isAbstract(method.getModifiers()) || returnType.isPrimitive() || !isPublic(returnType)) {
+                return UNSUPPORTED;
+            }
+            for (Class<?> parameterType : method.getParameterTypes()) {
+                if (!isPublic(parameterType)) return UNSUPPORTED;
+            }
+            methods[count++] = method;
+        }
+
+        // Errors in the methods surface here, as with validateEagerly.
+        ServiceMethod<?, ?>[] serviceMethods = new ServiceMethod<?, ?>[count];
+        for (int i = 0; i < count; i++) {
+            serviceMethods[i] = retrofit.loadServiceMethod(methods[i]);
+        }
+
+        String className = service.getName() + SPUN_SUFFIX;
+        SpunClassLoader loader = new SpunClassLoader(parent);
+        try {
+            String[] argumentsClassNames = new String[count];
+            Object[] constants = new Object[count * ServiceClassWriter.CONSTANTS_PER_METHOD];
+            for (int i = 0; i < count; i++) {
+                ServiceMethod<?, ?> serviceMethod = serviceMethods[i];
+                constants[i * ServiceClassWriter.CONSTANTS_PER_METHOD] = serviceMethod;
+                constants[i * ServiceClassWriter.CONSTANTS_PER_METHOD + 1] = serviceMethod.httpEngine;
+                constants[i * ServiceClassWriter.CONSTANTS_PER_METHOD + 2] = serviceMethod.callAdapter;
+                Class<?>[] parameterTypes = methods[i].getParameterTypes();
+                if (parameterTypes.length > 0) {
+                    argumentsClassNames[i] = className + "$Arguments" + i;
+                    loader.define(argumentsClassNames[i],
+                            ServiceClassWriter.writeArguments(argumentsClassNames[i], parameterTypes),
+                            serviceMethod.parameterHandlers.clone());
+                }
+            }
+            Class<?> spun = loader.define(className,
+                    ServiceClassWriter.writeService(className, service, slice(methods, count), argumentsClassNames),
+                    constants);
+            return new SpunClass(spun.getConstructor());
+        } catch (RuntimeException | LinkageError | NoSuchMethodException e) {
+            // For example a runtime that can't define classes from bytecode.
+            return UNSUPPORTED;
+        }
+    }
+
+    private static Method[] slice(Method[] methods, int count) {
+        Method[] slice = new Method[count];
+        System.arraycopy(methods, 0, slice, 0, count);
+        return slice;
+    }
+
+    private static boolean isPublic(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+            if (!Modifier.isPublic(c.getModifiers())) return false;
+        }
+        return true;
+    }
+
+    static final class SpunClass {
+        final Constructor<?> constructor;
+
+        SpunClass(Constructor<?> constructor) {
+            this.constructor = constructor;
+        }
+    }
+
+    private static final class SpunClassLoader extends ClassLoader {
+        SpunClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        /**
+         * 定义并立即初始化，静态初始化在当前线程中读取constants
+         */
+        Class<?> define(String name, byte[] bytes, Object[] constants) {
+            defineClass(name, bytes, 0, bytes.length);
+            PENDING_CONSTANTS.set(constants);
+            try {
+                return Class.forName(name, true, this);
+            } catch (ClassNotFoundException e) {
+                throw new AssertionError(e);
+            } finally {
+                PENDING_CONSTANTS.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package retrofit.cache;
+
+import retrofit.HttpHeaders;
+
+/**
+ * 请求或响应中Cache-Control（及Pragma: no-cache）的解析结果，未出现的秒数为-1
+ */
+public final class CacheControl {
+    private final boolean noCache;
+    private final boolean noStore;
+    private final int maxAgeSeconds;
+    private final boolean mustRevalidate;
+    private final int maxStaleSeconds;
+    private final int minFreshSeconds;
+    private final boolean onlyIfCached;
+    private final boolean immutable;
+
+    private CacheControl(boolean noCache, boolean noStore, int maxAgeSeconds, boolean mustRevalidate,
+                         int maxStaleSeconds, int minFreshSeconds, boolean onlyIfCached, boolean immutable) {
+        this.noCache = noCache;
+        this.noStore = noStore;
+        this.maxAgeSeconds = maxAgeSeconds;
+        this.mustRevalidate = mustRevalidate;
+        this.maxStaleSeconds = maxStaleSeconds;
+        this.minFreshSeconds = minFreshSeconds;
+        this.onlyIfCached = onlyIfCached;
+        this.immutable = immutable;
+    }
+
+    public static CacheControl parse(HttpHeaders headers) {
+        boolean noCache = false;
+        boolean noStore = false;
+        int maxAgeSeconds = -1;
+        boolean mustRevalidate = false;
+        int maxStaleSeconds = -1;
+        int minFreshSeconds = -1;
+        boolean onlyIfCached = false;
+        boolean immutable = false;
+
+        for (int i = 0, size = headers.size(); i < size; i++) {
+            String name = headers.name(i);
+            String value = headers.value(i);
+            if (name.equalsIgnoreCase("Pragma")) {
+                if (value.toLowerCase().contains("no-cache")) noCache = true;
+                continue;
+            }
+            if (!name.equalsIgnoreCase("Cache-Control")) continue;
+
+            for (String directive : value.split(",")) {
+                directive = directive.trim();
+                String parameter = null;
+                int equals = directive.indexOf('=');
+                if (equals != -1) {
+                    parameter = directive.substring(equals + 1).trim();
+                    if (parameter.length() >= 2 && parameter.startsWith("\"") && parameter.endsWith("\"")) {
+                        parameter = parameter.substring(1, parameter.length() - 1);
+                    }
+                    directive = directive.substring(0, equals).trim();
+                }
+
+                if (directive.equalsIgnoreCase("no-cache")) {
+                    noCache = true;
+                } else if (directive.equalsIgnoreCase("no-store")) {
+                    noStore = true;
+                } else if (directive.equalsIgnoreCase("max-age")) {
+                    maxAgeSeconds = parseSeconds(parameter, -1);
+                } else if (directive.equalsIgnoreCase("must-revalidate")
+                        || directive.equalsIgnoreCase("proxy-revalidate")) {
+                    mustRevalidate = true;
+                } else if (directive.equalsIgnoreCase("max-stale")) {
+                    // A bare max-stale accepts any staleness.
+                    maxStaleSeconds = parseSeconds(parameter, Integer.MAX_VALUE);
+                } else if (directive.equalsIgnoreCase("min-fresh")) {
+                    minFreshSeconds = parseSeconds(parameter, -1);
+                } else if (directive.equalsIgnoreCase("only-if-cached")) {
+                    onlyIfCached = true;
+                } else if (directive.equalsIgnoreCase("immutable")) {
+                    immutable = true;
+                }
+            }
+        }
+        return new CacheControl(noCache, noStore, maxAgeSeconds, mustRevalidate,
+                maxStaleSeconds, minFreshSeconds, onlyIfCached, immutable);
+    }
+
+    private static int parseSeconds(String value, int defaultValue) {
+        if (value == null) return defaultValue;
+        try {
+            long seconds = Long.parseLong(value);
+            if (seconds > Integer.MAX_VALUE) return Integer.MAX_VALUE;
+            if (seconds < 0) return 0;
+            return (int) seconds;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public boolean noCache() {
+        return noCache;
+    }
+
+    public boolean noStore() {
+        return noStore;
+    }
+
+    public int maxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    public boolean mustRevalidate() {
+        return mustRevalidate;
+    }
+
+    public int maxStaleSeconds() {
+        return maxStaleSeconds;
+    }
+
+    public int minFreshSeconds() {
+        return minFreshSeconds;
+    }
+
+    public boolean onlyIfCached() {
+        return onlyIfCached;
+    }
+
+    public boolean immutable() {
+        return immutable;
+    }
+}
@@ -0,0 +1,137 @@
+package retrofit.cache;
+
+import retrofit.HttpHeaders;
+import retrofit.core.HttpConverter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 缓存中的一条响应：状态行、响应头、原始响应体字节，以及计算新鲜度需要的请求发出/响应收到时间。
+ * 响应体可以在堆上，也可以是磁盘存储映射出来的只读内存；
+ * 转换后的响应体只保存在内存中，同一个转换器再次读取时直接复用
+ */
+public final class CacheEntry {
+    private final String url;
+    // 响应的Vary头列出的请求头在原始请求中的值
+    private final HttpHeaders varyHeaders;
+    private final int code;
+    private final String message;
+    private final HttpHeaders responseHeaders;
+    private final ByteBuffer body;
+    private final long sentRequestMillis;
+    private final long receivedResponseMillis;
+
+    private volatile Converted converted;
+    // 存储自己使用的标记，revalidated之后保留，用于只更新响应头而不重写响应体
+    volatile Object storeTag;
+
+    public CacheEntry(String url, HttpHeaders varyHeaders, int code, String message,
+                      HttpHeaders responseHeaders, byte[] body,
+                      long sentRequestMillis, long receivedResponseMillis) {
+        this(url, varyHeaders, code, message, responseHeaders, ByteBuffer.wrap(body),
+                sentRequestMillis, receivedResponseMillis);
+    }
+
+    /**
+     * @param body 从position到limit之间的内容，之后不能再被修改
+     */
+    public CacheEntry(String url, HttpHeaders varyHeaders, int code, String message,
+                      HttpHeaders responseHeaders, ByteBuffer body,
+                      long sentRequestMillis, long receivedResponseMillis) {
+        this.url = url;
+        this.varyHeaders = varyHeaders;
+        this.code = code;
+        this.message = message;
+        this.responseHeaders = responseHeaders;
+        this.body = body.slice().asReadOnlyBuffer();
+        this.sentRequestMillis = sentRequestMillis;
+        this.receivedResponseMillis = receivedResponseMillis;
+    }
+
+    public String url() {
+        return url;
+    }
+
+    public HttpHeaders varyHeaders() {
+        return varyHeaders;
+    }
+
+    public int code() {
+        return code;
+    }
+
+    public String message() {
+        return message;
+    }
+
+    public HttpHeaders responseHeaders() {
+        return responseHeaders;
+    }
+
+    /**
+     * 原始响应体的只读视图，每次调用返回独立的position/limit
+     */
+    public ByteBuffer body() {
+        return body.duplicate();
+    }
+
+    public int bodyLength() {
+        return body.remaining();
+    }
+
+    /**
+     * 直接读取响应体所在内存的输入流，不会先复制到堆上
+     */
+    public InputStream newBodyStream() {
+        return new ByteBufferInputStream(body.duplicate());
+    }
+
+    public long sentRequestMillis() {
+        return sentRequestMillis;
+    }
+
+    public long receivedResponseMillis() {
+        return receivedResponseMillis;
+    }
+
+    /**
+     * 用converter转换响应体；同一个converter的结果会被记住并在之后的命中中共享
+     */
+    public <T> T convertedBody(HttpConverter<InputStream, T> converter) throws IOException {
+        Converted converted = this.converted;
+        if (converted != null && converted.converter == converter) {
+            //noinspection unchecked
+            return (T) converted.body;
+        }
+        T body = converter.convert(newBodyStream());
+        this.converted = new Converted(converter, body);
+        return body;
+    }
+
+    /**
+     * 304之后用新的响应头和时间替换，响应体及已转换的结果保持不变
+     */
+    CacheEntry revalidated(HttpHeaders responseHeaders, long sentRequestMillis, long receivedResponseMillis) {
+        CacheEntry entry = new CacheEntry(url, varyHeaders, code, message, responseHeaders, body,
+                sentRequestMillis, receivedResponseMillis);
+        entry.converted = converted;
+        entry.storeTag = storeTag;
+        return entry;
+    }
+
+    void rememberConverted(HttpConverter<InputStream, ?> converter, Object body) {
+        this.converted = new Converted(converter, body);
+    }
+
+    private static final class Converted {
+        final HttpConverter<InputStream, ?> converter;
+        final Object body;
+
+        Converted(HttpConverter<InputStream, ?> converter, Object body) {
+            this.converter = converter;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package retrofit.cache;
+
+/**
+ * 缓存的存储SPI，键为请求的完整URL。实现必须是线程安全的，
+ * 存储自身的I/O错误应在内部处理（按未命中对待），不能影响请求本身
+ */
+public interface CacheStore {
+    /**
+     * 不存在时返回null
+     */
+    CacheEntry get(String key);
+
+    void put(String key, CacheEntry entry);
+
+    void remove(String key);
+
+    void clear();
+}
@@ -0,0 +1,141 @@
+package retrofit.cache;
+
+import retrofit.HttpHeaders;
+import retrofit.core.ResolvedRequest;
+import retrofit.util.HttpDate;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按RFC 7234决定一次请求如何使用缓存：直接返回缓存（新鲜）、带条件头重新验证（过期但有校验器）
+ * 或者完整地请求网络
+ */
+final class CacheStrategy {
+    static final int NETWORK = 0;
+    static final int CACHE = 1;
+    static final int CONDITIONAL = 2;
+    // 请求带有only-if-cached，但缓存无法满足
+    static final int UNSATISFIABLE = 3;
+
+    final int action;
+    // action为CONDITIONAL时需要附加的If-None-Match/If-Modified-Since
+    final HttpHeaders conditionalHeaders;
+
+    private CacheStrategy(int action, HttpHeaders conditionalHeaders) {
+        this.action = action;
+        this.conditionalHeaders = conditionalHeaders;
+    }
+
+    static CacheStrategy compute(long nowMillis, ResolvedRequest request, CacheEntry entry) {
+        CacheStrategy candidate = computeCandidate(nowMillis, request, entry);
+        if (candidate.action != CACHE && CacheControl.parse(request.headers()).onlyIfCached()) {
+            // We're forbidden from using the network and the cache is insufficient.
+            return new CacheStrategy(UNSATISFIABLE, null);
+        }
+        return candidate;
+    }
+
+    private static CacheStrategy computeCandidate(long nowMillis, ResolvedRequest request, CacheEntry entry) {
+        if (entry == null) {
+            return new CacheStrategy(NETWORK, null);
+        }
+        HttpHeaders requestHeaders = request.headers();
+        CacheControl requestCaching = CacheControl.parse(requestHeaders);
+        if (requestCaching.noCache()
+                || requestHeaders.get("If-None-Match") != null
+                || requestHeaders.get("If-Modified-Since") != null) {
+            // The caller asked for a validated response or brought its own validators.
+            return new CacheStrategy(NETWORK, null);
+        }
+
+        HttpHeaders responseHeaders = entry.responseHeaders();
+        CacheControl responseCaching = CacheControl.parse(responseHeaders);
+        if (responseCaching.immutable()) {
+            return new CacheStrategy(CACHE, null);
+        }
+
+        Date servedDate = responseHeaders.getDate("Date");
+        long ageMillis = cacheResponseAge(nowMillis, entry, servedDate);
+        long freshMillis = computeFreshnessLifetime(request, entry, responseCaching, servedDate);
+        if (requestCaching.maxAgeSeconds() != -1) {
+            freshMillis = Math.min(freshMillis, TimeUnit.SECONDS.toMillis(requestCaching.maxAgeSeconds()));
+        }
+        long minFreshMillis = 0;
+        if (requestCaching.minFreshSeconds() != -1) {
+            minFreshMillis = TimeUnit.SECONDS.toMillis(requestCaching.minFreshSeconds());
+        }
+        long maxStaleMillis = 0;
+        if (!responseCaching.mustRevalidate() && requestCaching.maxStaleSeconds() != -1) {
+            maxStaleMillis = TimeUnit.SECONDS.toMillis(requestCaching.maxStaleSeconds());
+        }
+
+        if (!responseCaching.noCache() && ageMillis + minFreshMillis < freshMillis + maxStaleMillis) {
+            return new CacheStrategy(CACHE, null);
+        }
+
+        // Find a condition to add to the request. If the condition is satisfied, the response body
+        // will not be transmitted.
+        String etag = responseHeaders.get("ETag");
+        if (etag != null) {
+            return new CacheStrategy(CONDITIONAL, HttpHeaders.of("If-None-Match", etag));
+        }
+        String lastModified = responseHeaders.get("Last-Modified");
+        if (lastModified != null) {
+            return new CacheStrategy(CONDITIONAL, HttpHeaders.of("If-Modified-Since", lastModified));
+        }
+        if (servedDate != null) {
+            return new CacheStrategy(CONDITIONAL,
+                    HttpHeaders.of("If-Modified-Since", HttpDate.format(servedDate)));
+        }
+        // No condition! Make a regular request.
+        return new CacheStrategy(NETWORK, null);
+    }
+
+    /**
+     * RFC 7234 4.2.3中的current_age
+     */
+    private static long cacheResponseAge(long nowMillis, CacheEntry entry, Date servedDate) {
+        long apparentReceivedAge = servedDate != null
+                ? Math.max(0, entry.receivedResponseMillis() - servedDate.getTime())
+                : 0;
+        long receivedAge = apparentReceivedAge;
+        String age = entry.responseHeaders().get("Age");
+        if (age != null) {
+            try {
+                receivedAge = Math.max(apparentReceivedAge, TimeUnit.SECONDS.toMillis(Long.parseLong(age.trim())));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        long responseDuration = entry.receivedResponseMillis() - entry.sentRequestMillis();
+        long residentDuration = nowMillis - entry.receivedResponseMillis();
+        return receivedAge + responseDuration + residentDuration;
+    }
+
+    /**
+     * RFC 7234 4.2.1中的freshness_lifetime，没有明确的过期信息时按Last-Modified做10%的启发式估计
+     */
+    private static long computeFreshnessLifetime(ResolvedRequest request, CacheEntry entry,
+                                                 CacheControl responseCaching, Date servedDate) {
+        if (responseCaching.maxAgeSeconds() != -1) {
+            return TimeUnit.SECONDS.toMillis(responseCaching.maxAgeSeconds());
+        }
+        HttpHeaders responseHeaders = entry.responseHeaders();
+        Date expires = responseHeaders.getDate("Expires");
+        if (expires != null) {
+            long servedMillis = servedDate != null ? servedDate.getTime() : entry.receivedResponseMillis();
+            long delta = expires.getTime() - servedMillis;
+            return delta > 0 ? delta : 0;
+        }
+        Date lastModified = responseHeaders.getDate("Last-Modified");
+        if (lastModified != null && request.url().encodedQuery() == null) {
+            // As recommended by the HTTP RFC, the max age of a document should be defaulted to 10% of
+            // the document's age at the time it was served. Default expiration dates aren't used for
+            // URIs containing a query.
+            long servedMillis = servedDate != null ? servedDate.getTime() : entry.sentRequestMillis();
+            long delta = servedMillis - lastModified.getTime();
+            return delta > 0 ? delta / 10 : 0;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,31 @@
+package retrofit.cache;
+
+import retrofit.ServiceMethod;
+import retrofit.core.MethodAnnotationHandler;
+import retrofit.http.Cacheable;
+
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+
+/**
+ * 处理{@link Cacheable}：用{@link ResultCachingHttpEngine}装饰该方法使用的引擎
+ */
+public class CacheableAnnotationHandler implements MethodAnnotationHandler {
+
+    @Override
+    public void apply(Annotation annotation, ServiceMethod.Builder builder) {
+        if (!(annotation instanceof Cacheable)) return;
+        Cacheable cacheable = (Cacheable) annotation;
+        if (builder.responseType == InputStream.class) {
+            throw new IllegalArgumentException("@Cacheable cannot share a streaming InputStream response body.");
+        }
+        if (cacheable.maxEntries() <= 0) {
+            throw new IllegalArgumentException("@Cacheable maxEntries must be positive.");
+        }
+        if (cacheable.ttl() <= 0) {
+            throw new IllegalArgumentException("@Cacheable ttl must be positive.");
+        }
+        builder.httpEngine = new ResultCachingHttpEngine(builder.httpEngine, cacheable.maxEntries(),
+                cacheable.unit().toNanos(cacheable.ttl()));
+    }
+}
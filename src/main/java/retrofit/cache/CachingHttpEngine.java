@@ -0,0 +1,403 @@
+package retrofit.cache;
+
+import retrofit.HttpHeaders;
+import retrofit.HttpResponse;
+import retrofit.HttpUrl;
+import retrofit.ServiceMethod;
+import retrofit.core.BuiltInConverters;
+import retrofit.core.ForwardingHttpEngine;
+import retrofit.core.HttpCall;
+import retrofit.core.HttpCallback;
+import retrofit.core.HttpEngine;
+import retrofit.core.ResolvedRequest;
+import retrofit.core.ResponseBodyRecorder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link HttpCache}的引擎装饰器，包在HttpEngine.execute外面，对所有引擎都适用。
+ * 未命中时收到响应头才决定是否保留响应体：不可缓存的响应不复制；{@link StreamingCacheStore}的存储
+ * 在响应带有Content-Length时直接接收网络上读到的字节，其余情况先收集到堆上
+ */
+final class CachingHttpEngine extends ForwardingHttpEngine {
+    private final HttpCache cache;
+
+    CachingHttpEngine(HttpEngine delegate, HttpCache cache) {
+        super(delegate);
+        this.cache = cache;
+    }
+
+    @Override
+    public <T> HttpResponse execute(HttpCall<T> httpCall) throws IOException {
+        String method = httpCall.serviceMethod.httpMethod;
+        if (!"GET".equals(method)) {
+            HttpResponse response = super.execute(httpCall);
+            invalidate(httpCall, response);
+            return response;
+        }
+        ResolvedRequest request = resolve(httpCall);
+        if (request == null) {
+            return super.execute(httpCall);
+        }
+
+        long nowMillis = System.currentTimeMillis();
+        CacheEntry entry = cache.get(request);
+        CacheStrategy strategy = CacheStrategy.compute(nowMillis, request, entry);
+        cache.trackRequest();
+        if (strategy.action == CacheStrategy.CACHE || strategy.action == CacheStrategy.UNSATISFIABLE) {
+            httpCall.check();
+            if (httpCall.isCanceled()) {
+                throw new IOException("Canceled");
+            }
+            if (strategy.action == CacheStrategy.UNSATISFIABLE) {
+                return unsatisfiable();
+            }
+            cache.trackHit();
+            return cacheHit(httpCall, entry);
+        }
+
+        Recorder recorder = prepareNetwork(httpCall, request, strategy);
+        HttpResponse response = super.execute(httpCall);
+        return networkResponse(httpCall, request, entry, strategy, recorder, response,
+                nowMillis, System.currentTimeMillis());
+    }
+
+    @Override
+    public <T> void execute(final HttpCall<T> httpCall, final HttpCallback<T> callback) {
+        if (callback == null) throw new NullPointerException("callback == null");
+        String method = httpCall.serviceMethod.httpMethod;
+        if (!"GET".equals(method)) {
+            super.execute(httpCall, new HttpCallback<T>() {
+                @Override
+                public void onResponse(HttpCall<T> call, HttpResponse<T, ?, ?> response) {
+                    invalidate(httpCall, response);
+                    callback.onResponse(call, response);
+                }
+
+                @Override
+                public void onFailure(HttpCall<T> call, Throwable t) {
+                    callback.onFailure(call, t);
+                }
+            });
+            return;
+        }
+        final ResolvedRequest request = resolve(httpCall);
+        if (request == null) {
+            super.execute(httpCall, callback);
+            return;
+        }
+
+        final long sentRequestMillis = System.currentTimeMillis();
+        final CacheEntry entry = cache.get(request);
+        final CacheStrategy strategy = CacheStrategy.compute(sentRequestMillis, request, entry);
+        cache.trackRequest();
+        if (strategy.action == CacheStrategy.CACHE || strategy.action == CacheStrategy.UNSATISFIABLE) {
+            httpCall.markExecuted();
+            HttpResponse response = null;
+            Throwable failure = null;
+            if (httpCall.isCanceled()) {
+                failure = new IOException("Canceled");
+            } else {
+                try {
+                    if (strategy.action == CacheStrategy.UNSATISFIABLE) {
+                        response = unsatisfiable();
+                    } else {
+                        cache.trackHit();
+                        response = cacheHit(httpCall, entry);
+                    }
+                } catch (Throwable t) {
+                    failure = t;
+                }
+            }
+            deliver(httpCall, callback, response, failure);
+            return;
+        }
+
+        final Recorder recorder = prepareNetwork(httpCall, request, strategy);
+        super.execute(httpCall, new HttpCallback<T>() {
+            @Override
+            public void onResponse(HttpCall<T> call, HttpResponse<T, ?, ?> networkResponse) {
+                HttpResponse<T, ?, ?> response;
+                try {
+                    //noinspection unchecked
+                    response = networkResponse(call, request, entry, strategy, recorder, networkResponse,
+                            sentRequestMillis, System.currentTimeMillis());
+                } catch (Throwable t) {
+                    callback.onFailure(call, t);
+                    return;
+                }
+                callback.onResponse(call, response);
+            }
+
+            @Override
+            public void onFailure(HttpCall<T> call, Throwable t) {
+                callback.onFailure(call, t);
+            }
+        });
+    }
+
+    /**
+     * 只用于GET，无法得到与引擎无关的请求描述时返回null，交给被装饰的引擎按原样处理（并报告错误）
+     */
+    private static ResolvedRequest resolve(HttpCall<?> httpCall) {
+        ServiceMethod<?, ?> serviceMethod = httpCall.serviceMethod;
+        if (BuiltInConverters.isStreaming(serviceMethod.responseConverter)) {
+            return null;
+        }
+        try {
+            return ResolvedRequest.of(httpCall);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private Recorder prepareNetwork(HttpCall<?> httpCall, ResolvedRequest request, CacheStrategy strategy) {
+        if (strategy.action == CacheStrategy.CONDITIONAL) {
+            cache.trackRevalidation();
+            httpCall.additionalHeaders = strategy.conditionalHeaders;
+        } else {
+            cache.trackMiss();
+        }
+        Recorder recorder = new Recorder(request);
+        httpCall.recordResponseBody(recorder);
+        return recorder;
+    }
+
+    private <T> HttpResponse networkResponse(HttpCall<T> httpCall, ResolvedRequest request, CacheEntry entry,
+                                             CacheStrategy strategy, Recorder recorder, HttpResponse response,
+                                             long sentRequestMillis, long receivedResponseMillis)
+            throws IOException {
+        HttpHeaders responseHeaders = response.headers();
+        if (entry != null && strategy.action == CacheStrategy.CONDITIONAL && response.code() == 304) {
+            cache.trackNotModified();
+            CacheEntry updated = entry.revalidated(combine(entry.responseHeaders(), responseHeaders),
+                    sentRequestMillis, receivedResponseMillis);
+            cache.put(request, updated);
+            return cacheHit(httpCall, updated);
+        }
+
+        ByteBuffer body = recorder.body;
+        if (isCacheable(request, response.code(), responseHeaders) && (body != null || response.code() == 204)) {
+            CacheEntry stored = new CacheEntry(request.url().toString(),
+                    HttpCache.varyHeaders(request.headers(), responseHeaders),
+                    response.code(), response.message(), responseHeaders,
+                    body != null ? body : ByteBuffer.allocate(0), sentRequestMillis, receivedResponseMillis);
+            if (response.body() != null) {
+                stored.rememberConverted(httpCall.serviceMethod.responseConverter, response.body());
+            }
+            if (recorder.writer != null) {
+                recorder.writer.commit(stored);
+            } else {
+                cache.put(request, stored);
+            }
+        } else if (entry != null) {
+            // The origin sent something we can't keep, the old entry must not be used anymore.
+            cache.remove(request);
+        }
+        return response;
+    }
+
+    private static <T> HttpResponse<T, CacheEntry, Object> cacheHit(HttpCall<T> httpCall, CacheEntry entry)
+            throws IOException {
+        T body = null;
+        if (entry.code() != 204) {
+            body = entry.convertedBody(httpCall.serviceMethod.responseConverter);
+        }
+        return new HttpResponse<>(entry, null, entry.code(), entry.responseHeaders(), body, entry.message());
+    }
+
+    private static HttpResponse<Object, Object, byte[]> unsatisfiable() {
+        return new HttpResponse<>(null, new byte[0], 504, new HttpHeaders.Builder().build(), null,
+                "Unsatisfiable Request (only-if-cached)");
+    }
+
+    private static boolean isCacheable(ResolvedRequest request, int code, HttpHeaders responseHeaders) {
+        if (!HttpCache.CACHEABLE_CODES.contains(code)) return false;
+        if (responseHeaders == null || HttpCache.hasVaryAll(responseHeaders)) return false;
+        CacheControl responseCaching = CacheControl.parse(responseHeaders);
+        if (responseCaching.noStore() || CacheControl.parse(request.headers()).noStore()) return false;
+        // Only keep what can be reused: explicit freshness or a validator.
+        return responseCaching.maxAgeSeconds() != -1
+                || responseCaching.immutable()
+                || responseHeaders.get("Expires") != null
+                || responseHeaders.get("ETag") != null
+                || responseHeaders.get("Last-Modified") != null;
+    }
+
+    private static long contentLength(HttpHeaders responseHeaders) {
+        String value = responseHeaders.get("Content-Length");
+        if (value == null) return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 一次网络请求的响应体记录，收到响应头时才按可缓存性决定是否记录以及写到哪里
+     */
+    private final class Recorder implements ResponseBodyRecorder {
+        final ResolvedRequest request;
+        // 完整记录下来的响应体，没有记录时为null
+        volatile ByteBuffer body;
+        // 直接写入存储时用于提交条目
+        volatile StreamingCacheStore.BodyWriter writer;
+
+        Recorder(ResolvedRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public Sink open(int code, HttpHeaders headers) {
+            if (!isCacheable(request, code, headers)) return null;
+            CacheStore store = cache.store();
+            long contentLength = contentLength(headers);
+            if (store instanceof StreamingCacheStore && contentLength >= 0) {
+                StreamingCacheStore.BodyWriter writer =
+                        ((StreamingCacheStore) store).newBodyWriter(HttpCache.key(request), contentLength);
+                return writer != null ? new StoreSink(writer) : null;
+            }
+            return new HeapSink();
+        }
+
+        private final class StoreSink extends Sink {
+            private final StreamingCacheStore.BodyWriter target;
+
+            StoreSink(StreamingCacheStore.BodyWriter target) {
+                this.target = target;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                target.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                target.write(b, off, len);
+            }
+
+            @Override
+            public void commit() {
+                writer = target;
+                body = target.body();
+            }
+
+            @Override
+            public void abort() {
+                target.abort();
+            }
+        }
+
+        private final class HeapSink extends Sink {
+            private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+            @Override
+            public void write(int b) {
+                bytes.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                bytes.write(b, off, len);
+            }
+
+            @Override
+            public void commit() {
+                body = ByteBuffer.wrap(bytes.toByteArray());
+            }
+
+            @Override
+            public void abort() {
+            }
+        }
+    }
+
+    /**
+     * 不安全的方法成功后，同一URL的缓存条目失效（RFC 7234 4.4）。
+     * 只在这时计算URL，请求体不会为此再转换一次，被熔断等拒绝的调用也不会走到这里
+     */
+    private void invalidate(HttpCall<?> httpCall, HttpResponse response) {
+        ServiceMethod<?, ?> serviceMethod = httpCall.serviceMethod;
+        String method = serviceMethod.httpMethod;
+        if ("HEAD".equals(method) || "OPTIONS".equals(method)
+                || response.code() < 200 || response.code() >= 400) {
+            return;
+        }
+        HttpUrl url;
+        try {
+            url = ResolvedRequest.urlOf(serviceMethod, httpCall.args());
+        } catch (IOException | RuntimeException e) {
+            // The request was sent, so this can only be a converter that isn't repeatable.
+            return;
+        }
+        cache.remove(url);
+    }
+
+    /**
+     * 304的响应头覆盖缓存中的同名头，内容相关的头保留缓存中的值
+     */
+    private static HttpHeaders combine(HttpHeaders cachedHeaders, HttpHeaders networkHeaders) {
+        HttpHeaders.Builder result = new HttpHeaders.Builder();
+        for (int i = 0, size = cachedHeaders.size(); i < size; i++) {
+            String name = cachedHeaders.name(i);
+            String value = cachedHeaders.value(i);
+            if ("Warning".equalsIgnoreCase(name) && value.startsWith("1")) {
+                // Drop 100-level freshness warnings.
+                continue;
+            }
+            if (isContentSpecificHeader(name) || !isEndToEnd(name) || networkHeaders.get(name) == null) {
+                result.add(name, value);
+            }
+        }
+        for (int i = 0, size = networkHeaders.size(); i < size; i++) {
+            String name = networkHeaders.name(i);
+            if (!isContentSpecificHeader(name) && isEndToEnd(name)) {
+                result.add(name, networkHeaders.value(i));
+            }
+        }
+        return result.build();
+    }
+
+    private static boolean isContentSpecificHeader(String name) {
+        return "Content-Length".equalsIgnoreCase(name)
+                || "Content-Encoding".equalsIgnoreCase(name)
+                || "Content-Type".equalsIgnoreCase(name);
+    }
+
+    private static boolean isEndToEnd(String name) {
+        return !"Connection".equalsIgnoreCase(name)
+                && !"Keep-Alive".equalsIgnoreCase(name)
+                && !"Proxy-Authenticate".equalsIgnoreCase(name)
+                && !"Proxy-Authorization".equalsIgnoreCase(name)
+                && !"TE".equalsIgnoreCase(name)
+                && !"Trailers".equalsIgnoreCase(name)
+                && !"Transfer-Encoding".equalsIgnoreCase(name)
+                && !"Upgrade".equalsIgnoreCase(name);
+    }
+
+    private static <T> void deliver(final HttpCall<T> call, final HttpCallback<T> callback,
+                                    final HttpResponse response, final Throwable failure) {
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                if (failure != null) {
+                    callback.onFailure(call, failure);
+                } else {
+                    //noinspection unchecked
+                    callback.onResponse(call, (HttpResponse<T, ?, ?>) response);
+                }
+            }
+        };
+        Executor callbackExecutor = call.serviceMethod.callbackExecutor;
+        if (callbackExecutor != null) {
+            callbackExecutor.execute(runnable);
+        } else {
+            runnable.run();
+        }
+    }
+}
@@ -0,0 +1,847 @@
+package retrofit.cache;
+
+import retrofit.HttpHeaders;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 磁盘上的持久化存储，进程重启后缓存仍然有效。
+ * <p>
+ * 条目追加写入固定大小的段文件（segment-N），段文件通过{@link MappedByteBuffer}读写，
+ * 带Content-Length的响应体在读取网络时直接写入段中预留的位置，命中时以映射内存的只读视图交给转换器，
+ * 两个方向都不会整体复制到堆上；
+ * 索引保存在只追加的journal中，打开时重放。被覆盖或删除的条目留下的空间由后台线程回收：
+ * 存活数据不足一半的段会把存活条目搬到当前段后删除，冗余记录过多时重写journal。
+ * 存活条目总字节数超过maxSize时按LRU淘汰，磁盘占用大约不超过maxSize的两倍加一个段。
+ * <p>
+ * 所有I/O错误都在内部处理：读取失败按未命中对待，目录不可用时整个存储表现为空
+ */
+public class DiskCacheStore implements StreamingCacheStore, Closeable {
+    static final String JOURNAL_FILE = "journal";
+    static final String JOURNAL_FILE_TEMP = "journal.tmp";
+    static final String MAGIC = "retrofit.cache.DiskCacheStore";
+    static final String VERSION = "1";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String PUT = "PUT";
+    private static final String REMOVE = "REMOVE";
+
+    private static final int RECORD_MAGIC = 0x52524331;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+    private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+    private static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final long maxSize;
+    private final int segmentSize;
+
+    // 按访问顺序排列，淘汰时从头部开始
+    private final LinkedHashMap<String, Location> index = new LinkedHashMap<>(16, 0.75f, true);
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private Segment active;
+    private Writer journalWriter;
+    private int redundantOpCount;
+    // 存活条目（元数据加响应体）的总字节数
+    private long size;
+    private boolean initialized;
+    private boolean usable;
+    private boolean closed;
+    private boolean cleanupScheduled;
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Retrofit DiskCacheStore");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Runnable cleanupRunnable = new Runnable() {
+        @Override
+        public void run() {
+            cleanup();
+        }
+    };
+
+    /**
+     * @param maxSize 存活条目的字节数上限，段大小取maxSize的1/8（64KB到64MB之间）
+     */
+    public DiskCacheStore(File directory, long maxSize) {
+        this(directory, maxSize, (int) Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, maxSize / 8)));
+    }
+
+    /**
+     * @param segmentSize 单个段文件的大小，超过它的条目不会被缓存
+     */
+    public DiskCacheStore(File directory, long maxSize, int segmentSize) {
+        if (directory == null) throw new NullPointerException("directory == null");
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize <= 0");
+        if (segmentSize < RECORD_HEADER_SIZE) throw new IllegalArgumentException("segmentSize too small");
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.segmentSize = segmentSize;
+    }
+
+    public File directory() {
+        return directory;
+    }
+
+    public long maxSize() {
+        return maxSize;
+    }
+
+    public int segmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * 存活条目的总字节数，首次调用时会读取journal
+     */
+    public synchronized long size() {
+        initialize();
+        return size;
+    }
+
+    @Override
+    public CacheEntry get(String key) {
+        Location location;
+        synchronized (this) {
+            initialize();
+            if (!usable) return null;
+            location = index.get(key);
+            if (location == null) return null;
+        }
+        try {
+            CacheEntry entry = decode(location.metadata(), location.body());
+            if (!key.equals(entry.url())) {
+                throw new IOException("Unexpected record for " + key);
+            }
+            entry.storeTag = location;
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            // Corrupted record, forget about it.
+            synchronized (this) {
+                if (index.get(key) == location) {
+                    removeLocked(key);
+                }
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String key, CacheEntry entry) {
+        put(key, entry, null);
+    }
+
+    /**
+     * 在当前段中为响应体预留contentLength字节，超过段大小时返回null
+     */
+    @Override
+    public BodyWriter newBodyWriter(String key, long contentLength) {
+        if (contentLength < 0 || contentLength > segmentSize) return null;
+        synchronized (this) {
+            initialize();
+            if (!usable) return null;
+            try {
+                Segment segment = reserve((int) contentLength);
+                return new SegmentBodyWriter(key, segment, segment.writePosition - (int) contentLength,
+                        (int) contentLength);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @param written 不为null时响应体已经写在段中，只写入元数据
+     */
+    private void put(String key, CacheEntry entry, SegmentBodyWriter written) {
+        byte[] metadata;
+        try {
+            metadata = encode(entry);
+        } catch (IOException e) {
+            remove(key);
+            return;
+        }
+
+        Segment segment;
+        int offset;
+        Location reused;
+        synchronized (this) {
+            initialize();
+            if (!usable) return;
+            Location current = index.get(key);
+            // After a 304 only the headers change, keep the body where it is.
+            reused = written == null && current != null && entry.storeTag == current
+                    && !current.bodySegment.deleted ? current : null;
+            int length = metadata.length + (reused != null || written != null ? 0 : entry.bodyLength());
+            if (metadata.length + entry.bodyLength() > segmentSize
+                    || written != null && written.segment.deleted) {
+                if (current != null) removeLocked(key);
+                return;
+            }
+            try {
+                segment = reserve(length);
+            } catch (IOException e) {
+                return;
+            }
+            offset = segment.writePosition - length;
+        }
+
+        // Copy outside the lock, the reserved range is ours alone.
+        ByteBuffer target = segment.buffer.duplicate();
+        target.position(offset);
+        target.put(metadata);
+        if (reused == null && written == null) {
+            target.put(entry.body());
+        }
+
+        synchronized (this) {
+            if (!usable || segment.deleted || written != null && written.segment.deleted) return;
+            Location location;
+            if (reused != null) {
+                location = new Location(segment, offset, metadata.length,
+                        reused.bodySegment, reused.bodyOffset, reused.bodyLength);
+            } else if (written != null) {
+                location = new Location(segment, offset, metadata.length,
+                        written.segment, written.offset, written.position);
+            } else {
+                location = new Location(segment, offset, metadata.length,
+                        segment, offset + metadata.length, entry.bodyLength());
+            }
+            if (reused != null && index.get(key) != reused) {
+                // Lost a race with another writer or the cleanup, the old body may be gone.
+                return;
+            }
+            commitLocked(key, location);
+            trimToSize();
+            scheduleCleanupIfNeeded();
+        }
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        initialize();
+        if (!usable) return;
+        if (index.containsKey(key)) {
+            removeLocked(key);
+            scheduleCleanupIfNeeded();
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        initialize();
+        if (!usable) return;
+        index.clear();
+        size = 0;
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            deleteSegment(segment);
+        }
+        active = null;
+        try {
+            rebuildJournal();
+        } catch (IOException e) {
+            usable = false;
+        }
+    }
+
+    /**
+     * 关闭journal并把已映射的段刷到磁盘，之后存储表现为空
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        usable = false;
+        executor.shutdown();
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+        }
+        if (journalWriter != null) {
+            journalWriter.close();
+            journalWriter = null;
+        }
+    }
+
+    private void initialize() {
+        if (initialized) return;
+        initialized = true;
+        if (closed) return;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Unable to create " + directory);
+            }
+            File journal = new File(directory, JOURNAL_FILE);
+            if (journal.exists()) {
+                try {
+                    readJournal(journal);
+                } catch (IOException e) {
+                    // Unreadable journal, start over.
+                    index.clear();
+                    size = 0;
+                    segments.clear();
+                    active = null;
+                }
+            }
+            deleteUnusedFiles();
+            rebuildJournal();
+            usable = true;
+        } catch (IOException e) {
+            usable = false;
+        }
+    }
+
+    private void readJournal(File journal) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), UTF_8));
+        Map<String, long[]> records = new LinkedHashMap<>(16, 0.75f, true);
+        try {
+            if (!MAGIC.equals(reader.readLine())
+                    || !VERSION.equals(reader.readLine())
+                    || !String.valueOf(segmentSize).equals(reader.readLine())
+                    || !"".equals(reader.readLine())) {
+                throw new IOException("Unexpected journal header");
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(PUT + " ")) {
+                    String[] parts = line.split(" ", 8);
+                    if (parts.length != 8) break;
+                    long[] record = new long[6];
+                    try {
+                        for (int i = 0; i < 6; i++) {
+                            record[i] = Long.parseLong(parts[i + 1]);
+                        }
+                    } catch (NumberFormatException e) {
+                        // A torn write at the end of the journal.
+                        break;
+                    }
+                    records.put(parts[7], record);
+                } else if (line.startsWith(REMOVE + " ")) {
+                    records.remove(line.substring(REMOVE.length() + 1));
+                } else {
+                    break;
+                }
+                redundantOpCount++;
+            }
+        } finally {
+            reader.close();
+        }
+
+        Map<Integer, Integer> writePositions = new HashMap<>();
+        for (Map.Entry<String, long[]> record : records.entrySet()) {
+            long[] r = record.getValue();
+            Segment metadataSegment = openSegment((int) r[0]);
+            Segment bodySegment = openSegment((int) r[3]);
+            if (metadataSegment == null || bodySegment == null
+                    || r[1] < 0 || r[2] < RECORD_HEADER_SIZE || r[1] + r[2] > segmentSize
+                    || r[4] < 0 || r[5] < 0 || r[4] + r[5] > segmentSize) {
+                continue;
+            }
+            Location location = new Location(metadataSegment, (int) r[1], (int) r[2],
+                    bodySegment, (int) r[4], (int) r[5]);
+            index.put(record.getKey(), location);
+            location.addTo(this);
+            extend(writePositions, metadataSegment.id, r[1] + r[2]);
+            extend(writePositions, bodySegment.id, r[4] + r[5]);
+        }
+        redundantOpCount -= index.size();
+        for (Segment segment : segments.values()) {
+            Integer end = writePositions.get(segment.id);
+            segment.writePosition = end != null ? end : segmentSize;
+        }
+        if (!segments.isEmpty()) {
+            // Keep appending to the newest segment, the older ones are sealed.
+            active = segments.lastEntry().getValue();
+        }
+    }
+
+    private static void extend(Map<Integer, Integer> writePositions, int id, long end) {
+        Integer current = writePositions.get(id);
+        if (current == null || current < end) {
+            writePositions.put(id, (int) end);
+        }
+    }
+
+    private void deleteUnusedFiles() {
+        new File(directory, JOURNAL_FILE_TEMP).delete();
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (segment.liveBytes == 0 && segment != active) {
+                deleteSegment(segment);
+            }
+        }
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(SEGMENT_PREFIX) && !segments.containsKey(segmentId(name))) {
+                file.delete();
+            }
+        }
+    }
+
+    private static int segmentId(String fileName) {
+        try {
+            return Integer.parseInt(fileName.substring(SEGMENT_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * journal中引用的已有段，文件缺失或大小不符时返回null
+     */
+    private Segment openSegment(int id) throws IOException {
+        Segment segment = segments.get(id);
+        if (segment != null) return segment;
+        File file = segmentFile(id);
+        if (id < 0 || !file.isFile() || file.length() != segmentSize) return null;
+        segment = new Segment(id, file, map(file));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private Segment newSegment() throws IOException {
+        int id = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        File file = segmentFile(id);
+        Segment segment = new Segment(id, file, map(file));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private File segmentFile(int id) {
+        return new File(directory, SEGMENT_PREFIX + id);
+    }
+
+    /**
+     * 映射整个段；映射在通道关闭后依然有效。新文件是稀疏的，只有写入的部分占用磁盘
+     */
+    private MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(segmentSize);
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * 在当前段末尾预留length字节，放不下时换一个新段
+     */
+    private Segment reserve(int length) throws IOException {
+        if (active == null || active.deleted || active.writePosition + length > segmentSize) {
+            active = newSegment();
+        }
+        active.writePosition += length;
+        return active;
+    }
+
+    private void commitLocked(String key, Location location) {
+        Location previous = index.put(key, location);
+        // Add first, a reused body must not make its segment look empty in between.
+        location.addTo(this);
+        if (previous != null) {
+            previous.removeFrom(this);
+            redundantOpCount++;
+        }
+        journal(PUT + ' ' + location.metadataSegment.id + ' ' + location.metadataOffset
+                + ' ' + location.metadataLength + ' ' + location.bodySegment.id
+                + ' ' + location.bodyOffset + ' ' + location.bodyLength + ' ' + key);
+    }
+
+    private void removeLocked(String key) {
+        Location previous = index.remove(key);
+        if (previous == null) return;
+        previous.removeFrom(this);
+        redundantOpCount += 2;
+        journal(REMOVE + ' ' + key);
+    }
+
+    private void journal(String line) {
+        if (journalWriter == null) return;
+        try {
+            journalWriter.write(line);
+            journalWriter.write('\n');
+            journalWriter.flush();
+        } catch (IOException e) {
+            try {
+                rebuildJournal();
+            } catch (IOException rebuildFailed) {
+                usable = false;
+            }
+        }
+    }
+
+    /**
+     * 只写入存活条目，先写到临时文件再替换，写入过程中崩溃不会丢失原有的journal
+     */
+    private void rebuildJournal() throws IOException {
+        if (journalWriter != null) {
+            try {
+                journalWriter.close();
+            } catch (IOException ignored) {
+            }
+            journalWriter = null;
+        }
+        File journal = new File(directory, JOURNAL_FILE);
+        File journalTemp = new File(directory, JOURNAL_FILE_TEMP);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalTemp), UTF_8));
+        try {
+            writer.write(MAGIC + '\n' + VERSION + '\n' + segmentSize + "\n\n");
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                Location location = entry.getValue();
+                writer.write(PUT + ' ' + location.metadataSegment.id + ' ' + location.metadataOffset
+                        + ' ' + location.metadataLength + ' ' + location.bodySegment.id
+                        + ' ' + location.bodyOffset + ' ' + location.bodyLength + ' ' + entry.getKey() + '\n');
+            }
+        } finally {
+            writer.close();
+        }
+        Files.move(journalTemp.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        journalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journal, true), UTF_8));
+        redundantOpCount = 0;
+    }
+
+    private void trimToSize() {
+        while (size > maxSize && !index.isEmpty()) {
+            removeLocked(index.keySet().iterator().next());
+        }
+    }
+
+    private void released(Segment segment) {
+        if (segment.liveBytes == 0 && segment != active && !segment.deleted) {
+            deleteSegment(segment);
+        }
+    }
+
+    private void deleteSegment(Segment segment) {
+        segment.deleted = true;
+        segments.remove(segment.id);
+        // Readers still holding a slice keep the pages alive until the mapping is collected.
+        segment.file.delete();
+    }
+
+    private boolean isSparse(Segment segment) {
+        return segment != active && segment.liveBytes * 2 < segment.writePosition;
+    }
+
+    private void scheduleCleanupIfNeeded() {
+        if (cleanupScheduled || closed) return;
+        boolean needed = redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD
+                && redundantOpCount >= index.size();
+        if (!needed) {
+            for (Segment segment : segments.values()) {
+                if (isSparse(segment)) {
+                    needed = true;
+                    break;
+                }
+            }
+        }
+        if (needed) {
+            cleanupScheduled = true;
+            executor.execute(cleanupRunnable);
+        }
+    }
+
+    /**
+     * 后台回收：把稀疏段里的存活条目搬到当前段，然后删除这些段；必要时重写journal
+     */
+    private void cleanup() {
+        List<Map.Entry<String, Location>> moves = new ArrayList<>();
+        synchronized (this) {
+            cleanupScheduled = false;
+            if (!usable) return;
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                Location location = entry.getValue();
+                if (isSparse(location.metadataSegment) || isSparse(location.bodySegment)) {
+                    moves.add(new AbstractMap.SimpleEntry<>(entry.getKey(), location));
+                }
+            }
+        }
+
+        for (Map.Entry<String, Location> move : moves) {
+            Location from = move.getValue();
+            int length = from.metadataLength + from.bodyLength;
+            Segment segment;
+            int offset;
+            synchronized (this) {
+                if (!usable) return;
+                if (index.get(move.getKey()) != from) continue;
+                try {
+                    segment = reserve(length);
+                } catch (IOException e) {
+                    return;
+                }
+                offset = segment.writePosition - length;
+            }
+            ByteBuffer target = segment.buffer.duplicate();
+            target.position(offset);
+            target.put(from.metadata());
+            target.put(from.body());
+            synchronized (this) {
+                if (!usable) return;
+                if (segment.deleted || index.get(move.getKey()) != from) continue;
+                commitLocked(move.getKey(), new Location(segment, offset, from.metadataLength,
+                        segment, offset + from.metadataLength, from.bodyLength));
+            }
+        }
+
+        synchronized (this) {
+            if (!usable) return;
+            if (redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD && redundantOpCount >= index.size()) {
+                try {
+                    rebuildJournal();
+                } catch (IOException e) {
+                    usable = false;
+                }
+            }
+        }
+    }
+
+    static byte[] encode(CacheEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, entry.url());
+        writeHeaders(out, entry.varyHeaders());
+        out.writeInt(entry.code());
+        writeString(out, entry.message());
+        writeHeaders(out, entry.responseHeaders());
+        out.writeLong(entry.sentRequestMillis());
+        out.writeLong(entry.receivedResponseMillis());
+        out.writeInt(entry.bodyLength());
+        out.flush();
+        byte[] payload = bytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(RECORD_MAGIC);
+        record.putInt((int) crc.getValue());
+        record.put(payload);
+        return record.array();
+    }
+
+    static CacheEntry decode(ByteBuffer metadata, ByteBuffer body) throws IOException {
+        if (metadata.getInt() != RECORD_MAGIC) {
+            throw new IOException("Bad record magic");
+        }
+        int expectedCrc = metadata.getInt();
+        byte[] payload = new byte[metadata.remaining()];
+        metadata.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Bad record checksum");
+        }
+
+        DataInputStream in = new DataInputStream(new ByteBufferInputStream(ByteBuffer.wrap(payload)));
+        String url = readString(in);
+        HttpHeaders varyHeaders = readHeaders(in);
+        int code = in.readInt();
+        String message = readString(in);
+        HttpHeaders responseHeaders = readHeaders(in);
+        long sentRequestMillis = in.readLong();
+        long receivedResponseMillis = in.readLong();
+        if (in.readInt() != body.remaining()) {
+            throw new IOException("Body length mismatch");
+        }
+        return new CacheEntry(url, varyHeaders, code, message, responseHeaders, body,
+                sentRequestMillis, receivedResponseMillis);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) return null;
+        if (length < 0 || length > in.available()) throw new EOFException();
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void writeHeaders(DataOutputStream out, HttpHeaders headers) throws IOException {
+        int size = headers != null ? headers.size() : 0;
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            writeString(out, headers.name(i));
+            writeString(out, headers.value(i));
+        }
+    }
+
+    private static HttpHeaders readHeaders(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) throw new EOFException();
+        HttpHeaders.Builder builder = new HttpHeaders.Builder();
+        for (int i = 0; i < size; i++) {
+            builder.add(readString(in), readString(in));
+        }
+        return builder.build();
+    }
+
+    /**
+     * 直接写入段中预留区域的响应体。预留的区域在提交之前不算存活数据，放弃或没写满的部分由后台回收
+     */
+    private final class SegmentBodyWriter extends BodyWriter {
+        final String key;
+        final Segment segment;
+        final int offset;
+        final int length;
+        int position;
+        boolean finished;
+
+        SegmentBodyWriter(String key, Segment segment, int offset, int length) {
+            this.key = key;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (finished) throw new IOException("finished");
+            if (len > length - position) {
+                abort();
+                throw new IOException("Body longer than its Content-Length " + length);
+            }
+            ByteBuffer target = segment.buffer.duplicate();
+            target.position(offset + position);
+            target.put(b, off, len);
+            position += len;
+        }
+
+        @Override
+        public ByteBuffer body() {
+            return segment.slice(offset, position);
+        }
+
+        @Override
+        public void commit(CacheEntry entry) {
+            if (finished) return;
+            finished = true;
+            put(key, entry, this);
+        }
+
+        @Override
+        public void abort() {
+            finished = true;
+        }
+    }
+
+    private static final class Segment {
+        final int id;
+        final File file;
+        final MappedByteBuffer buffer;
+        // 已写入（或已预留）的末尾位置，只有当前段会继续增长
+        int writePosition;
+        long liveBytes;
+        boolean deleted;
+
+        Segment(int id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        ByteBuffer slice(int offset, int length) {
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit(offset + length);
+            slice.position(offset);
+            return slice.slice().asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * 一个条目的元数据和响应体在段中的位置；只更新响应头时两者可以位于不同的段
+     */
+    private static final class Location {
+        final Segment metadataSegment;
+        final int metadataOffset;
+        final int metadataLength;
+        final Segment bodySegment;
+        final int bodyOffset;
+        final int bodyLength;
+
+        Location(Segment metadataSegment, int metadataOffset, int metadataLength,
+                 Segment bodySegment, int bodyOffset, int bodyLength) {
+            this.metadataSegment = metadataSegment;
+            this.metadataOffset = metadataOffset;
+            this.metadataLength = metadataLength;
+            this.bodySegment = bodySegment;
+            this.bodyOffset = bodyOffset;
+            this.bodyLength = bodyLength;
+        }
+
+        ByteBuffer metadata() {
+            return metadataSegment.slice(metadataOffset, metadataLength);
+        }
+
+        ByteBuffer body() {
+            return bodySegment.slice(bodyOffset, bodyLength);
+        }
+
+        void addTo(DiskCacheStore store) {
+            metadataSegment.liveBytes += metadataLength;
+            bodySegment.liveBytes += bodyLength;
+            store.size += metadataLength + bodyLength;
+        }
+
+        void removeFrom(DiskCacheStore store) {
+            metadataSegment.liveBytes -= metadataLength;
+            bodySegment.liveBytes -= bodyLength;
+            store.size -= metadataLength + bodyLength;
+            store.released(metadataSegment);
+            store.released(bodySegment);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package retrofit.cache;
+
+/**
+ * TinyLFU使用的Count-Min Sketch：每个元素对应4个4位计数器，估计值取其中最小的一个。
+ * 累计增加次数达到样本数（容量的10倍）时所有计数器减半，使频率随时间衰减。
+ * 不是线程安全的，由调用方加锁
+ */
+final class FrequencySketch {
+    private static final long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    FrequencySketch(int maximumSize) {
+        int maximum = Math.max(1, Math.min(maximumSize, 1 << 30));
+        int length = Integer.highestOneBit(maximum);
+        if (length < maximum) length <<= 1;
+        this.table = new long[length];
+        this.tableMask = length - 1;
+        this.sampleSize = maximum <= Integer.MAX_VALUE / 10 ? 10 * maximum : Integer.MAX_VALUE;
+    }
+
+    /**
+     * 估计的访问次数，最大为15
+     */
+    int frequency(Object e) {
+        int hash = spread(e.hashCode());
+        // Each long holds 16 counters, the low bits pick the group of 4 this element uses.
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(Object e) {
+        int hash = spread(e.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        if ((table[i] & mask) != mask) {
+            table[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 所有计数器减半，size按被截掉的奇数位修正
+     */
+    private void reset() {
+        int count = 0;
+        for (int i = 0; i < table.length; i++) {
+            count += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (count >>> 2);
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEED[i]) * SEED[i];
+        hash += hash >>> 32;
+        return ((int) hash) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
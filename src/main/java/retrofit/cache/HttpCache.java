@@ -0,0 +1,173 @@
+package retrofit.cache;
+
+import retrofit.HttpHeaders;
+import retrofit.HttpUrl;
+import retrofit.core.HttpEngine;
+import retrofit.core.ResolvedRequest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 与引擎无关的HTTP缓存（RFC 7234），通过Retrofit.Builder.cache(HttpCache)启用。
+ * 只缓存GET的200/203/204响应；新鲜的条目直接返回，不经过网络，也不再转换响应体；
+ * 过期但带有ETag或Last-Modified的条目会自动发出条件请求，收到304时更新响应头后复用。
+ * 缓存的响应体对象在命中之间共享，应当是不可变的
+ */
+public final class HttpCache {
+    private final CacheStore store;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong revalidationCount = new AtomicLong();
+    private final AtomicLong notModifiedCount = new AtomicLong();
+
+    public HttpCache(CacheStore store) {
+        if (store == null) throw new NullPointerException("store == null");
+        this.store = store;
+    }
+
+    public CacheStore store() {
+        return store;
+    }
+
+    /**
+     * 用缓存装饰引擎，Retrofit在build时调用
+     */
+    public HttpEngine newEngine(HttpEngine delegate) {
+        return new CachingHttpEngine(delegate, this);
+    }
+
+    public void evictAll() {
+        store.clear();
+    }
+
+    /**
+     * 经过缓存判断的GET请求数
+     */
+    public long requestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * 直接由缓存返回、没有访问网络的次数
+     */
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * 没有可用条目、发出完整请求的次数
+     */
+    public long missCount() {
+        return missCount.get();
+    }
+
+    /**
+     * 发出条件请求重新验证过期条目的次数
+     */
+    public long revalidationCount() {
+        return revalidationCount.get();
+    }
+
+    /**
+     * 重新验证得到304、复用了缓存响应体的次数
+     */
+    public long notModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    void trackRequest() {
+        requestCount.incrementAndGet();
+    }
+
+    void trackHit() {
+        hitCount.incrementAndGet();
+    }
+
+    void trackMiss() {
+        missCount.incrementAndGet();
+    }
+
+    void trackRevalidation() {
+        revalidationCount.incrementAndGet();
+    }
+
+    void trackNotModified() {
+        notModifiedCount.incrementAndGet();
+    }
+
+    static String key(ResolvedRequest request) {
+        return request.url().toString();
+    }
+
+    /**
+     * 响应的Vary所列请求头与本次请求不一致时视为未命中
+     */
+    CacheEntry get(ResolvedRequest request) {
+        CacheEntry entry = store.get(key(request));
+        if (entry == null) return null;
+        HttpHeaders requestHeaders = request.headers();
+        for (String name : varyFields(entry.responseHeaders())) {
+            if (!entry.varyHeaders().values(name).equals(requestHeaders.values(name))) {
+                return null;
+            }
+        }
+        return entry;
+    }
+
+    void put(ResolvedRequest request, CacheEntry entry) {
+        store.put(key(request), entry);
+    }
+
+    void remove(ResolvedRequest request) {
+        store.remove(key(request));
+    }
+
+    void remove(HttpUrl url) {
+        store.remove(url.toString());
+    }
+
+    static Set<String> varyFields(HttpHeaders responseHeaders) {
+        List<String> values = responseHeaders.values("Vary");
+        if (values.isEmpty()) return Collections.emptySet();
+        Set<String> result = new LinkedHashSet<>();
+        for (String value : values) {
+            for (String field : value.split(",")) {
+                field = field.trim();
+                if (field.length() > 0) {
+                    result.add(field);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 只保留Vary所列请求头，用于之后的匹配
+     */
+    static HttpHeaders varyHeaders(HttpHeaders requestHeaders, HttpHeaders responseHeaders) {
+        Set<String> fields = varyFields(responseHeaders);
+        HttpHeaders.Builder builder = new HttpHeaders.Builder();
+        for (int i = 0, size = requestHeaders.size(); i < size; i++) {
+            String name = requestHeaders.name(i);
+            for (String field : fields) {
+                if (field.equalsIgnoreCase(name)) {
+                    builder.add(name, requestHeaders.value(i));
+                    break;
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    static boolean hasVaryAll(HttpHeaders responseHeaders) {
+        return varyFields(responseHeaders).contains("*");
+    }
+
+    static final List<Integer> CACHEABLE_CODES = Arrays.asList(200, 203, 204);
+}
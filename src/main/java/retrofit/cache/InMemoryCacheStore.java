@@ -0,0 +1,72 @@
+package retrofit.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 内存中的LRU存储，按响应体字节数限制容量
+ */
+public class InMemoryCacheStore implements CacheStore {
+    private final long maxSize;
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    /**
+     * @param maxSize 所有响应体的字节数上限
+     */
+    public InMemoryCacheStore(long maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize <= 0");
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public synchronized CacheEntry get(String key) {
+        return entries.get(key);
+    }
+
+    @Override
+    public synchronized void put(String key, CacheEntry entry) {
+        long entrySize = entry.bodyLength();
+        if (entrySize > maxSize) {
+            remove(key);
+            return;
+        }
+        CacheEntry previous = entries.put(key, entry);
+        if (previous != null) {
+            size -= previous.bodyLength();
+        }
+        size += entrySize;
+        trimToSize();
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        CacheEntry previous = entries.remove(key);
+        if (previous != null) {
+            size -= previous.bodyLength();
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public long maxSize() {
+        return maxSize;
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, CacheEntry>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            size -= iterator.next().getValue().bodyLength();
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package retrofit.cache;
+
+import retrofit.HttpResponse;
+import retrofit.ServiceMethod;
+import retrofit.core.BuiltInConverters;
+import retrofit.core.ForwardingHttpEngine;
+import retrofit.core.HttpCall;
+import retrofit.core.HttpCallback;
+import retrofit.core.HttpEngine;
+import retrofit.core.ResolvedRequest;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link retrofit.http.Cacheable}的引擎装饰器：在{@link TinyLfuCache}中保存成功（2xx）的响应及转换后的结果。
+ * 参数都是字符串、基本类型的包装类或枚举时，以ServiceMethod和参数值为键，查找时不写请求；
+ * 其它参数（数组、经Converter转换的对象等）可能被修改或没有equals，退回以{@link ResolvedRequest}为键，
+ * 每次查找要用ParameterHandler写一遍参数。命中时直接返回，不构建引擎请求也不访问网络；
+ * 同一个键同时未命中的调用各自请求网络，需要合并时可以再加上{@link retrofit.http.Coalesce}。
+ * 统计数据可以通过{@link ForwardingHttpEngine#unwrap}从ServiceMethod.httpEngine中取得
+ */
+public class ResultCachingHttpEngine extends ForwardingHttpEngine {
+    private final TinyLfuCache<Object, HttpResponse> cache;
+
+    public ResultCachingHttpEngine(HttpEngine delegate, int maxEntries, long ttlNanos) {
+        super(delegate);
+        this.cache = new TinyLfuCache<>(maxEntries, ttlNanos);
+    }
+
+    public long hitCount() {
+        return cache.hitCount();
+    }
+
+    public long missCount() {
+        return cache.missCount();
+    }
+
+    public long evictionCount() {
+        return cache.evictionCount();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public <T> HttpResponse execute(HttpCall<T> httpCall) throws IOException {
+        final Object key = key(httpCall);
+        if (key == null) {
+            return super.execute(httpCall);
+        }
+        HttpResponse cached = cache.get(key);
+        if (cached != null) {
+            httpCall.check();
+            if (httpCall.isCanceled()) {
+                throw new IOException("Canceled");
+            }
+            return cached;
+        }
+        HttpResponse response = super.execute(httpCall);
+        store(key, response);
+        return response;
+    }
+
+    @Override
+    public <T> void execute(final HttpCall<T> httpCall, final HttpCallback<T> callback) {
+        if (callback == null) throw new NullPointerException("callback == null");
+        final Object key = key(httpCall);
+        if (key == null) {
+            super.execute(httpCall, callback);
+            return;
+        }
+        final HttpResponse cached = cache.get(key);
+        if (cached != null) {
+            httpCall.markExecuted();
+            deliver(httpCall, new Runnable() {
+                @Override
+                public void run() {
+                    if (httpCall.isCanceled()) {
+                        callback.onFailure(httpCall, new IOException("Canceled"));
+                    } else {
+                        //noinspection unchecked
+                        callback.onResponse(httpCall, (HttpResponse<T, ?, ?>) cached);
+                    }
+                }
+            });
+            return;
+        }
+        super.execute(httpCall, new HttpCallback<T>() {
+            @Override
+            public void onResponse(HttpCall<T> call, HttpResponse<T, ?, ?> response) {
+                store(key, response);
+                callback.onResponse(call, response);
+            }
+
+            @Override
+            public void onFailure(HttpCall<T> call, Throwable t) {
+                callback.onFailure(call, t);
+            }
+        });
+    }
+
+    private void store(Object key, HttpResponse response) {
+        if (response.isSuccessful()) {
+            cache.put(key, response);
+        }
+    }
+
+    /**
+     * 带请求体或以流返回的方法不缓存，无法解析请求时返回null，交给被装饰的引擎报告错误
+     */
+    private static Object key(HttpCall<?> httpCall) {
+        ServiceMethod<?, ?> serviceMethod = httpCall.serviceMethod;
+        if (serviceMethod.hasBody || BuiltInConverters.isStreaming(serviceMethod.responseConverter)) {
+            return null;
+        }
+        Object[] args = httpCall.args();
+        if (args == null || isValue(args)) {
+            return new ArgumentsKey(serviceMethod, args);
+        }
+        try {
+            return ResolvedRequest.of(httpCall);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 不可变且按值比较的参数。数组在调用之后还可能被修改，不作为键保存
+     */
+    private static boolean isValue(Object[] args) {
+        for (Object arg : args) {
+            if (!(arg == null
+                    || arg instanceof String
+                    || arg instanceof Integer
+                    || arg instanceof Long
+                    || arg instanceof Boolean
+                    || arg instanceof Character
+                    || arg instanceof Double
+                    || arg instanceof Float
+                    || arg instanceof Short
+                    || arg instanceof Byte
+                    || arg instanceof Enum)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 同一个方法、参数值相等的调用写出的请求相同
+     */
+    private static final class ArgumentsKey {
+        private final ServiceMethod<?, ?> serviceMethod;
+        private final Object[] args;
+        private final int hashCode;
+
+        ArgumentsKey(ServiceMethod<?, ?> serviceMethod, Object[] args) {
+            this.serviceMethod = serviceMethod;
+            this.args = args;
+            this.hashCode = 31 * System.identityHashCode(serviceMethod) + Arrays.hashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ArgumentsKey)) return false;
+            ArgumentsKey other = (ArgumentsKey) o;
+            return serviceMethod == other.serviceMethod && Arrays.equals(args, other.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static void deliver(HttpCall<?> call, Runnable runnable) {
+        Executor callbackExecutor = call.serviceMethod.callbackExecutor;
+        if (callbackExecutor != null) {
+            callbackExecutor.execute(runnable);
+        } else {
+            runnable.run();
+        }
+    }
+}
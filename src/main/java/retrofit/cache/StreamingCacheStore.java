@@ -0,0 +1,35 @@
+package retrofit.cache;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 可以让响应体边读边直接写入存储的CacheStore。未实现这个接口的存储，以及没有Content-Length的响应，
+ * 由缓存先把响应体收集到堆上再整体put
+ */
+public interface StreamingCacheStore extends CacheStore {
+    /**
+     * 为key开始写入一个长度已知的响应体，不能写入（例如超过上限）时返回null
+     */
+    BodyWriter newBodyWriter(String key, long contentLength);
+
+    /**
+     * 一个正在写入的响应体，写完后以{@link #commit(CacheEntry)}代替put。写入超出预留的长度时抛出IOException
+     */
+    abstract class BodyWriter extends OutputStream {
+        /**
+         * 已写入的响应体的只读视图，只在写完之后调用
+         */
+        public abstract ByteBuffer body();
+
+        /**
+         * 保存以{@link #body()}为响应体创建的条目，之后它才对get可见
+         */
+        public abstract void commit(CacheEntry entry);
+
+        /**
+         * 放弃写入的内容，已占用的空间由存储回收
+         */
+        public abstract void abort();
+    }
+}
@@ -0,0 +1,358 @@
+package retrofit.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按W-TinyLFU淘汰、带写入后过期时间的内存缓存。
+ * <p>
+ * 新条目先进入占容量1%的LRU窗口，从窗口挤出的候选者与主区（分段LRU：试用区和保护区）中
+ * 最久未用的条目比较{@link FrequencySketch}估计的访问频率，频率更高的一方留下。
+ * 这样偶尔被扫过一次的键不会把高频的热点挤出去。
+ * <p>
+ * 读取不加锁：只查询ConcurrentHashMap，并把命中的条目记到一个有损的环形缓冲区，
+ * 由拿到锁的线程批量回放到淘汰策略中；缓冲区写满时丢弃的记录只会让频率略微偏低。
+ * 读到的过期条目立即从map中移除，再由下一个拿到锁的线程从队列中摘除；没被读到的过期条目在淘汰时优先移除
+ */
+public final class TinyLfuCache<K, V> {
+    private static final int READ_BUFFER_SIZE = 128;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    // 积累这么多次读取后尝试回放
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = 32;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final int maximumSize;
+    private final long ttlNanos;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final int windowMaximum;
+    private final int protectedMaximum;
+    private final Deque<K, V> window = new Deque<>();
+    private final Deque<K, V> probation = new Deque<>();
+    private final Deque<K, V> protectedDeque = new Deque<>();
+
+    private final AtomicReferenceArray<Node<K, V>> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    private final AtomicLong readBufferWriteCount = new AtomicLong();
+    private long readBufferReadCount;
+    // 读取时已从data中移除、还留在队列中的过期条目，不能像读记录那样丢弃
+    private final ConcurrentLinkedQueue<Node<K, V>> expiredNodes = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * @param ttlNanos 条目写入后的有效时间，小于等于0表示不过期
+     */
+    public TinyLfuCache(int maximumSize, long ttlNanos) {
+        if (maximumSize <= 0) throw new IllegalArgumentException("maximumSize <= 0");
+        this.maximumSize = maximumSize;
+        this.ttlNanos = ttlNanos;
+        this.sketch = new FrequencySketch(maximumSize);
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.protectedMaximum = (int) ((maximumSize - windowMaximum) * 0.8);
+    }
+
+    /**
+     * 不存在或已过期时返回null
+     */
+    public V get(K key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        if (isExpired(node, System.nanoTime())) {
+            missCount.incrementAndGet();
+            if (data.remove(key, node)) {
+                expiredNodes.add(node);
+                if (evictionLock.tryLock()) {
+                    try {
+                        drainExpiredNodes();
+                    } finally {
+                        evictionLock.unlock();
+                    }
+                }
+            }
+            return null;
+        }
+        hitCount.incrementAndGet();
+        recordRead(node);
+        return node.value;
+    }
+
+    public void put(K key, V value) {
+        if (key == null || value == null) throw new NullPointerException();
+        long now = System.nanoTime();
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            drainExpiredNodes();
+            sketch.increment(key);
+            Node<K, V> node = data.get(key);
+            if (node != null && isExpired(node, now)) {
+                // Replaced by a fresh node so that a concurrent get() cannot remove the new value.
+                removeExpired(node);
+                node = null;
+            }
+            if (node != null) {
+                node.value = value;
+                node.writeNanos = now;
+                onAccess(node);
+                return;
+            }
+            node = new Node<>(key, value, now);
+            data.put(key, node);
+            node.queue = WINDOW;
+            window.addLast(node);
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        evictionLock.lock();
+        try {
+            Node<K, V> node = data.remove(key);
+            if (node != null) {
+                unlink(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        evictionLock.lock();
+        try {
+            drainExpiredNodes();
+            for (K key : data.keySet()) {
+                Node<K, V> node = data.remove(key);
+                if (node != null) {
+                    unlink(node);
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 包含还没被读到或淘汰的过期条目
+     */
+    public int size() {
+        return data.size();
+    }
+
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    public long missCount() {
+        return missCount.get();
+    }
+
+    /**
+     * 因容量不足被淘汰的条目数，不含过期和主动失效的条目
+     */
+    public long evictionCount() {
+        return evictionCount.get();
+    }
+
+    private boolean isExpired(Node<K, V> node, long now) {
+        return ttlNanos > 0 && now - node.writeNanos >= ttlNanos;
+    }
+
+    private void recordRead(Node<K, V> node) {
+        long writeCount = readBufferWriteCount.getAndIncrement();
+        readBuffer.lazySet((int) (writeCount & READ_BUFFER_MASK), node);
+        if ((writeCount & (READ_BUFFER_DRAIN_THRESHOLD - 1)) == 0 && evictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void drainExpiredNodes() {
+        Node<K, V> node;
+        while ((node = expiredNodes.poll()) != null) {
+            unlink(node);
+        }
+    }
+
+    private void removeExpired(Node<K, V> node) {
+        unlink(node);
+        data.remove(node.key, node);
+    }
+
+    private void drainReadBuffer() {
+        long writeCount = readBufferWriteCount.get();
+        // Slots older than one lap have been overwritten, skip them.
+        long start = Math.max(readBufferReadCount, writeCount - READ_BUFFER_SIZE);
+        for (long i = start; i < writeCount; i++) {
+            Node<K, V> node = readBuffer.getAndSet((int) (i & READ_BUFFER_MASK), null);
+            if (node != null) {
+                sketch.increment(node.key);
+                if (node.queue != -1) {
+                    onAccess(node);
+                }
+            }
+        }
+        readBufferReadCount = writeCount;
+    }
+
+    /**
+     * 窗口和保护区内移到队尾；试用区的条目晋升到保护区，保护区满时把最久未用的降回试用区
+     */
+    private void onAccess(Node<K, V> node) {
+        if (node.queue == WINDOW) {
+            window.moveToLast(node);
+        } else if (node.queue == PROBATION) {
+            probation.remove(node);
+            node.queue = PROTECTED;
+            protectedDeque.addLast(node);
+            if (protectedDeque.size > protectedMaximum) {
+                Node<K, V> demoted = protectedDeque.pollFirst();
+                demoted.queue = PROBATION;
+                probation.addLast(demoted);
+            }
+        } else if (node.queue == PROTECTED) {
+            protectedDeque.moveToLast(node);
+        }
+    }
+
+    /**
+     * 窗口超出容量时把最久未用的条目移入试用区，整体超出容量时由它和主区中最久未用的条目竞争
+     */
+    private void evict() {
+        long now = System.nanoTime();
+        while (window.size > windowMaximum) {
+            Node<K, V> candidate = window.pollFirst();
+            candidate.queue = PROBATION;
+            probation.addLast(candidate);
+            if (data.size() > maximumSize) {
+                Node<K, V> victim = selectVictim(candidate, now);
+                if (isExpired(victim, now)) {
+                    removeExpired(victim);
+                } else {
+                    evictNode(victim);
+                }
+            }
+        }
+    }
+
+    /**
+     * 过期的一方直接让位；否则访问频率更低的一方被淘汰，频率相同时保留已在主区中的条目
+     */
+    private Node<K, V> selectVictim(Node<K, V> candidate, long now) {
+        Node<K, V> victim = probation.first != candidate ? probation.first : protectedDeque.first;
+        if (victim == null || isExpired(candidate, now)) {
+            return candidate;
+        }
+        if (isExpired(victim, now)) {
+            return victim;
+        }
+        return sketch.frequency(candidate.key) > sketch.frequency(victim.key) ? victim : candidate;
+    }
+
+    private void evictNode(Node<K, V> node) {
+        unlink(node);
+        if (data.remove(node.key, node)) {
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    private void unlink(Node<K, V> node) {
+        if (node.queue == WINDOW) {
+            window.remove(node);
+        } else if (node.queue == PROBATION) {
+            probation.remove(node);
+        } else if (node.queue == PROTECTED) {
+            protectedDeque.remove(node);
+        }
+        node.queue = -1;
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        volatile V value;
+        volatile long writeNanos;
+        // 所在的队列，-1表示已被移除；只在持有锁时修改
+        volatile int queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, long writeNanos) {
+            this.key = key;
+            this.value = value;
+            this.writeNanos = writeNanos;
+        }
+    }
+
+    /**
+     * 以节点自身的指针链接的双端队列，头部是最久未用的条目
+     */
+    private static final class Deque<K, V> {
+        Node<K, V> first;
+        Node<K, V> last;
+        int size;
+
+        void addLast(Node<K, V> node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+            size++;
+        }
+
+        Node<K, V> pollFirst() {
+            Node<K, V> node = first;
+            if (node != null) {
+                remove(node);
+            }
+            return node;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+}
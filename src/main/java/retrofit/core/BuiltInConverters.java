@@ -38,6 +38,13 @@ public final class BuiltInConverters extends HttpConverter.Factory {
         return null;
     }
 
+    /**
+     * converter是否直接交出未读取的响应流（@Streaming），这样的响应无法缓存或共享
+     */
+    public static boolean isStreaming(HttpConverter<?, ?> converter) {
+        return converter instanceof StreamingResponseBodyConverter;
+    }
+
     static final class VoidResponseBodyConverter implements HttpConverter<InputStream, Void> {
         static final VoidResponseBodyConverter INSTANCE = new VoidResponseBodyConverter();
 
@@ -0,0 +1,389 @@
+package retrofit.core;
+
+import retrofit.RequestBody;
+import retrofit.RequestBuilder;
+import retrofit.HttpHeaders;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Map;
+
+import static retrofit.util.Utils.checkNotNull;
+
+/**
+ * 与具体引擎无关的ParameterHandler，只通过{@link RequestBuilder}写入请求，
+ * 由{@link HttpEngine#getParameterHandler}统一创建
+ */
+public final class BuiltInParameterHandlers {
+    private BuiltInParameterHandlers() {
+    }
+
+    public static final class RelativeUrl extends ParameterHandler<Object> {
+        @Override
+        public void apply(RequestBuilder builder, Object value) {
+            builder.setRelativeUrl(value);
+        }
+    }
+
+    public static final class Header<T> extends ParameterHandler<T> {
+        private final String name;
+        private final HttpConverter<T, String> valueConverter;
+
+        public Header(String name, HttpConverter<T, String> valueConverter) {
+            this.name = checkNotNull(name, "name == null");
+            this.valueConverter = valueConverter;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public void apply(RequestBuilder builder, T value) throws IOException {
+            if (value == null) return; // Skip null values.
+            builder.addHeader(name, valueConverter.convert(value));
+        }
+    }
+
+    public static final class Path<T> extends ParameterHandler<T> {
+        private final String name;
+        private final HttpConverter<T, String> valueConverter;
+        private final boolean encoded;
+
+        public Path(String name, HttpConverter<T, String> valueConverter, boolean encoded) {
+            this.name = checkNotNull(name, "name == null");
+            this.valueConverter = valueConverter;
+            this.encoded = encoded;
+        }
+
+        @Override
+        public void apply(RequestBuilder builder, T value) throws IOException {
+            if (value == null) {
+                throw new IllegalArgumentException(
+                        "Path parameter \"" + name + "\" value must not be null.");
+            }
+            builder.addPathParam(name, valueConverter.convert(value), encoded);
+        }
+    }
+
+    /**
+     * int、long、short、byte、boolean及其包装类型的@Path参数，使用默认的toString转换时
+     * 直接把数字交给RequestBuilder，不经过HttpConverter生成中间String
+     */
+    public static final class PrimitivePath extends ParameterHandler<Object> {
+        private final String name;
+
+        public PrimitivePath(String name) {
+            this.name = checkNotNull(name, "name == null");
+        }
+
+        @Override
+        public void apply(RequestBuilder builder, Object value) {
+            if (value == null) {
+                throw new IllegalArgumentException(
+                        "Path parameter \"" + name + "\" value must not be null.");
+            }
+            if (value instanceof Boolean) {
+                builder.addPathParam(name, (Boolean) value ? "true" : "false", true);
+            } else {
+                builder.addPathParam(name, ((Number) value).longValue());
+            }
+        }
+    }
+
+    public static final class PrimitiveQuery extends ParameterHandler<Object> {
+        private final String name;
+
+        public PrimitiveQuery(String name) {
+            this.name = checkNotNull(name, "name == null");
+        }
+
+        @Override
+        public void apply(RequestBuilder builder, Object value) {
+            if (value == null) return; // Skip null values.
+            if (value instanceof Boolean) {
+                builder.addQueryParam(name, (Boolean) value ? "true" : "false", true);
+            } else {
+                builder.addQueryParam(name, ((Number) value).longValue());
+            }
+        }
+
+        /**
+         * 基本类型数组的元素直接写入，不逐个装箱；包装类型的数组与{@link #array(Class)}相同
+         */
+        public ParameterHandler<Object> primitiveArray(final Class<?> componentType) {
+            if (!componentType.isPrimitive()) {
+                return array(componentType);
+            }
+            return new ParameterHandler<Object>() {
+                @Override
+                public void apply(RequestBuilder builder, Object values) {
+                    if (values == null) return; // Skip null values.
+                    if (componentType == int.class) {
+                        for (int value : (int[]) values) {
+                            builder.addQueryParam(name, value);
+                        }
+                    } else if (componentType == long.class) {
+                        for (long value : (long[]) values) {
+                            builder.addQueryParam(name, value);
+                        }
+                    } else if (componentType == short.class) {
+                        for (short value : (short[]) values) {
+                            builder.addQueryParam(name, value);
+                        }
+                    } else if (componentType == byte.class) {
+                        for (byte value : (byte[]) values) {
+                            builder.addQueryParam(name, value);
+                        }
+                    } else {
+                        for (boolean value : (boolean[]) values) {
+                            builder.addQueryParam(name, value ? "true" : "false", true);
+                        }
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * 可以由{@link PrimitivePath}和{@link PrimitiveQuery}处理的类型
+     */
+    public static boolean isPrimitiveParameter(Type type) {
+        return type == int.class || type == Integer.class
+                || type == long.class || type == Long.class
+                || type == short.class || type == Short.class
+                || type == byte.class || type == Byte.class
+                || type == boolean.class || type == Boolean.class;
+    }
+
+    /**
+     * handler是否只做默认的toString转换，编译期生成的参数对象可以用声明类型直接写入等价的请求
+     */
+    public static boolean isDefaultConversion(ParameterHandler<?> handler) {
+        if (handler instanceof PrimitivePath || handler instanceof PrimitiveQuery) {
+            return true;
+        }
+        HttpConverter<?, String> converter;
+        if (handler instanceof Path) {
+            converter = ((Path<?>) handler).valueConverter;
+        } else if (handler instanceof Query) {
+            converter = ((Query<?>) handler).valueConverter;
+        } else if (handler instanceof Header) {
+            converter = ((Header<?>) handler).valueConverter;
+        } else if (handler instanceof Field) {
+            converter = ((Field<?>) handler).valueConverter;
+        } else {
+            return false;
+        }
+        return converter == BuiltInConverters.ToStringConverter.INSTANCE;
+    }
+
+    public static final class Query<T> extends ParameterHandler<T> {
+        private final String name;
+        private final HttpConverter<T, String> valueConverter;
+        private final boolean encoded;
+
+        public Query(String name, HttpConverter<T, String> valueConverter, boolean encoded) {
+            this.name = checkNotNull(name, "name == null");
+            this.valueConverter = valueConverter;
+            this.encoded = encoded;
+        }
+
+        @Override
+        public void apply(RequestBuilder builder, T value) throws IOException {
+            if (value == null) return; // Skip null values.
+            builder.addQueryParam(name, valueConverter.convert(value), encoded);
+        }
+    }
+
+
+    public static final class QueryMap<T> extends ParameterHandler<Map<String, T>> {
+        private final HttpConverter<T, String> valueConverter;
+        private final boolean encoded;
+
+        public QueryMap(HttpConverter<T, String> valueConverter, boolean encoded) {
+            this.valueConverter = valueConverter;
+            this.encoded = encoded;
+        }
+
+        @Override
+        public void apply(RequestBuilder builder, Map<String, T> value) throws IOException {
+            if (value == null) {
+                throw new IllegalArgumentException("Query map was null.");
+            }
+
+            for (Map.Entry<String, T> entry : value.entrySet()) {
+                String entryKey = entry.getKey();
+                if (entryKey == null) {
+                    throw new IllegalArgumentException("Query map contained null key.");
+                }
+                T entryValue = entry.getValue();
+                if (entryValue == null) {
+                    throw new IllegalArgumentException(
+                            "Query map contained null value for key '" + entryKey + "'.");
+                }
+                builder.addQueryParam(entryKey, valueConverter.convert(entryValue), encoded);
+            }
+        }
+    }
+
+
+    public static final class HeaderMap<T> extends ParameterHandler<Map<String, T>> {
+        private final HttpConverter<T, String> valueConverter;
+
+        public HeaderMap(HttpConverter<T, String> valueConverter) {
+            this.valueConverter = valueConverter;
+        }
+
+        @Override
+        public void apply(RequestBuilder builder, Map<String, T> value) throws IOException {
+            if (value == null) {
+                throw new IllegalArgumentException("Header map was null.");
+            }
+
+            for (Map.Entry<String, T> entry : value.entrySet()) {
+                String headerName = entry.getKey();
+                if (headerName == null) {
+                    throw new IllegalArgumentException("Header map contained null key.");
+                }
+                T headerValue = entry.getValue();
+                if (headerValue == null) {
+                    throw new IllegalArgumentException(
+                            "Header map contained null value for key '" + headerName + "'.");
+                }
+                builder.addHeader(headerName, valueConverter.convert(headerValue));
+            }
+        }
+    }
+
+    public static final class Field<T> extends ParameterHandler<T> {
+        private final String name;
+        private final HttpConverter<T, String> valueConverter;
+        private final boolean encoded;
+
+        public Field(String name, HttpConverter<T, String> valueConverter, boolean encoded) {
+            this.name = checkNotNull(name, "name == null");
+            this.valueConverter = valueConverter;
+            this.encoded = encoded;
+        }
+
+        @Override
+        public void apply(RequestBuilder builder, T value) throws IOException {
+            if (value == null) return; // Skip null values.
+            builder.addFormField(name, valueConverter.convert(value), encoded);
+        }
+    }
+
+
+    public static final class FieldMap<T> extends ParameterHandler<Map<String, T>> {
+        private final HttpConverter<T, String> valueConverter;
+        private final boolean encoded;
+
+        public FieldMap(HttpConverter<T, String> valueConverter, boolean encoded) {
+            this.valueConverter = valueConverter;
+            this.encoded = encoded;
+        }
+
+        @Override
+        public void apply(RequestBuilder builder, Map<String, T> value) throws IOException {
+            if (value == null) {
+                throw new IllegalArgumentException("Field map was null.");
+            }
+
+            for (Map.Entry<String, T> entry : value.entrySet()) {
+                String entryKey = entry.getKey();
+                if (entryKey == null) {
+                    throw new IllegalArgumentException("Field map contained null key.");
+                }
+                T entryValue = entry.getValue();
+                if (entryValue == null) {
+                    throw new IllegalArgumentException(
+                            "Field map contained null value for key '" + entryKey + "'.");
+                }
+                builder.addFormField(entryKey, valueConverter.convert(entryValue), encoded);
+            }
+        }
+    }
+
+
+    public static final class Part<T> extends ParameterHandler<T> {
+        private final HttpHeaders headers;
+        private final HttpConverter<T, RequestBody> converter;
+
+        public Part(HttpHeaders headers, HttpConverter<T, RequestBody> converter) {
+            this.headers = headers;
+            this.converter = converter;
+        }
+
+        @Override
+        public void apply(RequestBuilder builder, T value) {
+            if (value == null) return; // Skip null values.
+
+            RequestBody body;
+            try {
+                body = converter.convert(value);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to convert " + value + " to RequestBody", e);
+            }
+            builder.addPart(headers, body);
+        }
+    }
+
+    public static final class PartMap<T> extends ParameterHandler<Map<String, T>> {
+        private final HttpConverter<T, RequestBody> valueConverter;
+        private final String transferEncoding;
+
+        public PartMap(HttpConverter<T, RequestBody> valueConverter, String transferEncoding) {
+            this.valueConverter = valueConverter;
+            this.transferEncoding = transferEncoding;
+        }
+
+        @Override
+        public void apply(RequestBuilder builder, Map<String, T> value) throws IOException {
+            if (value == null) {
+                throw new IllegalArgumentException("Part map was null.");
+            }
+
+            for (Map.Entry<String, T> entry : value.entrySet()) {
+                String entryKey = entry.getKey();
+                if (entryKey == null) {
+                    throw new IllegalArgumentException("Part map contained null key.");
+                }
+                T entryValue = entry.getValue();
+                if (entryValue == null) {
+                    throw new IllegalArgumentException(
+                            "Part map contained null value for key '" + entryKey + "'.");
+                }
+
+                HttpHeaders headers = HttpHeaders.of(
+                        "Content-Disposition", "form-data; name=\"" + entryKey + "\"",
+                        "Content-Transfer-Encoding", transferEncoding);
+
+                builder.addPart(headers, valueConverter.convert(entryValue));
+            }
+        }
+    }
+
+
+    public static final class Body<T> extends ParameterHandler<T> {
+        private final HttpConverter<T, RequestBody> converter;
+
+        public Body(HttpConverter<T, RequestBody> converter) {
+            this.converter = converter;
+        }
+
+        @Override
+        public void apply(RequestBuilder builder, T value) throws IOException {
+            if (value == null) {
+                throw new IllegalArgumentException("Body parameter value must not be null.");
+            }
+            RequestBody body;
+            try {
+                body = converter.convert(value);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to convert " + value + " to RequestBody", e);
+            }
+            builder.setBody(body);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package retrofit.core;
+
+import retrofit.RequestBuilder;
+
+import java.io.IOException;
+
+/**
+ * 编译期生成的实现类为每个方法生成的参数对象，按参数的声明类型直接写入RequestBuilder，不装箱成Object[]。
+ * 只在{@code ServiceMethod.typedArguments}为true时使用，此时每个参数都由内置的handler以默认的toString转换处理。
+ * 装饰器按下标读取单个参数（限流的key等）时用{@link #get(int)}，只装箱这一个参数；
+ * 需要整个数组时才由{@link #toArray()}生成
+ */
+public abstract class CallArguments {
+    private volatile Object[] array;
+
+    public abstract void write(RequestBuilder builder) throws IOException;
+
+    /**
+     * 与动态代理传给ServiceMethod.invoke(Object[])的数组相同
+     */
+    protected abstract Object[] toArray();
+
+    /**
+     * 第index个参数，生成的子类直接返回对应字段
+     */
+    public Object get(int index) {
+        return array()[index];
+    }
+
+    public final Object[] array() {
+        Object[] array = this.array;
+        if (array == null) {
+            // Racing threads build equal arrays.
+            this.array = array = toArray();
+        }
+        return array;
+    }
+}
@@ -0,0 +1,21 @@
+package retrofit.core;
+
+import java.io.IOException;
+
+/**
+ * 熔断器处于OPEN，或HALF_OPEN时探测名额已满，调用没有发出
+ */
+public class CallNotPermittedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final transient CircuitBreaker breaker;
+
+    public CallNotPermittedException(CircuitBreaker breaker) {
+        super("CircuitBreaker '" + breaker.name() + "' is " + breaker.state() + " and does not permit calls");
+        this.breaker = breaker;
+    }
+
+    public CircuitBreaker breaker() {
+        return breaker;
+    }
+}
@@ -0,0 +1,254 @@
+package retrofit.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 熔断器，由{@link CircuitBreakerRegistry}按方法或主机创建。
+ * <p>
+ * CLOSED时把最近windowSize次调用的结果记在环形缓冲区中，调用数达到minimumCalls后，
+ * 失败率或慢调用率达到阈值就转为OPEN；OPEN期间的调用直接失败，openDurationMillis之后转为HALF_OPEN，
+ * 放行halfOpenCalls个探测调用，它们的失败率和慢调用率都低于阈值时回到CLOSED，否则重新OPEN。
+ * <p>
+ * 状态和统计都不加锁：状态用CAS切换，每次切换换上一个新的窗口；
+ * 记录结果时用getAndSet替换槽位，按被替换的旧结果修正计数
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 状态切换的监听器，在引起切换的调用线程上执行，应尽快返回
+     */
+    public interface Listener {
+        void onStateTransition(CircuitBreaker breaker, State from, State to);
+    }
+
+    private final String name;
+    private final CircuitBreakerRegistry registry;
+    private final AtomicReference<Phase> phase;
+    private final AtomicLong notPermittedCount = new AtomicLong();
+
+    CircuitBreaker(String name, CircuitBreakerRegistry registry) {
+        this.name = name;
+        this.registry = registry;
+        this.phase = new AtomicReference<>(new Phase(State.CLOSED, 0, registry.windowSize()));
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public State state() {
+        return phase.get().state;
+    }
+
+    /**
+     * 当前窗口的失败百分比，调用数不足以判断时为-1
+     */
+    public float failureRate() {
+        Phase current = phase.get();
+        return current.window.rate(current.window.failures.get(), minimumCalls(current));
+    }
+
+    /**
+     * 当前窗口的慢调用百分比，调用数不足以判断时为-1
+     */
+    public float slowCallRate() {
+        Phase current = phase.get();
+        return current.window.rate(current.window.slowCalls.get(), minimumCalls(current));
+    }
+
+    /**
+     * 当前窗口记录的调用数
+     */
+    public int bufferedCalls() {
+        return phase.get().window.calls.get();
+    }
+
+    /**
+     * 因熔断而直接失败的调用数
+     */
+    public long notPermittedCount() {
+        return notPermittedCount.get();
+    }
+
+    /**
+     * 执行调用之前取得许可，返回null时调用应当直接失败
+     */
+    public Permission tryAcquirePermission() {
+        while (true) {
+            Phase current = phase.get();
+            switch (current.state) {
+                case CLOSED:
+                    return current.permission;
+                case OPEN:
+                    if (System.nanoTime() - current.openedAtNanos < registry.openDurationNanos()) {
+                        notPermittedCount.incrementAndGet();
+                        return null;
+                    }
+                    transition(current, new Phase(State.HALF_OPEN, 0, registry.halfOpenCalls()));
+                    // Take a probe permit from whatever phase won.
+                    continue;
+                default:
+                    if (current.tryTakePermit()) {
+                        return current.permission;
+                    }
+                    notPermittedCount.incrementAndGet();
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * 取得许可的调用没有结果（例如被取消）时归还许可，不计入统计。
+     * 只归还给发出许可的那个HALF_OPEN阶段，状态已经切换时忽略
+     */
+    public void releasePermission(Permission permission) {
+        if (permission == null) throw new NullPointerException("permission == null");
+        Phase issuer = permission.phase;
+        // A permit from a replaced phase must not add a probe to the current one.
+        if (issuer.state == State.HALF_OPEN && phase.get() == issuer) {
+            issuer.permits.incrementAndGet();
+        }
+    }
+
+    public void onSuccess(long durationNanos) {
+        record(durationNanos, false);
+    }
+
+    public void onError(long durationNanos) {
+        record(durationNanos, true);
+    }
+
+    /**
+     * 回到CLOSED并清空统计
+     */
+    public void reset() {
+        Phase current = phase.get();
+        transition(current, new Phase(State.CLOSED, 0, registry.windowSize()));
+    }
+
+    private void record(long durationNanos, boolean failed) {
+        Phase current = phase.get();
+        if (current.state == State.OPEN) {
+            // Started before the circuit opened, the decision has already been made.
+            return;
+        }
+        int outcome = Window.RECORDED;
+        if (failed) outcome |= Window.FAILED;
+        if (durationNanos >= registry.slowCallDurationNanos()) outcome |= Window.SLOW;
+        Window window = current.window;
+        window.record(outcome);
+
+        int minimumCalls = minimumCalls(current);
+        if (window.calls.get() < minimumCalls) return;
+        boolean tripped = window.rate(window.failures.get(), minimumCalls) >= registry.failureRateThreshold()
+                || window.rate(window.slowCalls.get(), minimumCalls) >= registry.slowCallRateThreshold();
+        if (tripped) {
+            transition(current, new Phase(State.OPEN, System.nanoTime(), registry.windowSize()));
+        } else if (current.state == State.HALF_OPEN) {
+            transition(current, new Phase(State.CLOSED, 0, registry.windowSize()));
+        }
+    }
+
+    private int minimumCalls(Phase phase) {
+        return phase.state == State.HALF_OPEN ? registry.halfOpenCalls() : registry.minimumCalls();
+    }
+
+    private void transition(Phase from, Phase to) {
+        if (!phase.compareAndSet(from, to)) return;
+        Listener listener = registry.listener();
+        if (listener != null && from.state != to.state) {
+            listener.onStateTransition(this, from.state, to.state);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker{" + name + ", " + state() + "}";
+    }
+
+    /**
+     * {@link #tryAcquirePermission()}发出的许可，记住发出它的阶段；同一阶段的许可共用一个实例
+     */
+    public static final class Permission {
+        private final Phase phase;
+
+        private Permission(Phase phase) {
+            this.phase = phase;
+        }
+    }
+
+    /**
+     * 一个状态及其统计窗口，切换状态时整体替换
+     */
+    private static final class Phase {
+        final State state;
+        final long openedAtNanos;
+        final Window window;
+        // 只在HALF_OPEN时使用：剩余的探测许可
+        final AtomicInteger permits;
+        final Permission permission = new Permission(this);
+
+        Phase(State state, long openedAtNanos, int windowSize) {
+            this.state = state;
+            this.openedAtNanos = openedAtNanos;
+            this.window = new Window(windowSize);
+            this.permits = new AtomicInteger(state == State.HALF_OPEN ? windowSize : 0);
+        }
+
+        boolean tryTakePermit() {
+            while (true) {
+                int current = permits.get();
+                if (current <= 0) return false;
+                if (permits.compareAndSet(current, current - 1)) return true;
+            }
+        }
+    }
+
+    /**
+     * 最近size次调用结果的环形缓冲区，每个槽位是RECORDED、FAILED、SLOW的组合，0表示空
+     */
+    static final class Window {
+        static final int RECORDED = 1;
+        static final int FAILED = 1 << 1;
+        static final int SLOW = 1 << 2;
+
+        final AtomicIntegerArray outcomes;
+        final AtomicLong cursor = new AtomicLong();
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger slowCalls = new AtomicInteger();
+
+        Window(int size) {
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+
+        void record(int outcome) {
+            int index = (int) (cursor.getAndIncrement() % outcomes.length());
+            int previous = outcomes.getAndSet(index, outcome);
+            if (previous == 0) {
+                calls.incrementAndGet();
+            }
+            adjust(failures, previous, outcome, FAILED);
+            adjust(slowCalls, previous, outcome, SLOW);
+        }
+
+        float rate(int count, int minimumCalls) {
+            int total = calls.get();
+            return total < minimumCalls || total == 0 ? -1 : count * 100f / total;
+        }
+
+        private static void adjust(AtomicInteger counter, int previous, int outcome, int flag) {
+            int delta = ((outcome & flag) != 0 ? 1 : 0) - ((previous & flag) != 0 ? 1 : 0);
+            if (delta != 0) {
+                counter.addAndGet(delta);
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package retrofit.core;
+
+import retrofit.ServiceMethod;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 熔断器的配置及按名字创建的熔断器，见Retrofit.Builder.circuitBreakers。
+ * <p>
+ * {@link Scope#METHOD}时每个接口方法一个熔断器，名字是"类名.方法名"；
+ * {@link Scope#HOST}时同一主机的方法共用一个熔断器，名字是"scheme://host:port"。
+ * 熔断器在取得请求之前就能确定：URL来自方法注解时按方法缓存，只有@Url参数的方法需要每次先解析出URL
+ */
+public final class CircuitBreakerRegistry {
+
+    public enum Scope {
+        METHOD, HOST
+    }
+
+    private final Scope scope;
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+    private final long slowCallDurationNanos;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+    private final CircuitBreaker.Listener listener;
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    // URL不依赖参数的方法对应的熔断器
+    private final ConcurrentMap<ServiceMethod<?, ?>, CircuitBreaker> methodBreakers = new ConcurrentHashMap<>();
+
+    CircuitBreakerRegistry(Builder builder) {
+        this.scope = builder.scope;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(builder.slowCallDurationMillis);
+        this.windowSize = builder.windowSize;
+        this.minimumCalls = builder.minimumCalls;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(builder.openDurationMillis);
+        this.halfOpenCalls = builder.halfOpenCalls;
+        this.listener = builder.listener;
+    }
+
+    public Scope scope() {
+        return scope;
+    }
+
+    /**
+     * 返回该名字的熔断器，不存在时创建
+     */
+    public CircuitBreaker breaker(String name) {
+        CircuitBreaker breaker = breakers.get(name);
+        if (breaker == null) {
+            CircuitBreaker created = new CircuitBreaker(name, this);
+            breaker = breakers.putIfAbsent(name, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * 已创建的熔断器的快照
+     */
+    public Map<String, CircuitBreaker> breakers() {
+        return Collections.unmodifiableMap(new HashMap<>(breakers));
+    }
+
+    public HttpEngine newEngine(HttpEngine delegate) {
+        return new CircuitBreakingHttpEngine(delegate, this);
+    }
+
+    /**
+     * 一次调用对应的熔断器，@Url参数无法解析时返回null，由引擎照常执行并报告错误。
+     * 按主机统计时，负载均衡选定的端点各自使用一个熔断器
+     */
+    CircuitBreaker breakerFor(HttpCall<?> call) {
+        ServiceMethod<?, ?> serviceMethod = call.serviceMethod;
+        if (scope == Scope.HOST && call.baseUrl != null) {
+            return breaker(Hosts.name(call.baseUrl));
+        }
+        CircuitBreaker breaker = methodBreakers.get(serviceMethod);
+        if (breaker != null) {
+            return breaker;
+        }
+        if (scope == Scope.HOST && !Hosts.isStatic(serviceMethod)) {
+            String host = Hosts.of(call);
+            return host != null ? breaker(host) : null;
+        }
+        String name = scope == Scope.METHOD
+                ? serviceMethod.method.getDeclaringClass().getName() + "." + serviceMethod.method.getName()
+                : Hosts.of(call);
+        breaker = breaker(name);
+        methodBreakers.putIfAbsent(serviceMethod, breaker);
+        return breaker;
+    }
+
+    float failureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    float slowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    long slowCallDurationNanos() {
+        return slowCallDurationNanos;
+    }
+
+    int windowSize() {
+        return windowSize;
+    }
+
+    int minimumCalls() {
+        return minimumCalls;
+    }
+
+    long openDurationNanos() {
+        return openDurationNanos;
+    }
+
+    int halfOpenCalls() {
+        return halfOpenCalls;
+    }
+
+    CircuitBreaker.Listener listener() {
+        return listener;
+    }
+
+    public static final class Builder {
+        private Scope scope = Scope.METHOD;
+        private float failureRateThreshold = 50;
+        private float slowCallRateThreshold = 100;
+        private long slowCallDurationMillis = 60000;
+        private int windowSize = 100;
+        private int minimumCalls = 20;
+        private long openDurationMillis = 30000;
+        private int halfOpenCalls = 5;
+        private CircuitBreaker.Listener listener;
+
+        public Builder scope(Scope scope) {
+            if (scope == null) throw new NullPointerException("scope == null");
+            this.scope = scope;
+            return this;
+        }
+
+        /**
+         * 失败的百分比达到它时熔断，失败指IOException和5xx响应
+         */
+        public Builder failureRateThreshold(float percent) {
+            if (percent <= 0 || percent > 100) throw new IllegalArgumentException("percent must be in (0, 100]");
+            this.failureRateThreshold = percent;
+            return this;
+        }
+
+        /**
+         * 慢调用的百分比达到它时熔断，默认100即全部调用都慢时才熔断
+         */
+        public Builder slowCallRateThreshold(float percent) {
+            if (percent <= 0 || percent > 100) throw new IllegalArgumentException("percent must be in (0, 100]");
+            this.slowCallRateThreshold = percent;
+            return this;
+        }
+
+        public Builder slowCallDurationMillis(long slowCallDurationMillis) {
+            if (slowCallDurationMillis <= 0) throw new IllegalArgumentException("slowCallDurationMillis <= 0");
+            this.slowCallDurationMillis = slowCallDurationMillis;
+            return this;
+        }
+
+        /**
+         * 统计最近多少次调用
+         */
+        public Builder windowSize(int windowSize) {
+            if (windowSize <= 0) throw new IllegalArgumentException("windowSize <= 0");
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * 窗口中至少有多少次调用才计算失败率
+         */
+        public Builder minimumCalls(int minimumCalls) {
+            if (minimumCalls <= 0) throw new IllegalArgumentException("minimumCalls <= 0");
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        public Builder openDurationMillis(long openDurationMillis) {
+            if (openDurationMillis < 0) throw new IllegalArgumentException("openDurationMillis < 0");
+            this.openDurationMillis = openDurationMillis;
+            return this;
+        }
+
+        /**
+         * HALF_OPEN时放行的探测调用数
+         */
+        public Builder halfOpenCalls(int halfOpenCalls) {
+            if (halfOpenCalls <= 0) throw new IllegalArgumentException("halfOpenCalls <= 0");
+            this.halfOpenCalls = halfOpenCalls;
+            return this;
+        }
+
+        public Builder listener(CircuitBreaker.Listener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public CircuitBreakerRegistry build() {
+            if (minimumCalls > windowSize) {
+                throw new IllegalStateException("minimumCalls > windowSize");
+            }
+            return new CircuitBreakerRegistry(this);
+        }
+    }
+}
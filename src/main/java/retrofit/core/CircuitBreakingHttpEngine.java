@@ -0,0 +1,131 @@
+package retrofit.core;
+
+import retrofit.HttpResponse;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+/**
+ * 按{@link CircuitBreakerRegistry}熔断的引擎装饰器。
+ * <p>
+ * 熔断时在调用被装饰引擎之前就以{@link CallNotPermittedException}失败，
+ * 不会构建请求或序列化请求体。IOException和5xx响应计为失败，
+ * 被取消的和被{@link ConcurrencyLimitingHttpEngine}拒绝的调用不计入统计
+ */
+public class CircuitBreakingHttpEngine extends ForwardingHttpEngine {
+    private final CircuitBreakerRegistry registry;
+
+    public CircuitBreakingHttpEngine(HttpEngine delegate, CircuitBreakerRegistry registry) {
+        super(delegate);
+        if (registry == null) throw new NullPointerException("registry == null");
+        this.registry = registry;
+    }
+
+    public CircuitBreakerRegistry registry() {
+        return registry;
+    }
+
+    @Override
+    public <T> HttpResponse execute(HttpCall<T> httpCall) throws IOException {
+        CircuitBreaker breaker = breakerFor(httpCall);
+        if (breaker == null) {
+            return super.execute(httpCall);
+        }
+        CircuitBreaker.Permission permission = breaker.tryAcquirePermission();
+        if (permission == null) {
+            httpCall.check();
+            throw new CallNotPermittedException(breaker);
+        }
+        long startNanos = System.nanoTime();
+        HttpResponse response;
+        try {
+            response = super.execute(httpCall);
+        } catch (IOException e) {
+            record(breaker, permission, httpCall, startNanos, null, e);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            breaker.releasePermission(permission);
+            throw e;
+        }
+        record(breaker, permission, httpCall, startNanos, response, null);
+        return response;
+    }
+
+    @Override
+    public <T> void execute(final HttpCall<T> httpCall, final HttpCallback<T> callback) {
+        if (callback == null) throw new NullPointerException("callback == null");
+        final CircuitBreaker breaker = breakerFor(httpCall);
+        if (breaker == null) {
+            super.execute(httpCall, callback);
+            return;
+        }
+        final CircuitBreaker.Permission permission = breaker.tryAcquirePermission();
+        if (permission == null) {
+            httpCall.markExecuted();
+            final CallNotPermittedException failure = new CallNotPermittedException(breaker);
+            Runnable deliver = new Runnable() {
+                @Override
+                public void run() {
+                    callback.onFailure(httpCall, failure);
+                }
+            };
+            Executor callbackExecutor = httpCall.serviceMethod.callbackExecutor;
+            if (callbackExecutor != null) {
+                callbackExecutor.execute(deliver);
+            } else {
+                deliver.run();
+            }
+            return;
+        }
+        final long startNanos = System.nanoTime();
+        super.execute(httpCall, new HttpCallback<T>() {
+            @Override
+            public void onResponse(HttpCall<T> call, HttpResponse<T, ?, ?> response) {
+                record(breaker, permission, httpCall, startNanos, response, null);
+                callback.onResponse(call, response);
+            }
+
+            @Override
+            public void onFailure(HttpCall<T> call, Throwable t) {
+                if (t instanceof IOException) {
+                    record(breaker, permission, httpCall, startNanos, null, (IOException) t);
+                } else {
+                    breaker.releasePermission(permission);
+                }
+                callback.onFailure(call, t);
+            }
+        });
+    }
+
+    /**
+     * 计为失败的响应，默认是5xx
+     */
+    protected boolean isFailure(HttpResponse response) {
+        return response.code() >= 500;
+    }
+
+    /**
+     * 创建调用时就失败的（例如参数转换出错）与后端无关，不经过熔断器
+     */
+    private CircuitBreaker breakerFor(HttpCall<?> httpCall) {
+        if (httpCall.creationFailure != null) {
+            return null;
+        }
+        return registry.breakerFor(httpCall);
+    }
+
+    private void record(CircuitBreaker breaker, CircuitBreaker.Permission permission, HttpCall<?> httpCall,
+                        long startNanos, HttpResponse response, IOException failure) {
+        if (httpCall.isCanceled() || failure instanceof ConcurrencyLimitExceededException) {
+            // Says nothing about the backend.
+            breaker.releasePermission(permission);
+            return;
+        }
+        long durationNanos = System.nanoTime() - startNanos;
+        if (response == null || isFailure(response)) {
+            breaker.onError(durationNanos);
+        } else {
+            breaker.onSuccess(durationNanos);
+        }
+    }
+}
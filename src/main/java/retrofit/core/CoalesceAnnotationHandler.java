@@ -0,0 +1,22 @@
+package retrofit.core;
+
+import retrofit.ServiceMethod;
+import retrofit.http.Coalesce;
+
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+
+/**
+ * 处理{@link Coalesce}：用{@link CoalescingHttpEngine}装饰该方法使用的引擎
+ */
+public class CoalesceAnnotationHandler implements MethodAnnotationHandler {
+
+    @Override
+    public void apply(Annotation annotation, ServiceMethod.Builder builder) {
+        if (!(annotation instanceof Coalesce)) return;
+        if (builder.responseType == InputStream.class) {
+            throw new IllegalArgumentException("@Coalesce cannot share a streaming InputStream response body.");
+        }
+        builder.httpEngine = new CoalescingHttpEngine(builder.httpEngine);
+    }
+}
@@ -0,0 +1,349 @@
+package retrofit.core;
+
+import retrofit.HttpResponse;
+import retrofit.ServiceMethod;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 合并进行中的相同GET/HEAD请求。按(ServiceMethod, 完整URL, 请求头)分组，第一个调用以自己的副本发出共享的请求，
+ * 所有调用（包括第一个）都等待它的结果并共享转换后的响应；请求结束后分组即被移除，之后的调用重新发出请求。
+ * 共享的请求失败时所有调用收到同样的异常；任何调用被取消都只影响它自己，所有调用都取消后才取消共享的请求。
+ * 同步调用时共享的请求在第一个调用的线程上执行，它被取消而仍有其他调用在等待时，要等请求结束才返回
+ */
+public class CoalescingHttpEngine extends ForwardingHttpEngine {
+    private final ConcurrentMap<FlightKey, Flight> inFlight = new ConcurrentHashMap<>();
+    // 等待中的调用，取消时据此让它离开所在的分组
+    private final ConcurrentMap<HttpCall<?>, Waiter> waiters = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public CoalescingHttpEngine(HttpEngine delegate) {
+        super(delegate);
+    }
+
+    /**
+     * 没有发出网络请求、直接共享了其他调用结果的次数
+     */
+    public long coalescedCalls() {
+        return coalesced.get();
+    }
+
+    @Override
+    public <T> void cancel(HttpCall httpCall) {
+        Waiter waiter = waiters.remove(httpCall);
+        if (waiter != null) {
+            Flight flight = waiter.flight;
+            if (flight.leave(waiter)) {
+                inFlight.remove(flight.key, flight);
+            }
+            waiter.complete(null, new IOException("Canceled"));
+            return;
+        }
+        super.cancel(httpCall);
+    }
+
+    @Override
+    public <T> HttpResponse execute(HttpCall<T> httpCall) throws IOException {
+        if (!isCoalescable(httpCall.serviceMethod)) {
+            return super.execute(httpCall);
+        }
+        FlightKey key;
+        try {
+            key = key(httpCall);
+        } catch (IOException | RuntimeException e) {
+            // Let the delegate build the request again and report the failure as usual.
+            return super.execute(httpCall);
+        }
+
+        httpCall.check();
+        if (httpCall.isCanceled()) {
+            throw new IOException("Canceled");
+        }
+        BlockingWaiter waiter = new BlockingWaiter();
+        Flight flight = join(key, httpCall, waiter);
+        register(httpCall, waiter);
+        try {
+            if (flight.leader == waiter) {
+                HttpResponse response = null;
+                Throwable failure = null;
+                try {
+                    response = delegate.execute(flight.attempt);
+                } catch (IOException | RuntimeException | Error e) {
+                    failure = e;
+                }
+                // This caller may have been canceled already, its own result comes from the waiter.
+                land(flight, response, failure);
+            }
+            try {
+                waiter.latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel(httpCall);
+                throw new InterruptedIOException("Interrupted while waiting for " + httpCall.serviceMethod.httpMethod);
+            }
+        } finally {
+            waiters.remove(httpCall);
+        }
+        if (waiter.failure != null) {
+            throw rethrow(waiter.failure);
+        }
+        return waiter.response;
+    }
+
+    @Override
+    public <T> void execute(final HttpCall<T> httpCall, final HttpCallback<T> callback) {
+        if (callback == null) throw new NullPointerException("callback == null");
+        if (!isCoalescable(httpCall.serviceMethod)) {
+            super.execute(httpCall, callback);
+            return;
+        }
+        FlightKey key;
+        try {
+            key = key(httpCall);
+        } catch (IOException | RuntimeException e) {
+            super.execute(httpCall, callback);
+            return;
+        }
+
+        httpCall.markExecuted();
+        Throwable creationFailure = httpCall.creationFailure;
+        if (creationFailure != null) {
+            callback.onFailure(httpCall, creationFailure);
+            return;
+        }
+        if (httpCall.isCanceled()) {
+            callback.onFailure(httpCall, new IOException("Canceled"));
+            return;
+        }
+        Waiter waiter = new Waiter() {
+            @Override
+            void onComplete(final HttpResponse response, final Throwable failure) {
+                waiters.remove(httpCall);
+                deliver(httpCall, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (failure != null) {
+                            callback.onFailure(httpCall, failure);
+                        } else {
+                            //noinspection unchecked
+                            callback.onResponse(httpCall, (HttpResponse<T, ?, ?>) response);
+                        }
+                    }
+                });
+            }
+        };
+        final Flight flight = join(key, httpCall, waiter);
+        register(httpCall, waiter);
+        if (flight.leader == waiter) {
+            //noinspection unchecked
+            HttpCall<Object> attempt = (HttpCall<Object>) flight.attempt;
+            delegate.execute(attempt, new HttpCallback<Object>() {
+                @Override
+                public void onResponse(HttpCall<Object> call, HttpResponse<Object, ?, ?> response) {
+                    land(flight, response, null);
+                }
+
+                @Override
+                public void onFailure(HttpCall<Object> call, Throwable t) {
+                    land(flight, null, t);
+                }
+            });
+        }
+    }
+
+    /**
+     * 加入进行中的分组，没有时以这个调用的副本创建一个，此时waiter是分组的leader，由调用方发出请求
+     */
+    private Flight join(FlightKey key, HttpCall<?> httpCall, Waiter waiter) {
+        while (true) {
+            Flight existing = inFlight.get(key);
+            if (existing == null) {
+                Flight flight = new Flight(key, newAttempt(httpCall), waiter);
+                existing = inFlight.putIfAbsent(key, flight);
+                if (existing == null) {
+                    return flight;
+                }
+            }
+            if (existing.join(waiter)) {
+                coalesced.incrementAndGet();
+                return existing;
+            }
+            // Every waiter left and the request was canceled, start over.
+            inFlight.remove(key, existing);
+        }
+    }
+
+    /**
+     * 登记之后才能被取消，登记之前发生的取消在这里补上
+     */
+    private void register(HttpCall<?> httpCall, Waiter waiter) {
+        waiters.put(httpCall, waiter);
+        if (httpCall.isCanceled()) {
+            cancel(httpCall);
+        }
+    }
+
+    private void land(Flight flight, HttpResponse response, Throwable failure) {
+        // Later calls must start a new request instead of joining a finished one.
+        inFlight.remove(flight.key, flight);
+        flight.complete(response, failure);
+    }
+
+    /**
+     * 只合并幂等且响应体可以共享的请求
+     */
+    protected boolean isCoalescable(ServiceMethod<?, ?> serviceMethod) {
+        return ("GET".equals(serviceMethod.httpMethod) || "HEAD".equals(serviceMethod.httpMethod))
+                && !BuiltInConverters.isStreaming(serviceMethod.responseConverter);
+    }
+
+    private static FlightKey key(HttpCall<?> call) throws IOException {
+        return new FlightKey(call.serviceMethod, ResolvedRequest.of(call));
+    }
+
+    private static IOException rethrow(Throwable failure) {
+        if (failure instanceof IOException) return (IOException) failure;
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if (failure instanceof Error) throw (Error) failure;
+        return new IOException(failure);
+    }
+
+    private static void deliver(HttpCall<?> call, Runnable runnable) {
+        Executor callbackExecutor = call.serviceMethod.callbackExecutor;
+        if (callbackExecutor != null) {
+            callbackExecutor.execute(runnable);
+        } else {
+            runnable.run();
+        }
+    }
+
+    static final class FlightKey {
+        final ServiceMethod<?, ?> serviceMethod;
+        final ResolvedRequest request;
+        final int hashCode;
+
+        FlightKey(ServiceMethod<?, ?> serviceMethod, ResolvedRequest request) {
+            this.serviceMethod = serviceMethod;
+            this.request = request;
+            this.hashCode = 31 * System.identityHashCode(serviceMethod) + request.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof FlightKey)) return false;
+            FlightKey other = (FlightKey) o;
+            return serviceMethod == other.serviceMethod && request.equals(other.request);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * 一次进行中的共享请求及等待它的调用，每个等待者恰好被通知一次
+     */
+    static final class Flight {
+        final FlightKey key;
+        // 由被装饰引擎执行的副本，不属于任何一个调用方
+        final HttpCall<?> attempt;
+        final Waiter leader;
+        private final List<Waiter> waiters = new ArrayList<>();
+        private boolean done;
+        // 所有等待者都已离开，共享的请求被取消
+        private boolean abandoned;
+        private HttpResponse response;
+        private Throwable failure;
+
+        Flight(FlightKey key, HttpCall<?> attempt, Waiter leader) {
+            this.key = key;
+            this.attempt = attempt;
+            this.leader = leader;
+            leader.flight = this;
+            waiters.add(leader);
+        }
+
+        /**
+         * 已被放弃时返回false
+         */
+        boolean join(Waiter waiter) {
+            synchronized (this) {
+                if (abandoned) {
+                    return false;
+                }
+                waiter.flight = this;
+                if (!done) {
+                    waiters.add(waiter);
+                    return true;
+                }
+            }
+            waiter.complete(response, failure);
+            return true;
+        }
+
+        /**
+         * 最后一个等待者离开时取消共享的请求并返回true
+         */
+        boolean leave(Waiter waiter) {
+            synchronized (this) {
+                if (!waiters.remove(waiter) || !waiters.isEmpty() || done) {
+                    return false;
+                }
+                abandoned = true;
+            }
+            attempt.cancel();
+            return true;
+        }
+
+        void complete(HttpResponse response, Throwable failure) {
+            List<Waiter> waiting;
+            synchronized (this) {
+                this.response = response;
+                this.failure = failure;
+                done = true;
+                waiting = new ArrayList<>(waiters);
+                waiters.clear();
+            }
+            for (Waiter waiter : waiting) {
+                waiter.complete(response, failure);
+            }
+        }
+    }
+
+    abstract static class Waiter {
+        private final AtomicBoolean completed = new AtomicBoolean();
+        volatile Flight flight;
+
+        final void complete(HttpResponse response, Throwable failure) {
+            if (completed.compareAndSet(false, true)) {
+                onComplete(response, failure);
+            }
+        }
+
+        abstract void onComplete(HttpResponse response, Throwable failure);
+    }
+
+    static final class BlockingWaiter extends Waiter {
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile HttpResponse response;
+        volatile Throwable failure;
+
+        @Override
+        void onComplete(HttpResponse response, Throwable failure) {
+            this.response = response;
+            this.failure = failure;
+            latch.countDown();
+        }
+    }
+}
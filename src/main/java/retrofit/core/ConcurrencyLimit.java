@@ -0,0 +1,149 @@
+package retrofit.core;
+
+/**
+ * 根据每个调用的往返时间调整并发上限的算法，见{@link ConcurrencyLimiterRegistry.Algorithm}。
+ * 样本按调用结束的顺序串行送入
+ */
+abstract class ConcurrencyLimit {
+    final int minLimit;
+    final int maxLimit;
+    // 算法内部用小数计算，对外取整
+    double estimate;
+    private volatile int limit;
+
+    ConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.estimate = initialLimit;
+        this.limit = initialLimit;
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    /**
+     * @param rttNanos 调用的往返时间
+     * @param inFlight 调用结束时正在执行的调用数，包括它自己
+     * @param dropped  调用失败或被后端限流
+     */
+    synchronized void onSample(long rttNanos, int inFlight, boolean dropped) {
+        double next = update(Math.max(1, rttNanos), inFlight, dropped);
+        estimate = Math.max(minLimit, Math.min(maxLimit, next));
+        limit = (int) estimate;
+    }
+
+    abstract double update(long rttNanos, int inFlight, boolean dropped);
+
+    /**
+     * 加性增、乘性减：没有丢弃且并发已用到一半以上时加1，丢弃时乘以backoffRatio
+     */
+    static final class Aimd extends ConcurrencyLimit {
+        private static final double BACKOFF_RATIO = 0.9;
+
+        Aimd(int initialLimit, int minLimit, int maxLimit) {
+            super(initialLimit, minLimit, maxLimit);
+        }
+
+        @Override
+        double update(long rttNanos, int inFlight, boolean dropped) {
+            if (dropped) {
+                return estimate * BACKOFF_RATIO;
+            }
+            if (inFlight * 2 >= estimate) {
+                return estimate + 1;
+            }
+            return estimate;
+        }
+    }
+
+    /**
+     * TCP Vegas：以最小往返时间作为无排队时的基准，估计后端排队的请求数
+     * queue = limit * (1 - rttNoLoad / rtt)，排队少于alpha时增大，多于beta时减小。
+     * 每隔一段时间重置基准，以便后端变慢后重新测量
+     */
+    static final class Vegas extends ConcurrencyLimit {
+        private static final int PROBE_MULTIPLIER = 30;
+
+        private long rttNoLoadNanos;
+        private long samplesUntilProbe;
+
+        Vegas(int initialLimit, int minLimit, int maxLimit) {
+            super(initialLimit, minLimit, maxLimit);
+            this.samplesUntilProbe = nextProbe();
+        }
+
+        @Override
+        double update(long rttNanos, int inFlight, boolean dropped) {
+            if (--samplesUntilProbe <= 0) {
+                samplesUntilProbe = nextProbe();
+                rttNoLoadNanos = rttNanos;
+                return estimate;
+            }
+            if (rttNoLoadNanos == 0 || rttNanos < rttNoLoadNanos) {
+                rttNoLoadNanos = rttNanos;
+                return estimate;
+            }
+            double log = Math.max(1, Math.log10(estimate));
+            if (dropped) {
+                return estimate - log;
+            }
+            if (inFlight * 2 < estimate) {
+                // Not using the current limit, there is nothing to learn.
+                return estimate;
+            }
+            double queue = Math.ceil(estimate * (1 - (double) rttNoLoadNanos / rttNanos));
+            if (queue <= log) {
+                return estimate + 6 * log;
+            } else if (queue < 3 * log) {
+                return estimate + log;
+            } else if (queue > 6 * log) {
+                return estimate - log;
+            }
+            return estimate;
+        }
+
+        private long nextProbe() {
+            return (long) (PROBE_MULTIPLIER * Math.max(estimate, 1));
+        }
+    }
+
+    /**
+     * Gradient2：比较长期的往返时间均值（EWMA）和本次的往返时间，
+     * gradient = clamp(1.5 * longRtt / rtt, 0.5, 1)，limit = limit * gradient + sqrt(limit)，再做平滑。
+     * 长期均值明显高于当前值时加快衰减，使负载下降后能较快恢复
+     */
+    static final class Gradient2 extends ConcurrencyLimit {
+        private static final double TOLERANCE = 1.5;
+        private static final double SMOOTHING = 0.2;
+        private static final int LONG_WINDOW = 600;
+        private static final int WARMUP = 10;
+
+        private double longRttNanos;
+        private int samples;
+
+        Gradient2(int initialLimit, int minLimit, int maxLimit) {
+            super(initialLimit, minLimit, maxLimit);
+        }
+
+        @Override
+        double update(long rttNanos, int inFlight, boolean dropped) {
+            samples++;
+            if (samples <= WARMUP) {
+                // Plain average until there are enough samples for the EWMA to be meaningful.
+                longRttNanos += (rttNanos - longRttNanos) / samples;
+            } else {
+                longRttNanos += (rttNanos - longRttNanos) * 2 / (LONG_WINDOW + 1);
+            }
+            if (longRttNanos / rttNanos > 2) {
+                longRttNanos *= 0.95;
+            }
+            if (!dropped && inFlight * 2 < estimate) {
+                return estimate;
+            }
+            double gradient = dropped ? 0.5 : Math.max(0.5, Math.min(1, TOLERANCE * longRttNanos / rttNanos));
+            double next = estimate * gradient + Math.sqrt(estimate);
+            return estimate * (1 - SMOOTHING) + next * SMOOTHING;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package retrofit.core;
+
+import java.io.IOException;
+
+/**
+ * 并发已达上限且排队已满或等待超时，调用没有发出
+ */
+public class ConcurrencyLimitExceededException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final transient ConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitExceededException(ConcurrencyLimiter limiter) {
+        super("Concurrency limit of " + limiter.limit() + " reached for " + limiter.name());
+        this.limiter = limiter;
+    }
+
+    public ConcurrencyLimiter limiter() {
+        return limiter;
+    }
+}
@@ -0,0 +1,244 @@
+package retrofit.core;
+
+import retrofit.util.VirtualThreads;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个主机的并发限制，由{@link ConcurrencyLimiterRegistry}创建。
+ * <p>
+ * 正在执行的调用数达到{@link #limit()}时，新的调用按先后排队，最多maxQueueSize个、
+ * 每个最多等待maxQueueTimeMillis，超出时以{@link ConcurrencyLimitExceededException}失败。
+ * 上限由每个调用结束时报告的往返时间不断调整
+ */
+public final class ConcurrencyLimiter {
+    private final String name;
+    private final ConcurrencyLimit limit;
+    private final int maxQueueSize;
+    private final long maxQueueNanos;
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    // guarded by this
+    private int inFlight;
+
+    ConcurrencyLimiter(String name, ConcurrencyLimit limit, int maxQueueSize, long maxQueueNanos) {
+        this.name = name;
+        this.limit = limit;
+        this.maxQueueSize = maxQueueSize;
+        this.maxQueueNanos = maxQueueNanos;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * 当前的并发上限
+     */
+    public int limit() {
+        return limit.limit();
+    }
+
+    /**
+     * 正在执行的调用数
+     */
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * 排队等待的调用数
+     */
+    public synchronized int queued() {
+        return waiters.size();
+    }
+
+    /**
+     * 因队列已满或等待超时而失败的调用数
+     */
+    public long rejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 阻塞直到取得执行许可
+     */
+    void acquire(HttpCall<?> call) throws IOException {
+        Waiter waiter;
+        synchronized (this) {
+            if (tryAcquire()) return;
+            waiter = enqueue(call, null);
+            if (waiter == null) {
+                throw reject();
+            }
+            long deadline = System.nanoTime() + maxQueueNanos;
+            long remaining;
+            while (!waiter.granted && !waiter.canceled && (remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (waiter.granted) {
+                        release();
+                    } else {
+                        waiters.remove(waiter);
+                    }
+                    throw new InterruptedIOException("Interrupted while waiting for " + name);
+                }
+            }
+            if (waiter.granted) return;
+            waiters.remove(waiter);
+        }
+        if (waiter.canceled) {
+            throw new IOException("Canceled");
+        }
+        throw reject();
+    }
+
+    /**
+     * 取得许可后执行{@link Grant#granted()}，失败时执行{@link Grant#rejected(IOException)}，都不在锁内
+     */
+    void acquire(HttpCall<?> call, Grant grant) {
+        boolean acquired;
+        final Waiter waiter;
+        synchronized (this) {
+            acquired = tryAcquire();
+            waiter = acquired ? null : enqueue(call, grant);
+            if (waiter != null) {
+                // The rejection may run a callback, keep it off the scheduler thread.
+                waiter.timeout = Scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (ConcurrencyLimiter.this) {
+                            if (!waiters.remove(waiter)) return;
+                        }
+                        waiter.grant.rejected(reject());
+                    }
+                }, VirtualThreads.shared(), maxQueueNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (acquired) {
+            grant.granted();
+        } else if (waiter == null) {
+            grant.rejected(reject());
+        }
+    }
+
+    /**
+     * 调用结束，报告它的往返时间并归还许可
+     */
+    void onSample(long rttNanos, boolean dropped) {
+        limit.onSample(rttNanos, inFlight(), dropped);
+        release();
+    }
+
+    /**
+     * 归还许可，没有样本（例如调用被取消）
+     */
+    void release() {
+        List<Waiter> granted = null;
+        synchronized (this) {
+            inFlight--;
+            while (inFlight < limit.limit() && !waiters.isEmpty()) {
+                Waiter waiter = waiters.poll();
+                inFlight++;
+                waiter.granted = true;
+                if (waiter.grant != null) {
+                    if (granted == null) granted = new ArrayList<>();
+                    granted.add(waiter);
+                }
+            }
+            notifyAll();
+        }
+        if (granted != null) {
+            for (Waiter waiter : granted) {
+                if (waiter.timeout != null) {
+                    waiter.timeout.cancel(false);
+                }
+                waiter.grant.granted();
+            }
+        }
+    }
+
+    /**
+     * 把排队中的调用移出队列，它以"Canceled"失败
+     */
+    void cancel(HttpCall<?> call) {
+        Waiter canceled = null;
+        synchronized (this) {
+            for (Iterator<Waiter> i = waiters.iterator(); i.hasNext(); ) {
+                Waiter waiter = i.next();
+                if (waiter.call == call) {
+                    i.remove();
+                    waiter.canceled = true;
+                    canceled = waiter;
+                    notifyAll();
+                    break;
+                }
+            }
+        }
+        if (canceled != null && canceled.grant != null) {
+            if (canceled.timeout != null) {
+                canceled.timeout.cancel(false);
+            }
+            canceled.grant.rejected(new IOException("Canceled"));
+        }
+    }
+
+    // guarded by this
+    private boolean tryAcquire() {
+        if (inFlight < limit.limit() && waiters.isEmpty()) {
+            inFlight++;
+            return true;
+        }
+        return false;
+    }
+
+    // guarded by this
+    private Waiter enqueue(HttpCall<?> call, Grant grant) {
+        if (waiters.size() >= maxQueueSize || maxQueueNanos <= 0) {
+            return null;
+        }
+        Waiter waiter = new Waiter(call, grant);
+        waiters.add(waiter);
+        return waiter;
+    }
+
+    private IOException reject() {
+        rejectedCount.incrementAndGet();
+        return new ConcurrencyLimitExceededException(this);
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimiter{" + name + ", limit=" + limit() + "}";
+    }
+
+    interface Grant {
+        void granted();
+
+        void rejected(IOException e);
+    }
+
+    private static final class Waiter {
+        final HttpCall<?> call;
+        // 异步调用的回调，同步调用为null
+        final Grant grant;
+        ScheduledFuture<?> timeout;
+        boolean granted;
+        boolean canceled;
+
+        Waiter(HttpCall<?> call, Grant grant) {
+            this.call = call;
+            this.grant = grant;
+        }
+    }
+}
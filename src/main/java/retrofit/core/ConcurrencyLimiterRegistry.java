@@ -0,0 +1,185 @@
+package retrofit.core;
+
+import retrofit.ServiceMethod;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按主机（"scheme://host:port"）创建的自适应并发限制，见Retrofit.Builder.concurrencyLimiters。
+ * <p>
+ * 每个主机从initialLimit开始，按{@link Algorithm}根据观测到的往返时间在[minLimit, maxLimit]内调整上限，
+ * 找出后端在延迟不变差的前提下能承受的并发数，代替固定大小的线程池和连接池
+ */
+public final class ConcurrencyLimiterRegistry {
+
+    public enum Algorithm {
+        /**
+         * 加性增、乘性减，只对失败和429/503响应做出反应
+         */
+        AIMD {
+            @Override
+            ConcurrencyLimit newLimit(int initialLimit, int minLimit, int maxLimit) {
+                return new ConcurrencyLimit.Aimd(initialLimit, minLimit, maxLimit);
+            }
+        },
+        /**
+         * 按最小往返时间估计后端的排队长度
+         */
+        VEGAS {
+            @Override
+            ConcurrencyLimit newLimit(int initialLimit, int minLimit, int maxLimit) {
+                return new ConcurrencyLimit.Vegas(initialLimit, minLimit, maxLimit);
+            }
+        },
+        /**
+         * 按长期和当前往返时间的比值调整
+         */
+        GRADIENT2 {
+            @Override
+            ConcurrencyLimit newLimit(int initialLimit, int minLimit, int maxLimit) {
+                return new ConcurrencyLimit.Gradient2(initialLimit, minLimit, maxLimit);
+            }
+        };
+
+        abstract ConcurrencyLimit newLimit(int initialLimit, int minLimit, int maxLimit);
+    }
+
+    private final Algorithm algorithm;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueueSize;
+    private final long maxQueueNanos;
+    private final ConcurrentMap<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+    // URL不依赖参数的方法对应的限制
+    private final ConcurrentMap<ServiceMethod<?, ?>, ConcurrencyLimiter> methodLimiters = new ConcurrentHashMap<>();
+
+    ConcurrencyLimiterRegistry(Builder builder) {
+        this.algorithm = builder.algorithm;
+        this.initialLimit = builder.initialLimit;
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.maxQueueSize = builder.maxQueueSize;
+        this.maxQueueNanos = TimeUnit.MILLISECONDS.toNanos(builder.maxQueueTimeMillis);
+    }
+
+    public Algorithm algorithm() {
+        return algorithm;
+    }
+
+    /**
+     * 返回该主机的限制，不存在时创建
+     */
+    public ConcurrencyLimiter limiter(String host) {
+        ConcurrencyLimiter limiter = limiters.get(host);
+        if (limiter == null) {
+            ConcurrencyLimiter created = new ConcurrencyLimiter(host,
+                    algorithm.newLimit(initialLimit, minLimit, maxLimit), maxQueueSize, maxQueueNanos);
+            limiter = limiters.putIfAbsent(host, created);
+            if (limiter == null) {
+                limiter = created;
+            }
+        }
+        return limiter;
+    }
+
+    /**
+     * 已创建的限制的快照
+     */
+    public Map<String, ConcurrencyLimiter> limiters() {
+        return Collections.unmodifiableMap(new HashMap<>(limiters));
+    }
+
+    public HttpEngine newEngine(HttpEngine delegate) {
+        return new ConcurrencyLimitingHttpEngine(delegate, this);
+    }
+
+    /**
+     * 一次调用对应的限制，@Url参数无法解析时返回null；负载均衡选定了端点时使用该端点的限制
+     */
+    ConcurrencyLimiter limiterFor(HttpCall<?> call) {
+        if (call.baseUrl != null) {
+            return limiter(Hosts.name(call.baseUrl));
+        }
+        ServiceMethod<?, ?> serviceMethod = call.serviceMethod;
+        ConcurrencyLimiter limiter = methodLimiters.get(serviceMethod);
+        if (limiter != null) {
+            return limiter;
+        }
+        String host = Hosts.of(call);
+        if (host == null) {
+            return null;
+        }
+        limiter = limiter(host);
+        if (Hosts.isStatic(serviceMethod)) {
+            methodLimiters.putIfAbsent(serviceMethod, limiter);
+        }
+        return limiter;
+    }
+
+    public static final class Builder {
+        private Algorithm algorithm = Algorithm.GRADIENT2;
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private int maxQueueSize = 100;
+        private long maxQueueTimeMillis = 500;
+
+        public Builder algorithm(Algorithm algorithm) {
+            if (algorithm == null) throw new NullPointerException("algorithm == null");
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        public Builder initialLimit(int initialLimit) {
+            if (initialLimit <= 0) throw new IllegalArgumentException("initialLimit <= 0");
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        public Builder minLimit(int minLimit) {
+            if (minLimit <= 0) throw new IllegalArgumentException("minLimit <= 0");
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        public Builder maxLimit(int maxLimit) {
+            if (maxLimit <= 0) throw new IllegalArgumentException("maxLimit <= 0");
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * 达到上限后最多排队的调用数，为0时直接失败
+         */
+        public Builder maxQueueSize(int maxQueueSize) {
+            if (maxQueueSize < 0) throw new IllegalArgumentException("maxQueueSize < 0");
+            this.maxQueueSize = maxQueueSize;
+            return this;
+        }
+
+        /**
+         * 排队的调用最多等待的时间，为0时直接失败
+         */
+        public Builder maxQueueTimeMillis(long maxQueueTimeMillis) {
+            if (maxQueueTimeMillis < 0) throw new IllegalArgumentException("maxQueueTimeMillis < 0");
+            this.maxQueueTimeMillis = maxQueueTimeMillis;
+            return this;
+        }
+
+        public ConcurrencyLimiterRegistry build() {
+            if (minLimit > maxLimit) {
+                throw new IllegalStateException("minLimit > maxLimit");
+            }
+            if (initialLimit < minLimit || initialLimit > maxLimit) {
+                throw new IllegalStateException("initialLimit must be in [minLimit, maxLimit]");
+            }
+            return new ConcurrencyLimiterRegistry(this);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package retrofit.core;
+
+import retrofit.HttpResponse;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+/**
+ * 按主机限制并发的引擎装饰器，见{@link ConcurrencyLimiterRegistry}。
+ * <p>
+ * execute和enqueue都在调用被装饰引擎之前取得许可，因此排队和拒绝都发生在占用连接之前；
+ * 调用结束时把往返时间报告给限制算法。IOException和429、503响应视为被丢弃，被取消的调用不作为样本
+ */
+public class ConcurrencyLimitingHttpEngine extends ForwardingHttpEngine {
+    private final ConcurrencyLimiterRegistry registry;
+
+    public ConcurrencyLimitingHttpEngine(HttpEngine delegate, ConcurrencyLimiterRegistry registry) {
+        super(delegate);
+        if (registry == null) throw new NullPointerException("registry == null");
+        this.registry = registry;
+    }
+
+    public ConcurrencyLimiterRegistry registry() {
+        return registry;
+    }
+
+    @Override
+    public <T> void cancel(HttpCall httpCall) {
+        ConcurrencyLimiter limiter = limiterFor(httpCall);
+        if (limiter != null) {
+            // Still queued, it never reached the delegate.
+            limiter.cancel(httpCall);
+        }
+        super.cancel(httpCall);
+    }
+
+    @Override
+    public <T> HttpResponse execute(HttpCall<T> httpCall) throws IOException {
+        ConcurrencyLimiter limiter = limiterFor(httpCall);
+        if (limiter == null) {
+            return super.execute(httpCall);
+        }
+        try {
+            limiter.acquire(httpCall);
+        } catch (IOException e) {
+            httpCall.check();
+            throw e;
+        }
+        long startNanos = System.nanoTime();
+        HttpResponse response;
+        try {
+            response = super.execute(httpCall);
+        } catch (IOException e) {
+            sample(limiter, httpCall, startNanos, true);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            limiter.release();
+            throw e;
+        }
+        sample(limiter, httpCall, startNanos, isDropped(response));
+        return response;
+    }
+
+    @Override
+    public <T> void execute(final HttpCall<T> httpCall, final HttpCallback<T> callback) {
+        if (callback == null) throw new NullPointerException("callback == null");
+        final ConcurrencyLimiter limiter = limiterFor(httpCall);
+        if (limiter == null) {
+            super.execute(httpCall, callback);
+            return;
+        }
+        limiter.acquire(httpCall, new ConcurrencyLimiter.Grant() {
+            @Override
+            public void granted() {
+                enqueue(limiter, httpCall, callback);
+            }
+
+            @Override
+            public void rejected(final IOException e) {
+                httpCall.markExecuted();
+                Runnable deliver = new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onFailure(httpCall, e);
+                    }
+                };
+                Executor callbackExecutor = httpCall.serviceMethod.callbackExecutor;
+                if (callbackExecutor != null) {
+                    callbackExecutor.execute(deliver);
+                } else {
+                    deliver.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * 表示后端已过载的响应，默认是429和503
+     */
+    protected boolean isDropped(HttpResponse response) {
+        return response.code() == 429 || response.code() == 503;
+    }
+
+    private <T> void enqueue(final ConcurrencyLimiter limiter, final HttpCall<T> httpCall,
+                             final HttpCallback<T> callback) {
+        final long startNanos = System.nanoTime();
+        super.execute(httpCall, new HttpCallback<T>() {
+            @Override
+            public void onResponse(HttpCall<T> call, HttpResponse<T, ?, ?> response) {
+                sample(limiter, httpCall, startNanos, isDropped(response));
+                callback.onResponse(call, response);
+            }
+
+            @Override
+            public void onFailure(HttpCall<T> call, Throwable t) {
+                if (t instanceof IOException) {
+                    sample(limiter, httpCall, startNanos, true);
+                } else {
+                    limiter.release();
+                }
+                callback.onFailure(call, t);
+            }
+        });
+    }
+
+    /**
+     * 创建调用时就失败的不经过限制，由被装饰的引擎直接报告
+     */
+    private ConcurrencyLimiter limiterFor(HttpCall<?> httpCall) {
+        if (httpCall.creationFailure != null) {
+            return null;
+        }
+        return registry.limiterFor(httpCall);
+    }
+
+    private static void sample(ConcurrencyLimiter limiter, HttpCall<?> httpCall, long startNanos, boolean dropped) {
+        if (httpCall.isCanceled()) {
+            limiter.release();
+        } else {
+            limiter.onSample(System.nanoTime() - startNanos, dropped);
+        }
+    }
+}
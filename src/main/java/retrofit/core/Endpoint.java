@@ -0,0 +1,136 @@
+package retrofit.core;
+
+import retrofit.HttpUrl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link EndpointGroup}中的一个服务端，记录未完成的请求数、峰值EWMA延迟和连续失败次数
+ */
+public final class Endpoint {
+    private final HttpUrl url;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    // 峰值EWMA：比当前值慢的样本直接取代它，快的样本按距上次样本的时间衰减后并入
+    private volatile long latencyNanos;
+    private long stampNanos;
+    private volatile long ejectedUntilNanos;
+    private volatile boolean ejected;
+    // 连续被剔除的次数，决定下一次剔除的时长
+    volatile int ejectionCount;
+    long lastEjectedNanos;
+
+    Endpoint(HttpUrl url, long initialLatencyNanos) {
+        this.url = url;
+        this.latencyNanos = initialLatencyNanos;
+        this.stampNanos = System.nanoTime();
+    }
+
+    public HttpUrl url() {
+        return url;
+    }
+
+    public int outstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * 峰值EWMA延迟，还没有样本时为加入分组时其他端点的平均值
+     */
+    public long latencyNanos() {
+        return latencyNanos;
+    }
+
+    public boolean isEjected() {
+        return ejected && !restore(System.nanoTime());
+    }
+
+    public int ejectionCount() {
+        return ejectionCount;
+    }
+
+    public long requestCount() {
+        return requestCount.get();
+    }
+
+    public long failureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * P2C比较的代价：延迟乘以加上本次后的未完成请求数
+     */
+    double cost() {
+        return (latencyNanos + 1.0) * (outstanding.get() + 1);
+    }
+
+    boolean isAvailable(long nowNanos) {
+        return !ejected || restore(nowNanos);
+    }
+
+    /**
+     * 剔除时间已过时恢复，失败次数从零开始计
+     */
+    private boolean restore(long nowNanos) {
+        if (nowNanos - ejectedUntilNanos < 0) {
+            return false;
+        }
+        synchronized (this) {
+            if (ejected) {
+                consecutiveFailures.set(0);
+                ejected = false;
+            }
+        }
+        return true;
+    }
+
+    void begin() {
+        outstanding.incrementAndGet();
+        requestCount.incrementAndGet();
+    }
+
+    /**
+     * 调用没有产生关于服务端的信息（被取消、被限制等），只归还计数
+     */
+    void release() {
+        outstanding.decrementAndGet();
+    }
+
+    /**
+     * 记录一次完成的调用，返回连续失败的次数
+     */
+    int end(long rttNanos, long decayNanos, boolean failed) {
+        outstanding.decrementAndGet();
+        synchronized (this) {
+            long now = System.nanoTime();
+            long current = latencyNanos;
+            if (rttNanos > current) {
+                latencyNanos = rttNanos;
+            } else {
+                double w = Math.exp(-(double) Math.max(0, now - stampNanos) / decayNanos);
+                latencyNanos = (long) (current * w + rttNanos * (1 - w));
+            }
+            stampNanos = now;
+        }
+        if (!failed) {
+            consecutiveFailures.set(0);
+            return 0;
+        }
+        failureCount.incrementAndGet();
+        return consecutiveFailures.incrementAndGet();
+    }
+
+    synchronized void eject(long nowNanos, long durationNanos) {
+        ejectedUntilNanos = nowNanos + durationNanos;
+        ejected = true;
+        lastEjectedNanos = nowNanos;
+    }
+
+    @Override
+    public String toString() {
+        return url.toString();
+    }
+}
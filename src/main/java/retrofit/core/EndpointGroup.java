@@ -0,0 +1,269 @@
+package retrofit.core;
+
+import retrofit.HttpUrl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 提供同一服务的一组base URL，见Retrofit.Builder.endpointGroup。
+ * <p>
+ * 每次调用用P2C（power of two choices）选择端点：随机取两个，选延迟乘以未完成请求数较小的一个，
+ * 延迟是峰值EWMA，变慢的端点立刻少分到请求，恢复后按decayTime逐渐回升。
+ * 连续失败（IOException或5xx）达到consecutiveFailures次的端点被剔除baseEjectionTime乘以已剔除次数的时间，
+ * 被剔除的端点最多占maxEjectionPercent；全部端点都不可用时仍在所有端点中选择。
+ * 端点列表可以随时用{@link #update}替换，保留下来的端点保留统计数据
+ */
+public final class EndpointGroup {
+    private final int consecutiveFailures;
+    private final long baseEjectionNanos;
+    private final long maxEjectionNanos;
+    private final int maxEjectionPercent;
+    private final long decayNanos;
+    private volatile Endpoint[] endpoints = new Endpoint[0];
+
+    EndpointGroup(Builder builder) {
+        this.consecutiveFailures = builder.consecutiveFailures;
+        this.baseEjectionNanos = TimeUnit.MILLISECONDS.toNanos(builder.baseEjectionTimeMillis);
+        this.maxEjectionNanos = TimeUnit.MILLISECONDS.toNanos(builder.maxEjectionTimeMillis);
+        this.maxEjectionPercent = builder.maxEjectionPercent;
+        this.decayNanos = TimeUnit.MILLISECONDS.toNanos(builder.decayTimeMillis);
+        update(builder.urls);
+    }
+
+    /**
+     * 使用默认配置的分组
+     */
+    public static EndpointGroup of(String... urls) {
+        Builder builder = new Builder();
+        for (String url : urls) {
+            builder.addEndpoint(url);
+        }
+        return builder.build();
+    }
+
+    public static EndpointGroup of(List<HttpUrl> urls) {
+        return new Builder().endpoints(urls).build();
+    }
+
+    /**
+     * 当前端点的快照
+     */
+    public List<Endpoint> endpoints() {
+        return Collections.unmodifiableList(Arrays.asList(endpoints.clone()));
+    }
+
+    public boolean isEmpty() {
+        return endpoints.length == 0;
+    }
+
+    /**
+     * 替换端点列表，例如服务发现的结果变化时；仍在列表中的端点保留未完成请求数、延迟和剔除状态
+     */
+    public synchronized void update(List<HttpUrl> urls) {
+        Map<HttpUrl, Endpoint> current = new HashMap<>();
+        long latencySum = 0;
+        for (Endpoint endpoint : endpoints) {
+            current.put(endpoint.url(), endpoint);
+            latencySum += endpoint.latencyNanos();
+        }
+        // New endpoints start at the group's average so they are neither flooded nor starved.
+        long initialLatency = endpoints.length > 0 ? latencySum / endpoints.length : 0;
+        Map<HttpUrl, Endpoint> updated = new LinkedHashMap<>();
+        for (HttpUrl url : urls) {
+            checkBaseUrl(url);
+            if (updated.containsKey(url)) {
+                continue;
+            }
+            Endpoint endpoint = current.get(url);
+            updated.put(url, endpoint != null ? endpoint : new Endpoint(url, initialLatency));
+        }
+        endpoints = updated.values().toArray(new Endpoint[updated.size()]);
+    }
+
+    /**
+     * 为一次调用选择端点，分组为空时返回null
+     */
+    public Endpoint pick() {
+        Endpoint[] endpoints = this.endpoints;
+        int size = endpoints.length;
+        if (size == 0) {
+            return null;
+        }
+        if (size == 1) {
+            return endpoints[0];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now = System.nanoTime();
+        int i = random.nextInt(size);
+        int j = random.nextInt(size - 1);
+        if (j >= i) {
+            j++;
+        }
+        Endpoint a = endpoints[i];
+        Endpoint b = endpoints[j];
+        boolean aAvailable = a.isAvailable(now);
+        boolean bAvailable = b.isAvailable(now);
+        if (aAvailable && bAvailable) {
+            return a.cost() <= b.cost() ? a : b;
+        }
+        if (aAvailable) {
+            return a;
+        }
+        if (bAvailable) {
+            return b;
+        }
+        return pickAvailable(endpoints, random.nextInt(size), now, a.cost() <= b.cost() ? a : b);
+    }
+
+    /**
+     * 两次都选中了被剔除的端点，从随机位置开始找出两个可用的端点比较；都不可用时使用fallback
+     */
+    private static Endpoint pickAvailable(Endpoint[] endpoints, int start, long now, Endpoint fallback) {
+        Endpoint first = null;
+        for (int n = 0; n < endpoints.length; n++) {
+            Endpoint endpoint = endpoints[(start + n) % endpoints.length];
+            if (!endpoint.isAvailable(now)) {
+                continue;
+            }
+            if (first == null) {
+                first = endpoint;
+            } else {
+                return first.cost() <= endpoint.cost() ? first : endpoint;
+            }
+        }
+        return first != null ? first : fallback;
+    }
+
+    /**
+     * 记录一次完成的调用，连续失败过多时剔除该端点
+     */
+    void onResult(Endpoint endpoint, long rttNanos, boolean failed) {
+        int failures = endpoint.end(rttNanos, decayNanos, failed);
+        if (failures >= consecutiveFailures) {
+            maybeEject(endpoint);
+        }
+    }
+
+    private synchronized void maybeEject(Endpoint endpoint) {
+        long now = System.nanoTime();
+        Endpoint[] endpoints = this.endpoints;
+        int ejected = 0;
+        boolean member = false;
+        for (Endpoint e : endpoints) {
+            if (e == endpoint) {
+                member = true;
+            }
+            if (!e.isAvailable(now)) {
+                ejected++;
+            }
+        }
+        if (!member || !endpoint.isAvailable(now)) {
+            // Removed by update() or already ejected by a concurrent failure.
+            return;
+        }
+        if ((ejected + 1) * 100 > maxEjectionPercent * endpoints.length && ejected > 0) {
+            return;
+        }
+        if (endpoint.ejectionCount > 0 && now - endpoint.lastEjectedNanos > maxEjectionNanos * 2) {
+            // Healthy for a long time, start over.
+            endpoint.ejectionCount = 0;
+        }
+        endpoint.ejectionCount++;
+        endpoint.eject(now, Math.min(maxEjectionNanos, baseEjectionNanos * endpoint.ejectionCount));
+    }
+
+    static void checkBaseUrl(HttpUrl url) {
+        if (url == null) throw new NullPointerException("url == null");
+        List<String> pathSegments = url.pathSegments();
+        if (!"".equals(pathSegments.get(pathSegments.size() - 1))) {
+            throw new IllegalArgumentException("Endpoint URL must end in /: " + url);
+        }
+    }
+
+    public static final class Builder {
+        private final List<HttpUrl> urls = new ArrayList<>();
+        private int consecutiveFailures = 5;
+        private long baseEjectionTimeMillis = 30000;
+        private long maxEjectionTimeMillis = 300000;
+        private int maxEjectionPercent = 50;
+        private long decayTimeMillis = 10000;
+
+        public Builder addEndpoint(String url) {
+            if (url == null) throw new NullPointerException("url == null");
+            HttpUrl httpUrl = HttpUrl.parse(url);
+            if (httpUrl == null) {
+                throw new IllegalArgumentException("Illegal URL: " + url);
+            }
+            return addEndpoint(httpUrl);
+        }
+
+        public Builder addEndpoint(HttpUrl url) {
+            checkBaseUrl(url);
+            urls.add(url);
+            return this;
+        }
+
+        public Builder endpoints(List<HttpUrl> urls) {
+            for (HttpUrl url : urls) {
+                addEndpoint(url);
+            }
+            return this;
+        }
+
+        /**
+         * 连续失败多少次后剔除端点
+         */
+        public Builder consecutiveFailures(int consecutiveFailures) {
+            if (consecutiveFailures <= 0) throw new IllegalArgumentException("consecutiveFailures <= 0");
+            this.consecutiveFailures = consecutiveFailures;
+            return this;
+        }
+
+        /**
+         * 第一次剔除的时长，之后每次剔除按次数增加，不超过maxEjectionTimeMillis
+         */
+        public Builder baseEjectionTimeMillis(long baseEjectionTimeMillis) {
+            if (baseEjectionTimeMillis <= 0) throw new IllegalArgumentException("baseEjectionTimeMillis <= 0");
+            this.baseEjectionTimeMillis = baseEjectionTimeMillis;
+            return this;
+        }
+
+        public Builder maxEjectionTimeMillis(long maxEjectionTimeMillis) {
+            if (maxEjectionTimeMillis <= 0) throw new IllegalArgumentException("maxEjectionTimeMillis <= 0");
+            this.maxEjectionTimeMillis = maxEjectionTimeMillis;
+            return this;
+        }
+
+        /**
+         * 同时被剔除的端点最多占的百分比，至少可以剔除一个
+         */
+        public Builder maxEjectionPercent(int maxEjectionPercent) {
+            if (maxEjectionPercent < 0 || maxEjectionPercent > 100) {
+                throw new IllegalArgumentException("maxEjectionPercent must be in [0, 100]");
+            }
+            this.maxEjectionPercent = maxEjectionPercent;
+            return this;
+        }
+
+        /**
+         * 延迟变快后EWMA回落的时间常数
+         */
+        public Builder decayTimeMillis(long decayTimeMillis) {
+            if (decayTimeMillis <= 0) throw new IllegalArgumentException("decayTimeMillis <= 0");
+            this.decayTimeMillis = decayTimeMillis;
+            return this;
+        }
+
+        public EndpointGroup build() {
+            return new EndpointGroup(this);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package retrofit.core;
+
+import retrofit.HttpResponse;
+import retrofit.HttpUrl;
+import retrofit.RequestBuilder;
+import retrofit.Retrofit;
+import retrofit.ServiceMethod;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * 把所有操作转发给另一个引擎的装饰器基类。HttpCall仍由被装饰的引擎创建，
+ * 只是把调用的引擎换成装饰器，使execute、enqueue和cancel都先经过装饰器
+ */
+public abstract class ForwardingHttpEngine extends HttpEngine {
+    protected final HttpEngine delegate;
+
+    protected ForwardingHttpEngine(HttpEngine delegate) {
+        if (delegate == null) throw new NullPointerException("delegate == null");
+        this.delegate = delegate;
+    }
+
+    public HttpEngine delegate() {
+        return delegate;
+    }
+
+    /**
+     * 沿装饰链查找指定类型的引擎，例如从ServiceMethod.httpEngine中取出某个装饰器读取统计数据；找不到时返回null
+     */
+    public static <E extends HttpEngine> E unwrap(HttpEngine engine, Class<E> type) {
+        while (engine != null) {
+            if (type.isInstance(engine)) {
+                return type.cast(engine);
+            }
+            engine = engine instanceof ForwardingHttpEngine ? ((ForwardingHttpEngine) engine).delegate : null;
+        }
+        return null;
+    }
+
+    /**
+     * 为调用创建一个由被装饰引擎直接执行的副本，供需要多次发出同一请求的装饰器（对冲、重试）使用。
+     * 不复制baseUrl，每次尝试由负载均衡重新选择端点
+     */
+    protected HttpCall<?> newAttempt(HttpCall<?> original) {
+        CallArguments arguments = original.arguments();
+        HttpCall<?> attempt = arguments != null
+                ? delegate.newHttpCall(original.serviceMethod, arguments)
+                : delegate.newHttpCall(original.serviceMethod, original.args);
+        attempt.setHttpEngine(delegate);
+        attempt.additionalHeaders = original.additionalHeaders;
+        return attempt;
+    }
+
+    /**
+     * 关闭不再交给调用方的响应（对冲中落败、将要重试）仍然打开的响应体，例如@Streaming的输入流；
+     * 引擎返回的错误体都已读完，不需要关闭
+     */
+    protected static void closeQuietly(HttpResponse response) {
+        if (response != null && response.body() instanceof Closeable) {
+            try {
+                ((Closeable) response.body()).close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public HttpCall newHttpCall(ServiceMethod serviceMethod, Object[] args) {
+        HttpCall call = delegate.newHttpCall(serviceMethod, args);
+        call.setHttpEngine(this);
+        return call;
+    }
+
+    @Override
+    public HttpCall newHttpCall(ServiceMethod serviceMethod, CallArguments arguments) {
+        HttpCall call = delegate.newHttpCall(serviceMethod, arguments);
+        call.setHttpEngine(this);
+        return call;
+    }
+
+    @Override
+    public <T> void cancel(HttpCall httpCall) {
+        delegate.cancel(httpCall);
+    }
+
+    @Override
+    public <T> HttpResponse execute(HttpCall<T> httpCall) throws IOException {
+        return delegate.execute(httpCall);
+    }
+
+    @Override
+    public <T> void execute(HttpCall<T> httpCall, HttpCallback<T> callback) {
+        delegate.execute(httpCall, callback);
+    }
+
+    @Override
+    public Object toRequest(ServiceMethod serviceMethod, Object[] args) throws IOException {
+        return delegate.toRequest(serviceMethod, args);
+    }
+
+    @Override
+    public Object toRequest(HttpCall<?> call) throws IOException {
+        return delegate.toRequest(call);
+    }
+
+    @Override
+    protected RequestBuilder newRequestBuilder(ServiceMethod serviceMethod) {
+        return delegate.newRequestBuilder(serviceMethod);
+    }
+
+    @Override
+    protected RequestBuilder newRequestBuilder(ServiceMethod serviceMethod, HttpUrl baseUrl) {
+        return delegate.newRequestBuilder(serviceMethod, baseUrl);
+    }
+
+    @Override
+    public Object createAttachment(ServiceMethod serviceMethod) {
+        return delegate.createAttachment(serviceMethod);
+    }
+
+    @Override
+    public ParameterHandler<?> getParameterHandler(Retrofit retrofit, Annotation annotation) {
+        return delegate.getParameterHandler(retrofit, annotation);
+    }
+
+    @Override
+    public ParameterHandler<?> getParameterHandler(Retrofit retrofit, Type type, Annotation[] annotations,
+                                                   Annotation annotation) {
+        return delegate.getParameterHandler(retrofit, type, annotations, annotation);
+    }
+
+    @Override
+    public ParameterHandler<?> getParameterHandler(Retrofit retrofit, Type type, Annotation[] annotations,
+                                                   Annotation[] methodAnnotations, Annotation annotation) {
+        return delegate.getParameterHandler(retrofit, type, annotations, methodAnnotations, annotation);
+    }
+}
@@ -0,0 +1,26 @@
+package retrofit.core;
+
+import retrofit.ServiceMethod;
+import retrofit.http.Hedge;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * 处理{@link Hedge}：用{@link HedgingHttpEngine}装饰该方法使用的引擎
+ */
+public class HedgeAnnotationHandler implements MethodAnnotationHandler {
+
+    @Override
+    public void apply(Annotation annotation, ServiceMethod.Builder builder) {
+        if (!(annotation instanceof Hedge)) return;
+        Hedge hedge = (Hedge) annotation;
+        if (hedge.percentile() <= 0 || hedge.percentile() >= 100) {
+            throw new IllegalArgumentException("@Hedge percentile must be between 0 and 100.");
+        }
+        if (hedge.maxExtraPercent() < 0) {
+            throw new IllegalArgumentException("@Hedge maxExtraPercent must not be negative.");
+        }
+        builder.httpEngine = new HedgingHttpEngine(builder.httpEngine, hedge.percentile(),
+                hedge.maxExtraPercent(), hedge.minDelayMillis());
+    }
+}
@@ -0,0 +1,358 @@
+package retrofit.core;
+
+import retrofit.HttpResponse;
+import retrofit.ServiceMethod;
+import retrofit.util.VirtualThreads;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对冲请求的引擎装饰器，见{@link retrofit.http.Hedge}。
+ * <p>
+ * 调用方拿到的HttpCall只作为句柄，真正发出的是由被装饰引擎创建的副本：首个副本立即执行，
+ * 等待时间到了还没有结果时再执行第二个。第一个成功的响应作为结果，其余副本被取消；
+ * 全部失败时报告第一个失败。同步调用的所有副本都在{@link VirtualThreads#shared()}上执行，调用线程只等待结果；
+ * 对冲的等待由共用的定时器触发，副本同样交给{@link VirtualThreads#shared()}发出。
+ * <p>
+ * 等待时间取自该方法成功调用延迟的直方图，延迟从首个副本发出算到第一个成功的响应：
+ * 只记录胜出副本自身的耗时会漏掉被取消的慢请求，使百分位越来越低。对冲的额度以令牌桶控制，每个调用存入maxExtraPercent/100个令牌，
+ * 每次对冲消耗一个
+ */
+public class HedgingHttpEngine extends ForwardingHttpEngine {
+    private static final long MIN_SAMPLES = 20;
+    // 令牌以千分之一为单位，最多积累10次对冲
+    private static final long TOKEN = 1000;
+    private static final long MAX_TOKENS = 10 * TOKEN;
+
+    private final double percentile;
+    private final long tokensPerCall;
+    private final long minDelayNanos;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWinCount = new AtomicLong();
+    private final ConcurrentMap<HttpCall<?>, Race> races = new ConcurrentHashMap<>();
+
+    public HedgingHttpEngine(HttpEngine delegate, double percentile, int maxExtraPercent, long minDelayMillis) {
+        super(delegate);
+        if (percentile <= 0 || percentile >= 100) throw new IllegalArgumentException("percentile must be in (0, 100)");
+        if (maxExtraPercent < 0) throw new IllegalArgumentException("maxExtraPercent < 0");
+        this.percentile = percentile;
+        this.tokensPerCall = maxExtraPercent * TOKEN / 100;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, minDelayMillis));
+    }
+
+    /**
+     * 发出的对冲请求数
+     */
+    public long hedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * 对冲请求先于首个请求成功的次数
+     */
+    public long hedgeWinCount() {
+        return hedgeWinCount.get();
+    }
+
+    /**
+     * 当前的等待时间，样本不足时为-1
+     */
+    public long hedgeDelayMillis() {
+        long delayNanos = hedgeDelayNanos();
+        return delayNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(delayNanos);
+    }
+
+    @Override
+    public <T> void cancel(HttpCall httpCall) {
+        Race race = races.get(httpCall);
+        if (race != null) {
+            race.cancelAll();
+            return;
+        }
+        super.cancel(httpCall);
+    }
+
+    @Override
+    public <T> HttpResponse execute(HttpCall<T> httpCall) throws IOException {
+        if (!isHedgeable(httpCall.serviceMethod)) {
+            return super.execute(httpCall);
+        }
+        httpCall.check();
+        final Race race = new Race(httpCall, null);
+        races.put(httpCall, race);
+        try {
+            HttpCall<?> primary = race.nextAttempt(false);
+            if (primary == null) {
+                throw new IOException("Canceled");
+            }
+            scheduleHedge(race, false);
+            // The caller waits on the race, so a hedge that wins returns without waiting for the primary.
+            runAttemptAsync(race, primary);
+            //noinspection unchecked
+            return race.await();
+        } finally {
+            races.remove(httpCall, race);
+        }
+    }
+
+    @Override
+    public <T> void execute(final HttpCall<T> httpCall, final HttpCallback<T> callback) {
+        if (callback == null) throw new NullPointerException("callback == null");
+        if (!isHedgeable(httpCall.serviceMethod)) {
+            super.execute(httpCall, callback);
+            return;
+        }
+        httpCall.markExecuted();
+        Throwable creationFailure = httpCall.creationFailure;
+        if (creationFailure != null) {
+            callback.onFailure(httpCall, creationFailure);
+            return;
+        }
+        //noinspection unchecked
+        Race race = new Race(httpCall, (HttpCallback<Object>) (HttpCallback<?>) callback);
+        races.put(httpCall, race);
+        HttpCall<?> primary = race.nextAttempt(false);
+        if (primary == null) {
+            races.remove(httpCall, race);
+            callback.onFailure(httpCall, new IOException("Canceled"));
+            return;
+        }
+        scheduleHedge(race, true);
+        enqueueAttempt(race, primary);
+    }
+
+    /**
+     * 只对冲幂等的请求
+     */
+    protected boolean isHedgeable(ServiceMethod<?, ?> serviceMethod) {
+        return "GET".equals(serviceMethod.httpMethod) || "HEAD".equals(serviceMethod.httpMethod);
+    }
+
+    private long hedgeDelayNanos() {
+        long delayNanos = histogram.percentileNanos(percentile, MIN_SAMPLES);
+        return delayNanos < 0 ? -1 : Math.max(delayNanos, minDelayNanos);
+    }
+
+    private void scheduleHedge(final Race race, final boolean async) {
+        deposit();
+        long delayNanos = hedgeDelayNanos();
+        if (delayNanos < 0) return;
+        synchronized (race) {
+            if (race.decided) return;
+            race.timer = Scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (!withdraw()) return;
+                    HttpCall<?> hedge = race.nextAttempt(true);
+                    if (hedge == null) {
+                        // Decided in the meantime, give the token back.
+                        refund();
+                        return;
+                    }
+                    hedgeCount.incrementAndGet();
+                    if (async) {
+                        enqueueAttempt(race, hedge);
+                    } else {
+                        runAttempt(race, hedge);
+                    }
+                }
+            }, VirtualThreads.shared(), delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void runAttemptAsync(final Race race, final HttpCall<?> attempt) {
+        VirtualThreads.shared().execute(new Runnable() {
+            @Override
+            public void run() {
+                runAttempt(race, attempt);
+            }
+        });
+    }
+
+    private void runAttempt(Race race, HttpCall<?> attempt) {
+        HttpResponse response;
+        try {
+            response = delegate.execute(attempt);
+        } catch (Throwable t) {
+            race.complete(attempt, null, t);
+            return;
+        }
+        race.complete(attempt, response, null);
+    }
+
+    private <T> void enqueueAttempt(final Race race, HttpCall<T> attempt) {
+        delegate.execute(attempt, new HttpCallback<T>() {
+            @Override
+            public void onResponse(HttpCall<T> call, HttpResponse<T, ?, ?> response) {
+                race.complete(call, response, null);
+            }
+
+            @Override
+            public void onFailure(HttpCall<T> call, Throwable t) {
+                race.complete(call, null, t);
+            }
+        });
+    }
+
+    private void deposit() {
+        addTokens(tokensPerCall);
+    }
+
+    private void refund() {
+        addTokens(TOKEN);
+    }
+
+    /**
+     * 存入令牌，最多积累到MAX_TOKENS
+     */
+    private void addTokens(long amount) {
+        while (true) {
+            long current = tokens.get();
+            long next = Math.min(MAX_TOKENS, current + amount);
+            if (next == current || tokens.compareAndSet(current, next)) return;
+        }
+    }
+
+    private boolean withdraw() {
+        while (true) {
+            long current = tokens.get();
+            if (current < TOKEN) return false;
+            if (tokens.compareAndSet(current, current - TOKEN)) return true;
+        }
+    }
+
+    /**
+     * 一次调用的所有副本，决定结果后取消其余副本
+     */
+    private final class Race {
+        final HttpCall<?> original;
+        // 异步调用的回调，同步调用为null
+        final HttpCallback<Object> callback;
+        final List<HttpCall<?>> attempts = new ArrayList<>(2);
+        long startNanos;
+        ScheduledFuture<?> timer;
+        int running;
+        boolean decided;
+        HttpResponse response;
+        Throwable failure;
+
+        Race(HttpCall<?> original, HttpCallback<Object> callback) {
+            this.original = original;
+            this.callback = callback;
+        }
+
+        /**
+         * 已经有结果时返回null
+         */
+        synchronized HttpCall<?> nextAttempt(boolean hedge) {
+            if (decided || original.isCanceled() || (hedge && running == 0)) return null;
+            HttpCall<?> attempt = newAttempt(original);
+            if (attempts.isEmpty()) {
+                startNanos = System.nanoTime();
+            }
+            attempts.add(attempt);
+            running++;
+            return attempt;
+        }
+
+        void complete(HttpCall<?> attempt, HttpResponse response, Throwable failure) {
+            List<HttpCall<?>> losers = new ArrayList<>(2);
+            ScheduledFuture<?> timer;
+            synchronized (this) {
+                running--;
+                if (decided) {
+                    losers = null;
+                    timer = null;
+                } else if (failure == null) {
+                    decided = true;
+                    this.response = response;
+                    histogram.record(System.nanoTime() - startNanos);
+                    if (attempt != attempts.get(0)) {
+                        hedgeWinCount.incrementAndGet();
+                    }
+                    losers.addAll(attempts);
+                    losers.remove(attempt);
+                    timer = this.timer;
+                } else {
+                    if (this.failure == null) {
+                        this.failure = failure;
+                    }
+                    if (running > 0) {
+                        // Another attempt may still succeed.
+                        return;
+                    }
+                    // Hedging is not retrying, a failure with nothing else in flight is final.
+                    decided = true;
+                    timer = this.timer;
+                }
+                notifyAll();
+            }
+            if (losers == null) {
+                // Lost the race, a late streaming body must still be released.
+                closeQuietly(response);
+                return;
+            }
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            for (HttpCall<?> loser : losers) {
+                loser.cancel();
+            }
+            if (callback != null) {
+                races.remove(original, this);
+                //noinspection unchecked
+                HttpCall<Object> call = (HttpCall<Object>) original;
+                if (this.response != null) {
+                    //noinspection unchecked
+                    callback.onResponse(call, this.response);
+                } else {
+                    callback.onFailure(call, this.failure);
+                }
+            }
+        }
+
+        void cancelAll() {
+            List<HttpCall<?>> attempts;
+            ScheduledFuture<?> timer;
+            synchronized (this) {
+                attempts = new ArrayList<>(this.attempts);
+                timer = this.timer;
+            }
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            for (HttpCall<?> attempt : attempts) {
+                attempt.cancel();
+            }
+        }
+
+        synchronized HttpResponse await() throws IOException {
+            while (!decided) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancelAll();
+                    throw new InterruptedIOException("Interrupted while waiting for " + original.serviceMethod.httpMethod);
+                }
+            }
+            if (response != null) {
+                return response;
+            }
+            if (failure instanceof IOException) throw (IOException) failure;
+            if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+            if (failure instanceof Error) throw (Error) failure;
+            throw new IOException(failure);
+        }
+    }
+}
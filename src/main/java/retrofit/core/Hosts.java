@@ -0,0 +1,42 @@
+package retrofit.core;
+
+import retrofit.HttpUrl;
+import retrofit.ServiceMethod;
+
+import java.io.IOException;
+
+/**
+ * 按主机区分调用时使用的名字："scheme://host:port"
+ */
+final class Hosts {
+
+    private Hosts() {
+    }
+
+    /**
+     * URL来自方法注解、与参数无关时为true，结果可以按方法缓存
+     */
+    static boolean isStatic(ServiceMethod<?, ?> serviceMethod) {
+        return serviceMethod.relativeUrl != null;
+    }
+
+    /**
+     * 一次调用的主机，@Url参数无法解析时返回null
+     */
+    static String of(HttpCall<?> call) {
+        ServiceMethod<?, ?> serviceMethod = call.serviceMethod;
+        if (isStatic(serviceMethod)) {
+            HttpUrl url = serviceMethod.baseUrl.resolve(serviceMethod.relativeUrl);
+            return name(url != null ? url : serviceMethod.baseUrl);
+        }
+        try {
+            return name(ResolvedRequest.of(call).url());
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    static String name(HttpUrl url) {
+        return url.scheme() + "://" + url.host() + ":" + url.port();
+    }
+}
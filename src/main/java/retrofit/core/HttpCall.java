@@ -1,10 +1,13 @@
 package retrofit.core;
 
+import retrofit.HttpHeaders;
 import retrofit.HttpResponse;
+import retrofit.HttpUrl;
 import retrofit.ServiceMethod;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @param <T> response对应的目标类型
@@ -17,12 +20,21 @@ import java.io.InputStream;
 public abstract class HttpCall<T> {
 
     public final ServiceMethod<T,?> serviceMethod;
+    // 动态代理传入的参数，由参数对象（编译期或运行时生成）创建的调用为null；对两种调用都适用的是args()和arg(int)
     public final Object[] args;
+    // 生成的实现类传入的参数对象，不为null时args为null，见args()
+    CallArguments arguments;
     protected HttpEngine httpEngine;
     protected volatile boolean canceled;
 
-    public Throwable creationFailure; // Either a RuntimeException or IOException.
-    public boolean executed;
+    public volatile Throwable creationFailure; // Either a RuntimeException or IOException.
+    private final AtomicBoolean executed = new AtomicBoolean();
+    // 装饰器（如缓存的条件请求）为这次调用追加的请求头，由HttpEngine.toRequest(HttpCall)写入请求
+    public volatile HttpHeaders additionalHeaders;
+    // 装饰器（如负载均衡）为这次调用选定的base URL，为null时使用serviceMethod.baseUrl
+    public volatile HttpUrl baseUrl;
+    // 不为null时转换响应体的同时把原始字节交给它，见recordResponseBody(ResponseBodyRecorder)
+    private volatile ResponseBodyRecorder responseBodyRecorder;
 
     public HttpCall(ServiceMethod<T,?> serviceMethod, Object[] args) {
         this.serviceMethod = serviceMethod;
@@ -30,10 +42,66 @@ public abstract class HttpCall<T> {
         httpEngine = serviceMethod.httpEngine;
     }
 
+    /**
+     * 按参数下标读取的调用参数；由编译期生成的参数对象创建的调用在首次读取时才装箱成数组
+     */
+    public Object[] args() {
+        CallArguments arguments = this.arguments;
+        return arguments != null ? arguments.array() : args;
+    }
+
+    /**
+     * 第index个参数，由参数对象创建的调用只装箱这一个参数
+     */
+    public Object arg(int index) {
+        CallArguments arguments = this.arguments;
+        if (arguments != null) {
+            return arguments.get(index);
+        }
+        if (args == null) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return args[index];
+    }
+
+    /**
+     * 编译期生成的参数对象，由动态代理创建的调用返回null
+     */
+    public CallArguments arguments() {
+        return arguments;
+    }
+
     public T toResponseBody(InputStream inputStream) throws IOException {
         return serviceMethod.responseConverter.convert(inputStream);
     }
 
+    /**
+     * 转换2xx的响应体，设置了{@link ResponseBodyRecorder}时同时把原始字节交给它。引擎应当使用这个方法
+     */
+    public T toResponseBody(InputStream inputStream, int code, HttpHeaders headers) throws IOException {
+        ResponseBodyRecorder recorder = responseBodyRecorder;
+        ResponseBodyRecorder.Sink sink = recorder != null ? recorder.open(code, headers) : null;
+        if (sink == null) {
+            return toResponseBody(inputStream);
+        }
+        RecordingInputStream recording = new RecordingInputStream(inputStream, sink);
+        try {
+            T body = serviceMethod.responseConverter.convert(recording);
+            // The converter may stop before the end of the body, keep the rest as well.
+            recording.close();
+            return body;
+        } finally {
+            recording.abort();
+        }
+    }
+
+    /**
+     * 要求引擎在转换响应体时把原始字节交给recorder，必须在执行之前调用
+     */
+    public void recordResponseBody(ResponseBodyRecorder recorder) {
+        this.responseBodyRecorder = recorder;
+    }
+
     public HttpResponse<T, ?, ?> execute() throws IOException {
         return httpEngine.execute(this);
     }
@@ -43,11 +111,21 @@ public abstract class HttpCall<T> {
     }
 
     public HttpCall<T> httpEngine(HttpEngine httpEngine) {
-        return httpEngine.newHttpCall(serviceMethod, args);
+        return arguments != null
+                ? httpEngine.newHttpCall(serviceMethod, arguments) : httpEngine.newHttpCall(serviceMethod, args);
     }
 
     public boolean isExecuted() {
-        return executed;
+        return executed.get();
+    }
+
+    /**
+     * 原子地把调用标记为已执行，同一个HttpCall只有一个线程能够成功
+     */
+    public void markExecuted() {
+        if (!executed.compareAndSet(false, true)) {
+            throw new IllegalStateException("Already executed.");
+        }
     }
 
     public void cancel() {
@@ -61,14 +139,22 @@ public abstract class HttpCall<T> {
 
     public abstract HttpCall<T> clone();
 
+    /**
+     * 供clone()使用：新的调用沿用这次调用的参数对象，不必装箱成数组
+     */
+    protected final <C extends HttpCall<T>> C withArgumentsOf(C call) {
+        call.arguments = arguments;
+        return call;
+    }
+
     public void setHttpEngine(HttpEngine httpEngine) {
         this.httpEngine = httpEngine;
     }
 
     public void check() throws IOException {
-        if (executed) throw new IllegalStateException("Already executed.");
-        executed = true;
+        markExecuted();
 
+        Throwable creationFailure = this.creationFailure;
         if (creationFailure != null) {
             if (creationFailure instanceof IOException) {
                 throw (IOException) creationFailure;
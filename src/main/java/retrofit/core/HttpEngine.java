@@ -1,16 +1,24 @@
 package retrofit.core;
 
+import retrofit.HttpHeaders;
 import retrofit.HttpResponse;
+import retrofit.HttpUrl;
+import retrofit.RequestBody;
 import retrofit.RequestBuilder;
 import retrofit.Retrofit;
 import retrofit.ServiceMethod;
+import retrofit.http.*;
+import retrofit.util.Utils;
 
 import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.HashMap;
 import java.util.Map;
 
+import static retrofit.ServiceMethod.boxIfPrimitive;
+
 /**
  * @author Mr.Yuan
  * @since 2016/12/17.
@@ -24,38 +32,365 @@ public abstract class HttpEngine {
 
     public abstract HttpCall newHttpCall(ServiceMethod serviceMethod, Object[] args);
 
+    /**
+     * 由编译期生成的参数对象创建调用，请求由{@link CallArguments#write(RequestBuilder)}直接写入
+     */
+    public HttpCall newHttpCall(ServiceMethod serviceMethod, CallArguments arguments) {
+        HttpCall call = newHttpCall(serviceMethod, (Object[]) null);
+        call.arguments = arguments;
+        return call;
+    }
+
     public abstract <T> void cancel(HttpCall httpCall);
 
     public abstract <T> HttpResponse execute(HttpCall<T> tHttpCall) throws IOException;
 
     public abstract <T> void execute(HttpCall<T> tHttpCall, HttpCallback<T> callback);
 
-    public abstract ParameterHandler<?> getParameterHandler(
-            Retrofit retrofit, Type type,
-            Annotation[] annotations, Annotation annotation);
 
     public ParameterHandler<?> getParameterHandler(Retrofit retrofit, Annotation annotation) {
         return parameterHandlerMap.get(annotation.annotationType());
     }
 
-    public abstract ParameterHandler<?> getParameterHandler(
-            Retrofit retrofit, Type type, Annotation[] annotations,
-            Annotation[] methodAnnotations, Annotation annotation);
     public Object toRequest(ServiceMethod serviceMethod, Object[] args) throws IOException {
         RequestBuilder builder = newRequestBuilder(serviceMethod);
-        ParameterHandler[] handlers = serviceMethod.parameterHandlers;
-        int argumentCount = args != null ? args.length : 0;
-        if (argumentCount != handlers.length) {
-            throw new IllegalArgumentException("Argument count (" + argumentCount
-                    + ") doesn't match expected count (" + handlers.length + ")");
-        }
+        serviceMethod.requestWriter.write(builder, args);
+        return  builder.build();
+    }
 
-        for (int p = 0; p < argumentCount; p++) {
-            handlers[p].apply(builder, args[p]);
+    /**
+     * 与{@link #toRequest(ServiceMethod, Object[])}相同，另外使用装饰器为这次调用选定的base URL和添加的请求头
+     */
+    public Object toRequest(HttpCall<?> call) throws IOException {
+        ServiceMethod serviceMethod = call.serviceMethod;
+        HttpUrl baseUrl = call.baseUrl;
+        RequestBuilder builder = baseUrl != null && !baseUrl.equals(serviceMethod.baseUrl)
+                ? newRequestBuilder(serviceMethod, baseUrl) : newRequestBuilder(serviceMethod);
+        CallArguments arguments = call.arguments;
+        if (arguments != null) {
+            arguments.write(builder);
+        } else {
+            serviceMethod.requestWriter.write(builder, call.args);
         }
-        return  builder.build();
+        HttpHeaders additionalHeaders = call.additionalHeaders;
+        if (additionalHeaders != null) {
+            for (int i = 0, size = additionalHeaders.size(); i < size; i++) {
+                builder.addHeader(additionalHeaders.name(i), additionalHeaders.value(i));
+            }
+        }
+        return builder.build();
     }
 
     protected abstract RequestBuilder newRequestBuilder(ServiceMethod  serviceMethod);
 
+    /**
+     * 以另一个base URL解析相对路径，用于负载均衡等按调用选择服务端的场景
+     */
+    protected abstract RequestBuilder newRequestBuilder(ServiceMethod serviceMethod, HttpUrl baseUrl);
+
+    public ParameterHandler<?> getParameterHandler(Retrofit retrofit, Type type, Annotation[] annotations,
+                                                   Annotation annotation) {
+        if (annotation instanceof Url) {
+            return new BuiltInParameterHandlers.RelativeUrl();
+        } else if (annotation instanceof Path) {
+            Path path = (Path) annotation;
+            HttpConverter<?, String> converter = retrofit.stringConverter(type, annotations);
+            if (isDefaultPrimitiveConverter(type, converter)) {
+                return new BuiltInParameterHandlers.PrimitivePath(path.value());
+            }
+            return new BuiltInParameterHandlers.Path<>(path.value(), converter, path.encoded());
+        } else if (annotation instanceof Query) {
+
+            Query query = (Query) annotation;
+            String name = query.value();
+            boolean encoded = query.encoded();
+
+            Class<?> rawParameterType = Utils.getRawType(type);
+            if (Iterable.class.isAssignableFrom(rawParameterType)) {
+                ParameterizedType parameterizedType = (ParameterizedType) type;
+                Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
+                HttpConverter<?, String> converter =
+                        retrofit.stringConverter(iterableType, annotations);
+                return new BuiltInParameterHandlers.Query<>(name, converter, encoded).iterable();
+            } else if (rawParameterType.isArray()) {
+                Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
+                HttpConverter<?, String> converter =
+                        retrofit.stringConverter(arrayComponentType, annotations);
+                if (isDefaultPrimitiveConverter(arrayComponentType, converter)) {
+                    return new BuiltInParameterHandlers.PrimitiveQuery(name).primitiveArray(rawParameterType.getComponentType());
+                }
+                return new BuiltInParameterHandlers.Query<>(name, converter, encoded).array(rawParameterType.getComponentType());
+            } else {
+                HttpConverter<?, String> converter =
+                        retrofit.stringConverter(type, annotations);
+                if (isDefaultPrimitiveConverter(type, converter)) {
+                    return new BuiltInParameterHandlers.PrimitiveQuery(name);
+                }
+                return new BuiltInParameterHandlers.Query<>(name, converter, encoded);
+            }
+        } else if (annotation instanceof QueryMap) {
+            Class<?> rawParameterType = Utils.getRawType(type);
+            Type mapType = Utils.getSupertype(type, rawParameterType, Map.class);
+            ParameterizedType parameterizedType = (ParameterizedType) mapType;
+            Type valueType = Utils.getParameterUpperBound(1, parameterizedType);
+            HttpConverter<?, String> valueConverter =
+                    retrofit.stringConverter(valueType, annotations);
+            return new BuiltInParameterHandlers.QueryMap<>(valueConverter, ((QueryMap) annotation).encoded());
+        } else if (annotation instanceof Header) {
+            Header header = (Header) annotation;
+            String name = header.value();
+
+            Class<?> rawParameterType = Utils.getRawType(type);
+            if (Iterable.class.isAssignableFrom(rawParameterType)) {
+
+                ParameterizedType parameterizedType = (ParameterizedType) type;
+                Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
+                HttpConverter<?, String> converter =
+                        retrofit.stringConverter(iterableType, annotations);
+                return new BuiltInParameterHandlers.Header<>(name, converter).iterable();
+            } else if (rawParameterType.isArray()) {
+                Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
+                HttpConverter<?, String> converter =
+                        retrofit.stringConverter(arrayComponentType, annotations);
+                return new BuiltInParameterHandlers.Header<>(name, converter).array(rawParameterType.getComponentType());
+            } else {
+                HttpConverter<?, String> converter =
+                        retrofit.stringConverter(type, annotations);
+                return new BuiltInParameterHandlers.Header<>(name, converter);
+            }
+
+        } else if (annotation instanceof HeaderMap) {
+            Class<?> rawParameterType = Utils.getRawType(type);
+            Type mapType = Utils.getSupertype(type, rawParameterType, Map.class);
+            ParameterizedType parameterizedType = (ParameterizedType) mapType;
+            Type valueType = Utils.getParameterUpperBound(1, parameterizedType);
+            HttpConverter<?, String> valueConverter =
+                    retrofit.stringConverter(valueType, annotations);
+            return new BuiltInParameterHandlers.HeaderMap<>(valueConverter);
+
+        } else if (annotation instanceof Field) {
+//            if (!isFormEncoded) {
+//                throw parameterError(p, "@Field parameters can only be used with form encoding.");
+//            }
+            Field field = (Field) annotation;
+            String name = field.value();
+            boolean encoded = field.encoded();
+
+//            gotField = true;
+
+            Class<?> rawParameterType = Utils.getRawType(type);
+            if (Iterable.class.isAssignableFrom(rawParameterType)) {
+//                if (!(type instanceof ParameterizedType)) {
+//                    throw parameterError(p, rawParameterType.getSimpleName()
+//                            + " must include generic type (e.g., "
+//                            + rawParameterType.getSimpleName()
+//                            + "<String>)");
+//                }
+                ParameterizedType parameterizedType = (ParameterizedType) type;
+                Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
+                HttpConverter<?, String> converter =
+                        retrofit.stringConverter(iterableType, annotations);
+                return new BuiltInParameterHandlers.Field<>(name, converter, encoded).iterable();
+            } else if (rawParameterType.isArray()) {
+                Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
+                HttpConverter<?, String> converter =
+                        retrofit.stringConverter(arrayComponentType, annotations);
+                return new BuiltInParameterHandlers.Field<>(name, converter, encoded).array(rawParameterType.getComponentType());
+            } else {
+                HttpConverter<?, String> converter =
+                        retrofit.stringConverter(type, annotations);
+                return new BuiltInParameterHandlers.Field<>(name, converter, encoded);
+            }
+
+        } else if (annotation instanceof FieldMap) {
+//            if (!isFormEncoded) {
+//                throw parameterError(p, "@FieldMap parameters can only be used with form encoding.");
+//            }
+            Class<?> rawParameterType = Utils.getRawType(type);
+            Type mapType = Utils.getSupertype(type, rawParameterType, Map.class);
+//            if (!(mapType instanceof ParameterizedType)) {
+//                throw parameterError(p,
+//                        "Map must include generic types (e.g., Map<String, String>)");
+//            }
+            ParameterizedType parameterizedType = (ParameterizedType) mapType;
+//            Type keyType = Utils.getParameterUpperBound(0, parameterizedType);
+//            if (String.class != keyType) {
+//                throw parameterError(p, "@FieldMap keys must be of type String: " + keyType);
+//            }
+            Type valueType = Utils.getParameterUpperBound(1, parameterizedType);
+            HttpConverter<?, String> valueConverter =
+                    retrofit.stringConverter(valueType, annotations);
+
+//            gotField = true;
+            return new BuiltInParameterHandlers.FieldMap<>(valueConverter, ((FieldMap) annotation).encoded());
+
+        }
+
+        return null;
+    }
+
+    public ParameterHandler<?> getParameterHandler(Retrofit retrofit, Type type, Annotation[] annotations, Annotation[] methodAnnotations, Annotation annotation) {
+        if (annotation instanceof Part) {
+//            if (!isMultipart) {
+//                throw parameterError(p, "@Part parameters can only be used with multipart encoding.");
+//            }
+            Part part = (Part) annotation;
+//            gotPart = true;
+
+            String partName = part.value();
+            Class<?> rawParameterType = Utils.getRawType(type);
+            if (partName.isEmpty()) {
+                if (Iterable.class.isAssignableFrom(rawParameterType)) {
+                    if (!(type instanceof ParameterizedType)) {
+                        throw new IllegalArgumentException(rawParameterType.getSimpleName()
+                                + " must include generic type (e.g., "
+                                + rawParameterType.getSimpleName()
+                                + "<String>)");
+                    }
+                    ParameterizedType parameterizedType = (ParameterizedType) type;
+                    Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
+                    if (!isRawPart(Utils.getRawType(iterableType))) {
+                        throw new IllegalArgumentException(
+                                "@Part annotation must supply a name or use MultipartBody.Part parameter type.");
+                    }
+                    return rawPartHandler().iterable();
+                } else if (rawParameterType.isArray()) {
+                    Class<?> arrayComponentType = rawParameterType.getComponentType();
+                    if (!isRawPart(arrayComponentType)) {
+                        throw new IllegalArgumentException(
+                                "@Part annotation must supply a name or use MultipartBody.Part parameter type.");
+                    }
+                    return rawPartHandler().array(rawParameterType.getComponentType());
+                } else if (isRawPart(rawParameterType)) {
+                    return rawPartHandler();
+                } else {
+                    throw new IllegalArgumentException(
+                            "@Part annotation must supply a name or use MultipartBody.Part parameter type.");
+                }
+            } else {
+                HttpHeaders headers =
+                        HttpHeaders.of("Content-Disposition", "form-data; name=\"" + partName + "\"",
+                                "Content-Transfer-Encoding", part.encoding());
+
+                if (Iterable.class.isAssignableFrom(rawParameterType)) {
+                    if (!(type instanceof ParameterizedType)) {
+                        throw new IllegalArgumentException(rawParameterType.getSimpleName()
+                                + " must include generic type (e.g., "
+                                + rawParameterType.getSimpleName()
+                                + "<String>)");
+                    }
+                    ParameterizedType parameterizedType = (ParameterizedType) type;
+                    Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
+                    if (isRawPart(Utils.getRawType(iterableType))) {
+                        throw new IllegalArgumentException("@Part parameters using the MultipartBody.Part must not "
+                                + "include a part name in the annotation.");
+                    }
+                    HttpConverter<?, RequestBody> converter =
+                            retrofit.requestBodyConverter(iterableType, annotations, methodAnnotations);
+                    return new BuiltInParameterHandlers.Part<>(headers, converter).iterable();
+                } else if (rawParameterType.isArray()) {
+                    Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
+                    if (isRawPart(arrayComponentType)) {
+                        throw new IllegalArgumentException("@Part parameters using the MultipartBody.Part must not "
+                                + "include a part name in the annotation.");
+                    }
+                    HttpConverter<?, RequestBody> converter =
+                            retrofit.requestBodyConverter(arrayComponentType, annotations, methodAnnotations);
+                    return new BuiltInParameterHandlers.Part<>(headers, converter).array(rawParameterType.getComponentType());
+                } else if (isRawPart(rawParameterType)) {
+                    throw new IllegalArgumentException("@Part parameters using the MultipartBody.Part must not "
+                            + "include a part name in the annotation.");
+                } else {
+                    HttpConverter<?, RequestBody> converter =
+                            retrofit.requestBodyConverter(type, annotations, methodAnnotations);
+                    return new BuiltInParameterHandlers.Part<>(headers, converter);
+                }
+            }
+        } else if (annotation instanceof PartMap) {
+//            if (!isMultipart) {
+//                throw parameterError(p, "@PartMap parameters can only be used with multipart encoding.");
+//            }
+//            gotPart = true;
+            Class<?> rawParameterType = Utils.getRawType(type);
+            if (!Map.class.isAssignableFrom(rawParameterType)) {
+                throw new IllegalArgumentException("@PartMap parameter type must be Map.");
+            }
+            Type mapType = Utils.getSupertype(type, rawParameterType, Map.class);
+            if (!(mapType instanceof ParameterizedType)) {
+                throw new IllegalArgumentException("Map must include generic types (e.g., Map<String, String>)");
+            }
+            ParameterizedType parameterizedType = (ParameterizedType) mapType;
+
+            Type keyType = Utils.getParameterUpperBound(0, parameterizedType);
+            if (String.class != keyType) {
+                throw new IllegalArgumentException("@PartMap keys must be of type String: " + keyType);
+            }
+
+            Type valueType = Utils.getParameterUpperBound(1, parameterizedType);
+            if (isRawPart(Utils.getRawType(valueType))) {
+                throw new IllegalArgumentException("@PartMap values cannot be MultipartBody.Part. "
+                        + "Use @Part List<Part> or a different value type instead.");
+            }
+
+            HttpConverter<?, RequestBody> valueConverter =
+                    retrofit.requestBodyConverter(valueType, annotations, methodAnnotations);
+
+            PartMap partMap = (PartMap) annotation;
+            return new BuiltInParameterHandlers.PartMap<>(valueConverter, partMap.encoding());
+
+        } else if (annotation instanceof Body) {
+//            if (isFormEncoded || isMultipart) {
+//                throw parameterError(p,
+//                        "@Body parameters cannot be used with form or multi-part encoding.");
+//            }
+//            if (gotBody) {
+//                throw parameterError(p, "Multiple @Body method annotations found.");
+//            }
+
+            HttpConverter<?, RequestBody> converter;
+            try {
+                converter = retrofit.requestBodyConverter(type, annotations, methodAnnotations);
+            } catch (RuntimeException e) {
+                // Wide exception range because factories are user code.
+                throw new IllegalStateException(Utils.format("Unable to create @Body converter for %s", type));
+            }
+//            gotBody = true;
+            return new BuiltInParameterHandlers.Body<>(converter);
+        }
+        return null;
+    }
+
+    /**
+     * 只有未被ConverterFactory接管的基本类型参数才能跳过HttpConverter
+     */
+    private static boolean isDefaultPrimitiveConverter(Type type, HttpConverter<?, String> converter) {
+        return converter == BuiltInConverters.ToStringConverter.INSTANCE
+                && BuiltInParameterHandlers.isPrimitiveParameter(type);
+    }
+
+    /**
+     * 引擎原生的multipart part类型（例如okhttp3.MultipartBody.Part），不带名称的@Part参数必须是该类型。
+     * 不支持时返回null
+     */
+    protected Class<?> rawPartType() {
+        return null;
+    }
+
+    protected ParameterHandler<?> rawPartHandler() {
+        throw new UnsupportedOperationException(getClass().getName() + " has no raw part type.");
+    }
+
+    private boolean isRawPart(Class<?> type) {
+        Class<?> rawPartType = rawPartType();
+        return rawPartType != null && rawPartType.isAssignableFrom(type);
+    }
+
+    /**
+     * 在ServiceMethod创建时调用一次，返回值保存在{@link ServiceMethod#engineAttachment}中。
+     * 引擎可借此缓存base URL、静态请求头等在每次请求中都不变的内容的原生形式
+     */
+    public Object createAttachment(ServiceMethod serviceMethod) {
+        return null;
+    }
+
 }
@@ -6,8 +6,8 @@ import retrofit.ServiceMethod;
 import retrofit.http.*;
 
 import java.lang.annotation.Annotation;
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -22,6 +22,12 @@ public class HttpMethodAnnotationHandler implements MethodAnnotationHandler {
     static final Pattern PARAM_URL_REGEX = Pattern.compile("\\{(" + PARAM + ")\\}");
     static final Pattern PARAM_NAME_REGEX = Pattern.compile(PARAM);
 
+    public static final List<Class<? extends Annotation>> INDEXED_ANNOTATIONS = Arrays.asList(
+            HttpMethod.DELETE.class, HttpMethod.GET.class, HttpMethod.HEAD.class,
+            HttpMethod.PATCH.class, HttpMethod.POST.class, HttpMethod.PUT.class,
+            HttpMethod.OPTIONS.class, HttpMethod.HTTP.class,
+            Headers.class, Multipart.class, FormUrlEncoded.class);
+
 
     @Override
     public void apply(Annotation annotation, ServiceMethod.Builder builder) {
@@ -64,6 +70,45 @@ public class HttpMethodAnnotationHandler implements MethodAnnotationHandler {
         }
     }
 
+    /**
+     * 使用编译期索引代替对HTTP方法注解、@Headers和编码注解的解析
+     */
+    public void applyIndex(ServiceIndex.Entry entry, ServiceMethod.Builder builder) {
+        builder.httpMethod = entry.httpMethod;
+        builder.hasBody = entry.hasBody;
+        builder.isFormEncoded = entry.isFormEncoded;
+        builder.isMultipart = entry.isMultipart;
+        if (entry.relativeUrl != null) {
+            builder.relativeUrl = entry.relativeUrl;
+            builder.pathTemplate = PathTemplate.parse(entry.relativeUrl);
+            builder.relativeUrlParamNames = entry.pathParams;
+        }
+        if ("HEAD".equals(entry.httpMethod) && !Void.class.equals(builder.responseType)) {
+            throw methodError("HEAD method must use Void as response type.");
+        }
+        if (entry.headers.length > 0) {
+            HttpHeaders.Builder headers = new HttpHeaders.Builder();
+            for (int i = 0; i < entry.headers.length; i += 2) {
+                headers.add(entry.headers[i], entry.headers[i + 1]);
+            }
+            builder.headers = headers.build();
+        }
+        if (entry.contentType != null) {
+            MediaType type = MediaType.parse(entry.contentType);
+            if (type == null) {
+                throw methodError("Malformed content type: %s", entry.contentType);
+            }
+            builder.contentType = type;
+        }
+    }
+
+    /**
+     * 该注解的信息是否已包含在编译期索引中
+     */
+    public static boolean isIndexed(Annotation annotation) {
+        return INDEXED_ANNOTATIONS.contains(annotation.annotationType());
+    }
+
     private void parseHttpMethodAndPath(ServiceMethod.Builder builder, String httpMethod, String value, boolean hasBody) {
         if (builder.httpMethod != null) {
             methodError("Only one HTTP method is allowed. Found: %s and %s.",
@@ -89,16 +134,8 @@ public class HttpMethodAnnotationHandler implements MethodAnnotationHandler {
         }
 
         builder.relativeUrl = value;
-        builder.relativeUrlParamNames = parsePathParameters(value);
-    }
-
-    static Set<String> parsePathParameters(String path) {
-        Matcher m = PARAM_URL_REGEX.matcher(path);
-        Set<String> patterns = new LinkedHashSet<>();
-        while (m.find()) {
-            patterns.add(m.group(1));
-        }
-        return patterns;
+        builder.pathTemplate = PathTemplate.parse(value);
+        builder.relativeUrlParamNames = builder.pathTemplate.paramNames();
     }
 
     private HttpHeaders parseHeaders(ServiceMethod.Builder method, String[] headers) {
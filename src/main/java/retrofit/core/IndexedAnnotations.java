@@ -0,0 +1,187 @@
+package retrofit.core;
+
+import retrofit.http.Field;
+import retrofit.http.Header;
+import retrofit.http.Path;
+import retrofit.http.Query;
+
+import java.lang.annotation.Annotation;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按{@link ServiceIndex}的参数记录构造的注解实例，代替{@code Method.getParameterAnnotations()}。
+ * equals、hashCode和toString遵循{@link Annotation}的约定
+ */
+final class IndexedAnnotations {
+    private static final Map<String, Class<?>> SIMPLE_TYPES = new HashMap<>();
+
+    static {
+        Class<?>[] types = {
+                boolean.class, byte.class, char.class, double.class, float.class, int.class, long.class, short.class,
+                Boolean.class, Byte.class, Character.class, Double.class, Float.class, Integer.class, Long.class,
+                Short.class, String.class
+        };
+        for (Class<?> type : types) {
+            SIMPLE_TYPES.put(type.getName(), type);
+        }
+    }
+
+    private IndexedAnnotations() {
+    }
+
+    /**
+     * 索引只记录基本类型、包装类型和String参数，其它类型返回null
+     */
+    static Class<?> simpleType(String name) {
+        return SIMPLE_TYPES.get(name);
+    }
+
+    static Annotation of(int kind, String name, boolean encoded) {
+        switch (kind) {
+            case ServiceIndex.PARAM_PATH:
+                return new PathImpl(name, encoded);
+            case ServiceIndex.PARAM_QUERY:
+                return new QueryImpl(name, encoded);
+            case ServiceIndex.PARAM_HEADER:
+                return new HeaderImpl(name);
+            case ServiceIndex.PARAM_FIELD:
+                return new FieldImpl(name, encoded);
+            default:
+                return null;
+        }
+    }
+
+    private abstract static class Named implements Annotation {
+        final String value;
+        final boolean encoded;
+        private final boolean hasEncoded;
+
+        Named(String value, boolean encoded, boolean hasEncoded) {
+            this.value = value;
+            this.encoded = encoded;
+            this.hasEncoded = hasEncoded;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return annotationType().isInstance(other) && sameMembers(other);
+        }
+
+        abstract boolean sameMembers(Object other);
+
+        @Override
+        public int hashCode() {
+            int hashCode = (127 * "value".hashCode()) ^ value.hashCode();
+            if (hasEncoded) {
+                hashCode += (127 * "encoded".hashCode()) ^ Boolean.valueOf(encoded).hashCode();
+            }
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return "@" + annotationType().getName() + "(value=" + value
+                    + (hasEncoded ? ", encoded=" + encoded : "") + ")";
+        }
+    }
+
+    private static final class PathImpl extends Named implements Path {
+        PathImpl(String value, boolean encoded) {
+            super(value, encoded, true);
+        }
+
+        @Override
+        public String value() {
+            return value;
+        }
+
+        @Override
+        public boolean encoded() {
+            return encoded;
+        }
+
+        @Override
+        public Class<? extends Annotation> annotationType() {
+            return Path.class;
+        }
+
+        @Override
+        boolean sameMembers(Object other) {
+            return ((Path) other).value().equals(value) && ((Path) other).encoded() == encoded;
+        }
+    }
+
+    private static final class QueryImpl extends Named implements Query {
+        QueryImpl(String value, boolean encoded) {
+            super(value, encoded, true);
+        }
+
+        @Override
+        public String value() {
+            return value;
+        }
+
+        @Override
+        public boolean encoded() {
+            return encoded;
+        }
+
+        @Override
+        public Class<? extends Annotation> annotationType() {
+            return Query.class;
+        }
+
+        @Override
+        boolean sameMembers(Object other) {
+            return ((Query) other).value().equals(value) && ((Query) other).encoded() == encoded;
+        }
+    }
+
+    private static final class HeaderImpl extends Named implements Header {
+        HeaderImpl(String value) {
+            super(value, false, false);
+        }
+
+        @Override
+        public String value() {
+            return value;
+        }
+
+        @Override
+        public Class<? extends Annotation> annotationType() {
+            return Header.class;
+        }
+
+        @Override
+        boolean sameMembers(Object other) {
+            return ((Header) other).value().equals(value);
+        }
+    }
+
+    private static final class FieldImpl extends Named implements Field {
+        FieldImpl(String value, boolean encoded) {
+            super(value, encoded, true);
+        }
+
+        @Override
+        public String value() {
+            return value;
+        }
+
+        @Override
+        public boolean encoded() {
+            return encoded;
+        }
+
+        @Override
+        public Class<? extends Annotation> annotationType() {
+            return Field.class;
+        }
+
+        @Override
+        boolean sameMembers(Object other) {
+            return ((Field) other).value().equals(value) && ((Field) other).encoded() == encoded;
+        }
+    }
+}
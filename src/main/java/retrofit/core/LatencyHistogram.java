@@ -0,0 +1,74 @@
+package retrofit.core;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁的延迟直方图，按微秒计。每个2的幂区间分成4个桶，误差不超过25%；
+ * 样本数达到上限时所有桶减半，使分位数跟随最近的延迟变化
+ */
+final class LatencyHistogram {
+    private static final int BUCKETS = 160;
+    private static final long DECAY_THRESHOLD = 2000;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicBoolean decaying = new AtomicBoolean();
+
+    void record(long nanos) {
+        buckets.incrementAndGet(bucket(Math.max(0, nanos / 1000)));
+        if (count.incrementAndGet() >= DECAY_THRESHOLD && decaying.compareAndSet(false, true)) {
+            try {
+                long remaining = 0;
+                for (int i = 0; i < BUCKETS; i++) {
+                    long value = buckets.get(i);
+                    buckets.addAndGet(i, -(value - value / 2));
+                    remaining += value / 2;
+                }
+                count.set(remaining);
+            } finally {
+                decaying.set(false);
+            }
+        }
+    }
+
+    long count() {
+        return count.get();
+    }
+
+    /**
+     * 给定分位（0到100之间）的延迟上界，单位为纳秒；样本数少于minSamples时返回-1
+     */
+    long percentileNanos(double percentile, long minSamples) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total < minSamples || total == 0) return -1;
+        long target = (long) Math.ceil(total * percentile / 100);
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += snapshot[i];
+            if (cumulative >= target) {
+                return lowerBound(i + 1) * 1000;
+            }
+        }
+        return lowerBound(BUCKETS) * 1000;
+    }
+
+    static int bucket(long micros) {
+        if (micros < 4) return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) ((micros >>> (exponent - 2)) & 3);
+        return Math.min(BUCKETS - 1, (exponent - 1) * 4 + sub);
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < 4) return bucket;
+        int exponent = bucket / 4 + 1;
+        return (4L + bucket % 4) << (exponent - 2);
+    }
+}
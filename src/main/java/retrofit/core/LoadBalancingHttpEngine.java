@@ -0,0 +1,131 @@
+package retrofit.core;
+
+import retrofit.HttpResponse;
+import retrofit.ServiceMethod;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+/**
+ * 按{@link EndpointGroup}为每次调用选择base URL的引擎装饰器。
+ * <p>
+ * 选定的端点写入HttpCall.baseUrl，由引擎的RequestBuilder以它解析相对路径；按主机的熔断和并发限制也随之按端点区分。
+ * 重试和对冲的每次尝试都重新选择端点。@Url参数和绝对路径的方法不经过负载均衡。
+ * 被取消的、被熔断或并发限制拒绝的调用不计入端点的统计
+ */
+public class LoadBalancingHttpEngine extends ForwardingHttpEngine {
+    private final EndpointGroup group;
+
+    public LoadBalancingHttpEngine(HttpEngine delegate, EndpointGroup group) {
+        super(delegate);
+        if (group == null) throw new NullPointerException("group == null");
+        this.group = group;
+    }
+
+    public EndpointGroup group() {
+        return group;
+    }
+
+    @Override
+    public <T> HttpResponse execute(HttpCall<T> httpCall) throws IOException {
+        if (!isBalanced(httpCall)) {
+            return super.execute(httpCall);
+        }
+        Endpoint endpoint = group.pick();
+        if (endpoint == null) {
+            httpCall.check();
+            throw new IOException("EndpointGroup is empty");
+        }
+        httpCall.baseUrl = endpoint.url();
+        endpoint.begin();
+        long startNanos = System.nanoTime();
+        HttpResponse response;
+        try {
+            response = super.execute(httpCall);
+        } catch (IOException e) {
+            record(endpoint, httpCall, startNanos, null, e);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            endpoint.release();
+            throw e;
+        }
+        record(endpoint, httpCall, startNanos, response, null);
+        return response;
+    }
+
+    @Override
+    public <T> void execute(final HttpCall<T> httpCall, final HttpCallback<T> callback) {
+        if (callback == null) throw new NullPointerException("callback == null");
+        if (!isBalanced(httpCall)) {
+            super.execute(httpCall, callback);
+            return;
+        }
+        final Endpoint endpoint = group.pick();
+        if (endpoint == null) {
+            httpCall.markExecuted();
+            Runnable deliver = new Runnable() {
+                @Override
+                public void run() {
+                    callback.onFailure(httpCall, new IOException("EndpointGroup is empty"));
+                }
+            };
+            Executor callbackExecutor = httpCall.serviceMethod.callbackExecutor;
+            if (callbackExecutor != null) {
+                callbackExecutor.execute(deliver);
+            } else {
+                deliver.run();
+            }
+            return;
+        }
+        httpCall.baseUrl = endpoint.url();
+        endpoint.begin();
+        final long startNanos = System.nanoTime();
+        super.execute(httpCall, new HttpCallback<T>() {
+            @Override
+            public void onResponse(HttpCall<T> call, HttpResponse<T, ?, ?> response) {
+                record(endpoint, httpCall, startNanos, response, null);
+                callback.onResponse(call, response);
+            }
+
+            @Override
+            public void onFailure(HttpCall<T> call, Throwable t) {
+                if (t instanceof IOException) {
+                    record(endpoint, httpCall, startNanos, null, (IOException) t);
+                } else {
+                    endpoint.release();
+                }
+                callback.onFailure(call, t);
+            }
+        });
+    }
+
+    /**
+     * 计为端点失败的响应，默认是5xx
+     */
+    protected boolean isFailure(HttpResponse response) {
+        return response.code() >= 500;
+    }
+
+    /**
+     * 只有相对路径来自方法注解的调用才由负载均衡决定服务端
+     */
+    private static boolean isBalanced(HttpCall<?> httpCall) {
+        if (httpCall.creationFailure != null) {
+            return false;
+        }
+        ServiceMethod<?, ?> serviceMethod = httpCall.serviceMethod;
+        String relativeUrl = serviceMethod.relativeUrl;
+        return relativeUrl != null && !relativeUrl.startsWith("//") && !relativeUrl.contains("://");
+    }
+
+    private void record(Endpoint endpoint, HttpCall<?> httpCall, long startNanos, HttpResponse response,
+                        IOException failure) {
+        if (httpCall.isCanceled() || failure instanceof CallNotPermittedException
+                || failure instanceof ConcurrencyLimitExceededException) {
+            // Says nothing about the endpoint.
+            endpoint.release();
+            return;
+        }
+        group.onResult(endpoint, System.nanoTime() - startNanos, response == null || isFailure(response));
+    }
+}
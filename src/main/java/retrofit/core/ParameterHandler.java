@@ -3,7 +3,6 @@ package retrofit.core;
 import retrofit.RequestBuilder;
 
 import java.io.IOException;
-import java.lang.reflect.Array;
 
 /**
  * @author Mr.Yuan
@@ -26,18 +25,72 @@ public abstract class ParameterHandler< T> {
         };
     }
 
+    /**
+     * 数组元素类型在调用时由values的实际类型确定，已知声明类型时优先使用{@link #array(Class)}
+     */
     public final ParameterHandler<Object> array() {
         return new ParameterHandler<Object>() {
             @Override
             public void apply(RequestBuilder builder, Object values) throws IOException {
                 if (values == null) return; // Skip null values.
+                applyArray(builder, values, values.getClass().getComponentType());
+            }
+        };
+    }
 
-                for (int i = 0, size = Array.getLength(values); i < size; i++) {
-                    //noinspection unchecked
-                    ParameterHandler.this.apply(builder, (T) Array.get(values, i));
-                }
+    /**
+     * 按声明的元素类型直接读取数组，不经过{@code java.lang.reflect.Array}
+     */
+    public final ParameterHandler<Object> array(final Class<?> componentType) {
+        return new ParameterHandler<Object>() {
+            @Override
+            public void apply(RequestBuilder builder, Object values) throws IOException {
+                if (values == null) return; // Skip null values.
+                applyArray(builder, values, componentType);
             }
         };
     }
 
+    @SuppressWarnings("unchecked")
+    private void applyArray(RequestBuilder builder, Object values, Class<?> componentType)
+            throws IOException {
+        if (!componentType.isPrimitive()) {
+            for (Object value : (Object[]) values) {
+                apply(builder, (T) value);
+            }
+        } else if (componentType == int.class) {
+            for (int value : (int[]) values) {
+                apply(builder, (T) Integer.valueOf(value));
+            }
+        } else if (componentType == long.class) {
+            for (long value : (long[]) values) {
+                apply(builder, (T) Long.valueOf(value));
+            }
+        } else if (componentType == boolean.class) {
+            for (boolean value : (boolean[]) values) {
+                apply(builder, (T) Boolean.valueOf(value));
+            }
+        } else if (componentType == short.class) {
+            for (short value : (short[]) values) {
+                apply(builder, (T) Short.valueOf(value));
+            }
+        } else if (componentType == byte.class) {
+            for (byte value : (byte[]) values) {
+                apply(builder, (T) Byte.valueOf(value));
+            }
+        } else if (componentType == char.class) {
+            for (char value : (char[]) values) {
+                apply(builder, (T) Character.valueOf(value));
+            }
+        } else if (componentType == float.class) {
+            for (float value : (float[]) values) {
+                apply(builder, (T) Float.valueOf(value));
+            }
+        } else {
+            for (double value : (double[]) values) {
+                apply(builder, (T) Double.valueOf(value));
+            }
+        }
+    }
+
 }
@@ -0,0 +1,197 @@
+package retrofit.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 预编译的相对URL模板：字面量片段与{@code {name}}参数槽交替排列。
+ * 每个ServiceMethod解析一次，请求时只需把参数值填入预先算好大小的缓冲区
+ */
+public final class PathTemplate {
+    private final String template;
+    // literals.length == slotParams.length + 1
+    private final String[] literals;
+    private final int[] slotParams;
+    private final String[] paramNames;
+    private final int literalLength;
+
+    private PathTemplate(String template, String[] literals, int[] slotParams, String[] paramNames) {
+        this.template = template;
+        this.literals = literals;
+        this.slotParams = slotParams;
+        this.paramNames = paramNames;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * 按{@code \{([a-zA-Z][a-zA-Z0-9_-]*)\}}切分模板，不符合该规则的花括号按字面量处理
+     */
+    public static PathTemplate parse(String template) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> slotParams = new ArrayList<>();
+        List<String> paramNames = new ArrayList<>();
+
+        int literalStart = 0;
+        for (int i = 0, length = template.length(); i < length; i++) {
+            if (template.charAt(i) != '{') continue;
+            int end = paramEnd(template, i + 1, length);
+            if (end == -1) continue;
+
+            String name = template.substring(i + 1, end);
+            int index = paramNames.indexOf(name);
+            if (index == -1) {
+                index = paramNames.size();
+                paramNames.add(name);
+            }
+            literals.add(template.substring(literalStart, i));
+            slotParams.add(index);
+            literalStart = end + 1;
+            i = end;
+        }
+        literals.add(template.substring(literalStart));
+
+        int[] slots = new int[slotParams.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = slotParams.get(i);
+        }
+        return new PathTemplate(template, literals.toArray(new String[literals.size()]), slots,
+                paramNames.toArray(new String[paramNames.size()]));
+    }
+
+    /**
+     * 返回参数名后'}'的位置，不是合法参数时返回-1
+     */
+    private static int paramEnd(String template, int pos, int limit) {
+        if (pos >= limit || !isLetter(template.charAt(pos))) return -1;
+        for (int i = pos + 1; i < limit; i++) {
+            char c = template.charAt(i);
+            if (c == '}') return i;
+            if (!isLetter(c) && !(c >= '0' && c <= '9') && c != '_' && c != '-') return -1;
+        }
+        return -1;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    public String template() {
+        return template;
+    }
+
+    public Set<String> paramNames() {
+        Set<String> names = new LinkedHashSet<>();
+        Collections.addAll(names, paramNames);
+        return names;
+    }
+
+    public int indexOf(String name) {
+        for (int i = 0; i < paramNames.length; i++) {
+            if (paramNames[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    public boolean hasParams() {
+        return paramNames.length > 0;
+    }
+
+    public Expansion newExpansion() {
+        return new Expansion();
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+
+    /**
+     * 一次请求的参数值，未赋值的参数保留原样的{@code {name}}
+     */
+    public final class Expansion {
+        private final String[] values = new String[paramNames.length];
+        // 以数字形式保存的值，仅当对应的values[i]为null且isLong[i]为true时有效
+        private long[] longValues;
+        private boolean[] isLong;
+
+        /**
+         * 模板中不存在该参数时返回false
+         */
+        public boolean set(String name, String value) {
+            int index = indexOf(name);
+            if (index == -1) return false;
+            values[index] = value;
+            if (isLong != null) isLong[index] = false;
+            return true;
+        }
+
+        /**
+         * 整数值在展开时直接写入缓冲区，不生成中间String
+         */
+        public boolean set(String name, long value) {
+            int index = indexOf(name);
+            if (index == -1) return false;
+            if (isLong == null) {
+                longValues = new long[paramNames.length];
+                isLong = new boolean[paramNames.length];
+            }
+            values[index] = null;
+            longValues[index] = value;
+            isLong[index] = true;
+            return true;
+        }
+
+        public String expand() {
+            if (slotParams.length == 0) return template;
+
+            int length = literalLength;
+            for (int slotParam : slotParams) {
+                String value = values[slotParam];
+                if (value != null) {
+                    length += value.length();
+                } else if (isLong != null && isLong[slotParam]) {
+                    length += stringSize(longValues[slotParam]);
+                } else {
+                    length += paramNames[slotParam].length() + 2;
+                }
+            }
+            StringBuilder builder = new StringBuilder(length);
+            for (int i = 0; i < slotParams.length; i++) {
+                builder.append(literals[i]);
+                String value = values[slotParams[i]];
+                if (value != null) {
+                    builder.append(value);
+                } else if (isLong != null && isLong[slotParams[i]]) {
+                    builder.append(longValues[slotParams[i]]);
+                } else {
+                    builder.append('{').append(paramNames[slotParams[i]]).append('}');
+                }
+            }
+            return builder.append(literals[slotParams.length]).toString();
+        }
+    }
+
+    /**
+     * 十进制表示的字符数，包括负号
+     */
+    static int stringSize(long value) {
+        if (value == Long.MIN_VALUE) return 20;
+        int size = 1;
+        if (value < 0) {
+            size++;
+            value = -value;
+        }
+        while (value >= 10) {
+            value /= 10;
+            size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,29 @@
+package retrofit.core;
+
+import retrofit.ServiceMethod;
+import retrofit.http.RateLimit;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * 处理{@link RateLimit}：用{@link RateLimitingHttpEngine}装饰该方法使用的引擎
+ */
+public class RateLimitAnnotationHandler implements MethodAnnotationHandler {
+
+    @Override
+    public void apply(Annotation annotation, ServiceMethod.Builder builder) {
+        if (!(annotation instanceof RateLimit)) return;
+        RateLimit rateLimit = (RateLimit) annotation;
+        if (rateLimit.permitsPerSecond() <= 0) {
+            throw new IllegalArgumentException("@RateLimit permitsPerSecond must be positive.");
+        }
+        if (rateLimit.burst() < 1) {
+            throw new IllegalArgumentException("@RateLimit burst must be at least 1.");
+        }
+        if (rateLimit.keyParameter() < -1) {
+            throw new IllegalArgumentException("@RateLimit keyParameter must be -1 or a parameter index.");
+        }
+        builder.httpEngine = new RateLimitingHttpEngine(builder.httpEngine, rateLimit.permitsPerSecond(),
+                rateLimit.burst(), rateLimit.keyParameter());
+    }
+}
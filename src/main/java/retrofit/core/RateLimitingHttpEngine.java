@@ -0,0 +1,231 @@
+package retrofit.core;
+
+import retrofit.HttpResponse;
+import retrofit.ServiceMethod;
+import retrofit.util.VirtualThreads;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按令牌桶推迟调用的引擎装饰器，见{@link retrofit.http.RateLimit}。
+ * <p>
+ * 每个调用预订一个令牌，需要等待时同步调用在调用线程上等待，异步调用由共用的定时器延后触发，
+ * 再交给{@link VirtualThreads#shared()}发出，等待期间不占用线程也不自旋；
+ * 等待期间取消或中断的调用以"Canceled"失败并归还预订的令牌。
+ * 按参数限流时参数值按equals区分，积满的桶会在键过多时被清理
+ */
+public class RateLimitingHttpEngine extends ForwardingHttpEngine {
+    private static final Object NULL_KEY = new Object();
+    private static final int SWEEP_THRESHOLD = 1024;
+
+    private final long intervalNanos;
+    private final int burst;
+    private final int keyParameter;
+    // keyParameter为-1时使用
+    private final TokenBucket bucket;
+    private final ConcurrentMap<Object, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private volatile int sweepAt = SWEEP_THRESHOLD;
+    private final ConcurrentMap<HttpCall<?>, Delay> delayed = new ConcurrentHashMap<>();
+    private final AtomicLong delayedCount = new AtomicLong();
+
+    public RateLimitingHttpEngine(HttpEngine delegate, double permitsPerSecond, int burst, int keyParameter) {
+        super(delegate);
+        if (permitsPerSecond <= 0) throw new IllegalArgumentException("permitsPerSecond <= 0");
+        if (burst < 1) throw new IllegalArgumentException("burst < 1");
+        if (keyParameter < -1) throw new IllegalArgumentException("keyParameter < -1");
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burst = burst;
+        this.keyParameter = keyParameter;
+        this.bucket = keyParameter < 0 ? new TokenBucket(intervalNanos, burst) : null;
+    }
+
+    /**
+     * 需要等待令牌的调用数
+     */
+    public long delayedCount() {
+        return delayedCount.get();
+    }
+
+    /**
+     * 按参数限流时当前的令牌桶数
+     */
+    public int keyCount() {
+        return buckets.size();
+    }
+
+    @Override
+    public Object createAttachment(ServiceMethod serviceMethod) {
+        if (keyParameter >= serviceMethod.method.getParameterTypes().length) {
+            throw new IllegalArgumentException("@RateLimit keyParameter " + keyParameter + " is out of range for "
+                    + serviceMethod.method);
+        }
+        return super.createAttachment(serviceMethod);
+    }
+
+    @Override
+    public <T> void cancel(HttpCall httpCall) {
+        Delay delay = delayed.remove(httpCall);
+        if (delay != null && delay.finish()) {
+            // Never handed to the delegate, the reserved token is unused.
+            delay.bucket.refund();
+            // A blocked caller wakes up by itself, report async ones here.
+            if (delay.callback != null) {
+                if (delay.timer != null) {
+                    delay.timer.cancel(false);
+                }
+                deliverCanceled(httpCall, delay.callback);
+            }
+            return;
+        }
+        super.cancel(httpCall);
+    }
+
+    @Override
+    public <T> HttpResponse execute(HttpCall<T> httpCall) throws IOException {
+        TokenBucket bucket = bucketFor(httpCall);
+        long delayNanos = bucket.reserve();
+        if (delayNanos > 0) {
+            delayedCount.incrementAndGet();
+            Delay delay = new Delay(bucket, null);
+            delayed.put(httpCall, delay);
+            try {
+                if (!delay.await(delayNanos)) {
+                    httpCall.check();
+                    throw new IOException("Canceled");
+                }
+            } finally {
+                delayed.remove(httpCall, delay);
+            }
+        }
+        return super.execute(httpCall);
+    }
+
+    @Override
+    public <T> void execute(final HttpCall<T> httpCall, final HttpCallback<T> callback) {
+        if (callback == null) throw new NullPointerException("callback == null");
+        TokenBucket bucket = bucketFor(httpCall);
+        long delayNanos = bucket.reserve();
+        if (delayNanos <= 0) {
+            super.execute(httpCall, callback);
+            return;
+        }
+        delayedCount.incrementAndGet();
+        //noinspection unchecked
+        final Delay delay = new Delay(bucket, (HttpCallback<Object>) (HttpCallback<?>) callback);
+        delayed.put(httpCall, delay);
+        synchronized (delay) {
+            if (delay.done) return;
+            delay.timer = Scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    delayed.remove(httpCall, delay);
+                    if (delay.finish()) {
+                        delegate.execute(httpCall, callback);
+                    }
+                }
+            }, VirtualThreads.shared(), delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private TokenBucket bucketFor(HttpCall<?> httpCall) {
+        if (bucket != null) {
+            return bucket;
+        }
+        Object key = httpCall.arg(keyParameter);
+        if (key == null) {
+            key = NULL_KEY;
+        }
+        TokenBucket result = buckets.get(key);
+        if (result == null) {
+            TokenBucket created = new TokenBucket(intervalNanos, burst);
+            result = buckets.putIfAbsent(key, created);
+            if (result == null) {
+                result = created;
+                if (buckets.size() > sweepAt) {
+                    sweep();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 移除已经积满的桶，它们和新建的桶没有区别；仍然过多时推迟下一次清理，使清理的开销均摊
+     */
+    private void sweep() {
+        for (Iterator<Map.Entry<Object, TokenBucket>> i = buckets.entrySet().iterator(); i.hasNext(); ) {
+            if (i.next().getValue().isIdle()) {
+                i.remove();
+            }
+        }
+        sweepAt = Math.max(SWEEP_THRESHOLD, buckets.size() * 2);
+    }
+
+    private static void deliverCanceled(final HttpCall<?> httpCall, final HttpCallback<Object> callback) {
+        httpCall.markExecuted();
+        Runnable deliver = new Runnable() {
+            @Override
+            public void run() {
+                //noinspection unchecked
+                callback.onFailure((HttpCall<Object>) httpCall, new IOException("Canceled"));
+            }
+        };
+        Executor callbackExecutor = httpCall.serviceMethod.callbackExecutor;
+        if (callbackExecutor != null) {
+            callbackExecutor.execute(deliver);
+        } else {
+            deliver.run();
+        }
+    }
+
+    /**
+     * 一个等待令牌的调用，先到的一方（时间到或取消）调用finish成功
+     */
+    private static final class Delay {
+        final TokenBucket bucket;
+        // 异步调用的回调，同步调用为null
+        final HttpCallback<Object> callback;
+        ScheduledFuture<?> timer;
+        boolean done;
+
+        Delay(TokenBucket bucket, HttpCallback<Object> callback) {
+            this.bucket = bucket;
+            this.callback = callback;
+        }
+
+        synchronized boolean finish() {
+            if (done) return false;
+            done = true;
+            notifyAll();
+            return true;
+        }
+
+        /**
+         * 等待到时间后返回true，期间被取消时返回false
+         */
+        synchronized boolean await(long delayNanos) throws IOException {
+            long deadline = System.nanoTime() + delayNanos;
+            long remaining;
+            while (!done && (remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    done = true;
+                    bucket.refund();
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a rate limit permit");
+                }
+            }
+            return finish();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package retrofit.core;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 读取的同时把字节写入{@link ResponseBodyRecorder.Sink}；关闭时先读完剩余内容，使记录下来的总是完整的响应体。
+ * 写入失败时放弃记录，读取照常进行
+ */
+final class RecordingInputStream extends FilterInputStream {
+    private ResponseBodyRecorder.Sink sink;
+    private boolean closed;
+
+    RecordingInputStream(InputStream in, ResponseBodyRecorder.Sink sink) {
+        super(in);
+        this.sink = sink;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b != -1 && sink != null) {
+            try {
+                sink.write(b);
+            } catch (IOException e) {
+                abort();
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read > 0 && sink != null) {
+            try {
+                sink.write(b, off, read);
+            } catch (IOException e) {
+                abort();
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read == -1) break;
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * 读完剩余内容后提交记录
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            byte[] buffer = new byte[8192];
+            while (read(buffer, 0, buffer.length) != -1) {
+            }
+            if (sink != null) {
+                sink.commit();
+                sink = null;
+            }
+        } finally {
+            abort();
+            in.close();
+        }
+    }
+
+    /**
+     * 放弃记录，已提交时什么也不做
+     */
+    void abort() {
+        ResponseBodyRecorder.Sink sink = this.sink;
+        if (sink != null) {
+            this.sink = null;
+            sink.abort();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package retrofit.core;
+
+import retrofit.RequestBuilder;
+
+import java.io.IOException;
+
+/**
+ * 把一个ServiceMethod的全部ParameterHandler合并成一个对象，在ServiceMethod创建时生成一次。
+ * 参数个数的校验与各参数的写入在同一次调用中完成，参数较少时直接展开，不再遍历handler数组
+ */
+public abstract class RequestWriter {
+
+    /**
+     * 依次把args写入builder，参数个数与handler个数不一致时抛出IllegalArgumentException
+     */
+    public abstract void write(RequestBuilder builder, Object[] args) throws IOException;
+
+    public static RequestWriter of(ParameterHandler<?>[] handlers) {
+        switch (handlers.length) {
+            case 0:
+                return Empty.INSTANCE;
+            case 1:
+                return new Single(handlers[0]);
+            case 2:
+                return new Pair(handlers[0], handlers[1]);
+            default:
+                return new Chain(handlers.clone());
+        }
+    }
+
+    static void checkArgumentCount(Object[] args, int expected) {
+        int argumentCount = args != null ? args.length : 0;
+        if (argumentCount != expected) {
+            throw new IllegalArgumentException("Argument count (" + argumentCount
+                    + ") doesn't match expected count (" + expected + ")");
+        }
+    }
+
+    private static final class Empty extends RequestWriter {
+        static final Empty INSTANCE = new Empty();
+
+        @Override
+        public void write(RequestBuilder builder, Object[] args) {
+            checkArgumentCount(args, 0);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static final class Single extends RequestWriter {
+        private final ParameterHandler<Object> first;
+
+        Single(ParameterHandler<?> first) {
+            this.first = (ParameterHandler<Object>) first;
+        }
+
+        @Override
+        public void write(RequestBuilder builder, Object[] args) throws IOException {
+            checkArgumentCount(args, 1);
+            first.apply(builder, args[0]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static final class Pair extends RequestWriter {
+        private final ParameterHandler<Object> first;
+        private final ParameterHandler<Object> second;
+
+        Pair(ParameterHandler<?> first, ParameterHandler<?> second) {
+            this.first = (ParameterHandler<Object>) first;
+            this.second = (ParameterHandler<Object>) second;
+        }
+
+        @Override
+        public void write(RequestBuilder builder, Object[] args) throws IOException {
+            checkArgumentCount(args, 2);
+            first.apply(builder, args[0]);
+            second.apply(builder, args[1]);
+        }
+    }
+
+    private static final class Chain extends RequestWriter {
+        private final ParameterHandler<Object>[] handlers;
+
+        @SuppressWarnings("unchecked")
+        Chain(ParameterHandler<?>[] handlers) {
+            this.handlers = (ParameterHandler<Object>[]) handlers;
+        }
+
+        @Override
+        public void write(RequestBuilder builder, Object[] args) throws IOException {
+            ParameterHandler<Object>[] handlers = this.handlers;
+            checkArgumentCount(args, handlers.length);
+            for (int p = 0; p < handlers.length; p++) {
+                handlers[p].apply(builder, args[p]);
+            }
+        }
+    }
+}
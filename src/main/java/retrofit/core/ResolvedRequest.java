@@ -0,0 +1,136 @@
+package retrofit.core;
+
+import retrofit.HttpHeaders;
+import retrofit.HttpUrl;
+import retrofit.MediaType;
+import retrofit.ServiceMethod;
+
+import java.io.IOException;
+
+/**
+ * 与引擎无关的请求描述：HTTP方法、完整URL、请求头和Content-Type。
+ * 供装饰器（合并、缓存等）在不构建引擎原生请求的情况下识别一次调用
+ */
+public final class ResolvedRequest {
+    private final String method;
+    private final HttpUrl url;
+    private final HttpHeaders headers;
+    private final MediaType contentType;
+
+    ResolvedRequest(String method, HttpUrl url, HttpHeaders headers, MediaType contentType) {
+        this.method = method;
+        this.url = url;
+        this.headers = headers;
+        this.contentType = contentType;
+    }
+
+    /**
+     * 用方法的ParameterHandler重新写一遍参数，请求体只参与Content-Type的计算
+     */
+    public static ResolvedRequest of(ServiceMethod<?, ?> serviceMethod, Object[] args) throws IOException {
+        Builder builder = new Builder(serviceMethod);
+        serviceMethod.requestWriter.write(builder, args);
+        return builder.build();
+    }
+
+    /**
+     * 与{@link #of(ServiceMethod, Object[])}相同；由编译期生成的参数对象创建的调用直接写入参数，不装箱成数组
+     */
+    public static ResolvedRequest of(HttpCall<?> call) throws IOException {
+        ServiceMethod<?, ?> serviceMethod = call.serviceMethod;
+        CallArguments arguments = call.arguments;
+        if (arguments == null) {
+            return of(serviceMethod, call.args);
+        }
+        Builder builder = new Builder(serviceMethod);
+        arguments.write(builder);
+        return builder.build();
+    }
+
+    /**
+     * 只计算完整URL：跳过请求头、表单字段、part和@Body的参数，不转换也不缓冲请求体。
+     * 供不安全的方法在成功后使同一URL的缓存失效
+     */
+    @SuppressWarnings("unchecked")
+    public static HttpUrl urlOf(ServiceMethod<?, ?> serviceMethod, Object[] args) throws IOException {
+        ParameterHandler<?>[] handlers = serviceMethod.parameterHandlers;
+        RequestWriter.checkArgumentCount(args, handlers.length);
+        Builder builder = new Builder(serviceMethod, false);
+        for (int p = 0; p < handlers.length; p++) {
+            if (affectsUrl(handlers[p])) {
+                ((ParameterHandler<Object>) handlers[p]).apply(builder, args[p]);
+            }
+        }
+        return builder.url();
+    }
+
+    private static boolean affectsUrl(ParameterHandler<?> handler) {
+        return !(handler instanceof BuiltInParameterHandlers.Body
+                || handler instanceof BuiltInParameterHandlers.Part
+                || handler instanceof BuiltInParameterHandlers.PartMap
+                || handler instanceof BuiltInParameterHandlers.Field
+                || handler instanceof BuiltInParameterHandlers.FieldMap
+                || handler instanceof BuiltInParameterHandlers.Header
+                || handler instanceof BuiltInParameterHandlers.HeaderMap);
+    }
+
+    public String method() {
+        return method;
+    }
+
+    public HttpUrl url() {
+        return url;
+    }
+
+    public HttpHeaders headers() {
+        return headers;
+    }
+
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ResolvedRequest)) return false;
+        ResolvedRequest other = (ResolvedRequest) o;
+        return method.equals(other.method)
+                && url.equals(other.url)
+                && headers.equals(other.headers)
+                && (contentType != null ? contentType.equals(other.contentType) : other.contentType == null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = method.hashCode();
+        result = 31 * result + url.hashCode();
+        result = 31 * result + headers.hashCode();
+        return 31 * result + (contentType != null ? contentType.hashCode() : 0);
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + url;
+    }
+
+    static final class Builder extends StandardRequestBuilder {
+        Builder(ServiceMethod<?, ?> serviceMethod) {
+            this(serviceMethod, true);
+        }
+
+        /**
+         * withBody为false时不准备表单和multipart的缓冲区
+         */
+        Builder(ServiceMethod<?, ?> serviceMethod, boolean withBody) {
+            super(serviceMethod.httpMethod, serviceMethod.baseUrl, serviceMethod.pathTemplate,
+                    serviceMethod.headers, serviceMethod.contentType, withBody && serviceMethod.hasBody,
+                    withBody && serviceMethod.isFormEncoded, withBody && serviceMethod.isMultipart);
+        }
+
+        @Override
+        public ResolvedRequest build() {
+            return new ResolvedRequest(method(), url(), headers(), contentType());
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package retrofit.core;
+
+import retrofit.HttpHeaders;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 装饰器（如缓存）在引擎转换响应体的同时取得原始字节的方式，见{@link HttpCall#recordResponseBody(ResponseBodyRecorder)}。
+ * 引擎收到响应头后才调用{@link #open(int, HttpHeaders)}，由装饰器按状态码和响应头决定是否记录，
+ * 不记录的响应不会多复制一个字节
+ */
+public interface ResponseBodyRecorder {
+    /**
+     * 开始转换2xx的响应体之前调用，返回null时不记录
+     */
+    Sink open(int code, HttpHeaders headers) throws IOException;
+
+    /**
+     * 接收原始响应体的输出。响应体完整读完后调用{@link #commit()}，读取或转换失败时调用{@link #abort()}；
+     * 写入失败时记录被放弃，响应本身不受影响
+     */
+    abstract class Sink extends OutputStream {
+        public abstract void commit() throws IOException;
+
+        /**
+         * 丢弃已写入的内容，可以重复调用
+         */
+        public abstract void abort();
+    }
+}
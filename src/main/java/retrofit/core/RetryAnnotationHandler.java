@@ -0,0 +1,24 @@
+package retrofit.core;
+
+import retrofit.ServiceMethod;
+import retrofit.http.Retry;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * 处理{@link Retry}：替换该方法的重试策略，ServiceMethod.Builder在最后用{@link RetryingHttpEngine}装饰引擎
+ */
+public class RetryAnnotationHandler implements MethodAnnotationHandler {
+
+    @Override
+    public void apply(Annotation annotation, ServiceMethod.Builder builder) {
+        if (!(annotation instanceof Retry)) return;
+        Retry retry = (Retry) annotation;
+        builder.retryPolicy = new RetryPolicy.Builder()
+                .maxAttempts(retry.maxAttempts())
+                .baseDelayMillis(retry.baseDelayMillis())
+                .maxDelayMillis(retry.maxDelayMillis())
+                .retryableCodes(retry.retryOnCodes())
+                .build();
+    }
+}
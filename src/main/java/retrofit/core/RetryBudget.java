@@ -0,0 +1,58 @@
+package retrofit.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 重试预算：令牌桶，每个调用存入ratio个令牌，每次重试消耗一个，最多积累maxTokens个。
+ * 长期来看重试数不超过调用数的ratio倍，短时间内最多额外重试maxTokens次，
+ * 后端整体故障时客户端不会因为重试把流量放大。同一个Retrofit的所有方法共用一个预算
+ */
+public final class RetryBudget {
+    // 令牌以千分之一为单位
+    private static final long TOKEN = 1000;
+
+    private final long depositPerCall;
+    private final long maxTokens;
+    private final AtomicLong tokens;
+
+    /**
+     * @param ratio     重试占调用数的最大比例，例如0.1
+     * @param maxTokens 桶的容量，初始是满的
+     */
+    public RetryBudget(double ratio, int maxTokens) {
+        if (ratio < 0) throw new IllegalArgumentException("ratio < 0");
+        if (maxTokens < 0) throw new IllegalArgumentException("maxTokens < 0");
+        this.depositPerCall = (long) (ratio * TOKEN);
+        this.maxTokens = maxTokens * TOKEN;
+        this.tokens = new AtomicLong(this.maxTokens);
+    }
+
+    /**
+     * 每个调用开始时存入
+     */
+    public void deposit() {
+        while (true) {
+            long current = tokens.get();
+            long next = Math.min(maxTokens, current + depositPerCall);
+            if (next == current || tokens.compareAndSet(current, next)) return;
+        }
+    }
+
+    /**
+     * 取出一次重试的令牌，余额不足时返回false
+     */
+    public boolean tryWithdraw() {
+        while (true) {
+            long current = tokens.get();
+            if (current < TOKEN) return false;
+            if (tokens.compareAndSet(current, current - TOKEN)) return true;
+        }
+    }
+
+    /**
+     * 当前还可以进行的重试次数
+     */
+    public int available() {
+        return (int) (tokens.get() / TOKEN);
+    }
+}
@@ -0,0 +1,108 @@
+package retrofit.core;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 重试策略：最多尝试次数、退避时间及可以重试的状态码。
+ * 退避使用decorrelated jitter：sleep = min(maxDelay, random(baseDelay, 上一次sleep * 3))
+ */
+public final class RetryPolicy {
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Set<Integer> retryableCodes;
+
+    RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.baseDelayMillis = builder.baseDelayMillis;
+        this.maxDelayMillis = builder.maxDelayMillis;
+        this.retryableCodes = Collections.unmodifiableSet(new HashSet<>(builder.retryableCodes));
+    }
+
+    /**
+     * 包括第一次在内的尝试次数
+     */
+    public int maxAttempts() {
+        return maxAttempts;
+    }
+
+    public long baseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    /**
+     * 单次退避的上限；Retry-After超过它时不再重试
+     */
+    public long maxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public Set<Integer> retryableCodes() {
+        return retryableCodes;
+    }
+
+    public boolean isRetryable(int code) {
+        return retryableCodes.contains(code);
+    }
+
+    /**
+     * 根据上一次的退避时间计算下一次，第一次重试时previousDelayMillis为0
+     */
+    public long nextDelayMillis(long previousDelayMillis) {
+        long upper = Math.max(baseDelayMillis, previousDelayMillis * 3);
+        long delay = upper > baseDelayMillis
+                ? baseDelayMillis + ThreadLocalRandom.current().nextLong(upper - baseDelayMillis + 1)
+                : baseDelayMillis;
+        return Math.min(maxDelayMillis, delay);
+    }
+
+    public static final class Builder {
+        private int maxAttempts = 3;
+        private long baseDelayMillis = 100;
+        private long maxDelayMillis = 10000;
+        private Set<Integer> retryableCodes = new HashSet<>();
+
+        public Builder() {
+            retryableCodes(408, 429, 500, 502, 503, 504);
+        }
+
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts < 1");
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder baseDelayMillis(long baseDelayMillis) {
+            if (baseDelayMillis < 0) throw new IllegalArgumentException("baseDelayMillis < 0");
+            this.baseDelayMillis = baseDelayMillis;
+            return this;
+        }
+
+        public Builder maxDelayMillis(long maxDelayMillis) {
+            if (maxDelayMillis < 0) throw new IllegalArgumentException("maxDelayMillis < 0");
+            this.maxDelayMillis = maxDelayMillis;
+            return this;
+        }
+
+        /**
+         * 替换可以重试的状态码，IOException总是可以重试
+         */
+        public Builder retryableCodes(int... codes) {
+            retryableCodes = new HashSet<>();
+            for (int code : codes) {
+                retryableCodes.add(code);
+            }
+            return this;
+        }
+
+        public RetryPolicy build() {
+            if (maxDelayMillis < baseDelayMillis) {
+                throw new IllegalStateException("maxDelayMillis < baseDelayMillis");
+            }
+            return new RetryPolicy(this);
+        }
+    }
+}
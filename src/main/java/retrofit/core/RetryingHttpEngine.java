@@ -0,0 +1,308 @@
+package retrofit.core;
+
+import retrofit.HttpHeaders;
+import retrofit.HttpResponse;
+import retrofit.ServiceMethod;
+import retrofit.util.VirtualThreads;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按{@link RetryPolicy}重试幂等请求的引擎装饰器。
+ * <p>
+ * IOException（熔断和并发限制在本地拒绝的除外）及策略中的状态码会被重试；响应带有Retry-After时至少等待它指定的时间，
+ * 超过策略的maxDelayMillis时直接返回该响应。每次重试都要从{@link RetryBudget}取得令牌，
+ * 预算用完时返回最后一次的结果。调用方拿到的HttpCall只作为句柄，每次尝试都是一个新的副本。
+ * 异步调用的重试由共用的定时器触发，再交给{@link VirtualThreads#shared()}发出
+ */
+public class RetryingHttpEngine extends ForwardingHttpEngine {
+    private final RetryPolicy policy;
+    private final RetryBudget budget;
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong budgetExhaustedCount = new AtomicLong();
+    private final ConcurrentMap<HttpCall<?>, Attempts> inFlight = new ConcurrentHashMap<>();
+
+    public RetryingHttpEngine(HttpEngine delegate, RetryPolicy policy, RetryBudget budget) {
+        super(delegate);
+        if (policy == null) throw new NullPointerException("policy == null");
+        if (budget == null) throw new NullPointerException("budget == null");
+        this.policy = policy;
+        this.budget = budget;
+    }
+
+    public RetryPolicy policy() {
+        return policy;
+    }
+
+    /**
+     * 发出的重试次数，不含第一次尝试
+     */
+    public long retryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * 本可以重试、但因预算用完而放弃的次数
+     */
+    public long budgetExhaustedCount() {
+        return budgetExhaustedCount.get();
+    }
+
+    @Override
+    public <T> void cancel(HttpCall httpCall) {
+        Attempts attempts = inFlight.get(httpCall);
+        if (attempts != null) {
+            attempts.cancel();
+            return;
+        }
+        super.cancel(httpCall);
+    }
+
+    @Override
+    public <T> HttpResponse execute(HttpCall<T> httpCall) throws IOException {
+        if (!isRetryable(httpCall.serviceMethod)) {
+            return super.execute(httpCall);
+        }
+        httpCall.check();
+        budget.deposit();
+        Attempts attempts = new Attempts(httpCall, null);
+        inFlight.put(httpCall, attempts);
+        try {
+            long delayMillis = 0;
+            for (int attempt = 1; ; attempt++) {
+                HttpCall<?> call = attempts.next();
+                if (call == null) {
+                    throw new IOException("Canceled");
+                }
+                HttpResponse response = null;
+                IOException failure = null;
+                try {
+                    response = delegate.execute(call);
+                } catch (IOException e) {
+                    failure = e;
+                }
+                delayMillis = retryDelayMillis(attempt, delayMillis, httpCall, response, failure);
+                if (delayMillis < 0) {
+                    if (failure != null) throw failure;
+                    return response;
+                }
+                // Replaced by the next attempt, release its connection.
+                closeQuietly(response);
+                attempts.sleep(delayMillis);
+            }
+        } finally {
+            inFlight.remove(httpCall, attempts);
+        }
+    }
+
+    @Override
+    public <T> void execute(final HttpCall<T> httpCall, final HttpCallback<T> callback) {
+        if (callback == null) throw new NullPointerException("callback == null");
+        if (!isRetryable(httpCall.serviceMethod)) {
+            super.execute(httpCall, callback);
+            return;
+        }
+        httpCall.markExecuted();
+        Throwable creationFailure = httpCall.creationFailure;
+        if (creationFailure != null) {
+            callback.onFailure(httpCall, creationFailure);
+            return;
+        }
+        budget.deposit();
+        //noinspection unchecked
+        Attempts attempts = new Attempts(httpCall, (HttpCallback<Object>) (HttpCallback<?>) callback);
+        inFlight.put(httpCall, attempts);
+        enqueueAttempt(attempts, 1, 0);
+    }
+
+    /**
+     * 只重试幂等的方法（RFC 7231 4.2.2）
+     */
+    protected boolean isRetryable(ServiceMethod<?, ?> serviceMethod) {
+        String method = serviceMethod.httpMethod;
+        return "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method)
+                || "PUT".equals(method) || "DELETE".equals(method) || "TRACE".equals(method);
+    }
+
+    private void enqueueAttempt(final Attempts attempts, final int attempt, final long previousDelayMillis) {
+        HttpCall<?> call = attempts.next();
+        if (call == null) {
+            attempts.finish(null, new IOException("Canceled"));
+            return;
+        }
+        execute(call, attempts, attempt, previousDelayMillis);
+    }
+
+    private <T> void execute(HttpCall<T> call, final Attempts attempts, final int attempt,
+                             final long previousDelayMillis) {
+        delegate.execute(call, new HttpCallback<T>() {
+            @Override
+            public void onResponse(HttpCall<T> call, HttpResponse<T, ?, ?> response) {
+                handle(response, null);
+            }
+
+            @Override
+            public void onFailure(HttpCall<T> call, Throwable t) {
+                if (!(t instanceof IOException)) {
+                    attempts.finish(null, t);
+                    return;
+                }
+                handle(null, (IOException) t);
+            }
+
+            private void handle(HttpResponse response, IOException failure) {
+                final long delayMillis = retryDelayMillis(attempt, previousDelayMillis, attempts.original,
+                        response, failure);
+                if (delayMillis < 0) {
+                    attempts.finish(response, failure);
+                    return;
+                }
+                closeQuietly(response);
+                attempts.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        enqueueAttempt(attempts, attempt + 1, delayMillis);
+                    }
+                }, delayMillis);
+            }
+        });
+    }
+
+    /**
+     * 下一次重试前的等待时间，不应重试时返回-1
+     */
+    private long retryDelayMillis(int attempt, long previousDelayMillis, HttpCall<?> original,
+                                  HttpResponse response, IOException failure) {
+        if (original.isCanceled() || attempt >= policy.maxAttempts()) return -1;
+        long retryAfterMillis = -1;
+        if (response != null) {
+            if (!policy.isRetryable(response.code())) return -1;
+            retryAfterMillis = retryAfterMillis(response.headers());
+            if (retryAfterMillis > policy.maxDelayMillis()) return -1;
+        } else if (failure == null || failure instanceof CallNotPermittedException
+                || failure instanceof ConcurrencyLimitExceededException) {
+            // Rejected locally, retrying would only add to the overload.
+            return -1;
+        }
+        if (!budget.tryWithdraw()) {
+            budgetExhaustedCount.incrementAndGet();
+            return -1;
+        }
+        retryCount.incrementAndGet();
+        return Math.max(policy.nextDelayMillis(previousDelayMillis), retryAfterMillis);
+    }
+
+    /**
+     * Retry-After可以是秒数或者HTTP日期，没有或无法解析时返回-1
+     */
+    static long retryAfterMillis(HttpHeaders headers) {
+        if (headers == null) return -1;
+        String value = headers.get("Retry-After");
+        if (value == null) return -1;
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim())));
+        } catch (NumberFormatException ignored) {
+        }
+        Date date = headers.getDate("Retry-After");
+        return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : -1;
+    }
+
+    /**
+     * 一次调用的重试状态：当前的副本、等待中的定时器；取消时停止等待并取消当前副本
+     */
+    private final class Attempts {
+        final HttpCall<?> original;
+        // 异步调用的回调，同步调用为null
+        final HttpCallback<Object> callback;
+        HttpCall<?> current;
+        ScheduledFuture<?> timer;
+        boolean canceled;
+
+        Attempts(HttpCall<?> original, HttpCallback<Object> callback) {
+            this.original = original;
+            this.callback = callback;
+        }
+
+        synchronized HttpCall<?> next() {
+            if (canceled || original.isCanceled()) return null;
+            timer = null;
+            current = newAttempt(original);
+            return current;
+        }
+
+        synchronized void sleep(long delayMillis) throws IOException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            long remaining;
+            while (!canceled && (remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting to retry");
+                }
+            }
+            if (canceled) {
+                throw new IOException("Canceled");
+            }
+        }
+
+        void schedule(Runnable runnable, long delayMillis) {
+            synchronized (this) {
+                if (!canceled) {
+                    timer = Scheduler.schedule(runnable, VirtualThreads.shared(), delayMillis, TimeUnit.MILLISECONDS);
+                    return;
+                }
+            }
+            finish(null, new IOException("Canceled"));
+        }
+
+        void cancel() {
+            HttpCall<?> current;
+            ScheduledFuture<?> timer;
+            synchronized (this) {
+                if (canceled) return;
+                canceled = true;
+                current = this.current;
+                timer = this.timer;
+                notifyAll();
+            }
+            if (timer != null && timer.cancel(false)) {
+                // Nothing is running, report the cancellation ourselves.
+                Executor callbackExecutor = original.serviceMethod.callbackExecutor;
+                Runnable finish = new Runnable() {
+                    @Override
+                    public void run() {
+                        finish(null, new IOException("Canceled"));
+                    }
+                };
+                if (callbackExecutor != null) {
+                    callbackExecutor.execute(finish);
+                } else {
+                    finish.run();
+                }
+            } else if (current != null) {
+                current.cancel();
+            }
+        }
+
+        void finish(HttpResponse response, Throwable failure) {
+            inFlight.remove(original, this);
+            //noinspection unchecked
+            HttpCall<Object> call = (HttpCall<Object>) original;
+            if (failure != null) {
+                callback.onFailure(call, failure);
+            } else {
+                //noinspection unchecked
+                callback.onResponse(call, response);
+            }
+        }
+    }
+}
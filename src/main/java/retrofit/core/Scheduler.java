@@ -0,0 +1,43 @@
+package retrofit.core;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 装饰器共用的定时器（对冲、重试的延迟等），单个守护线程，只用于触发而不执行阻塞操作
+ */
+final class Scheduler {
+    static final ScheduledThreadPoolExecutor INSTANCE = create();
+
+    private Scheduler() {
+    }
+
+    private static ScheduledThreadPoolExecutor create() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Retrofit Scheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * 延迟后把任务交给executor执行，定时器线程只负责触发。取消返回的ScheduledFuture只能阻止尚未触发的任务，
+     * 任务本身仍需判断调用是否已经结束
+     */
+    static ScheduledFuture<?> schedule(final Runnable task, final Executor executor, long delay, TimeUnit unit) {
+        return INSTANCE.schedule(new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(task);
+            }
+        }, delay, unit);
+    }
+}
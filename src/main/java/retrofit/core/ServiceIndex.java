@@ -0,0 +1,167 @@
+package retrofit.core;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * retrofit-compiler在编译期写入classpath的方法元数据索引，位于
+ * {@code META-INF/retrofit/<接口的binary name>.index}。
+ * 命中索引的方法不再解析HTTP方法注解、URL模板和@Headers；
+ * 方法和参数上只有索引能表达的注解时，连参数类型和注解也由索引给出，不再反射读取
+ */
+public final class ServiceIndex {
+    public static final String RESOURCE_PREFIX = "META-INF/retrofit/";
+    public static final String RESOURCE_SUFFIX = ".index";
+    // 与retrofit.compiler.IndexWriter保持一致
+    public static final int VERSION = 2;
+
+    // 参数记录的注解种类
+    public static final int PARAM_PATH = 0;
+    public static final int PARAM_QUERY = 1;
+    public static final int PARAM_HEADER = 2;
+    public static final int PARAM_FIELD = 3;
+
+    public static final ServiceIndex EMPTY = new ServiceIndex(Collections.<String, Entry>emptyMap());
+
+    private final Map<String, Entry> entries;
+
+    private ServiceIndex(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    public Entry get(Method method) {
+        if (entries.isEmpty()) return null;
+        return entries.get(methodKey(method));
+    }
+
+    /**
+     * 读取接口对应的索引，不存在或版本不匹配时返回{@link #EMPTY}
+     */
+    public static ServiceIndex load(Class<?> service) {
+        ClassLoader classLoader = service.getClassLoader();
+        if (classLoader == null) return EMPTY;
+        InputStream in = classLoader.getResourceAsStream(
+                RESOURCE_PREFIX + service.getName() + RESOURCE_SUFFIX);
+        if (in == null) return EMPTY;
+        try {
+            try {
+                return read(new DataInputStream(new BufferedInputStream(in)));
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // A broken index only costs the reflective parse.
+            return EMPTY;
+        }
+    }
+
+    private static ServiceIndex read(DataInputStream in) throws IOException {
+        if (in.readInt() != VERSION) return EMPTY;
+        int methodCount = in.readInt();
+        Map<String, Entry> entries = new HashMap<>(methodCount * 2);
+        for (int m = 0; m < methodCount; m++) {
+            String key = in.readUTF();
+            String httpMethod = in.readUTF();
+            boolean hasBody = in.readBoolean();
+            boolean isFormEncoded = in.readBoolean();
+            boolean isMultipart = in.readBoolean();
+            String relativeUrl = in.readBoolean() ? in.readUTF() : null;
+
+            int pathParamCount = in.readInt();
+            Set<String> pathParams = new LinkedHashSet<>();
+            for (int i = 0; i < pathParamCount; i++) {
+                pathParams.add(in.readUTF());
+            }
+
+            int headerCount = in.readInt();
+            String[] headers = new String[headerCount * 2];
+            for (int i = 0; i < headers.length; i++) {
+                headers[i] = in.readUTF();
+            }
+            String contentType = in.readBoolean() ? in.readUTF() : null;
+
+            Type[] parameterTypes = null;
+            Annotation[][] parameterAnnotations = null;
+            if (in.readBoolean()) {
+                int parameterCount = in.readInt();
+                parameterTypes = new Type[parameterCount];
+                parameterAnnotations = new Annotation[parameterCount][];
+                boolean known = true;
+                for (int p = 0; p < parameterCount; p++) {
+                    Annotation annotation = IndexedAnnotations.of(in.readByte(), in.readUTF(), in.readBoolean());
+                    parameterTypes[p] = IndexedAnnotations.simpleType(in.readUTF());
+                    parameterAnnotations[p] = new Annotation[]{annotation};
+                    known &= annotation != null && parameterTypes[p] != null;
+                }
+                if (!known) {
+                    // Unknown kind or type, this method falls back to reflection.
+                    parameterTypes = null;
+                    parameterAnnotations = null;
+                }
+            }
+
+            entries.put(key, new Entry(httpMethod, hasBody, isFormEncoded, isMultipart,
+                    relativeUrl, pathParams, headers, contentType, parameterTypes, parameterAnnotations));
+        }
+        return new ServiceIndex(entries);
+    }
+
+    /**
+     * 方法名加参数类型的规范名，例如{@code getUser(java.lang.String,int[])}，
+     * 与编译期由类型擦除得到的写法一致
+     */
+    public static String methodKey(Method method) {
+        StringBuilder key = new StringBuilder(method.getName()).append('(');
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) key.append(',');
+            key.append(parameterTypes[i].getCanonicalName());
+        }
+        return key.append(')').toString();
+    }
+
+    public static final class Entry {
+        public final String httpMethod;
+        public final boolean hasBody;
+        public final boolean isFormEncoded;
+        public final boolean isMultipart;
+        public final String relativeUrl;
+        public final Set<String> pathParams;
+        /**
+         * 交替存放的名称与值，不包含Content-Type
+         */
+        public final String[] headers;
+        public final String contentType;
+        /**
+         * 方法上只有索引收录的注解、每个参数只有一个@Path/@Query/@Header/@Field且类型为基本类型、
+         * 包装类型或String时不为null，此时可以不再反射读取方法和参数的注解
+         */
+        public final Type[] parameterTypes;
+        public final Annotation[][] parameterAnnotations;
+
+        Entry(String httpMethod, boolean hasBody, boolean isFormEncoded, boolean isMultipart,
+              String relativeUrl, Set<String> pathParams, String[] headers, String contentType,
+              Type[] parameterTypes, Annotation[][] parameterAnnotations) {
+            this.httpMethod = httpMethod;
+            this.hasBody = hasBody;
+            this.isFormEncoded = isFormEncoded;
+            this.isMultipart = isMultipart;
+            this.relativeUrl = relativeUrl;
+            this.pathParams = pathParams;
+            this.headers = headers;
+            this.contentType = contentType;
+            this.parameterTypes = parameterTypes;
+            this.parameterAnnotations = parameterAnnotations;
+        }
+    }
+}
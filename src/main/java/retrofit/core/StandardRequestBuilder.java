@@ -0,0 +1,290 @@
+package retrofit.core;
+
+import okio.Buffer;
+import retrofit.HttpHeaders;
+import retrofit.HttpUrl;
+import retrofit.MediaType;
+import retrofit.RequestBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * 不依赖具体HTTP库的RequestBuilder：URL、请求头和编码后的请求体都用retrofit自己的类型保存，
+ * 子类只需在{@link #build()}中把{@link #url()}、{@link #headers()}、{@link #contentType()}
+ * 和{@link #content()}（或{@link #writeContent}）转换成引擎的请求对象
+ */
+public abstract class StandardRequestBuilder extends retrofit.RequestBuilder {
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] DASHDASH = {'-', '-'};
+
+    private final String method;
+
+    private final HttpUrl baseUrl;
+    private String relativeUrl;
+    // 尚未展开的路径模板，首次需要完整URL时展开为relativeUrl
+    private PathTemplate.Expansion pathParams;
+    private HttpUrl.Builder urlBuilder;
+
+    private final HttpHeaders.Builder headers;
+    private MediaType contentType;
+
+    private final boolean hasBody;
+    private StringBuilder formBody;
+    private Buffer multipartBody;
+    private String boundary;
+    private boolean multipartFinished;
+    private RequestBody body;
+    private byte[] content;
+
+    public StandardRequestBuilder(String httpMethod, HttpUrl baseUrl, PathTemplate relativeUrl,
+                                  HttpHeaders headers, MediaType contentType,
+                                  boolean hasBody, boolean isFormEncoded, boolean isMultipart) {
+        super(httpMethod, baseUrl, relativeUrl != null ? relativeUrl.template() : null,
+                headers, contentType, hasBody, isFormEncoded, isMultipart);
+
+        this.method = httpMethod;
+        this.baseUrl = baseUrl;
+        if (relativeUrl != null) {
+            if (relativeUrl.hasParams()) {
+                this.pathParams = relativeUrl.newExpansion();
+            } else {
+                this.relativeUrl = relativeUrl.template();
+            }
+        }
+        this.headers = headers != null ? headers.newBuilder() : new HttpHeaders.Builder();
+        this.contentType = contentType;
+        this.hasBody = hasBody;
+
+        if (isFormEncoded) {
+            // Will be set to 'body' in 'build'.
+            formBody = new StringBuilder();
+        } else if (isMultipart) {
+            // Will be set to 'body' in 'build'.
+            multipartBody = new Buffer();
+            boundary = UUID.randomUUID().toString();
+        }
+    }
+
+    @Override
+    public void setRelativeUrl(Object relativeUrl) {
+        if (relativeUrl == null) throw new NullPointerException("@Url parameter is null.");
+        this.relativeUrl = relativeUrl.toString();
+        this.pathParams = null;
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if ("Content-Type".equalsIgnoreCase(name)) {
+            MediaType type = MediaType.parse(value);
+            if (type == null) {
+                throw new IllegalArgumentException("Malformed content type: " + value);
+            }
+            contentType = type;
+        } else {
+            headers.add(name, value);
+        }
+    }
+
+    @Override
+    public void addPathParam(String name, String value, boolean encoded) {
+        if (pathParams == null) {
+            if (relativeUrl == null) {
+                // The relative URL is cleared when the first query parameter is set.
+                throw new AssertionError();
+            }
+            // The template has no replace blocks left.
+            return;
+        }
+        pathParams.set(name, canonicalizeForPath(value, encoded));
+    }
+
+    @Override
+    public void addPathParam(String name, long value) {
+        if (pathParams == null) {
+            addPathParam(name, Long.toString(value), true);
+            return;
+        }
+        pathParams.set(name, value);
+    }
+
+    private String relativeUrl() {
+        if (pathParams != null) {
+            relativeUrl = pathParams.expand();
+            pathParams = null;
+        }
+        return relativeUrl;
+    }
+
+    @Override
+    public void addQueryParam(String name, String value, boolean encoded) {
+        String relativeUrl = relativeUrl();
+        if (relativeUrl != null) {
+            // Do a one-time combination of the built relative URL and the base URL.
+            urlBuilder = baseUrl.newBuilder(relativeUrl);
+            if (urlBuilder == null) {
+                throw new IllegalArgumentException(
+                        "Malformed URL. Base: " + baseUrl + ", Relative: " + relativeUrl);
+            }
+            this.relativeUrl = null;
+        }
+
+        if (encoded) {
+            urlBuilder.addEncodedQueryParameter(name, value);
+        } else {
+            urlBuilder.addQueryParameter(name, value);
+        }
+    }
+
+    @Override
+    public void addFormField(String name, String value, boolean encoded) {
+        if (formBody.length() > 0) {
+            formBody.append('&');
+        }
+        formBody.append(encoded ? name : formEncode(name))
+                .append('=')
+                .append(encoded ? value : formEncode(value));
+    }
+
+    private static String formEncode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Override
+    public void addPart(HttpHeaders headers, RequestBody body) {
+        Buffer out = multipartBody;
+        out.write(DASHDASH).writeUtf8(boundary).write(CRLF);
+        if (headers != null) {
+            for (int i = 0, size = headers.size(); i < size; i++) {
+                out.writeUtf8(headers.name(i)).writeUtf8(": ").writeUtf8(headers.value(i)).write(CRLF);
+            }
+        }
+        if (body.getMediaType() != null) {
+            out.writeUtf8("Content-Type: ").writeUtf8(body.getMediaType().toString()).write(CRLF);
+        }
+        out.writeUtf8("Content-Length: ").writeDecimalLong(body.getByteString().size()).write(CRLF);
+        out.write(CRLF);
+        out.write(body.getByteString());
+        out.write(CRLF);
+    }
+
+    @Override
+    public void addPart(RequestBody part) {
+        addPart(null, part);
+    }
+
+    @Override
+    public void setBody(RequestBody body) {
+        this.body = body;
+    }
+
+    protected String method() {
+        return method;
+    }
+
+    /**
+     * 合并base URL、展开后的相对URL和查询参数得到的完整URL
+     */
+    protected HttpUrl url() {
+        HttpUrl.Builder urlBuilder = this.urlBuilder;
+        if (urlBuilder != null) {
+            return urlBuilder.build();
+        }
+        // No query parameters triggered builder creation, just combine the relative URL and base URL.
+        String relativeUrl = relativeUrl();
+        HttpUrl url = baseUrl.resolve(relativeUrl);
+        if (url == null) {
+            throw new IllegalArgumentException(
+                    "Malformed URL. Base: " + baseUrl + ", Relative: " + relativeUrl);
+        }
+        return url;
+    }
+
+    /**
+     * 不包含Content-Type，见{@link #contentType()}
+     */
+    protected HttpHeaders headers() {
+        return headers.build();
+    }
+
+    protected MediaType contentType() {
+        if (contentType != null) return contentType;
+        if (body != null) return body.getMediaType();
+        if (formBody != null) return MediaType.parse("application/x-www-form-urlencoded");
+        if (multipartBody != null) return MediaType.parse("multipart/form-data; boundary=" + boundary);
+        return null;
+    }
+
+    /**
+     * 编码后的请求体，没有请求体时返回null
+     */
+    protected byte[] content() {
+        if (content != null) return content;
+        if (body != null) {
+            content = body.getByteString().toByteArray();
+        } else if (formBody != null) {
+            content = formBody.toString().getBytes(StandardCharsets.UTF_8);
+        } else if (multipartBody != null) {
+            finishMultipart();
+            content = multipartBody.readByteArray();
+        } else if (hasBody) {
+            // Body is absent, make an empty body.
+            content = new byte[0];
+        }
+        return content;
+    }
+
+    /**
+     * @Body参数，没有时返回null
+     */
+    protected RequestBody body() {
+        return body;
+    }
+
+    /**
+     * 把编码后的请求体直接写入out，不先复制成完整的byte[]；没有请求体时返回false
+     */
+    protected boolean writeContent(OutputStream out) throws IOException {
+        if (content != null) {
+            out.write(content);
+        } else if (body != null) {
+            body.getByteString().write(out);
+        } else if (formBody != null) {
+            writeUtf8(out, formBody);
+        } else if (multipartBody != null) {
+            finishMultipart();
+            multipartBody.copyTo(out, 0, multipartBody.size());
+        } else {
+            // An empty body when the method requires one.
+            return hasBody;
+        }
+        return true;
+    }
+
+    private void finishMultipart() {
+        if (!multipartFinished) {
+            multipartBody.write(DASHDASH).writeUtf8(boundary).write(DASHDASH).write(CRLF);
+            multipartFinished = true;
+        }
+    }
+
+    private static void writeUtf8(OutputStream out, CharSequence value) throws IOException {
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                // Encoded form fields are ASCII, only values passed with encoded=true get here.
+                out.write(value.subSequence(i, length).toString().getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            out.write(c);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package retrofit.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 以GCRA实现的令牌桶：只保存理论到达时间tat，预订一个令牌就是tat = max(tat, now) + interval，
+ * tat超出now不到burst个间隔时立即可用，否则等待超出的部分。用CAS更新，不加锁
+ */
+final class TokenBucket {
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong theoreticalArrival;
+
+    TokenBucket(long intervalNanos, int burst) {
+        this.intervalNanos = intervalNanos;
+        this.burstNanos = intervalNanos * burst;
+        // Starts full.
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 预订一个令牌，返回取得它之前需要等待的时间，0表示立即可用
+     */
+    long reserve() {
+        while (true) {
+            long now = System.nanoTime();
+            long current = theoreticalArrival.get();
+            long next = Math.max(current, now) + intervalNanos;
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                return Math.max(0, next - now - burstNanos);
+            }
+        }
+    }
+
+    /**
+     * 归还一个已预订但没有使用的令牌，桶不会因此超过积满的状态
+     */
+    void refund() {
+        while (true) {
+            long now = System.nanoTime();
+            long current = theoreticalArrival.get();
+            if (current - now <= 0) return;
+            long next = Math.max(current - intervalNanos, now);
+            if (theoreticalArrival.compareAndSet(current, next)) return;
+        }
+    }
+
+    /**
+     * 桶已经积满，与新建的桶没有区别
+     */
+    boolean isIdle() {
+        return theoreticalArrival.get() - System.nanoTime() <= 0;
+    }
+}
@@ -0,0 +1,26 @@
+package retrofit.http;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * 在内存中缓存方法转换后的成功响应，按请求（HTTP方法、完整URL和请求头）区分。
+ * 命中时不构建引擎请求、不访问网络也不再转换响应体，结果对象在命中之间共享，应当是不可变的。
+ * 条目超过maxEntries时按W-TinyLFU淘汰。只对没有请求体的方法生效，不能与{@link Streaming}同时使用
+ */
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Cacheable {
+    /**
+     * 条目写入后的有效时间
+     */
+    long ttl();
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    int maxEntries() default 1024;
+}
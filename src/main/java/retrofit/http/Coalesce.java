@@ -0,0 +1,16 @@
+package retrofit.http;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * 合并同时进行的相同GET/HEAD请求：URL和请求头都相同的调用共享同一次网络请求及其转换后的结果，
+ * 因此结果对象应当是不可变的。不能与{@link Streaming}同时使用
+ */
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Coalesce {
+}
@@ -0,0 +1,25 @@
+package retrofit.http;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * 对冲GET/HEAD请求：第一次请求在该方法历史延迟的percentile分位内没有完成时，再发出一个相同的请求，
+ * 先成功的一方作为结果，另一方被取消。对冲请求的数量不超过正常请求的maxExtraPercent%，
+ * 历史样本不足时不对冲
+ */
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Hedge {
+    double percentile() default 95;
+
+    int maxExtraPercent() default 10;
+
+    /**
+     * 等待时间的下限，避免在延迟极低时几乎每个请求都被对冲
+     */
+    long minDelayMillis() default 1;
+}
@@ -0,0 +1,25 @@
+package retrofit.http;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * 客户端限流：按令牌桶控制该方法发出请求的速率，每秒permitsPerSecond个，最多连续发出burst个。
+ * 超出速率的调用被推迟而不是失败：同步调用在调用线程上等待，异步调用延后执行。
+ * keyParameter指定参数的位置时，每个参数值单独一个令牌桶（例如按租户或API key限流）
+ */
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface RateLimit {
+    double permitsPerSecond();
+
+    int burst() default 1;
+
+    /**
+     * 作为限流键的参数位置，从0开始；-1表示整个方法共用一个令牌桶
+     */
+    int keyParameter() default -1;
+}
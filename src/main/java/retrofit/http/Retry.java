@@ -0,0 +1,26 @@
+package retrofit.http;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * 方法的重试策略，覆盖Retrofit.Builder.retryPolicy设置的默认策略；maxAttempts为1时不重试。
+ * 只有幂等的方法（GET、HEAD、OPTIONS、PUT、DELETE、TRACE）会被重试，重试次数受Retrofit的RetryBudget限制
+ */
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Retry {
+    /**
+     * 包括第一次在内的尝试次数
+     */
+    int maxAttempts() default 3;
+
+    long baseDelayMillis() default 100;
+
+    long maxDelayMillis() default 10000;
+
+    int[] retryOnCodes() default {408, 429, 500, 502, 503, 504};
+}
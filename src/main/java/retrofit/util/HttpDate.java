@@ -87,4 +87,10 @@ public class HttpDate {
         return null;
     }
 
+    /**
+     * 按RFC 1123格式输出，如"Sun, 06 Nov 1994 08:49:37 GMT"
+     */
+    public static String format(Date value) {
+        return STANDARD_DATE_FORMAT.get().format(value);
+    }
 }
@@ -0,0 +1,84 @@
+package retrofit.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 虚拟线程（JDK 21+）的反射入口，源码仍保持Java 7语法。
+ * {@link #newExecutor()}和{@link #shared()}在不支持虚拟线程的JDK上退化为守护线程组成的缓存线程池，
+ * 线程数没有上限，只适合并发数本来就有限的内部任务；明确要求虚拟线程的功能使用
+ * {@link #newVirtualThreadExecutor()}或先调用{@link #checkAvailable()}
+ */
+public final class VirtualThreads {
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findFactory();
+
+    private VirtualThreads() {
+    }
+
+    private static Method findFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    public static boolean isAvailable() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * JDK不支持虚拟线程时抛出IllegalStateException
+     */
+    public static void checkAvailable() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            throw new IllegalStateException("Virtual threads require JDK 21+, running on "
+                    + System.getProperty("java.version"));
+        }
+    }
+
+    /**
+     * 每个任务一个虚拟线程的ExecutorService，JDK不支持时抛出IllegalStateException
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        checkAvailable();
+        return newExecutor();
+    }
+
+    /**
+     * 每个任务一个虚拟线程的ExecutorService，不可用时返回没有线程数上限的缓存线程池
+     */
+    public static ExecutorService newExecutor() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to create virtual thread executor", e);
+            }
+        }
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Retrofit-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * 进程内共享的执行器，首次使用时创建
+     */
+    public static ExecutorService shared() {
+        return Holder.SHARED;
+    }
+
+    private static final class Holder {
+        static final ExecutorService SHARED = newExecutor();
+    }
+}
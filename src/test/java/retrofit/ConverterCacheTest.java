@@ -0,0 +1,161 @@
+package retrofit;
+
+import org.junit.Test;
+import retrofit.core.FakeHttpEngine;
+import retrofit.core.HttpConverter;
+import retrofit.http.Streaming;
+
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ConverterCacheTest {
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    static final class Value {
+    }
+
+    /**
+     * 为Value创建转换器并记录被询问的次数
+     */
+    static final class CountingFactory extends HttpConverter.Factory {
+        final AtomicInteger responseLookups = new AtomicInteger();
+        final AtomicInteger stringLookups = new AtomicInteger();
+        final boolean strings;
+
+        CountingFactory(boolean strings) {
+            this.strings = strings;
+        }
+
+        @Override
+        public HttpConverter<InputStream, ?> responseBodyConverter(Type type, Annotation[] annotations,
+                                                                   Retrofit retrofit) {
+            responseLookups.incrementAndGet();
+            if (!isValue(type)) return null;
+            return new HttpConverter<InputStream, Object>() {
+                @Override
+                public Object convert(InputStream value) {
+                    return new Value();
+                }
+            };
+        }
+
+        @Override
+        public HttpConverter<?, String> stringConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+            stringLookups.incrementAndGet();
+            if (!strings || !isValue(type)) return null;
+            return new HttpConverter<Object, String>() {
+                @Override
+                public String convert(Object value) {
+                    return "value";
+                }
+            };
+        }
+
+        private static boolean isValue(Type type) {
+            return type == Value.class || type.toString().contains(Value.class.getSimpleName());
+        }
+    }
+
+    interface Types {
+        List<Value> first();
+
+        List<Value> second();
+
+        @Streaming
+        Value annotated();
+    }
+
+    private static Retrofit retrofit(HttpConverter.Factory factory) {
+        return new Retrofit.Builder()
+                .baseUrl("http://localhost/")
+                .engine(new FakeHttpEngine())
+                .addConverterFactory(factory)
+                .build();
+    }
+
+    @Test
+    public void responseConverterIsLookedUpOnce() {
+        CountingFactory factory = new CountingFactory(false);
+        Retrofit retrofit = retrofit(factory);
+        HttpConverter<InputStream, Object> first = retrofit.responseBodyConverter(Value.class, NO_ANNOTATIONS);
+        HttpConverter<InputStream, Object> second =
+                retrofit.responseBodyConverter(Value.class, new Annotation[0]);
+        assertSame(first, second);
+        assertEquals(1, factory.responseLookups.get());
+    }
+
+    @Test
+    public void equalParameterizedTypesShareAnEntry() throws Exception {
+        CountingFactory factory = new CountingFactory(false);
+        Retrofit retrofit = retrofit(factory);
+        Type first = Types.class.getMethod("first").getGenericReturnType();
+        Type second = Types.class.getMethod("second").getGenericReturnType();
+        assertNotSame(first, second);
+        assertSame(retrofit.responseBodyConverter(first, NO_ANNOTATIONS),
+                retrofit.responseBodyConverter(second, NO_ANNOTATIONS));
+        assertEquals(1, factory.responseLookups.get());
+    }
+
+    @Test
+    public void annotationsAndSkipPastArePartOfTheKey() throws Exception {
+        CountingFactory factory = new CountingFactory(false);
+        Retrofit retrofit = retrofit(factory);
+        Annotation[] streaming = Types.class.getMethod("annotated").getAnnotations();
+        HttpConverter<InputStream, Object> plain = retrofit.responseBodyConverter(Value.class, NO_ANNOTATIONS);
+        HttpConverter<InputStream, Object> annotated = retrofit.responseBodyConverter(Value.class, streaming);
+        assertNotSame(plain, annotated);
+        assertEquals(2, factory.responseLookups.get());
+
+        // Skipping past the built-in factory asks the counting factory again.
+        retrofit.nextResponseBodyConverter(retrofit.converterFactories().get(0), Value.class, NO_ANNOTATIONS);
+        assertEquals(3, factory.responseLookups.get());
+        retrofit.nextResponseBodyConverter(retrofit.converterFactories().get(0), Value.class, NO_ANNOTATIONS);
+        assertEquals(3, factory.responseLookups.get());
+    }
+
+    @Test
+    public void failuresAreNotCached() {
+        CountingFactory factory = new CountingFactory(false);
+        Retrofit retrofit = retrofit(factory);
+        for (int i = 1; i <= 2; i++) {
+            try {
+                retrofit.responseBodyConverter(String.class, NO_ANNOTATIONS);
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+            assertEquals(i, factory.responseLookups.get());
+        }
+    }
+
+    @Test
+    public void stringConverterSkipsFactoriesThatDoNotOverrideIt() {
+        HttpConverter.Factory plain = new HttpConverter.Factory() {
+        };
+        Retrofit retrofit = retrofit(plain);
+        assertSame(retrofit.stringConverter(Value.class, NO_ANNOTATIONS),
+                retrofit.stringConverter(Integer.class, NO_ANNOTATIONS));
+    }
+
+    @Test
+    public void stringConverterIsCached() throws Exception {
+        CountingFactory factory = new CountingFactory(true);
+        Retrofit retrofit = retrofit(factory);
+        HttpConverter<Object, String> first = retrofit.stringConverter(Value.class, NO_ANNOTATIONS);
+        assertEquals("value", first.convert(new Value()));
+        assertSame(first, retrofit.stringConverter(Value.class, NO_ANNOTATIONS));
+        assertEquals(1, factory.stringLookups.get());
+
+        // The default toString converter is cached as well.
+        retrofit.stringConverter(Integer.class, NO_ANNOTATIONS);
+        retrofit.stringConverter(Integer.class, NO_ANNOTATIONS);
+        assertEquals(2, factory.stringLookups.get());
+    }
+}
@@ -0,0 +1,131 @@
+package retrofit;
+
+import org.junit.Test;
+import retrofit.core.FakeHttpEngine;
+import retrofit.core.HttpCall;
+import retrofit.http.HttpMethod;
+import retrofit.http.Path;
+import retrofit.http.Query;
+
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SpunServiceTest {
+    public interface Service {
+        @HttpMethod.GET("items/{id}")
+        HttpCall<InputStream> primitives(@Path("id") int id, @Query("l") long l, @Query("d") double d,
+                                         @Query("b") boolean b, @Query("c") char c, @Query("s") String s);
+
+        @HttpMethod.GET("none")
+        HttpCall<Void> none();
+
+        @HttpMethod.GET("list")
+        HttpCall<InputStream> arrays(@Query("id") int[] ids, @Query("name") String[] names);
+    }
+
+    public interface Broken {
+        HttpCall<Void> noHttpMethod();
+    }
+
+    interface Hidden {
+        @HttpMethod.GET("none")
+        HttpCall<Void> none();
+    }
+
+    private final FakeHttpEngine engine = new FakeHttpEngine();
+
+    private Retrofit retrofit(boolean spinServices) {
+        return new Retrofit.Builder()
+                .baseUrl("http://localhost/")
+                .engine(engine)
+                .spinServices(spinServices)
+                .build();
+    }
+
+    @Test
+    public void proxyUnlessEnabled() {
+        Service service = retrofit(false).create(Service.class);
+        assertTrue(Proxy.isProxyClass(service.getClass()));
+    }
+
+    @Test
+    public void primitiveParameters() throws Exception {
+        Service service = retrofit(true).create(Service.class);
+        assertTrue(service instanceof SpunService);
+        assertEquals(Service.class.getName() + SpunService.SPUN_SUFFIX, service.getClass().getName());
+
+        HttpCall<InputStream> call = service.primitives(7, 9000000000L, 1.5, true, 'x', "a b");
+        assertNull(call.args);
+        assertNotNull(call.arguments());
+        assertEquals(Arrays.<Object>asList(7, 9000000000L, 1.5, true, 'x', "a b"), Arrays.asList(call.args()));
+        assertEquals(9000000000L, call.arg(1));
+
+        assertEquals(200, call.execute().code());
+        assertEquals("GET http://localhost/items/7?l=9000000000&d=1.5&b=true&c=x&s=a%20b",
+                engine.requests.get(0));
+    }
+
+    @Test
+    public void noParameters() throws Exception {
+        Service service = retrofit(true).create(Service.class);
+        HttpCall<Void> call = service.none();
+        assertNull(call.arguments());
+        assertNull(call.execute().body());
+        assertEquals("GET http://localhost/none", engine.requests.get(0));
+    }
+
+    @Test
+    public void arrayParameters() throws Exception {
+        Service service = retrofit(true).create(Service.class);
+        service.arrays(new int[]{1, 2}, new String[]{"a", "b"}).execute();
+        service.arrays(null, new String[0]).execute();
+        assertEquals(Arrays.asList("GET http://localhost/list?id=1&id=2&name=a&name=b", "GET http://localhost/list"),
+                engine.requests);
+    }
+
+    @Test
+    public void cloneKeepsArguments() throws Exception {
+        HttpCall<InputStream> call = retrofit(true).create(Service.class)
+                .primitives(1, 2, 3, false, 'y', "z");
+        HttpCall<InputStream> clone = call.clone();
+        assertSame(call.arguments(), clone.arguments());
+        clone.execute();
+        assertEquals("GET http://localhost/items/1?l=2&d=3.0&b=false&c=y&s=z", engine.requests.get(0));
+    }
+
+    @Test
+    public void classPerRetrofit() {
+        Retrofit retrofit = retrofit(true);
+        Service first = retrofit.create(Service.class);
+        Service second = retrofit.create(Service.class);
+        assertSame(first.getClass(), second.getClass());
+        assertNotSame(first.getClass(), retrofit(true).create(Service.class).getClass());
+    }
+
+    @Test
+    public void invalidMethodFailsOnCreate() {
+        try {
+            retrofit(true).create(Broken.class);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("HTTP method annotation is required"));
+        }
+    }
+
+    @Test
+    public void nonPublicInterfaceUsesProxy() {
+        Hidden hidden = retrofit(true).create(Hidden.class);
+        assertTrue(Proxy.isProxyClass(hidden.getClass()));
+        assertFalse(hidden instanceof SpunService);
+    }
+}
@@ -0,0 +1,45 @@
+package retrofit.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void countsUpToFifteen() {
+        FrequencySketch sketch = new FrequencySketch(512);
+        assertEquals(0, sketch.frequency("a"));
+        for (int i = 1; i <= 20; i++) {
+            sketch.increment("a");
+            assertEquals(Math.min(i, 15), sketch.frequency("a"));
+        }
+    }
+
+    @Test
+    public void distinctKeysAreCountedSeparately() {
+        FrequencySketch sketch = new FrequencySketch(512);
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("hot");
+        }
+        sketch.increment("cold");
+        assertEquals(5, sketch.frequency("hot"));
+        assertEquals(1, sketch.frequency("cold"));
+    }
+
+    @Test
+    public void countersAreHalvedAfterTheSample() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment("hot");
+        }
+        // The sample is ten times the capacity, other keys fill it up.
+        int i = 0;
+        while (sketch.frequency("hot") == 15) {
+            assertTrue("no reset", i < 1000);
+            sketch.increment("key" + i++);
+        }
+        assertEquals(7, sketch.frequency("hot"));
+    }
+}
@@ -0,0 +1,73 @@
+package retrofit.cache;
+
+import org.junit.Test;
+import retrofit.Retrofit;
+import retrofit.core.FakeHttpEngine;
+import retrofit.core.HttpCall;
+import retrofit.http.Cacheable;
+import retrofit.http.HttpMethod;
+import retrofit.http.Path;
+import retrofit.http.Query;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ResultCachingHttpEngineTest {
+    public interface Service {
+        @Cacheable(ttl = 60)
+        @HttpMethod.GET("items/{id}")
+        HttpCall<Void> get(@Path("id") String id, @Query("n") int n);
+
+        @Cacheable(ttl = 60)
+        @HttpMethod.GET("list")
+        HttpCall<Void> list(@Query("id") int[] ids);
+    }
+
+    private final FakeHttpEngine engine = new FakeHttpEngine();
+    private final Service service = new Retrofit.Builder()
+            .baseUrl("http://localhost/")
+            .engine(engine)
+            .build()
+            .create(Service.class);
+
+    @Test
+    public void equalArgumentsHitTheCache() throws Exception {
+        HttpCall<Void> first = service.get("a", 1);
+        Object response = first.execute();
+        assertSame(response, service.get("a", 1).execute());
+        service.get("a", 2).execute();
+        service.get("b", 1).execute();
+        assertEquals(3, engine.requests.size());
+    }
+
+    @Test
+    public void arraysAreKeyedByTheRequest() throws Exception {
+        int[] ids = {1, 2};
+        service.list(ids).execute();
+        service.list(new int[]{1, 2}).execute();
+        assertEquals(1, engine.requests.size());
+        // A mutated array writes a different request.
+        ids[1] = 3;
+        service.list(ids).execute();
+        assertEquals(2, engine.requests.size());
+        assertEquals("GET http://localhost/list?id=1&id=3", engine.requests.get(1));
+    }
+
+    @Test
+    public void failedResponsesAreNotCached() throws Exception {
+        final AtomicInteger code = new AtomicInteger(500);
+        engine.respond(new FakeHttpEngine.Responder() {
+            @Override
+            public FakeHttpEngine.Response respond(String request) {
+                return new FakeHttpEngine.Response(code.get(), "");
+            }
+        });
+        assertEquals(500, service.get("a", 1).execute().code());
+        code.set(200);
+        assertEquals(200, service.get("a", 1).execute().code());
+        assertEquals(200, service.get("a", 1).execute().code());
+        assertEquals(2, engine.requests.size());
+    }
+}
@@ -0,0 +1,152 @@
+package retrofit.cache;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TinyLfuCacheTest {
+
+    @Test
+    public void getAndPut() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, 0);
+        assertNull(cache.get("a"));
+        cache.put("a", "1");
+        assertEquals("1", cache.get("a"));
+        cache.put("a", "2");
+        assertEquals("2", cache.get("a"));
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    public void sizeIsBounded() {
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(50, 0);
+        for (int i = 0; i < 500; i++) {
+            cache.put(i, i);
+            assertTrue(cache.size() <= 50);
+        }
+        assertEquals(50, cache.size());
+        assertEquals(450, cache.evictionCount());
+    }
+
+    @Test
+    public void scanDoesNotEvictHotKeys() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(100, 0);
+        for (int i = 0; i < 10; i++) {
+            cache.put("hot" + i, "v");
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 10; i++) {
+                assertNotNull(cache.get("hot" + i));
+            }
+        }
+        // Keys seen once, as with a scan; LRU would have dropped the hot keys long ago.
+        for (int i = 0; i < 1000; i++) {
+            cache.put("scan" + i, "v");
+        }
+        for (int i = 0; i < 10; i++) {
+            assertNotNull("hot" + i, cache.get("hot" + i));
+        }
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    public void oneHitCandidateIsRejected() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, 0);
+        for (int i = 0; i < 10; i++) {
+            cache.put("k" + i, "v");
+        }
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 10; i++) {
+                cache.get("k" + i);
+            }
+        }
+        cache.put("new", "v");
+        // Pushes "new" out of the window, where it loses against a more frequent resident.
+        cache.put("next", "v");
+        assertNull(cache.get("new"));
+        assertEquals(10, cache.size());
+    }
+
+    @Test
+    public void frequentCandidateIsAdmitted() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, 0);
+        for (int i = 0; i < 10; i++) {
+            cache.put("cold" + i, "v");
+        }
+        for (int i = 0; i < 5; i++) {
+            cache.put("hot", "v");
+        }
+        cache.put("next", "v");
+        assertNotNull(cache.get("hot"));
+        assertNull(cache.get("cold0"));
+        assertEquals(10, cache.size());
+    }
+
+    @Test
+    public void entriesExpire() throws Exception {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, TimeUnit.MILLISECONDS.toNanos(50));
+        cache.put("a", "1");
+        assertEquals("1", cache.get("a"));
+        Thread.sleep(100);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.evictionCount());
+
+        cache.put("a", "2");
+        assertEquals("2", cache.get("a"));
+    }
+
+    @Test
+    public void expiredEntryIsEvictedFirst() throws Exception {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, TimeUnit.MILLISECONDS.toNanos(50));
+        for (int i = 0; i < 10; i++) {
+            cache.put("old" + i, "v");
+        }
+        Thread.sleep(100);
+        for (int i = 0; i < 10; i++) {
+            cache.put("new" + i, "v");
+        }
+        for (int i = 0; i < 9; i++) {
+            assertNotNull("new" + i, cache.get("new" + i));
+        }
+        assertEquals(0, cache.evictionCount());
+    }
+
+    @Test
+    public void invalidate() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, 0);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.invalidate("a");
+        assertNull(cache.get("a"));
+        assertEquals("2", cache.get("b"));
+        cache.invalidateAll();
+        assertNull(cache.get("b"));
+        assertEquals(0, cache.size());
+        cache.put("a", "3");
+        assertEquals("3", cache.get("a"));
+    }
+
+    @Test
+    public void invalidArguments() {
+        try {
+            new TinyLfuCache<>(0, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, 0);
+        try {
+            cache.put("a", null);
+            fail();
+        } catch (NullPointerException expected) {
+        }
+    }
+}
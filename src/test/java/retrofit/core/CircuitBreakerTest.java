@@ -0,0 +1,248 @@
+package retrofit.core;
+
+import org.junit.Test;
+import retrofit.Retrofit;
+import retrofit.http.HttpMethod;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+    private static final long FAST = 0;
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(200);
+
+    public interface Service {
+        @HttpMethod.GET("get")
+        HttpCall<Void> get();
+    }
+
+    private final List<String> transitions = new CopyOnWriteArrayList<>();
+    private final CircuitBreaker.Listener listener = new CircuitBreaker.Listener() {
+        @Override
+        public void onStateTransition(CircuitBreaker breaker, CircuitBreaker.State from, CircuitBreaker.State to) {
+            transitions.add(from + "->" + to);
+        }
+    };
+
+    private CircuitBreakerRegistry.Builder registry() {
+        return new CircuitBreakerRegistry.Builder()
+                .windowSize(4)
+                .minimumCalls(4)
+                .failureRateThreshold(50)
+                .slowCallDurationMillis(100)
+                .openDurationMillis(50)
+                .halfOpenCalls(2)
+                .listener(listener);
+    }
+
+    private static void trip(CircuitBreaker breaker) {
+        for (int i = 0; i < 4; i++) {
+            breaker.onError(FAST);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    private static CircuitBreaker.Permission halfOpen(CircuitBreaker breaker) throws InterruptedException {
+        trip(breaker);
+        Thread.sleep(60);
+        CircuitBreaker.Permission permission = breaker.tryAcquirePermission();
+        assertNotNull(permission);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        return permission;
+    }
+
+    @Test
+    public void staysClosedBelowMinimumCalls() {
+        CircuitBreaker breaker = registry().build().breaker("a");
+        for (int i = 0; i < 3; i++) {
+            breaker.onError(FAST);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(-1, breaker.failureRate(), 0);
+        assertEquals(3, breaker.bufferedCalls());
+    }
+
+    @Test
+    public void tripsAtFailureRate() {
+        CircuitBreaker breaker = registry().build().breaker("a");
+        breaker.onSuccess(FAST);
+        breaker.onSuccess(FAST);
+        breaker.onError(FAST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        breaker.onError(FAST);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertNull(breaker.tryAcquirePermission());
+        assertEquals(1, breaker.notPermittedCount());
+        assertEquals(1, transitions.size());
+        assertEquals("CLOSED->OPEN", transitions.get(0));
+    }
+
+    @Test
+    public void windowForgetsOldCalls() {
+        CircuitBreaker breaker = registry().failureRateThreshold(75).build().breaker("a");
+        breaker.onError(FAST);
+        breaker.onError(FAST);
+        breaker.onSuccess(FAST);
+        breaker.onSuccess(FAST);
+        assertEquals(50, breaker.failureRate(), 0);
+        // Replace the two errors.
+        breaker.onSuccess(FAST);
+        breaker.onSuccess(FAST);
+        assertEquals(0, breaker.failureRate(), 0);
+        assertEquals(4, breaker.bufferedCalls());
+        breaker.onError(FAST);
+        breaker.onError(FAST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        breaker.onError(FAST);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    public void tripsAtSlowCallRate() {
+        CircuitBreaker breaker = registry().slowCallRateThreshold(50).build().breaker("a");
+        breaker.onSuccess(FAST);
+        breaker.onSuccess(FAST);
+        breaker.onSuccess(SLOW);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        breaker.onSuccess(SLOW);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    public void halfOpenProbesClose() throws Exception {
+        CircuitBreaker breaker = registry().build().breaker("a");
+        halfOpen(breaker);
+        assertNotNull(breaker.tryAcquirePermission());
+        // Only halfOpenCalls probes are let through.
+        assertNull(breaker.tryAcquirePermission());
+        breaker.onSuccess(FAST);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        breaker.onSuccess(FAST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0, breaker.bufferedCalls());
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->CLOSED]", transitions.toString());
+    }
+
+    @Test
+    public void halfOpenFailureReopens() throws Exception {
+        CircuitBreaker breaker = registry().build().breaker("a");
+        halfOpen(breaker);
+        breaker.tryAcquirePermission();
+        breaker.onSuccess(FAST);
+        breaker.onError(FAST);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertNull(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void releasedProbeCanBeTakenAgain() throws Exception {
+        CircuitBreaker breaker = registry().build().breaker("a");
+        CircuitBreaker.Permission first = halfOpen(breaker);
+        CircuitBreaker.Permission second = breaker.tryAcquirePermission();
+        assertNull(breaker.tryAcquirePermission());
+        breaker.releasePermission(second);
+        assertSame(first, breaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void stalePermissionIsIgnored() throws Exception {
+        CircuitBreaker breaker = registry().build().breaker("a");
+        CircuitBreaker.Permission stale = halfOpen(breaker);
+        breaker.tryAcquirePermission();
+        breaker.onSuccess(FAST);
+        breaker.onError(FAST);
+        Thread.sleep(60);
+        assertNotNull(breaker.tryAcquirePermission());
+        assertNotNull(breaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertNull(breaker.tryAcquirePermission());
+        // Issued by the previous half-open phase, must not add a probe to this one.
+        breaker.releasePermission(stale);
+        assertNull(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void resetCloses() {
+        CircuitBreaker breaker = registry().build().breaker("a");
+        trip(breaker);
+        breaker.reset();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertNotNull(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void breakersAreCreatedOncePerName() {
+        CircuitBreakerRegistry registry = registry().build();
+        assertSame(registry.breaker("a"), registry.breaker("a"));
+        assertEquals(1, registry.breakers().size());
+    }
+
+    @Test
+    public void invalidConfiguration() {
+        try {
+            new CircuitBreakerRegistry.Builder().windowSize(4).minimumCalls(5).build();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            new CircuitBreakerRegistry.Builder().failureRateThreshold(0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void engineFailsFastWhenOpen() throws Exception {
+        FakeHttpEngine engine = new FakeHttpEngine().respond(new FakeHttpEngine.Responder() {
+            @Override
+            public FakeHttpEngine.Response respond(String request) {
+                return new FakeHttpEngine.Response(503, "");
+            }
+        });
+        Service service = new Retrofit.Builder()
+                .baseUrl("http://localhost/")
+                .engine(engine)
+                .circuitBreakers(registry().build())
+                .build()
+                .create(Service.class);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(503, service.get().execute().code());
+        }
+        try {
+            service.get().execute();
+            fail();
+        } catch (CallNotPermittedException e) {
+            assertEquals(CircuitBreaker.State.OPEN, e.breaker().state());
+        }
+        assertEquals(4, engine.requests.size());
+    }
+
+    @Test
+    public void engineDoesNotCountCanceledCalls() throws Exception {
+        CircuitBreakerRegistry registry = registry().build();
+        FakeHttpEngine engine = new FakeHttpEngine();
+        Service service = new Retrofit.Builder()
+                .baseUrl("http://localhost/")
+                .engine(engine)
+                .circuitBreakers(registry)
+                .build()
+                .create(Service.class);
+        HttpCall<Void> call = service.get();
+        call.cancel();
+        try {
+            call.execute();
+            fail();
+        } catch (IOException expected) {
+        }
+        service.get().execute();
+        assertEquals(1, registry.breakers().values().iterator().next().bufferedCalls());
+    }
+}
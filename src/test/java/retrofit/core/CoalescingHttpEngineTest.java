@@ -0,0 +1,257 @@
+package retrofit.core;
+
+import org.junit.Test;
+import retrofit.HttpResponse;
+import retrofit.Retrofit;
+import retrofit.http.Coalesce;
+import retrofit.http.HttpMethod;
+import retrofit.http.Path;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CoalescingHttpEngineTest {
+    public interface Service {
+        @Coalesce
+        @HttpMethod.GET("items/{id}")
+        HttpCall<String> get(@Path("id") String id);
+
+        @Coalesce
+        @HttpMethod.POST("items/{id}")
+        HttpCall<String> post(@Path("id") String id);
+    }
+
+    /**
+     * 每次转换都创建新的String，用于判断调用之间是否共享了同一个结果
+     */
+    static final class StringFactory extends HttpConverter.Factory {
+        @Override
+        public HttpConverter<InputStream, ?> responseBodyConverter(Type type, Annotation[] annotations,
+                                                                   Retrofit retrofit) {
+            if (type != String.class) return null;
+            return new HttpConverter<InputStream, String>() {
+                @Override
+                public String convert(InputStream value) throws IOException {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[256];
+                    for (int n; (n = value.read(buffer)) != -1; ) {
+                        out.write(buffer, 0, n);
+                    }
+                    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+                }
+            };
+        }
+    }
+
+    /**
+     * 收到请求后阻塞，直到release()
+     */
+    static final class Gate implements FakeHttpEngine.Responder {
+        final CountDownLatch arrived = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+        volatile IOException failure;
+
+        @Override
+        public FakeHttpEngine.Response respond(String request) throws IOException {
+            arrived.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            if (failure != null) throw failure;
+            return new FakeHttpEngine.Response(200, request);
+        }
+
+        void awaitArrival() throws InterruptedException {
+            assertTrue(arrived.await(5, TimeUnit.SECONDS));
+        }
+
+        void release() {
+            released.countDown();
+        }
+    }
+
+    static final class Result {
+        final HttpResponse<String, ?, ?> response;
+        final Throwable failure;
+
+        Result(HttpResponse<String, ?, ?> response, Throwable failure) {
+            this.response = response;
+            this.failure = failure;
+        }
+    }
+
+    private final FakeHttpEngine engine = new FakeHttpEngine();
+    private final Service service = new Retrofit.Builder()
+            .baseUrl("http://localhost/")
+            .engine(engine)
+            .addConverterFactory(new StringFactory())
+            .build()
+            .create(Service.class);
+
+    private static void enqueue(HttpCall<String> call, final BlockingQueue<Result> results) {
+        call.enqueue(new HttpCallback<String>() {
+            @Override
+            public void onResponse(HttpCall<String> call, HttpResponse<String, ?, ?> response) {
+                results.add(new Result(response, null));
+            }
+
+            @Override
+            public void onFailure(HttpCall<String> call, Throwable t) {
+                results.add(new Result(null, t));
+            }
+        });
+    }
+
+    private static Result take(BlockingQueue<Result> results) throws InterruptedException {
+        Result result = results.poll(5, TimeUnit.SECONDS);
+        assertNotNull("timed out", result);
+        return result;
+    }
+
+    private static CoalescingHttpEngine coalescer(HttpCall<?> call) {
+        return ForwardingHttpEngine.unwrap(call.httpEngine, CoalescingHttpEngine.class);
+    }
+
+    @Test
+    public void concurrentCallsShareOneRequest() throws Exception {
+        Gate gate = new Gate();
+        engine.respond(gate);
+        BlockingQueue<Result> results = new ArrayBlockingQueue<>(4);
+        HttpCall<String> first = service.get("1");
+        enqueue(first, results);
+        gate.awaitArrival();
+        for (int i = 0; i < 3; i++) {
+            enqueue(service.get("1"), results);
+        }
+        gate.release();
+
+        String body = take(results).response.body();
+        assertEquals("GET http://localhost/items/1", body);
+        for (int i = 0; i < 3; i++) {
+            assertSame(body, take(results).response.body());
+        }
+        assertEquals(1, engine.requests.size());
+        assertEquals(3, coalescer(first).coalescedCalls());
+    }
+
+    @Test
+    public void differentUrlsAreNotShared() throws Exception {
+        Gate gate = new Gate();
+        engine.respond(gate);
+        BlockingQueue<Result> results = new ArrayBlockingQueue<>(2);
+        enqueue(service.get("1"), results);
+        gate.awaitArrival();
+        enqueue(service.get("2"), results);
+        gate.release();
+        take(results);
+        take(results);
+        assertEquals(2, engine.requests.size());
+    }
+
+    @Test
+    public void finishedRequestIsNotJoined() throws Exception {
+        HttpCall<String> first = service.get("1");
+        assertEquals("ok", first.execute().body());
+        assertEquals("ok", service.get("1").execute().body());
+        assertEquals(2, engine.requests.size());
+        assertEquals(0, coalescer(first).coalescedCalls());
+    }
+
+    @Test
+    public void failureIsShared() throws Exception {
+        Gate gate = new Gate();
+        gate.failure = new IOException("boom");
+        engine.respond(gate);
+        BlockingQueue<Result> results = new ArrayBlockingQueue<>(2);
+        enqueue(service.get("1"), results);
+        gate.awaitArrival();
+        enqueue(service.get("1"), results);
+        gate.release();
+        assertSame(gate.failure, take(results).failure);
+        assertSame(gate.failure, take(results).failure);
+        assertEquals(1, engine.requests.size());
+    }
+
+    @Test
+    public void canceledCallLeavesOthersWaiting() throws Exception {
+        Gate gate = new Gate();
+        engine.respond(gate);
+        BlockingQueue<Result> leaderResults = new ArrayBlockingQueue<>(1);
+        BlockingQueue<Result> canceledResults = new ArrayBlockingQueue<>(1);
+        enqueue(service.get("1"), leaderResults);
+        gate.awaitArrival();
+        HttpCall<String> canceled = service.get("1");
+        enqueue(canceled, canceledResults);
+        canceled.cancel();
+
+        assertEquals("Canceled", take(canceledResults).failure.getMessage());
+        gate.release();
+        assertEquals("GET http://localhost/items/1", take(leaderResults).response.body());
+        assertEquals(0, engine.canceled.get());
+    }
+
+    @Test
+    public void cancelingEveryCallCancelsTheRequest() throws Exception {
+        Gate gate = new Gate();
+        engine.respond(gate);
+        BlockingQueue<Result> results = new ArrayBlockingQueue<>(2);
+        List<HttpCall<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            HttpCall<String> call = service.get("1");
+            calls.add(call);
+            enqueue(call, results);
+            gate.awaitArrival();
+        }
+        for (HttpCall<String> call : calls) {
+            call.cancel();
+        }
+        assertEquals("Canceled", take(results).failure.getMessage());
+        assertEquals("Canceled", take(results).failure.getMessage());
+        assertEquals(1, engine.canceled.get());
+        gate.release();
+
+        // A new call starts over instead of joining the abandoned request.
+        engine.respond(new FakeHttpEngine.Responder() {
+            @Override
+            public FakeHttpEngine.Response respond(String request) {
+                return new FakeHttpEngine.Response(200, "again");
+            }
+        });
+        assertEquals("again", service.get("1").execute().body());
+    }
+
+    @Test
+    public void postIsNotCoalesced() throws Exception {
+        Gate gate = new Gate();
+        engine.respond(gate);
+        BlockingQueue<Result> results = new ArrayBlockingQueue<>(2);
+        enqueue(service.post("1"), results);
+        gate.awaitArrival();
+        enqueue(service.post("1"), results);
+        // Only the first call waits at the gate, give the second time to reach it.
+        for (int i = 0; i < 100 && engine.requests.size() < 2; i++) {
+            Thread.sleep(10);
+        }
+        gate.release();
+        take(results);
+        take(results);
+        assertEquals(2, engine.requests.size());
+    }
+}
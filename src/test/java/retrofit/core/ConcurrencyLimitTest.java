@@ -0,0 +1,101 @@
+package retrofit.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrencyLimitTest {
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void aimdGrowsWhenUsed() {
+        ConcurrencyLimit limit = new ConcurrencyLimit.Aimd(10, 1, 20);
+        limit.onSample(RTT, 5, false);
+        assertEquals(11, limit.limit());
+        // Less than half of the limit in use, nothing to learn.
+        limit.onSample(RTT, 2, false);
+        assertEquals(11, limit.limit());
+    }
+
+    @Test
+    public void aimdBacksOffOnDrop() {
+        ConcurrencyLimit limit = new ConcurrencyLimit.Aimd(10, 1, 20);
+        limit.onSample(RTT, 10, true);
+        assertEquals(9, limit.limit());
+        assertEquals(9.0, limit.estimate, 1e-9);
+    }
+
+    @Test
+    public void aimdStaysWithinBounds() {
+        ConcurrencyLimit limit = new ConcurrencyLimit.Aimd(10, 2, 12);
+        for (int i = 0; i < 10; i++) {
+            limit.onSample(RTT, 20, false);
+        }
+        assertEquals(12, limit.limit());
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(RTT, 20, true);
+        }
+        assertEquals(2, limit.limit());
+    }
+
+    @Test
+    public void vegasGrowsWithoutQueueing() {
+        ConcurrencyLimit limit = new ConcurrencyLimit.Vegas(10, 1, 100);
+        // The first sample only sets the no-load baseline.
+        limit.onSample(RTT, 10, false);
+        assertEquals(10, limit.limit());
+        limit.onSample(RTT, 10, false);
+        assertEquals(16, limit.limit());
+    }
+
+    @Test
+    public void vegasShrinksWhenLatencyRises() {
+        ConcurrencyLimit limit = new ConcurrencyLimit.Vegas(50, 1, 100);
+        limit.onSample(RTT, 50, false);
+        for (int i = 0; i < 20; i++) {
+            limit.onSample(RTT * 3, limit.limit(), false);
+        }
+        assertTrue(String.valueOf(limit.limit()), limit.limit() < 40);
+    }
+
+    @Test
+    public void vegasShrinksOnDrop() {
+        ConcurrencyLimit limit = new ConcurrencyLimit.Vegas(100, 1, 200);
+        limit.onSample(RTT, 100, false);
+        limit.onSample(RTT, 100, true);
+        assertEquals(98, limit.limit());
+    }
+
+    @Test
+    public void gradientGrowsAtSteadyLatency() {
+        ConcurrencyLimit limit = new ConcurrencyLimit.Gradient2(20, 1, 200);
+        for (int i = 0; i < 10; i++) {
+            limit.onSample(RTT, limit.limit(), false);
+        }
+        assertTrue(String.valueOf(limit.limit()), limit.limit() > 25);
+    }
+
+    @Test
+    public void gradientShrinksWhenLatencyRises() {
+        ConcurrencyLimit limit = new ConcurrencyLimit.Gradient2(50, 1, 200);
+        for (int i = 0; i < 20; i++) {
+            limit.onSample(RTT, 10, false);
+        }
+        assertEquals(50, limit.limit());
+        for (int i = 0; i < 10; i++) {
+            limit.onSample(RTT * 10, limit.limit(), false);
+        }
+        assertTrue(String.valueOf(limit.limit()), limit.limit() < 40);
+    }
+
+    @Test
+    public void gradientShrinksOnDrop() {
+        ConcurrencyLimit limit = new ConcurrencyLimit.Gradient2(100, 1, 200);
+        limit.onSample(RTT, 100, true);
+        // 100 * 0.8 + (100 * 0.5 + 10) * 0.2
+        assertEquals(92, limit.limit());
+    }
+}
@@ -0,0 +1,267 @@
+package retrofit.core;
+
+import org.junit.Test;
+import retrofit.Retrofit;
+import retrofit.http.HttpMethod;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConcurrencyLimiterTest {
+    public interface Service {
+        @HttpMethod.GET("get")
+        HttpCall<Void> get();
+    }
+
+    /**
+     * 记录结果的Grant
+     */
+    static final class RecordingGrant implements ConcurrencyLimiter.Grant {
+        final String name;
+        final List<String> events;
+
+        RecordingGrant(String name, List<String> events) {
+            this.name = name;
+            this.events = events;
+        }
+
+        @Override
+        public void granted() {
+            events.add(name + " granted");
+        }
+
+        @Override
+        public void rejected(IOException e) {
+            events.add(name + " " + e.getMessage());
+        }
+    }
+
+    private final FakeHttpEngine engine = new FakeHttpEngine();
+    private final Service service = new Retrofit.Builder()
+            .baseUrl("http://localhost/")
+            .engine(engine)
+            .build()
+            .create(Service.class);
+    private final List<String> events = new CopyOnWriteArrayList<>();
+
+    private static ConcurrencyLimiter limiter(int maxQueueSize, long maxQueueTimeMillis) {
+        // AIMD with a fixed range keeps the limit at 2.
+        return new ConcurrencyLimiterRegistry.Builder()
+                .algorithm(ConcurrencyLimiterRegistry.Algorithm.AIMD)
+                .initialLimit(2)
+                .minLimit(2)
+                .maxLimit(2)
+                .maxQueueSize(maxQueueSize)
+                .maxQueueTimeMillis(maxQueueTimeMillis)
+                .build()
+                .limiter("http://localhost:80");
+    }
+
+    private void awaitQueued(ConcurrencyLimiter limiter, int count) throws InterruptedException {
+        for (int i = 0; i < 500 && limiter.queued() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, limiter.queued());
+    }
+
+    @Test
+    public void queuedCallsAreGrantedInOrder() {
+        ConcurrencyLimiter limiter = limiter(10, 5000);
+        for (String name : new String[]{"a", "b", "c", "d"}) {
+            limiter.acquire(service.get(), new RecordingGrant(name, events));
+        }
+        assertEquals("[a granted, b granted]", events.toString());
+        assertEquals(2, limiter.inFlight());
+        assertEquals(2, limiter.queued());
+
+        limiter.release();
+        assertEquals("[a granted, b granted, c granted]", events.toString());
+        limiter.onSample(TimeUnit.MILLISECONDS.toNanos(1), false);
+        assertEquals("[a granted, b granted, c granted, d granted]", events.toString());
+        assertEquals(2, limiter.inFlight());
+        assertEquals(0, limiter.queued());
+    }
+
+    @Test
+    public void blockedCallIsGrantedOnRelease() throws Exception {
+        final ConcurrencyLimiter limiter = limiter(10, 5000);
+        limiter.acquire(service.get());
+        limiter.acquire(service.get());
+        final CountDownLatch acquired = new CountDownLatch(1);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire(service.get());
+                    acquired.countDown();
+                } catch (IOException e) {
+                    events.add(e.getMessage());
+                }
+            }
+        }.start();
+        awaitQueued(limiter, 1);
+        limiter.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals(2, limiter.inFlight());
+    }
+
+    @Test
+    public void fullQueueRejects() throws Exception {
+        ConcurrencyLimiter limiter = limiter(1, 5000);
+        limiter.acquire(service.get());
+        limiter.acquire(service.get());
+        limiter.acquire(service.get(), new RecordingGrant("queued", events));
+        try {
+            limiter.acquire(service.get());
+            fail();
+        } catch (ConcurrencyLimitExceededException e) {
+            assertEquals(limiter, e.limiter());
+        }
+        limiter.acquire(service.get(), new RecordingGrant("async", events));
+        assertEquals(1, events.size());
+        assertTrue(events.get(0), events.get(0).startsWith("async Concurrency limit of 2 reached"));
+        assertEquals(2, limiter.rejectedCount());
+    }
+
+    @Test
+    public void noQueueRejectsImmediately() throws Exception {
+        ConcurrencyLimiter limiter = limiter(10, 0);
+        limiter.acquire(service.get());
+        limiter.acquire(service.get());
+        long start = System.nanoTime();
+        try {
+            limiter.acquire(service.get());
+            fail();
+        } catch (ConcurrencyLimitExceededException expected) {
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void queueTimeout() throws Exception {
+        ConcurrencyLimiter limiter = limiter(10, 50);
+        limiter.acquire(service.get());
+        limiter.acquire(service.get());
+        try {
+            limiter.acquire(service.get());
+            fail();
+        } catch (ConcurrencyLimitExceededException expected) {
+        }
+        BlockingQueue<IOException> rejected = new ArrayBlockingQueue<>(1);
+        limiter.acquire(service.get(), new ConcurrencyLimiter.Grant() {
+            @Override
+            public void granted() {
+                fail();
+            }
+
+            @Override
+            public void rejected(IOException e) {
+                rejected.add(e);
+            }
+        });
+        assertTrue(rejected.poll(5, TimeUnit.SECONDS) instanceof ConcurrencyLimitExceededException);
+        assertEquals(0, limiter.queued());
+        assertEquals(2, limiter.rejectedCount());
+    }
+
+    @Test
+    public void cancelQueuedAsyncCall() {
+        ConcurrencyLimiter limiter = limiter(10, 5000);
+        limiter.acquire(service.get(), new RecordingGrant("a", events));
+        limiter.acquire(service.get(), new RecordingGrant("b", events));
+        HttpCall<Void> queued = service.get();
+        limiter.acquire(queued, new RecordingGrant("c", events));
+        limiter.acquire(service.get(), new RecordingGrant("d", events));
+        limiter.cancel(queued);
+        assertEquals("[a granted, b granted, c Canceled]", events.toString());
+        // The canceled call is skipped.
+        limiter.release();
+        assertEquals("[a granted, b granted, c Canceled, d granted]", events.toString());
+        assertEquals(0, limiter.rejectedCount());
+    }
+
+    @Test
+    public void cancelQueuedSyncCall() throws Exception {
+        final ConcurrencyLimiter limiter = limiter(10, 5000);
+        limiter.acquire(service.get());
+        limiter.acquire(service.get());
+        final HttpCall<Void> queued = service.get();
+        final BlockingQueue<IOException> failures = new ArrayBlockingQueue<>(1);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire(queued);
+                } catch (IOException e) {
+                    failures.add(e);
+                }
+            }
+        }.start();
+        awaitQueued(limiter, 1);
+        limiter.cancel(queued);
+        IOException failure = failures.poll(5, TimeUnit.SECONDS);
+        assertNotNull(failure);
+        assertEquals("Canceled", failure.getMessage());
+        assertEquals(2, limiter.inFlight());
+    }
+
+    @Test
+    public void engineRejectsBeforeTheDelegate() throws Exception {
+        final CountDownLatch released = new CountDownLatch(1);
+        engine.respond(new FakeHttpEngine.Responder() {
+            @Override
+            public FakeHttpEngine.Response respond(String request) {
+                try {
+                    released.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                return new FakeHttpEngine.Response(200, "");
+            }
+        });
+        ConcurrencyLimiterRegistry registry = new ConcurrencyLimiterRegistry.Builder()
+                .algorithm(ConcurrencyLimiterRegistry.Algorithm.AIMD)
+                .initialLimit(1)
+                .maxLimit(1)
+                .maxQueueSize(0)
+                .build();
+        Service limited = new Retrofit.Builder()
+                .baseUrl("http://localhost/")
+                .engine(engine)
+                .concurrencyLimiters(registry)
+                .build()
+                .create(Service.class);
+        final BlockingQueue<Object> results = new ArrayBlockingQueue<>(1);
+        limited.get().enqueue(new HttpCallback<Void>() {
+            @Override
+            public void onResponse(HttpCall<Void> call, retrofit.HttpResponse<Void, ?, ?> response) {
+                results.add(response);
+            }
+
+            @Override
+            public void onFailure(HttpCall<Void> call, Throwable t) {
+                results.add(t);
+            }
+        });
+        try {
+            limited.get().execute();
+            fail();
+        } catch (ConcurrencyLimitExceededException expected) {
+        } finally {
+            released.countDown();
+        }
+        assertNotNull(results.poll(5, TimeUnit.SECONDS));
+        assertEquals(1, engine.requests.size());
+        assertEquals(0, registry.limiters().values().iterator().next().inFlight());
+    }
+}
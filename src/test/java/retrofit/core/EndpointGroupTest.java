@@ -0,0 +1,216 @@
+package retrofit.core;
+
+import org.junit.Test;
+import retrofit.HttpUrl;
+import retrofit.Retrofit;
+import retrofit.http.HttpMethod;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EndpointGroupTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    public interface Service {
+        @HttpMethod.GET("get")
+        HttpCall<Void> get();
+    }
+
+    private static EndpointGroup.Builder group(String... hosts) {
+        EndpointGroup.Builder builder = new EndpointGroup.Builder();
+        for (String host : hosts) {
+            builder.addEndpoint("http://" + host + "/");
+        }
+        return builder;
+    }
+
+    private static Endpoint endpoint(EndpointGroup group, String host) {
+        for (Endpoint endpoint : group.endpoints()) {
+            if (endpoint.url().host().equals(host)) return endpoint;
+        }
+        throw new AssertionError(host);
+    }
+
+    private static void complete(EndpointGroup group, Endpoint endpoint, long rttNanos, boolean failed) {
+        endpoint.begin();
+        group.onResult(endpoint, rttNanos, failed);
+    }
+
+    private static Set<String> picks(EndpointGroup group, int count) {
+        Set<String> hosts = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            hosts.add(group.pick().url().host());
+        }
+        return hosts;
+    }
+
+    @Test
+    public void emptyAndSingle() {
+        assertNull(new EndpointGroup.Builder().build().pick());
+        EndpointGroup single = EndpointGroup.of("http://a/");
+        assertEquals("a", single.pick().url().host());
+    }
+
+    @Test
+    public void prefersLowerLatency() {
+        EndpointGroup group = group("a", "b").build();
+        complete(group, endpoint(group, "a"), SLOW, false);
+        complete(group, endpoint(group, "b"), FAST, false);
+        // With two endpoints every pick compares both.
+        assertEquals(new HashSet<>(Arrays.asList("b")), picks(group, 100));
+    }
+
+    @Test
+    public void prefersFewerOutstanding() {
+        EndpointGroup group = group("a", "b").build();
+        complete(group, endpoint(group, "a"), FAST, false);
+        complete(group, endpoint(group, "b"), FAST, false);
+        endpoint(group, "a").begin();
+        assertEquals(new HashSet<>(Arrays.asList("b")), picks(group, 100));
+        endpoint(group, "a").release();
+        assertEquals(0, endpoint(group, "a").outstanding());
+    }
+
+    @Test
+    public void spreadsAcrossEqualEndpoints() {
+        EndpointGroup group = group("a", "b", "c").build();
+        assertEquals(3, picks(group, 300).size());
+    }
+
+    @Test
+    public void peakEwmaRisesAtOnceAndDecaysSlowly() {
+        EndpointGroup group = group("a").decayTimeMillis(10000).build();
+        Endpoint a = endpoint(group, "a");
+        complete(group, a, FAST, false);
+        complete(group, a, SLOW, false);
+        assertEquals(SLOW, a.latencyNanos());
+        complete(group, a, FAST, false);
+        assertTrue(a.latencyNanos() > SLOW * 9 / 10);
+    }
+
+    @Test
+    public void consecutiveFailuresEject() {
+        EndpointGroup group = group("a", "b", "c").consecutiveFailures(2).build();
+        Endpoint a = endpoint(group, "a");
+        complete(group, a, FAST, true);
+        // A success in between starts the count over.
+        complete(group, a, FAST, false);
+        complete(group, a, FAST, true);
+        assertFalse(a.isEjected());
+        complete(group, a, FAST, true);
+        assertTrue(a.isEjected());
+        assertEquals(1, a.ejectionCount());
+        assertEquals(3, a.failureCount());
+        assertEquals(new HashSet<>(Arrays.asList("b", "c")), picks(group, 300));
+    }
+
+    @Test
+    public void ejectionExpires() throws Exception {
+        EndpointGroup group = group("a", "b").consecutiveFailures(1).baseEjectionTimeMillis(100).build();
+        Endpoint a = endpoint(group, "a");
+        complete(group, endpoint(group, "b"), SLOW, false);
+        complete(group, a, FAST, true);
+        assertTrue(a.isEjected());
+        Thread.sleep(130);
+        assertFalse(a.isEjected());
+        assertTrue(picks(group, 100).contains("a"));
+
+        // The second ejection lasts twice as long.
+        complete(group, a, FAST, true);
+        Thread.sleep(130);
+        assertTrue(a.isEjected());
+        assertEquals(2, a.ejectionCount());
+    }
+
+    @Test
+    public void maxEjectionPercentKeepsEndpoints() {
+        EndpointGroup group = group("a", "b").consecutiveFailures(1).maxEjectionPercent(50).build();
+        complete(group, endpoint(group, "a"), FAST, true);
+        complete(group, endpoint(group, "b"), FAST, true);
+        assertTrue(endpoint(group, "a").isEjected());
+        assertFalse(endpoint(group, "b").isEjected());
+    }
+
+    @Test
+    public void oneEndpointCanAlwaysBeEjected() {
+        EndpointGroup group = group("a", "b").consecutiveFailures(1).maxEjectionPercent(0).build();
+        complete(group, endpoint(group, "a"), FAST, true);
+        assertTrue(endpoint(group, "a").isEjected());
+    }
+
+    @Test
+    public void allEjectedStillPicks() {
+        EndpointGroup group = group("a", "b").consecutiveFailures(1).maxEjectionPercent(100).build();
+        complete(group, endpoint(group, "a"), FAST, true);
+        complete(group, endpoint(group, "b"), FAST, true);
+        assertTrue(endpoint(group, "a").isEjected());
+        assertTrue(endpoint(group, "b").isEjected());
+        assertNotNull(group.pick());
+    }
+
+    @Test
+    public void updateKeepsExistingEndpoints() {
+        EndpointGroup group = group("a", "b").build();
+        Endpoint a = endpoint(group, "a");
+        complete(group, a, SLOW, false);
+        complete(group, endpoint(group, "b"), FAST, false);
+        List<HttpUrl> urls = Arrays.asList(HttpUrl.parse("http://a/"), HttpUrl.parse("http://c/"),
+                HttpUrl.parse("http://a/"));
+        group.update(urls);
+        assertEquals(2, group.endpoints().size());
+        assertSame(a, endpoint(group, "a"));
+        // A new endpoint starts at the average latency.
+        assertEquals((SLOW + FAST) / 2, endpoint(group, "c").latencyNanos());
+    }
+
+    @Test
+    public void endpointUrlMustEndInSlash() {
+        try {
+            EndpointGroup.of("http://a/api");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void engineMovesAwayFromFailingEndpoint() throws Exception {
+        EndpointGroup group = group("a", "b").consecutiveFailures(1).build();
+        // Slower than the untried "a", which is picked first.
+        complete(group, endpoint(group, "b"), SLOW, false);
+        FakeHttpEngine engine = new FakeHttpEngine().respond(new FakeHttpEngine.Responder() {
+            @Override
+            public FakeHttpEngine.Response respond(String request) {
+                return new FakeHttpEngine.Response(request.startsWith("GET http://a/") ? 503 : 200, "");
+            }
+        });
+        Service service = new Retrofit.Builder()
+                .baseUrl("http://localhost/")
+                .engine(engine)
+                .endpointGroup(group)
+                .build()
+                .create(Service.class);
+        assertEquals(503, service.get().execute().code());
+        assertTrue(endpoint(group, "a").isEjected());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(200, service.get().execute().code());
+        }
+        assertEquals("GET http://a/get", engine.requests.get(0));
+        for (String request : engine.requests.subList(1, engine.requests.size())) {
+            assertEquals("GET http://b/get", request);
+        }
+        assertEquals(1, endpoint(group, "a").failureCount());
+        assertEquals(0, endpoint(group, "b").outstanding());
+    }
+}
@@ -0,0 +1,149 @@
+package retrofit.core;
+
+import retrofit.HttpHeaders;
+import retrofit.HttpResponse;
+import retrofit.HttpUrl;
+import retrofit.RequestBuilder;
+import retrofit.ServiceMethod;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 测试用的引擎：请求经过ServiceMethod和ParameterHandler写成"METHOD url"形式的字符串，
+ * 交给{@link Responder}生成响应，不访问网络。enqueue时在executor上执行，默认每次调用一个新线程
+ */
+public class FakeHttpEngine extends HttpEngine {
+    public interface Responder {
+        Response respond(String request) throws IOException;
+    }
+
+    public static final class Response {
+        final int code;
+        final byte[] body;
+        final HttpHeaders headers;
+
+        public Response(int code, String body, String... headers) {
+            this.code = code;
+            this.body = body.getBytes(StandardCharsets.UTF_8);
+            HttpHeaders.Builder builder = new HttpHeaders.Builder();
+            for (int i = 0; i < headers.length; i += 2) {
+                builder.add(headers[i], headers[i + 1]);
+            }
+            this.headers = builder.build();
+        }
+    }
+
+    public final List<String> requests = new CopyOnWriteArrayList<>();
+    public final AtomicInteger canceled = new AtomicInteger();
+    private volatile Responder responder = new Responder() {
+        @Override
+        public Response respond(String request) {
+            return new Response(200, "ok");
+        }
+    };
+    private volatile Executor executor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            new Thread(command).start();
+        }
+    };
+
+    public FakeHttpEngine respond(Responder responder) {
+        this.responder = responder;
+        return this;
+    }
+
+    public FakeHttpEngine executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    @Override
+    public HttpCall newHttpCall(ServiceMethod serviceMethod, Object[] args) {
+        HttpCall call = new FakeCall<>(serviceMethod, args);
+        call.setHttpEngine(this);
+        return call;
+    }
+
+    @Override
+    public <T> void cancel(HttpCall httpCall) {
+        canceled.incrementAndGet();
+    }
+
+    @Override
+    public <T> HttpResponse execute(HttpCall<T> httpCall) throws IOException {
+        httpCall.check();
+        return dispatch(httpCall);
+    }
+
+    @Override
+    public <T> void execute(final HttpCall<T> httpCall, final HttpCallback<T> callback) {
+        httpCall.markExecuted();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                HttpResponse<T, ?, ?> response;
+                try {
+                    response = dispatch(httpCall);
+                } catch (Throwable t) {
+                    callback.onFailure(httpCall, t);
+                    return;
+                }
+                callback.onResponse(httpCall, response);
+            }
+        });
+    }
+
+    private <T> HttpResponse<T, ?, ?> dispatch(HttpCall<T> call) throws IOException {
+        if (call.isCanceled()) {
+            throw new IOException("Canceled");
+        }
+        String request = (String) toRequest(call);
+        requests.add(request);
+        Response response = responder.respond(request);
+        if (call.isCanceled()) {
+            throw new IOException("Canceled");
+        }
+        if (response.code < 200 || response.code >= 300) {
+            return new HttpResponse<>(response, response.body, response.code, response.headers, null, null);
+        }
+        T body = call.toResponseBody(new ByteArrayInputStream(response.body), response.code, response.headers);
+        return new HttpResponse<>(response, null, response.code, response.headers, body, null);
+    }
+
+    @Override
+    protected RequestBuilder newRequestBuilder(ServiceMethod serviceMethod) {
+        return newRequestBuilder(serviceMethod, serviceMethod.baseUrl);
+    }
+
+    @Override
+    protected RequestBuilder newRequestBuilder(ServiceMethod serviceMethod, HttpUrl baseUrl) {
+        return new StandardRequestBuilder(serviceMethod.httpMethod, baseUrl, serviceMethod.pathTemplate,
+                serviceMethod.headers, serviceMethod.contentType, serviceMethod.hasBody,
+                serviceMethod.isFormEncoded, serviceMethod.isMultipart) {
+            @Override
+            @SuppressWarnings("unchecked")
+            public String build() {
+                return method() + " " + url();
+            }
+        };
+    }
+
+    static final class FakeCall<T> extends HttpCall<T> {
+        FakeCall(ServiceMethod<T, ?> serviceMethod, Object[] args) {
+            super(serviceMethod, args);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public HttpCall<T> clone() {
+            return withArgumentsOf((HttpCall<T>) httpEngine.newHttpCall(serviceMethod, args));
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package retrofit.core;
+
+import org.junit.After;
+import org.junit.Test;
+import retrofit.HttpResponse;
+import retrofit.Retrofit;
+import retrofit.http.Hedge;
+import retrofit.http.HttpMethod;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HedgingHttpEngineTest {
+    public interface Service {
+        @Hedge(maxExtraPercent = 100, minDelayMillis = 20)
+        @HttpMethod.GET("get")
+        HttpCall<Void> get();
+
+        @Hedge(maxExtraPercent = 0, minDelayMillis = 20)
+        @HttpMethod.GET("noBudget")
+        HttpCall<Void> noBudget();
+
+        @Hedge(maxExtraPercent = 100, minDelayMillis = 20)
+        @HttpMethod.POST("post")
+        HttpCall<Void> post();
+    }
+
+    /**
+     * 设置了stall时，下一个请求阻塞到stall被释放，其余请求立即返回
+     */
+    static final class Stalling implements FakeHttpEngine.Responder {
+        final AtomicReference<CountDownLatch> stall = new AtomicReference<>();
+        volatile IOException failure;
+
+        CountDownLatch stallNext() {
+            CountDownLatch latch = new CountDownLatch(1);
+            stall.set(latch);
+            return latch;
+        }
+
+        @Override
+        public FakeHttpEngine.Response respond(String request) throws IOException {
+            CountDownLatch latch = stall.getAndSet(null);
+            if (latch != null) {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }
+            if (failure != null) throw failure;
+            return new FakeHttpEngine.Response(200, "");
+        }
+    }
+
+    private final FakeHttpEngine engine = new FakeHttpEngine();
+    private final Stalling responder = new Stalling();
+    private final Service service = new Retrofit.Builder()
+            .baseUrl("http://localhost/")
+            .engine(engine.respond(responder))
+            .build()
+            .create(Service.class);
+    private CountDownLatch stalled;
+
+    @After
+    public void release() {
+        if (stalled != null) stalled.countDown();
+    }
+
+    private static HedgingHttpEngine hedging(HttpCall<?> call) {
+        return ForwardingHttpEngine.unwrap(call.httpEngine, HedgingHttpEngine.class);
+    }
+
+    /**
+     * 积累足够的延迟样本，之后的等待时间为minDelayMillis
+     */
+    private HedgingHttpEngine warmUp() throws IOException {
+        HttpCall<Void> call = null;
+        for (int i = 0; i < 20; i++) {
+            call = service.get();
+            call.execute();
+        }
+        HedgingHttpEngine hedging = hedging(call);
+        assertEquals(20, hedging.hedgeDelayMillis());
+        engine.requests.clear();
+        return hedging;
+    }
+
+    private static void releaseLater(final CountDownLatch latch) {
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignored) {
+                }
+                latch.countDown();
+            }
+        }.start();
+    }
+
+    private void awaitCanceled(int count) throws InterruptedException {
+        for (int i = 0; i < 500 && engine.canceled.get() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, engine.canceled.get());
+    }
+
+    @Test
+    public void noHedgeWithoutSamples() throws Exception {
+        HttpCall<Void> call = service.get();
+        assertEquals(-1, hedging(call).hedgeDelayMillis());
+        stalled = responder.stallNext();
+        releaseLater(stalled);
+        assertEquals(200, call.execute().code());
+        assertEquals(1, engine.requests.size());
+        assertEquals(0, hedging(call).hedgeCount());
+    }
+
+    @Test
+    public void slowRequestIsHedged() throws Exception {
+        HedgingHttpEngine hedging = warmUp();
+        stalled = responder.stallNext();
+        assertEquals(200, service.get().execute().code());
+        assertEquals(2, engine.requests.size());
+        assertEquals(1, hedging.hedgeCount());
+        assertEquals(1, hedging.hedgeWinCount());
+        // The stalled primary is canceled.
+        awaitCanceled(1);
+    }
+
+    @Test
+    public void asyncSlowRequestIsHedged() throws Exception {
+        HedgingHttpEngine hedging = warmUp();
+        stalled = responder.stallNext();
+        final BlockingQueue<Object> results = new ArrayBlockingQueue<>(2);
+        service.get().enqueue(new HttpCallback<Void>() {
+            @Override
+            public void onResponse(HttpCall<Void> call, HttpResponse<Void, ?, ?> response) {
+                results.add(response);
+            }
+
+            @Override
+            public void onFailure(HttpCall<Void> call, Throwable t) {
+                results.add(t);
+            }
+        });
+        Object result = results.poll(5, TimeUnit.SECONDS);
+        assertNotNull(result);
+        assertEquals(200, ((HttpResponse<?, ?, ?>) result).code());
+        assertEquals(1, hedging.hedgeWinCount());
+        awaitCanceled(1);
+        Thread.sleep(50);
+        assertTrue(results.isEmpty());
+    }
+
+    @Test
+    public void fastRequestIsNotHedged() throws Exception {
+        HedgingHttpEngine hedging = warmUp();
+        service.get().execute();
+        Thread.sleep(50);
+        assertEquals(1, engine.requests.size());
+        assertEquals(0, hedging.hedgeCount());
+    }
+
+    @Test
+    public void budgetLimitsHedges() throws Exception {
+        HttpCall<Void> call = null;
+        for (int i = 0; i < 20; i++) {
+            call = service.noBudget();
+            call.execute();
+        }
+        engine.requests.clear();
+        stalled = responder.stallNext();
+        releaseLater(stalled);
+        service.noBudget().execute();
+        assertEquals(1, engine.requests.size());
+        assertEquals(0, hedging(call).hedgeCount());
+    }
+
+    @Test
+    public void failureIsReported() throws Exception {
+        warmUp();
+        responder.failure = new IOException("boom");
+        try {
+            service.get().execute();
+            fail();
+        } catch (IOException e) {
+            assertEquals("boom", e.getMessage());
+        }
+    }
+
+    @Test
+    public void postIsNotHedged() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            service.post().execute();
+        }
+        engine.requests.clear();
+        stalled = responder.stallNext();
+        releaseLater(stalled);
+        service.post().execute();
+        assertEquals(1, engine.requests.size());
+    }
+}
@@ -0,0 +1,82 @@
+package retrofit.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PathTemplateTest {
+
+    @Test
+    public void literalTemplate() {
+        PathTemplate template = PathTemplate.parse("/users/list");
+        assertFalse(template.hasParams());
+        assertSame(template.template(), template.newExpansion().expand());
+    }
+
+    @Test
+    public void expandsParams() {
+        PathTemplate template = PathTemplate.parse("/users/{user}/repos/{repo-name}");
+        assertEquals(Arrays.asList("user", "repo-name"), new ArrayList<>(template.paramNames()));
+        PathTemplate.Expansion expansion = template.newExpansion();
+        assertTrue(expansion.set("user", "bob"));
+        assertTrue(expansion.set("repo-name", "retrofit"));
+        assertEquals("/users/bob/repos/retrofit", expansion.expand());
+    }
+
+    @Test
+    public void repeatedParamFillsEverySlot() {
+        PathTemplate template = PathTemplate.parse("/{id}/copy/{id}");
+        assertEquals(1, template.paramNames().size());
+        PathTemplate.Expansion expansion = template.newExpansion();
+        expansion.set("id", 42);
+        assertEquals("/42/copy/42", expansion.expand());
+    }
+
+    @Test
+    public void longValues() {
+        PathTemplate.Expansion expansion = PathTemplate.parse("/a/{x}/b/{y}").newExpansion();
+        expansion.set("x", Long.MIN_VALUE);
+        expansion.set("y", -7);
+        assertEquals("/a/" + Long.MIN_VALUE + "/b/-7", expansion.expand());
+        // A later string value replaces the number.
+        expansion.set("x", "s");
+        assertEquals("/a/s/b/-7", expansion.expand());
+    }
+
+    @Test
+    public void unsetParamsStayAsWritten() {
+        PathTemplate.Expansion expansion = PathTemplate.parse("/{a}/{b}").newExpansion();
+        expansion.set("b", "2");
+        assertEquals("/{a}/2", expansion.expand());
+    }
+
+    @Test
+    public void unknownParamIsRejected() {
+        PathTemplate template = PathTemplate.parse("/{a}");
+        assertFalse(template.newExpansion().set("b", "x"));
+        assertFalse(template.newExpansion().set("b", 1));
+        assertEquals(-1, template.indexOf("b"));
+    }
+
+    @Test
+    public void invalidBracesAreLiterals() {
+        PathTemplate template = PathTemplate.parse("/{1a}/{a b}/{}/{ok}/{open");
+        assertEquals(Arrays.asList("ok"), new ArrayList<>(template.paramNames()));
+        PathTemplate.Expansion expansion = template.newExpansion();
+        expansion.set("ok", "v");
+        assertEquals("/{1a}/{a b}/{}/v/{open", expansion.expand());
+    }
+
+    @Test
+    public void stringSize() {
+        for (long value : new long[]{0, 9, 10, -1, -10, 99999, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            assertEquals(String.valueOf(value), Long.toString(value).length(), PathTemplate.stringSize(value));
+        }
+    }
+}
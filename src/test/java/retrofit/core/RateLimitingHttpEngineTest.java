@@ -0,0 +1,160 @@
+package retrofit.core;
+
+import org.junit.Test;
+import retrofit.HttpResponse;
+import retrofit.Retrofit;
+import retrofit.http.HttpMethod;
+import retrofit.http.Query;
+import retrofit.http.RateLimit;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RateLimitingHttpEngineTest {
+    public interface Service {
+        @RateLimit(permitsPerSecond = 10, burst = 2)
+        @HttpMethod.GET("get")
+        HttpCall<Void> get();
+
+        @RateLimit(permitsPerSecond = 10, keyParameter = 0)
+        @HttpMethod.GET("keyed")
+        HttpCall<Void> keyed(@Query("tenant") String tenant);
+
+        @RateLimit(permitsPerSecond = 10, keyParameter = 1)
+        @HttpMethod.GET("invalid")
+        HttpCall<Void> invalid(@Query("tenant") String tenant);
+    }
+
+    private final FakeHttpEngine engine = new FakeHttpEngine();
+    private final Service service = new Retrofit.Builder()
+            .baseUrl("http://localhost/")
+            .engine(engine)
+            .build()
+            .create(Service.class);
+
+    private static RateLimitingHttpEngine rateLimiting(HttpCall<?> call) {
+        return ForwardingHttpEngine.unwrap(call.httpEngine, RateLimitingHttpEngine.class);
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    @Test
+    public void callsBeyondBurstAreDelayed() throws Exception {
+        long start = System.nanoTime();
+        HttpCall<Void> call = service.get();
+        call.execute();
+        service.get().execute();
+        assertTrue(millisSince(start) < 50);
+        service.get().execute();
+        assertTrue(millisSince(start) >= 90);
+        assertEquals(3, engine.requests.size());
+        assertEquals(1, rateLimiting(call).delayedCount());
+    }
+
+    @Test
+    public void asyncCallsAreDelayed() throws Exception {
+        service.get().execute();
+        service.get().execute();
+        final BlockingQueue<Object> results = new ArrayBlockingQueue<>(1);
+        long start = System.nanoTime();
+        service.get().enqueue(new HttpCallback<Void>() {
+            @Override
+            public void onResponse(HttpCall<Void> call, HttpResponse<Void, ?, ?> response) {
+                results.add(response);
+            }
+
+            @Override
+            public void onFailure(HttpCall<Void> call, Throwable t) {
+                results.add(t);
+            }
+        });
+        // Returns without waiting for the token.
+        assertTrue(millisSince(start) < 50);
+        assertEquals(2, engine.requests.size());
+        assertTrue(results.poll(5, TimeUnit.SECONDS) instanceof HttpResponse);
+        assertTrue(millisSince(start) >= 90);
+        assertEquals(3, engine.requests.size());
+    }
+
+    @Test
+    public void keysHaveSeparateBuckets() throws Exception {
+        long start = System.nanoTime();
+        HttpCall<Void> call = service.keyed("a");
+        call.execute();
+        service.keyed("b").execute();
+        service.keyed(null).execute();
+        assertTrue(millisSince(start) < 50);
+        service.keyed("a").execute();
+        assertTrue(millisSince(start) >= 90);
+        assertEquals(3, rateLimiting(call).keyCount());
+    }
+
+    @Test
+    public void canceledWhileDelayed() throws Exception {
+        service.get().execute();
+        service.get().execute();
+        final HttpCall<Void> call = service.get();
+        new Thread() {
+            @Override
+            public void run() {
+                while (rateLimiting(call).delayedCount() == 0) {
+                    Thread.yield();
+                }
+                call.cancel();
+            }
+        }.start();
+        long start = System.nanoTime();
+        try {
+            call.execute();
+            fail();
+        } catch (IOException e) {
+            assertEquals("Canceled", e.getMessage());
+        }
+        assertTrue(millisSince(start) < 90);
+        assertEquals(2, engine.requests.size());
+    }
+
+    @Test
+    public void asyncCanceledWhileDelayed() throws Exception {
+        service.get().execute();
+        service.get().execute();
+        final BlockingQueue<Throwable> failures = new ArrayBlockingQueue<>(1);
+        HttpCall<Void> call = service.get();
+        call.enqueue(new HttpCallback<Void>() {
+            @Override
+            public void onResponse(HttpCall<Void> call, HttpResponse<Void, ?, ?> response) {
+                fail();
+            }
+
+            @Override
+            public void onFailure(HttpCall<Void> call, Throwable t) {
+                failures.add(t);
+            }
+        });
+        call.cancel();
+        Throwable failure = failures.poll(5, TimeUnit.SECONDS);
+        assertNotNull(failure);
+        assertEquals("Canceled", failure.getMessage());
+        Thread.sleep(150);
+        assertEquals(2, engine.requests.size());
+    }
+
+    @Test
+    public void keyParameterOutOfRange() {
+        try {
+            service.invalid("a");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("keyParameter 1 is out of range"));
+        }
+    }
+}
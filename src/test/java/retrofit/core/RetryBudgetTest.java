@@ -0,0 +1,69 @@
+package retrofit.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryBudgetTest {
+
+    @Test
+    public void startsFull() {
+        RetryBudget budget = new RetryBudget(0.1, 3);
+        assertEquals(3, budget.available());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(budget.tryWithdraw());
+        }
+        assertFalse(budget.tryWithdraw());
+        assertEquals(0, budget.available());
+    }
+
+    @Test
+    public void depositsRefillByRatio() {
+        RetryBudget budget = new RetryBudget(0.25, 2);
+        budget.tryWithdraw();
+        budget.tryWithdraw();
+        for (int i = 0; i < 3; i++) {
+            budget.deposit();
+            assertFalse(budget.tryWithdraw());
+        }
+        budget.deposit();
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+    }
+
+    @Test
+    public void depositsAreCappedAtMaxTokens() {
+        RetryBudget budget = new RetryBudget(1, 2);
+        for (int i = 0; i < 10; i++) {
+            budget.deposit();
+        }
+        assertEquals(2, budget.available());
+    }
+
+    @Test
+    public void zeroRatioNeverRefills() {
+        RetryBudget budget = new RetryBudget(0, 1);
+        assertTrue(budget.tryWithdraw());
+        for (int i = 0; i < 100; i++) {
+            budget.deposit();
+        }
+        assertFalse(budget.tryWithdraw());
+    }
+
+    @Test
+    public void invalidArguments() {
+        try {
+            new RetryBudget(-0.1, 1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new RetryBudget(0.1, -1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
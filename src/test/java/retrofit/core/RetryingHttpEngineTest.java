@@ -0,0 +1,202 @@
+package retrofit.core;
+
+import org.junit.Test;
+import retrofit.HttpHeaders;
+import retrofit.HttpResponse;
+import retrofit.Retrofit;
+import retrofit.http.HttpMethod;
+import retrofit.http.Retry;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryingHttpEngineTest {
+    public interface Service {
+        @Retry(maxAttempts = 3, baseDelayMillis = 1, maxDelayMillis = 5)
+        @HttpMethod.GET("get")
+        HttpCall<Void> get();
+
+        @Retry(maxAttempts = 3, baseDelayMillis = 1, maxDelayMillis = 5)
+        @HttpMethod.POST("post")
+        HttpCall<Void> post();
+
+        @Retry(maxAttempts = 3, baseDelayMillis = 1000, maxDelayMillis = 1000)
+        @HttpMethod.GET("slow")
+        HttpCall<Void> slow();
+    }
+
+    /**
+     * 依次返回排好的结果，用完后返回200
+     */
+    static final class Script implements FakeHttpEngine.Responder {
+        final Deque<Object> results = new ArrayDeque<>();
+
+        Script then(Object result) {
+            results.add(result);
+            return this;
+        }
+
+        @Override
+        public synchronized FakeHttpEngine.Response respond(String request) throws IOException {
+            Object result = results.poll();
+            if (result == null) return new FakeHttpEngine.Response(200, "");
+            if (result instanceof IOException) throw (IOException) result;
+            return (FakeHttpEngine.Response) result;
+        }
+    }
+
+    private final FakeHttpEngine engine = new FakeHttpEngine();
+    private final Script script = new Script();
+
+    private Service service(RetryBudget budget) {
+        return new Retrofit.Builder()
+                .baseUrl("http://localhost/")
+                .engine(engine.respond(script))
+                .retryBudget(budget)
+                .build()
+                .create(Service.class);
+    }
+
+    private static RetryingHttpEngine retrying(HttpCall<?> call) {
+        return ForwardingHttpEngine.unwrap(call.httpEngine, RetryingHttpEngine.class);
+    }
+
+    private static FakeHttpEngine.Response status(int code, String... headers) {
+        return new FakeHttpEngine.Response(code, "", headers);
+    }
+
+    @Test
+    public void retriesUntilSuccess() throws Exception {
+        script.then(status(503)).then(new IOException("reset"));
+        HttpCall<Void> call = service(new RetryBudget(0.1, 10)).get();
+        assertEquals(200, call.execute().code());
+        assertEquals(3, engine.requests.size());
+        assertEquals(2, retrying(call).retryCount());
+    }
+
+    @Test
+    public void lastResultAfterMaxAttempts() throws Exception {
+        script.then(status(503)).then(status(503)).then(status(502));
+        assertEquals(502, service(new RetryBudget(0.1, 10)).get().execute().code());
+        assertEquals(3, engine.requests.size());
+    }
+
+    @Test
+    public void lastFailureAfterMaxAttempts() throws Exception {
+        script.then(new IOException("1")).then(new IOException("2")).then(new IOException("3"));
+        try {
+            service(new RetryBudget(0.1, 10)).get().execute();
+            fail();
+        } catch (IOException e) {
+            assertEquals("3", e.getMessage());
+        }
+    }
+
+    @Test
+    public void otherCodesAreNotRetried() throws Exception {
+        script.then(status(404));
+        assertEquals(404, service(new RetryBudget(0.1, 10)).get().execute().code());
+        assertEquals(1, engine.requests.size());
+    }
+
+    @Test
+    public void nonIdempotentMethodsAreNotRetried() throws Exception {
+        script.then(status(503));
+        assertEquals(503, service(new RetryBudget(0.1, 10)).post().execute().code());
+        assertEquals(1, engine.requests.size());
+    }
+
+    @Test
+    public void budgetLimitsRetries() throws Exception {
+        RetryBudget budget = new RetryBudget(0, 1);
+        Service service = service(budget);
+        script.then(status(503)).then(status(503)).then(status(503));
+        HttpCall<Void> call = service.get();
+        assertEquals(503, call.execute().code());
+        // One retry from the budget, then it is exhausted.
+        assertEquals(2, engine.requests.size());
+        assertEquals(1, retrying(call).retryCount());
+        assertEquals(1, retrying(call).budgetExhaustedCount());
+        assertEquals(0, budget.available());
+    }
+
+    @Test
+    public void budgetIsSharedByMethods() throws Exception {
+        RetryBudget budget = new RetryBudget(0, 1);
+        Service service = service(budget);
+        script.then(status(503)).then(status(503)).then(status(503));
+        assertEquals(503, service.get().execute().code());
+        assertEquals(503, service.get().execute().code());
+        assertEquals(3, engine.requests.size());
+    }
+
+    @Test
+    public void retryAfterBeyondMaxDelayIsReturned() throws Exception {
+        script.then(status(503, "Retry-After", "60"));
+        assertEquals(503, service(new RetryBudget(0.1, 10)).get().execute().code());
+        assertEquals(1, engine.requests.size());
+    }
+
+    @Test
+    public void retryAfterSeconds() {
+        assertEquals(2000, RetryingHttpEngine.retryAfterMillis(
+                new HttpHeaders.Builder().add("Retry-After", "2").build()));
+        assertEquals(-1, RetryingHttpEngine.retryAfterMillis(new HttpHeaders.Builder().build()));
+        assertEquals(-1, RetryingHttpEngine.retryAfterMillis(
+                new HttpHeaders.Builder().add("Retry-After", "soon").build()));
+    }
+
+    @Test
+    public void asyncRetries() throws Exception {
+        script.then(status(503)).then(new IOException("reset"));
+        final BlockingQueue<Object> results = new ArrayBlockingQueue<>(2);
+        service(new RetryBudget(0.1, 10)).get().enqueue(new HttpCallback<Void>() {
+            @Override
+            public void onResponse(HttpCall<Void> call, HttpResponse<Void, ?, ?> response) {
+                results.add(response);
+            }
+
+            @Override
+            public void onFailure(HttpCall<Void> call, Throwable t) {
+                results.add(t);
+            }
+        });
+        Object result = results.poll(5, TimeUnit.SECONDS);
+        assertNotNull(result);
+        assertEquals(200, ((HttpResponse<?, ?, ?>) result).code());
+        assertEquals(3, engine.requests.size());
+    }
+
+    @Test
+    public void cancelDuringBackoff() throws Exception {
+        script.then(status(503));
+        final HttpCall<Void> call = service(new RetryBudget(0.1, 10)).slow();
+        new Thread() {
+            @Override
+            public void run() {
+                while (engine.requests.isEmpty()) {
+                    Thread.yield();
+                }
+                call.cancel();
+            }
+        }.start();
+        long start = System.nanoTime();
+        try {
+            call.execute();
+            fail();
+        } catch (IOException e) {
+            assertEquals("Canceled", e.getMessage());
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(900));
+        assertEquals(1, engine.requests.size());
+    }
+}
@@ -0,0 +1,81 @@
+package retrofit.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static void assertWait(long expectedNanos, long actualNanos) {
+        // Time passes between the reservations, the wait can only be shorter.
+        assertTrue(actualNanos + " > " + expectedNanos, actualNanos <= expectedNanos);
+        assertTrue(actualNanos + " < " + expectedNanos, actualNanos > expectedNanos - TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void burstIsAvailableImmediately() {
+        TokenBucket bucket = new TokenBucket(INTERVAL, 3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.reserve());
+        }
+        assertWait(INTERVAL, bucket.reserve());
+        // Reservations queue up behind each other.
+        assertWait(2 * INTERVAL, bucket.reserve());
+    }
+
+    @Test
+    public void refillsOneTokenPerInterval() throws Exception {
+        long interval = TimeUnit.MILLISECONDS.toNanos(50);
+        TokenBucket bucket = new TokenBucket(interval, 2);
+        bucket.reserve();
+        bucket.reserve();
+        Thread.sleep(60);
+        assertEquals(0, bucket.reserve());
+        assertTrue(bucket.reserve() > 0);
+    }
+
+    @Test
+    public void idleTimeDoesNotExceedBurst() throws Exception {
+        long interval = TimeUnit.MILLISECONDS.toNanos(10);
+        TokenBucket bucket = new TokenBucket(interval, 2);
+        Thread.sleep(100);
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertTrue(bucket.reserve() > 0);
+    }
+
+    @Test
+    public void refundReturnsAReservation() {
+        TokenBucket bucket = new TokenBucket(INTERVAL, 1);
+        assertEquals(0, bucket.reserve());
+        long first = bucket.reserve();
+        assertWait(INTERVAL, first);
+        bucket.refund();
+        assertWait(first, bucket.reserve());
+    }
+
+    @Test
+    public void refundDoesNotOverfill() {
+        TokenBucket bucket = new TokenBucket(INTERVAL, 1);
+        bucket.refund();
+        bucket.refund();
+        assertTrue(bucket.isIdle());
+        assertEquals(0, bucket.reserve());
+        assertTrue(bucket.reserve() > 0);
+    }
+
+    @Test
+    public void idleWhenFull() throws Exception {
+        TokenBucket bucket = new TokenBucket(TimeUnit.MILLISECONDS.toNanos(20), 2);
+        assertTrue(bucket.isIdle());
+        bucket.reserve();
+        assertFalse(bucket.isIdle());
+        Thread.sleep(40);
+        assertTrue(bucket.isIdle());
+    }
+}